@@ -27,6 +27,7 @@ import changetypes.AtomicChange.Modifier;
 import metapackage.MetaInfo;
 import tyRuBa.engine.Frame;
 import tyRuBa.engine.FrontEnd;
+import tyRuBa.engine.PredicateIdentifier;
 import tyRuBa.engine.RBExpression;
 import tyRuBa.engine.RBVariable;
 import tyRuBa.util.ElementSource;
@@ -120,6 +121,17 @@ public class ChangeSet extends HashSet<AtomicChange> {
 			}
 		}
 
+		//Derive all inherited members bottom up, in one pass
+		try {
+			fe.materialize(new PredicateIdentifier[] {
+					new PredicateIdentifier("added_inheritedmethod", 3),
+					new PredicateIdentifier("added_inheritedfield", 3),
+					new PredicateIdentifier("deleted_inheritedmethod", 3),
+					new PredicateIdentifier("deleted_inheritedfield", 3) });
+		} catch (Exception e) {
+			System.err.println(e);
+		}
+
 		//Try to query the fe
 		String query;
 		RBExpression exp;
@@ -17,22 +17,17 @@
 */
 package changetypes;
 
-import java.io.File;
 import java.io.PrintStream;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
 import java.util.Vector;
 
-import metapackage.MetaInfo;
-import tyRuBa.engine.Frame;
-import tyRuBa.engine.FrontEnd;
-import tyRuBa.engine.RBExpression;
-import tyRuBa.engine.RBVariable;
-import tyRuBa.util.ElementSource;
 
 import changetypes.AtomicChange.Modifier;
 import changetypes.Fact.Types;
@@ -175,12 +170,115 @@ public class FactBase extends HashSet<Fact> {
 		}
 	}
 
+	//Secondary indexes over the facts in this set, kept up to date by add and remove
+	private Map<Types, Set<Fact>> typeIndex = new EnumMap<Types, Set<Fact>>(Types.class);
+	private Map<String, Set<Fact>> fileIndex = new HashMap<String, Set<Fact>>();
+	private Map<String, Set<Fact>> paramIndex = new HashMap<String, Set<Fact>>();	//by any of the params
+
 	public FactBase() {
 		super();
 	}
 
 	public FactBase(FactBase f) {
-		super(f);
+		super();	//not super(f): that would call add before the indexes exist
+		addAll(f);
+	}
+
+	public boolean add(Fact f) {
+		if (!super.add(f)) return false;
+		addToIndex(typeIndex, f.type, f);
+		addToIndex(fileIndex, f.filename, f);
+		for (String param : f.params) {
+			addToIndex(paramIndex, param, f);
+		}
+		return true;
+	}
+
+	public boolean remove(Object o) {
+		if (!(o instanceof Fact)) return false;
+		//the stored fact may differ from o in its location, so find it first
+		Fact f = getStoredFact((Fact)o);
+		if (f==null) return false;
+		super.remove(f);
+		removeFromIndexes(f);
+		return true;
+	}
+
+	public void clear() {
+		super.clear();
+		typeIndex.clear();
+		fileIndex.clear();
+		paramIndex.clear();
+	}
+
+	public Iterator<Fact> iterator() {
+		final Iterator<Fact> it = super.iterator();
+		return new Iterator<Fact>() {
+			private Fact last = null;
+			public boolean hasNext() {
+				return it.hasNext();
+			}
+			public Fact next() {
+				last = it.next();
+				return last;
+			}
+			public void remove() {
+				it.remove();
+				removeFromIndexes(last);
+			}
+		};
+	}
+
+	private static <K> void addToIndex(Map<K, Set<Fact>> index, K key, Fact f) {
+		Set<Fact> facts = index.get(key);
+		if (facts==null) {
+			facts = new HashSet<Fact>();
+			index.put(key, facts);
+		}
+		facts.add(f);
+	}
+
+	private static <K> void removeFromIndex(Map<K, Set<Fact>> index, K key, Fact f) {
+		Set<Fact> facts = index.get(key);
+		if (facts==null) return;
+		facts.remove(f);
+		if (facts.isEmpty()) index.remove(key);
+	}
+
+	private void removeFromIndexes(Fact f) {
+		removeFromIndex(typeIndex, f.type, f);
+		removeFromIndex(fileIndex, f.filename, f);
+		for (String param : f.params) {
+			removeFromIndex(paramIndex, param, f);
+		}
+	}
+
+	private Fact getStoredFact(Fact f) {
+		Set<Fact> candidates = f.params.isEmpty() ? typeIndex.get(f.type) : paramIndex.get(f.params.get(0));
+		if (candidates!=null) {
+			for (Fact stored : candidates) {
+				if (stored.equals(f)) return stored;
+			}
+		}
+		return null;
+	}
+
+	//Facts that may match the given params: those of the right type which
+	//share the first non-wildcard param (or have a wildcard there themselves)
+	private Set<Fact> getCandidates(Types type, Vector<String> params) {
+		Set<Fact> oftype = typeIndex.get(type);
+		if (oftype==null) return new HashSet<Fact>();
+		for (String param : params) {
+			if (param.equals("*")) continue;
+			Set<Fact> res = new HashSet<Fact>();
+			Set<Fact> withparam = paramIndex.get(param);
+			Set<Fact> withwildcard = paramIndex.get("*");
+			if (withparam!=null) res.addAll(withparam);
+			if (withwildcard!=null) res.addAll(withwildcard);
+			res.retainAll(oftype);
+			return res;
+		}
+		return oftype;
 	}
 
 	public void print(PrintStream out) {
@@ -208,17 +306,15 @@ public class FactBase extends HashSet<Fact> {
 
 	public FactBase findFact(Types type, Vector<String> params) {
 		FactBase res = new FactBase();
-		for (Fact f : this) {
-			if (f.type==type) {
-				if (f.matchParams(params)) {
-					res.add(f);
-				}
+		for (Fact f : getCandidates(type, params)) {
+			if (f.matchParams(params)) {
+				res.add(f);
 			}
 		}
 		return res;
 	}
 	public boolean containsFact(Types type, Vector<String> params) {
-		for (Fact f : this) {
+		for (Fact f : getCandidates(type, params)) {
 			if (f.type==type) {
 				if (f.matchParams(params)) {
 					return true;
@@ -419,110 +515,109 @@ public class FactBase extends HashSet<Fact> {
 
 		System.out.println("OK");
 	}
+	//Index of the type hierarchy and of the members declared by each type,
+	//built in one pass over the type, member and subtype facts
+	private static class TypeHierarchy {
+		public Map<String, Set<String>> subtypes = new HashMap<String, Set<String>>();
+		public Map<String, Set<String>> methods = new HashMap<String, Set<String>>();	//inheritable methods by type
+		public Map<String, Set<String>> fields = new HashMap<String, Set<String>>();	//inheritable fields by type
+		public Set<String> constructed = new HashSet<String>();	//types that declare a constructor
+
+		public TypeHierarchy(FactBase fb) {
+			for (Fact f : fb.getFacts(Types.EXTENDS)) {
+				addToMap(subtypes, f.params.get(0), f.params.get(1));
+			}
+			for (Fact f : fb.getFacts(Types.METHOD)) {
+				if (f.params.get(1).startsWith("<init>(")) {
+					constructed.add(f.params.get(2));
+				} else if (isInheritable(f)) {
+					addToMap(methods, f.params.get(2), f.params.get(1));
+				}
+			}
+			for (Fact f : fb.getFacts(Types.FIELD)) {
+				if (isInheritable(f)) {
+					addToMap(fields, f.params.get(2), f.params.get(1));
+				}
+			}
+		}
+		private static boolean isInheritable(Fact f) {
+			return f.getVisibility()==Fact.Visibility.PUBLIC || f.getVisibility()==Fact.Visibility.PROTECTED;
+		}
+		private static void addToMap(Map<String, Set<String>> map, String key, String value) {
+			Set<String> values = map.get(key);
+			if (values==null) {
+				values = new HashSet<String>();
+				map.put(key, values);
+			}
+			values.add(value);
+		}
+	}
+
+	private Set<Fact> getFacts(Types type) {
+		Set<Fact> res = typeIndex.get(type);
+		return res==null ? new HashSet<Fact>() : res;
+	}
+
+	//Derives default constructors and inherited members from the same type hierarchy
+	public void deriveTypeMembers() {
+		TypeHierarchy hierarchy = new TypeHierarchy(this);
+		deriveDefaultConstructors(hierarchy);
+		deriveInheritedMembers(hierarchy);
+	}
 	public void deriveDefaultConstructors() {
+		deriveDefaultConstructors(new TypeHierarchy(this));
+	}
+	private void deriveDefaultConstructors(TypeHierarchy hierarchy) {
 		System.out.print("Deriving default constructors... ");
 
 		//for all classes without a constructor, create a default constructor and return
-
-		//Optimize by using small sets instead of whole factbase
-		Set<Fact> typefacts = new HashSet<Fact>();
-		Set<Fact> methodfacts = new HashSet<Fact>();
-		for (Fact f : this) {
-			if (f.type==Fact.Types.TYPE)
-				typefacts.add(f);
-			else if (f.type==Fact.Types.METHOD)
-				methodfacts.add(f);
-		}
-
-		//iterate over types
-		for (Fact f : typefacts) {
-			boolean found = false;
+		for (Fact f : new Vector<Fact>(getFacts(Types.TYPE))) {
 			if (f.getKind()==Fact.Kind.INTERFACE) continue;
-			for (Fact f2 : methodfacts) {
-				if (f2.params.get(1).startsWith("<init>(") && f2.params.get(2).equals(f.params.get(0))) { 
-					found = true; break;
-				}
-			}
-			if (!found) {
-				Fact constfact = Fact.makeMethodFact(f.params.get(0)+"#<init>()", 
-						"<init>()", f.params.get(0), Fact.Visibility.PUBLIC, f.filename, f.startposition, 1);
-				Fact returnfact = Fact.makeReturnsFact(f.params.get(0)+"#<init>()", "void", 
-						f.filename, f.startposition, 1) ;
-				this.add(constfact);
-				this.add(returnfact);
-			}
+			if (hierarchy.constructed.contains(f.params.get(0))) continue;
+			Fact constfact = Fact.makeMethodFact(f.params.get(0)+"#<init>()", 
+					"<init>()", f.params.get(0), Fact.Visibility.PUBLIC, f.filename, f.startposition, 1);
+			Fact returnfact = Fact.makeReturnsFact(f.params.get(0)+"#<init>()", "void", 
+					f.filename, f.startposition, 1) ;
+			this.add(constfact);
+			this.add(returnfact);
 		}
 		System.out.println("OK");
 
 	}
 	public void deriveInheritedMembers() {
-		//Init tyruba frontend
-		FrontEnd fe = new FrontEnd(true, new File(MetaInfo.fdbDir), true,
-						null, true, false);
-		fe.setCacheSize(FrontEnd.defaultPagerCacheSize);
-
-		//Read facts into fe
-		try {
-			fe.load(MetaInfo.included1kb.getAbsolutePath());
-			fe.load(MetaInfo.derivationRules.getAbsolutePath());
-		} catch (Exception e) {
-			System.err.println(e);
-			return;
-		}
-		for (Fact f : this) {
-			boolean add = false;
-			
-			//add subclassing
-			if (f.type==Fact.Types.EXTENDS) {
-				add = true;
-			}
-
-			//add public fields and methods
-			if ((f.type==Fact.Types.FIELD || f.type==Fact.Types.METHOD) &&
-					(f.getVisibility()==Fact.Visibility.PUBLIC || f.getVisibility()==Fact.Visibility.PROTECTED) && 
-					!f.params.get(1).startsWith("<init>(")) {
-				add = true;
-			}
-
-			if (add) {
-				try {
-					fe.parse(f+".");
-				} catch (Exception e) {
-					System.err.println(e);
-				}
+		deriveInheritedMembers(new TypeHierarchy(this));
+	}
+	//Same results as inheritedmethod and inheritedfield in derivationRules.rub:
+	//a public or protected member is inherited down the subtypes until one redeclares it
+	private void deriveInheritedMembers(TypeHierarchy hierarchy) {
+		FactBase newfacts = new FactBase();
+		for (Map.Entry<String, Set<String>> declared : hierarchy.methods.entrySet()) {
+			for (String member : declared.getValue()) {
+				climbHierarchy(newfacts, hierarchy, hierarchy.methods, Types.INHERITEDMETHOD,
+						member, declared.getKey(), declared.getKey(), new HashSet<String>());
 			}
 		}
-
-		//Try to query the fe
-		String query;
-		RBExpression exp;
-		ElementSource es;
-		RBVariable ms = RBVariable.make("?ms");
-		RBVariable t1 = RBVariable.make("?t1");
-		RBVariable t2 = RBVariable.make("?t2");
-		//Add inherited methods
-		query = "inheritedmethod(?ms, ?t1, ?t2)";
-		try {
-			exp = fe.makeExpression(query);
-			es = fe.frameQuery(exp);
-			while (es.status() == ElementSource.ELEMENT_READY) {
-				Frame frame = (Frame) es.nextElement();
-				Fact f = Fact.makeInheritedMethodFact(frame.get(ms).toString(), frame.get(t1).toString(), frame.get(t2).toString(), "", 0, 0);
-				add(f);
-			}
-		} catch (Exception e) {
-		}
-		//Add inherited fields
-		query = "inheritedfield(?ms, ?t1, ?t2)";
-		try {
-			exp = fe.makeExpression(query);
-			es = fe.frameQuery(exp);
-			while (es.status() == ElementSource.ELEMENT_READY) {
-				Frame frame = (Frame) es.nextElement();
-				Fact f = Fact.makeInheritedFieldFact(frame.get(ms).toString(), frame.get(t1).toString(), frame.get(t2).toString(), "", 0, 0);
-				add(f);
+		for (Map.Entry<String, Set<String>> declared : hierarchy.fields.entrySet()) {
+			for (String member : declared.getValue()) {
+				climbHierarchy(newfacts, hierarchy, hierarchy.fields, Types.INHERITEDFIELD,
+						member, declared.getKey(), declared.getKey(), new HashSet<String>());
 			}
-		} catch (Exception e) {
+		}
+		this.addAll(newfacts);
+	}
+	private static void climbHierarchy(FactBase fb, TypeHierarchy hierarchy, Map<String, Set<String>> members,
+			Types type, String member, String declarer, String supertype, Set<String> visited) {
+		Set<String> subtypes = hierarchy.subtypes.get(supertype);
+		if (subtypes==null) return;
+		for (String subtype : subtypes) {
+			if (!visited.add(subtype)) continue;
+			Set<String> redeclared = members.get(subtype);
+			if (redeclared!=null && redeclared.contains(member)) continue;
+			if (type==Types.INHERITEDMETHOD)
+				fb.add(Fact.makeInheritedMethodFact(member, declarer, subtype, "", 0, 0));
+			else
+				fb.add(Fact.makeInheritedFieldFact(member, declarer, subtype, "", 0, 0));
+			climbHierarchy(fb, hierarchy, members, type, member, declarer, subtype, visited);
 		}
 	}
 
@@ -622,13 +717,12 @@ public class FactBase extends HashSet<Fact> {
 		return res;
 	}
 	public void removeFactsOfFile(String file) {
-		HashSet<Fact> erase = new HashSet<Fact>();
-		for (Fact f : this) {
-			if (f.filename.equals(file)) {
-				erase.add(f);
-			}
+		Set<Fact> erase = fileIndex.get(file);
+		if (erase==null) return;
+		for (Fact f : new HashSet<Fact>(erase)) {
+			super.remove(f);
+			removeFromIndexes(f);
 		}
-		this.removeAll(erase);
 	}
 	
 	public FactBase findRelevantSet(int numHops, Set<String> names) {
@@ -639,19 +733,18 @@ public class FactBase extends HashSet<Fact> {
 		for (int n=0; n<numHops; ++n) {
 			currNames = nextNames;
 			nextNames = new HashSet<String>();
-			for (Fact f : this) {
-				for (int i=0; i<f.params.size(); ++i) {
+			for (String name : currNames) {
+				Set<Fact> withname = paramIndex.get(name);
+				if (withname==null) continue;
+				for (Fact f : withname) {
 					if (res.contains(f)) continue;
-					if (currNames.contains(f.params.get(i))) {
-						res.add(f);
-						for (int j=0; j<f.params.size(); ++j) {
-							String newname = f.params.get(j);
-							if (!allNames.contains(newname)) {
-								nextNames.add(newname);
-								allNames.add(newname);
-							}
+					res.add(f);
+					for (int j=0; j<f.params.size(); ++j) {
+						String newname = f.params.get(j);
+						if (!allNames.contains(newname)) {
+							nextNames.add(newname);
+							allNames.add(newname);
 						}
-						break;
 					}
 				}
 			}
@@ -0,0 +1,245 @@
+/* 
+*    Logical Structural Diff (LSDiff)  
+*    Copyright (C) <2015>  <Dr. Miryung Kim miryung@cs.ucla.edu>
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package changetypes;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+
+//On-disk cache of the facts extracted from each source file, keyed by
+//project, path, a digest of the file contents and a digest of the context
+//its bindings were resolved in (the other sources and the classpath), since
+//facts about supertypes, calls and accessed fields depend on other files.
+//One cache file per source file, in a binary format with a string table so
+//that names shared between facts are written once. The files used least
+//recently are dropped when they take more than maxBytes (see trim).
+public class FactCache {
+
+	private static final int MAGIC = 0x4c534443;	//"LSDC"
+	private static final int VERSION = 2;
+	private static final String DIGEST = "SHA-1";
+
+	private File dir;
+	private long maxBytes;
+
+	public FactCache(File dir, long maxBytes) {
+		this.dir = dir;
+		this.maxBytes = maxBytes;
+		dir.mkdirs();
+	}
+
+	//Returns the cached facts, or null if there are none for this content and context
+	public FactBase get(String project, String path, byte[] digest, byte[] context) {
+		File file = getFile(project, path);
+		if (!file.exists()) return null;
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			if (in.readInt()!=MAGIC || in.readInt()!=VERSION) return null;
+			if (!readString(in).equals(project) || !readString(in).equals(path)) return null;
+			byte[] cached = new byte[in.readInt()];
+			in.readFully(cached);
+			if (!MessageDigest.isEqual(cached, digest)) return null;
+			byte[] cachedContext = new byte[in.readInt()];
+			in.readFully(cachedContext);
+			if (!MessageDigest.isEqual(cachedContext, context)) return null;
+
+			String[] strings = new String[in.readInt()];
+			for (int i=0; i<strings.length; ++i) {
+				strings[i] = readString(in);
+			}
+			Fact.Types[] types = Fact.Types.values();
+			Fact.Visibility[] visibilities = Fact.Visibility.values();
+			Fact.Kind[] kinds = Fact.Kind.values();
+			FactBase res = new FactBase();
+			int numFacts = in.readInt();
+			for (int i=0; i<numFacts; ++i) {
+				Fact.Types type = types[in.readByte()];
+				int visibility = in.readByte();
+				int kind = in.readByte();
+				int filename = in.readInt();
+				int startposition = in.readInt();
+				int length = in.readInt();
+				Vector<String> params = new Vector<String>();
+				for (int j=in.readShort(); j>0; --j) {
+					params.add(strings[in.readInt()]);
+				}
+				Fact f = new Fact(type, params, filename<0 ? null : strings[filename], startposition, length);
+				f.visibility = visibility<0 ? null : visibilities[visibility];
+				f.kind = kind<0 ? null : kinds[kind];
+				res.add(f);
+			}
+			file.setLastModified(System.currentTimeMillis());	//used, so kept longest by trim
+			return res;
+		} catch (IOException e) {
+			return null;
+		} catch (RuntimeException e) {	//corrupt entry
+			return null;
+		} finally {
+			close(in);
+		}
+	}
+
+	public void put(String project, String path, byte[] digest, byte[] context, FactBase facts) {
+		//build the string table
+		Map<String, Integer> ids = new HashMap<String, Integer>();
+		List<String> strings = new ArrayList<String>();
+		for (Fact f : facts) {
+			if (f.filename!=null) addString(f.filename, ids, strings);
+			for (String param : f.params) {
+				addString(param, ids, strings);
+			}
+		}
+
+		//write to a temporary file first, so readers never see a partial entry
+		File file = getFile(project, path);
+		File tmp = null;
+		DataOutputStream out = null;
+		try {
+			tmp = File.createTempFile(file.getName(), ".tmp", dir);
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			writeString(out, project);
+			writeString(out, path);
+			out.writeInt(digest.length);
+			out.write(digest);
+			out.writeInt(context.length);
+			out.write(context);
+			out.writeInt(strings.size());
+			for (String s : strings) {
+				writeString(out, s);
+			}
+			out.writeInt(facts.size());
+			for (Fact f : facts) {
+				out.writeByte(f.type.ordinal());
+				out.writeByte(f.visibility==null ? -1 : f.visibility.ordinal());
+				out.writeByte(f.kind==null ? -1 : f.kind.ordinal());
+				out.writeInt(f.filename==null ? -1 : ids.get(f.filename));
+				out.writeInt(f.startposition);
+				out.writeInt(f.length);
+				out.writeShort(f.params.size());
+				for (String param : f.params) {
+					out.writeInt(ids.get(param));
+				}
+			}
+			out.close();
+			out = null;
+			if (!tmp.renameTo(file)) {
+				file.delete();
+				if (!tmp.renameTo(file)) tmp.delete();
+			}
+		} catch (IOException e) {
+			System.err.println("Unable to cache facts of "+path+" in project "+project);
+			close(out);
+			if (tmp!=null) tmp.delete();
+		}
+	}
+
+	//Deletes the cache files used least recently until the rest take at most maxBytes
+	public void trim() {
+		File[] files = dir.listFiles();
+		if (files==null) return;
+		long total = 0;
+		for (File f : files) {
+			total += f.length();
+		}
+		if (total<=maxBytes) return;
+		final Map<File, Long> used = new HashMap<File, Long>();
+		for (File f : files) {
+			used.put(f, f.lastModified());
+		}
+		Arrays.sort(files, new Comparator<File>() {
+			public int compare(File f1, File f2) {
+				return used.get(f1).compareTo(used.get(f2));
+			}
+		});
+		for (int i=0; i<files.length && total>maxBytes; ++i) {
+			long length = files[i].length();
+			if (files[i].delete())
+				total -= length;
+		}
+	}
+
+	private File getFile(String project, String path) {
+		MessageDigest md = newDigest();
+		try {
+			md.update(project.getBytes("UTF-8"));
+			md.update((byte)0);
+			md.update(path.getBytes("UTF-8"));
+		} catch (IOException e) {
+			throw new Error(e);
+		}
+		StringBuffer name = new StringBuffer();
+		for (byte b : md.digest()) {
+			name.append(Integer.toHexString((b & 0xff) | 0x100).substring(1));
+		}
+		return new File(dir, name+".facts");
+	}
+
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance(DIGEST);
+		} catch (NoSuchAlgorithmException e) {
+			throw new Error(e);
+		}
+	}
+
+	private static void addString(String s, Map<String, Integer> ids, List<String> strings) {
+		if (!ids.containsKey(s)) {
+			ids.put(s, strings.size());
+			strings.add(s);
+		}
+	}
+
+	//Unlike writeUTF, not limited to 64K, which method bodies may exceed
+	private static void writeString(DataOutputStream out, String s) throws IOException {
+		byte[] bytes = s.getBytes("UTF-8");
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, "UTF-8");
+	}
+
+	private static void close(Closeable c) {
+		if (c==null) return;
+		try {
+			c.close();
+		} catch (IOException e) {
+		}
+	}
+}
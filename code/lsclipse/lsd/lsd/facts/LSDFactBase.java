@@ -96,10 +96,8 @@ public class LSDFactBase {
 	public void loadDeltaKBFactBase(ArrayList<LSDFact> facts) throws ParseException, TypeModeError, IOException{
 //		ruleChecker.loadPrimedAdditionalDB(tyrubaFormattedFacts);
 		ruleChecker.loadAdditionalDB(MetaInfo.includedDelta);
-		for (LSDFact fact : facts) {
-			ruleChecker.loadFact(fact);
-			factsDeltaKB.add(fact);
-		}
+		ruleChecker.loadFacts(facts);
+		factsDeltaKB.addAll(facts);
 		resetWinnowing();
 	}
 	
@@ -138,10 +136,8 @@ public class LSDFactBase {
 
 	public void load2KBFactBase(ArrayList<LSDFact> facts) throws ParseException, TypeModeError, IOException{
 		ruleChecker.loadAdditionalDB(MetaInfo.included2kb);
-		for (LSDFact fact : facts) {
-			ruleChecker.loadFact(fact);
-			facts2KB.add(fact);
-		}
+		ruleChecker.loadFacts(facts);
+		facts2KB.addAll(facts);
 		resetWinnowing();
 	}
 	
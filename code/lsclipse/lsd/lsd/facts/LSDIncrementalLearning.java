@@ -295,11 +295,9 @@ public class LSDIncrementalLearning {
 		ArrayList<LSDFact> deltaKB = new ArrayList<LSDFact>(delta);
 		workingSetDeltaKB = deltaKB; 
 		newRuleChecker.loadAdditionalDB(MetaInfo.included2kb);
-		for (LSDFact fact : twoKB)
-			newRuleChecker.loadFact(fact);
+		newRuleChecker.loadFacts(twoKB);
 		newRuleChecker.loadAdditionalDB(MetaInfo.includedDelta);
-		for (LSDFact fact : deltaKB)
-			newRuleChecker.loadFact(fact);
+		newRuleChecker.loadFacts(deltaKB);
 		ruleChecker = newRuleChecker;
 		remainingRuleChecker= createReducedRuleChecker(new ArrayList<LSDRule>()); 
 		System.out.println("[swapFactBase: Number of working 2kbFacts]\t: " + twoKB.size());
@@ -316,11 +314,9 @@ public class LSDIncrementalLearning {
 		ArrayList<LSDFact> twoKB = workingSet2KB;
 		ArrayList<LSDFact> deltaKB = workingSetDeltaKB;
 		newRuleChecker.loadAdditionalDB(MetaInfo.included2kb);
-		for (LSDFact fact : twoKB)
-			newRuleChecker.loadFact(fact);
+		newRuleChecker.loadFacts(twoKB);
 		newRuleChecker.loadAdditionalDB(MetaInfo.includedDelta);
-		for (LSDFact fact : deltaKB)
-			newRuleChecker.loadFact(fact);
+		newRuleChecker.loadFacts(deltaKB);
 		return newRuleChecker;
 	}
 
@@ -333,8 +329,7 @@ public class LSDIncrementalLearning {
 		ArrayList<LSDFact> deltaKB = workingSetDeltaKB;
 		ArrayList<LSDRule> winnowing = modifiedWinnowingRules;
 
-		for (LSDFact fact : twoKB)
-			newRuleChecker.loadFact(fact);
+		newRuleChecker.loadFacts(twoKB);
 		newRuleChecker.loadAdditionalDB(MetaInfo.includedDelta);
 		LSDFactBase localFB = new LSDFactBase();
 		localFB.load2KBFactBase(twoKB);
@@ -348,8 +343,7 @@ public class LSDIncrementalLearning {
 		this.numDeltaKBSize = fb.numDeltaKBFactSize();
 		this.numWinnowDeltaKBSize = afterWinnowing.size();
 
-		for (LSDFact fact : afterWinnowing)
-			newRuleChecker.loadFact(fact);
+		newRuleChecker.loadFacts(afterWinnowing);
 		return newRuleChecker;
 	}
 
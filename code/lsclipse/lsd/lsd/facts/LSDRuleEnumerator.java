@@ -38,6 +38,12 @@ import java.util.Map;
 import java.util.Set;
 import java.util.Stack;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 import lsclipse.RestrictionOption;
 import lsd.io.LSDAlchemyRuleReader;
@@ -71,6 +77,10 @@ public class LSDRuleEnumerator {
 
 	private int beamSize = 100;
 
+	// Number of worker threads used to extend and ground candidate rules.
+	// With 1 thread, enumeration runs entirely on the calling thread.
+	private int numThreads = 1;
+
 	private ArrayList<LSDFact> read2kbFacts = new ArrayList<LSDFact>();
 
 	private ArrayList<LSDFact> readDeltaFacts = new ArrayList<LSDFact>();
@@ -115,25 +125,26 @@ public class LSDRuleEnumerator {
 
 	// Cumulative numbers
 	// These are not in use, although they are not deleted
-	public int statsGeneratedPartials = 0;
+	// (they are counted from the worker threads when numThreads > 1)
+	public final AtomicLong statsGeneratedPartials = new AtomicLong();
 
-	public int statsEnqueuedPartials = 0;
+	public final AtomicLong statsEnqueuedPartials = new AtomicLong();
 
-	public int statsSavedPartials = 0;
+	public final AtomicLong statsSavedPartials = new AtomicLong();
 
-	int statsGeneratedGroundings = 0;
+	final AtomicLong statsGeneratedGroundings = new AtomicLong();
 
-	int statsEnqueuedGroundings = 0;
+	final AtomicLong statsEnqueuedGroundings = new AtomicLong();
 
-	int statsSavedGroundings = 0;
+	final AtomicLong statsSavedGroundings = new AtomicLong();
 
-	int statsPartialValidQueryCount = 0;
+	final AtomicLong statsPartialValidQueryCount = new AtomicLong();
 
-	int statsGroundingConstantsQueryCount = 0;
+	final AtomicLong statsGroundingConstantsQueryCount = new AtomicLong();
 
-	int statsGroundingValidQueryCount = 0;
+	final AtomicLong statsGroundingValidQueryCount = new AtomicLong();
 
-	int statsGroundingExceptionsQueryCount = 0;
+	final AtomicLong statsGroundingExceptionsQueryCount = new AtomicLong();
 
 	double timeUngroundRuleGeneration;
 
@@ -171,7 +182,7 @@ public class LSDRuleEnumerator {
 
 	private static final boolean isAntecedent = !isConclusion;
 
-	long timer = 0, lastStart = 0;
+	final AtomicLong timer = new AtomicLong();
 
 	static {
 		RuleBase.silent = true;
@@ -191,7 +202,7 @@ public class LSDRuleEnumerator {
 		this.output = output;
 		this.fb = new LSDFactBase();
 		// reads input files and builds lists of facts
-		startTimer();
+		long start = startTimer();
 		read2kbFacts = new LSDTyrubaFactReader(twoKBFile).getFacts();
 		readDeltaFacts = new LSDTyrubaFactReader(deltaKBFile).getFacts();
 		winnowingRules = new LSDAlchemyRuleReader(winnowingRulesFile)
@@ -206,7 +217,7 @@ public class LSDRuleEnumerator {
 				MetaInfo.modifiedWinnowings)).getRules();
 		
 		
-		stopTimer();
+		stopTimer(start);
 	}
 
 	public LSDRuleEnumerator(ArrayList<LSDFact> input2kbFacts, 
@@ -222,7 +233,7 @@ public class LSDRuleEnumerator {
 		setAntecedentSize(k);
 		this.output = output;
 		this.fb = new LSDFactBase();
-		startTimer();
+		long start = startTimer();
 		read2kbFacts = input2kbFacts;
 		readDeltaFacts = inputDeltaFacts;
 //		winnowingRules = inputWinnowingRules;
@@ -234,7 +245,7 @@ public class LSDRuleEnumerator {
 		// set the modified winnowing rules
 		modifiedWinnowingRules = new LSDAlchemyRuleReader(new File(
 				MetaInfo.modifiedWinnowings)).getRules();
-		stopTimer();
+		stopTimer(start);
 	}
 
 	public void setAntecedentSize(int k) {
@@ -261,6 +272,10 @@ public class LSDRuleEnumerator {
 		this.beamSize = beamSize;
 	}
 
+	public void setNumThreads(int numThreads) {
+		this.numThreads = Math.max(1, numThreads);
+	}
+
 	// Based on the level the function uses appropriate read lists and loads fb
 	public void loadFactBases(int hopDistance2KB, LSdiffFilter filter)
 			throws Exception {
@@ -310,11 +325,9 @@ public class LSDRuleEnumerator {
 		ArrayList<LSDFact> twoKB = workingSet2KB;
 		ArrayList<LSDFact> deltaKB = workingSetDeltaKB;
 		newRuleChecker.loadAdditionalDB(MetaInfo.included2kb);
-		for (LSDFact fact : twoKB)
-			newRuleChecker.loadFact(fact);
+		newRuleChecker.loadFacts(twoKB);
 		newRuleChecker.loadAdditionalDB(MetaInfo.includedDelta);
-		for (LSDFact fact : deltaKB)
-			newRuleChecker.loadFact(fact);
+		newRuleChecker.loadFacts(deltaKB);
 		return newRuleChecker;
 	}
 
@@ -327,8 +340,7 @@ public class LSDRuleEnumerator {
 		ArrayList<LSDFact> deltaKB = workingSetDeltaKB;
 		ArrayList<LSDRule> winnowing = modifiedWinnowingRules;
 
-		for (LSDFact fact : twoKB)
-			newRuleChecker.loadFact(fact);
+		newRuleChecker.loadFacts(twoKB);
 		newRuleChecker.loadAdditionalDB(MetaInfo.includedDelta);
 		LSDFactBase localFB = new LSDFactBase();
 		localFB.load2KBFactBase(twoKB);
@@ -342,8 +354,7 @@ public class LSDRuleEnumerator {
 		this.numDeltaKBSize = fb.numDeltaKBFactSize();
 		this.numWinnowDeltaKBSize = afterWinnowing.size();
 
-		for (LSDFact fact : afterWinnowing)
-			newRuleChecker.loadFact(fact);
+		newRuleChecker.loadFacts(afterWinnowing);
 		return newRuleChecker;
 	}
 
@@ -369,14 +380,15 @@ public class LSDRuleEnumerator {
 
 	// The way timer works is changed
 	// The filed timer is a continuous timer that is controlled with startTimer
-	// and stopTimer
-	private void startTimer() {
-		lastStart = new Date().getTime();
+	// and stopTimer. The start is kept by the caller, so timings on several
+	// threads do not mix.
+	private long startTimer() {
+		return new Date().getTime();
 	}
 
-	private void stopTimer() {
-		long temp = new Date().getTime() - lastStart;
-		timer += temp;
+	private void stopTimer(long start) {
+		long temp = new Date().getTime() - start;
+		timer.addAndGet(temp);
 	}
 
 
@@ -399,8 +411,8 @@ public class LSDRuleEnumerator {
 		Stack<Grounding> groundings = new Stack<Grounding>();
 		// Add the initial empty grounding with just a list of all vars.
 		groundings.add(new Grounding(ungroundedRule));
-		statsEnqueuedGroundings++;
-		statsGeneratedGroundings++;
+		statsEnqueuedGroundings.incrementAndGet();
+		statsGeneratedGroundings.incrementAndGet();
 		// For each head of the stack:
 		next: while (!groundings.isEmpty()) {
 			// create all the possible groundings with the next var grounded (or
@@ -416,10 +428,9 @@ public class LSDRuleEnumerator {
 			// MK 020611. This is to prevent picking variables that must be left as a universal quantifiers. 			
 			// MK 020511. Perhaps we could only consider variables for replacing with constants 
 			// (Assemble list of consts that could sub in for next var)
-			startTimer();
 			Set<String> constants = ruleChecker.getReplacementConstants(
 					grounding.rule, variable);
-			statsGroundingConstantsQueryCount++;
+			statsGroundingConstantsQueryCount.incrementAndGet();
 			constants.add(null);
 			// For each constant of type of next var and for none:
 			for (String constant : constants) {
@@ -436,16 +447,15 @@ public class LSDRuleEnumerator {
 				// Substitute the constant in to a copy of the rule
 				Grounding newGrounding = grounding.addGrounding(variable,
 						constant);
-				statsGeneratedGroundings++;
+				statsGeneratedGroundings.incrementAndGet();
 				// If rule is still valid and a query has results:
 				// Do this in stages to avoid unnecessary queries.
 				if (newGrounding.rule.containsFacts())
 					continue;
 				int minMatchesByLength = minMatchesPerLiteral
 						* (newGrounding.rule.getLiterals().size() - 1);
-				startTimer();
 				int numMatches = countRemainingMatches(newGrounding.rule);
-				statsGroundingValidQueryCount++;
+				statsGroundingValidQueryCount.incrementAndGet();
 				if (numMatches < minMatches || numMatches < minMatchesByLength)
 					continue;
 				// add new grounding def. to the queue
@@ -471,7 +481,7 @@ public class LSDRuleEnumerator {
 							continue next;
 					}
 					else {
-						statsEnqueuedGroundings++;
+						statsEnqueuedGroundings.incrementAndGet();
 						newGrounding.scanned = true;
 						newGrounding.numMatches = numMatches;
 						groundings.add(newGrounding);
@@ -499,18 +509,28 @@ public class LSDRuleEnumerator {
 		// to our list of partial groundings.
 		ArrayList<LSDRule> originalRules = new ArrayList<LSDRule>();
 		// For each ungrounded rule: create all (partial or full) groundings.
-		int rulesGrounded = 0;
-		for (LSDRule ungroundedRule : ungroundedRules) {
-			System.err.println("[unground rule]: "+ ungroundedRule);
-			if (rulesGrounded % 10 == 0) {
-				System.err
-						.println((((float) (rulesGrounded * 100)) / ungroundedRules
-								.size())
-								+ "% done.");
-				System.err.flush();
+		RuleResults groundings = applyInOrder(ungroundedRules,
+				new RuleWork() {
+					public List<LSDRule> apply(LSDRule ungroundedRule) {
+						return groundRule(ungroundedRule);
+					}
+				});
+		try {
+			int rulesGrounded = 0;
+			for (LSDRule ungroundedRule : ungroundedRules) {
+				System.err.println("[unground rule]: "+ ungroundedRule);
+				if (rulesGrounded % 10 == 0) {
+					System.err
+							.println((((float) (rulesGrounded * 100)) / ungroundedRules
+									.size())
+									+ "% done.");
+					System.err.flush();
+				}
+				originalRules.addAll(groundings.get(rulesGrounded));
+				rulesGrounded += 1;
 			}
-			originalRules.addAll(groundRule(ungroundedRule));
-			rulesGrounded += 1;
+		} finally {
+			groundings.close();
 		}
 
 
@@ -529,117 +549,200 @@ public class LSDRuleEnumerator {
 			List<LSDRule> newPartialUngroundedRules) {
 		Set<LSDRule> ungroundedRules = new LinkedHashSet<LSDRule>();
 		
-		List<LSDPredicate> predicates = getUniquePredicates(workingSet2KB, true);
+		final List<LSDPredicate> predicates = getUniquePredicates(workingSet2KB, true);
 		System.out.println("[extendUngroundRules: predicates to add]\t"+predicates); 
 		
-		for (LSDRule partialUngroundedRule : oldPartialUngroundedRules) {
-			List<LSDLiteral> previousLiterals = partialUngroundedRule.getLiterals();
-			LSDPredicate conclusionPredicate = partialUngroundedRule.getConclusions()
-					.getLiterals().get(0).getPredicate();
-			Set<Character> currentTypes = new HashSet<Character>();
-			// MK 020611. get a list of free variables from a partial rule 
-			for (LSDVariable variable : partialUngroundedRule.getFreeVariables())
-				currentTypes.add(variable.getType());
-			// For each predicate that could be added to as antecedent:
-			for (LSDPredicate predicateToAdd : predicates) {
-				LSDPredicate antecedant = null;
-				if (partialUngroundedRule.getAntecedents() != null
-						&& partialUngroundedRule.getAntecedents().getLiterals().size() > 0) {
-					antecedant = partialUngroundedRule.getAntecedents().getLiterals()
-							.get(0).getPredicate();
+		RuleResults extensions = applyInOrder(oldPartialUngroundedRules,
+				new RuleWork() {
+					public List<LSDRule> apply(LSDRule partialUngroundedRule) {
+						return extendUngroundedRule(partialUngroundedRule, predicates);
+					}
+				});
+		try {
+			for (int i = 0; i < oldPartialUngroundedRules.size(); i++) {
+				for (LSDRule newPartialRule : extensions.get(i)) {
+					statsSavedPartials.incrementAndGet();
+					ungroundedRules.add(newPartialRule);
+					statsEnqueuedPartials.incrementAndGet();
+					newPartialUngroundedRules.add(newPartialRule);
 				}
-				if (!predicateToAdd.allowedInSameRule(conclusionPredicate,
-						antecedant))
-					continue;
+			}
+		} finally {
+			extensions.close();
+		}
+		return new ArrayList<LSDRule>(ungroundedRules);
+	}
 
-				// MK: check whether the predicate that we want to add has at least one type overlapping with previously learned rules
-				if (!predicateToAdd.typeMatches(currentTypes))
-					continue;
-				
-//				System.out.println("[extendedUngroundedRule]- trying adding a predicate to a partial rule:\t"+ predicate+"\t"+partialRule+ "\t"+currentTypes+"\t"+predicate.typeMatches(currentTypes) );
+	// Extends a single partial rule with one more antecedent literal. Returns
+	// the extensions that have enough matches, in the order they were generated.
+	private List<LSDRule> extendUngroundedRule(LSDRule partialUngroundedRule,
+			List<LSDPredicate> predicates) {
+		List<LSDRule> extendedRules = new ArrayList<LSDRule>();
+		List<LSDLiteral> previousLiterals = partialUngroundedRule.getLiterals();
+		LSDPredicate conclusionPredicate = partialUngroundedRule.getConclusions()
+				.getLiterals().get(0).getPredicate();
+		Set<Character> currentTypes = new HashSet<Character>();
+		// MK 020611. get a list of free variables from a partial rule 
+		for (LSDVariable variable : partialUngroundedRule.getFreeVariables())
+			currentTypes.add(variable.getType());
+		// For each predicate that could be added to as antecedent:
+		for (LSDPredicate predicateToAdd : predicates) {
+			LSDPredicate antecedant = null;
+			if (partialUngroundedRule.getAntecedents() != null
+					&& partialUngroundedRule.getAntecedents().getLiterals().size() > 0) {
+				antecedant = partialUngroundedRule.getAntecedents().getLiterals()
+						.get(0).getPredicate();
+			}
+			if (!predicateToAdd.allowedInSameRule(conclusionPredicate,
+					antecedant))
+				continue;
+
+			// MK: check whether the predicate that we want to add has at least one type overlapping with previously learned rules
+			if (!predicateToAdd.typeMatches(currentTypes))
+				continue;
 			
-				// Create two lists of lists of bindings, one with [] in it.
-				List<List<LSDBinding>> bindingsList = enumerateUngroundedBindings(
-						partialUngroundedRule, predicateToAdd);
-				// For each now complete list of bindings:
-				perBindings: for (List<LSDBinding> bindings : bindingsList) {
-					
-					statsGeneratedPartials++;
-					LSDLiteral newLiteral = null;
-					try {
-						newLiteral = new LSDLiteral(predicateToAdd, bindings,
-								isAntecedent);
-					} catch (LSDInvalidTypeException e) {
-						System.err
-								.println("We're taking types directly from the predicates, so we should never have this type error.");
-						System.exit(-7);
-					}
-					// If the new literal is identical to a previous one, skip
-					// it and continue
-					for (LSDLiteral oldLiteral : previousLiterals) {
-						if (oldLiteral
-								.identifiesSameIgnoringNegation(newLiteral))
-							continue perBindings;
-					}
-					// Add that binding to the partial rule
-					LSDRule newPartialRule = new LSDRule(partialUngroundedRule);
-
-					// MK 020811: MK added another constraint that at least one constant must appear in each predicate 
-					// to prevent a rule like A(x1,x0) ^ A(x1,c1) => B(c0, X0)
-					if (RestrictionOption.OPTION_AtLeastOneConstantPerPredicate) {
-						if (newLiteral.atLeastOneConstHolder() == false
-								|| newLiteral.atLeastOneVariable() == false)
-							continue;
-					}
-					LSDVariable keyConclusionVariable = partialUngroundedRule
-							.getKeyConclusionVariable();
-
-					// add a new antecedent literal to the rule
-					LSDVariable keyPredicateVariable = newLiteral
-							.getKeyPredicateVariable();
-					newPartialRule.addLiteral(newLiteral);
-
-					// MK 020611: MK added a key variable match so that the key
-					// variable of conclusion predicate is used as a key
-					// variable of other predicates as well
-					// for example
-					// A(x1,x2) => B(x1, x2) instead of 
-					// A(x3,x2) => B(x1, x2) 
-
-					boolean keyVariableMatch = true;
-					if (RestrictionOption.OPTION_KeyVariableMatchBetweenConsequentandAntecedent) {
-						keyVariableMatch = keyPredicateVariable == null
-								|| keyConclusionVariable == null
-								|| keyPredicateVariable.getName().equals(
-										keyConclusionVariable.getName());
-					}
-					
-					// Add to the list of generated rules
-					// Can be an invalid rule, but may become one with
-					// grounding
-					if (newPartialRule.literalsLinked()
-							&& newPartialRule.hasValidLinks()
-							&& keyVariableMatch)
-
-					{
-						int minMatchesByLength = minMatchesPerLiteral
-								* (newPartialRule.getLiterals().size() - 1);
-						startTimer();
-						int numMatches = countRemainingMatches(newPartialRule,
-								Math.max(minMatches, minMatchesByLength));
-						statsPartialValidQueryCount++;
-						if (numMatches >= minMatches
-								&& numMatches >= minMatchesByLength) {
-							statsSavedPartials++;
-							ungroundedRules.add(newPartialRule);
-							statsEnqueuedPartials++;
-							newPartialUngroundedRules.add(newPartialRule);
-						}
+//			System.out.println("[extendedUngroundedRule]- trying adding a predicate to a partial rule:\t"+ predicate+"\t"+partialRule+ "\t"+currentTypes+"\t"+predicate.typeMatches(currentTypes) );
+		
+			// Create two lists of lists of bindings, one with [] in it.
+			List<List<LSDBinding>> bindingsList = enumerateUngroundedBindings(
+					partialUngroundedRule, predicateToAdd);
+			// For each now complete list of bindings:
+			perBindings: for (List<LSDBinding> bindings : bindingsList) {
+				
+				statsGeneratedPartials.incrementAndGet();
+				LSDLiteral newLiteral = null;
+				try {
+					newLiteral = new LSDLiteral(predicateToAdd, bindings,
+							isAntecedent);
+				} catch (LSDInvalidTypeException e) {
+					System.err
+							.println("We're taking types directly from the predicates, so we should never have this type error.");
+					System.exit(-7);
+				}
+				// If the new literal is identical to a previous one, skip
+				// it and continue
+				for (LSDLiteral oldLiteral : previousLiterals) {
+					if (oldLiteral
+							.identifiesSameIgnoringNegation(newLiteral))
+						continue perBindings;
+				}
+				// Add that binding to the partial rule
+				LSDRule newPartialRule = new LSDRule(partialUngroundedRule);
+
+				// MK 020811: MK added another constraint that at least one constant must appear in each predicate 
+				// to prevent a rule like A(x1,x0) ^ A(x1,c1) => B(c0, X0)
+				if (RestrictionOption.OPTION_AtLeastOneConstantPerPredicate) {
+					if (newLiteral.atLeastOneConstHolder() == false
+							|| newLiteral.atLeastOneVariable() == false)
+						continue;
+				}
+				LSDVariable keyConclusionVariable = partialUngroundedRule
+						.getKeyConclusionVariable();
+
+				// add a new antecedent literal to the rule
+				LSDVariable keyPredicateVariable = newLiteral
+						.getKeyPredicateVariable();
+				newPartialRule.addLiteral(newLiteral);
+
+				// MK 020611: MK added a key variable match so that the key
+				// variable of conclusion predicate is used as a key
+				// variable of other predicates as well
+				// for example
+				// A(x1,x2) => B(x1, x2) instead of 
+				// A(x3,x2) => B(x1, x2) 
+
+				boolean keyVariableMatch = true;
+				if (RestrictionOption.OPTION_KeyVariableMatchBetweenConsequentandAntecedent) {
+					keyVariableMatch = keyPredicateVariable == null
+							|| keyConclusionVariable == null
+							|| keyPredicateVariable.getName().equals(
+									keyConclusionVariable.getName());
+				}
+				
+				// Add to the list of generated rules
+				// Can be an invalid rule, but may become one with
+				// grounding
+				if (newPartialRule.literalsLinked()
+						&& newPartialRule.hasValidLinks()
+						&& keyVariableMatch)
+
+				{
+					int minMatchesByLength = minMatchesPerLiteral
+							* (newPartialRule.getLiterals().size() - 1);
+					int numMatches = countRemainingMatches(newPartialRule,
+							Math.max(minMatches, minMatchesByLength));
+					statsPartialValidQueryCount.incrementAndGet();
+					if (numMatches >= minMatches
+							&& numMatches >= minMatchesByLength) {
+						extendedRules.add(newPartialRule);
 					}
 				}
 			}
 		}
-		return new ArrayList<LSDRule>(ungroundedRules);
+		return extendedRules;
+	}
+
+	// A unit of enumeration work that can be handed to a worker thread.
+	private interface RuleWork {
+		List<LSDRule> apply(LSDRule rule);
+	}
+
+	// The results of applying work to a list of rules, handed out in the
+	// order of the input rules no matter in which order the workers finish.
+	// Merging them front to back therefore gives exactly what the serial loop
+	// gives. With one thread a result is only computed when it is asked for,
+	// so whatever the caller prints in between comes out in the same order as
+	// it did before rules were enumerated in parallel.
+	private static class RuleResults {
+		private final List<LSDRule> rules;
+
+		private final RuleWork work;
+
+		private final ExecutorService workers;
+
+		private final List<Future<List<LSDRule>>> pending;
+
+		RuleResults(List<LSDRule> rules, RuleWork work, int numThreads) {
+			this.rules = rules;
+			this.work = work;
+			if (numThreads <= 1 || rules.size() <= 1) {
+				workers = null;
+				pending = null;
+				return;
+			}
+			workers = Executors.newFixedThreadPool(Math.min(numThreads,
+					rules.size()));
+			pending = new ArrayList<Future<List<LSDRule>>>(rules.size());
+			for (final LSDRule rule : rules) {
+				pending.add(workers.submit(new Callable<List<LSDRule>>() {
+					public List<LSDRule> call() {
+						return RuleResults.this.work.apply(rule);
+					}
+				}));
+			}
+		}
+
+		List<LSDRule> get(int i) {
+			if (workers == null)
+				return work.apply(rules.get(i));
+			try {
+				return pending.get(i).get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new Error("Interrupted while waiting for rule enumeration", e);
+			} catch (ExecutionException e) {
+				throw new Error("Rule enumeration failed: " + e.getCause(), e.getCause());
+			}
+		}
+
+		void close() {
+			if (workers != null)
+				workers.shutdownNow();
+		}
+	}
+
+	private RuleResults applyInOrder(List<LSDRule> rules, RuleWork work) {
+		return new RuleResults(rules, work, numThreads);
 	}
 
 	// MK: copied from optimized diff
@@ -845,9 +948,9 @@ public class LSDRuleEnumerator {
 			Grounding grounding, int numMatches) {
 		double accuracy = measureAccuracy(grounding.rule, minAccuracy,
 				maxExceptions, numMatches);
-		statsGroundingExceptionsQueryCount++;
+		statsGroundingExceptionsQueryCount.incrementAndGet();
 		if (accuracy >= minAccuracy) {
-			statsSavedGroundings++;
+			statsSavedGroundings.incrementAndGet();
 			grounding.rule.setAccuracy(accuracy);
 			grounding.rule.setNumMatches(numMatches);
 			grounding.rule.setScore();
@@ -1133,8 +1236,8 @@ public class LSDRuleEnumerator {
 		List<LSDRule> rules = new ArrayList<LSDRule>();
 		List<LSDRule> partialRules = new ArrayList<LSDRule>(
 				enumerateConclusions());
-		statsGeneratedPartials += partialRules.size();
-		statsEnqueuedPartials += partialRules.size();
+		statsGeneratedPartials.addAndGet(partialRules.size());
+		statsEnqueuedPartials.addAndGet(partialRules.size());
 		for (int currentLength = 1; currentLength <= maxLiterals; currentLength++) {
 
 			System.out.println("Finding rules of length " + currentLength);
@@ -1236,9 +1339,8 @@ public class LSDRuleEnumerator {
 						.println("We're taking types directly from the predicates, so we should never have this type error.");
 				System.exit(-7);
 			}
-			startTimer();
 			int numMatches = countRemainingMatches(rule, minMatches);
-			statsPartialValidQueryCount++;
+			statsPartialValidQueryCount.incrementAndGet();
 			if (numMatches >= minMatches) {
 				System.out.println("MK 020611: conclusion rule" +rule);
 				conclusions.add(rule);
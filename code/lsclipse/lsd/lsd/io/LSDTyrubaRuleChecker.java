@@ -1,24 +1,26 @@
-/* 
-*    Logical Structural Diff (LSDiff)  
-*    Copyright (C) <2015>  <Dr. Miryung Kim miryung@cs.ucla.edu>
-*
-*    This program is free software: you can redistribute it and/or modify
-*    it under the terms of the GNU General Public License as published by
-*    the Free Software Foundation, either version 3 of the License, or
-*    (at your option) any later version.
-*
-*    This program is distributed in the hope that it will be useful,
-*    but WITHOUT ANY WARRANTY; without even the implied warranty of
-*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
-*    GNU General Public License for more details.
-*
-*    You should have received a copy of the GNU General Public License
-*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
-*/
+/* 
+*    Logical Structural Diff (LSDiff)  
+*    Copyright (C) <2015>  <Dr. Miryung Kim miryung@cs.ucla.edu>
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
 package lsd.io;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
@@ -34,18 +36,67 @@ import lsd.rule.LSDVariable;
 import metapackage.MetaInfo;
 import tyRuBa.engine.Frame;
 import tyRuBa.engine.FrontEnd;
+import tyRuBa.engine.RBCountAll;
+import tyRuBa.engine.RBExistsQuantifier;
 import tyRuBa.engine.RBExpression;
+import tyRuBa.engine.RBSubstitutable;
+import tyRuBa.engine.RBSymbol;
 import tyRuBa.engine.RBTerm;
 import tyRuBa.engine.RBVariable;
 import tyRuBa.modes.TypeModeError;
 import tyRuBa.parser.ParseException;
+import tyRuBa.tdbc.PreparedQuery;
+import tyRuBa.tdbc.TyrubaException;
 import tyRuBa.util.ElementSource;
 
 
 
 public class LSDTyrubaRuleChecker {
+	// A LSDRuleEnumerator may call us from several worker threads at once.
+	// The FrontEnd runs their queries at the same time and only serializes
+	// mode checking and compiling new queries. Loading facts does not wait
+	// for the running queries, so the facts must all be loaded before the
+	// workers start.
 	private FrontEnd frontend = null;
 
+	private static final int MAX_PREPARED_QUERIES = 1000;
+
+	// Compiled queries keyed on the shape of the query: its text with the
+	// string constants replaced by template variables (see toQueryShape).
+	// Candidate rules that only differ in their constants share one entry,
+	// so they are parsed, mode checked and compiled only once. Rule learning
+	// tries a great many shapes over a run, so only the most recently used
+	// ones are kept. A PreparedQuery holds the constants put into it until
+	// the query starts, so every thread has its own.
+	private final ThreadLocal<Map<String, PreparedQuery>> preparedQueries = new ThreadLocal<Map<String, PreparedQuery>>() {
+		protected Map<String, PreparedQuery> initialValue() {
+			return new LRUMap<String, PreparedQuery>(MAX_PREPARED_QUERIES);
+		}
+	};
+
+	private final ThreadLocal<Map<String, Boolean>> unpreparedShapes = new ThreadLocal<Map<String, Boolean>>() {
+		protected Map<String, Boolean> initialValue() {
+			return new LRUMap<String, Boolean>(MAX_PREPARED_QUERIES);
+		}
+	};
+
+	private static class LRUMap<K, V> extends LinkedHashMap<K, V> {
+		private static final long serialVersionUID = 1L;
+
+		private final int maxSize;
+
+		LRUMap(int maxSize) {
+			super(16, 0.75f, true);
+			this.maxSize = maxSize;
+		}
+
+		protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+			return size() > maxSize;
+		}
+	}
+
+	private static final RBVariable countVar = FrontEnd.makeVar("?lsdCount");
+
 	private File dbDir = null; // the default
 
 	private boolean backgroundPageCleaning = false; // the default
@@ -57,10 +108,10 @@ public class LSDTyrubaRuleChecker {
 	
 	public LSDTyrubaRuleChecker() {
 		if (frontend == null) {
+			// A rule checker lives for one run only, so unless asked to use a
+			// database directory there is nothing worth persisting
 			if (dbDir == null)
-				frontend = new FrontEnd(loadInitFile, new File(MetaInfo.fdbDir), true,
-						null, true, backgroundPageCleaning);
-				
+				frontend = FrontEnd.makeInMemory(loadInitFile);
 			else
 				frontend = new FrontEnd(loadInitFile, dbDir, true, null, false,
 						backgroundPageCleaning);
@@ -102,7 +153,156 @@ public class LSDTyrubaRuleChecker {
 
 	public void loadFact(LSDFact fact)
 			throws TypeModeError, ParseException {
-		frontend.parse(fact.toString() + ".");
+		loadFact(fact, new HashMap<String, RBTerm>());
+	}
+
+	// Loads a collection of facts straight into the fact base. Constants are
+	// turned into terms directly (and shared between facts) instead of
+	// rendering every fact as text and running it through the parser.
+	public void loadFacts(Collection<LSDFact> facts)
+			throws TypeModeError, ParseException {
+		Map<String, RBTerm> names = new HashMap<String, RBTerm>();
+		for (LSDFact fact : facts)
+			loadFact(fact, names);
+	}
+
+	private void loadFact(LSDFact fact, Map<String, RBTerm> names)
+			throws TypeModeError, ParseException {
+		List<LSDBinding> bindings = fact.getBindings();
+		RBTerm[] args = new RBTerm[bindings.size()];
+		for (int i = 0; i < args.length; i++) {
+			args[i] = makeName(bindings.get(i), names);
+			if (args[i] == null || fact.isNegated()) {
+				// not a plain ground fact, let the parser deal with it
+				frontend.parse(fact.toString() + ".");
+				return;
+			}
+		}
+		frontend.insert(fact.getPredicate().getDisplayName(), args);
+	}
+
+	private static RBTerm makeName(LSDBinding binding, Map<String, RBTerm> names) {
+		if (!binding.isBound())
+			return null;
+		String literal = binding.toString();
+		RBTerm term = names.get(literal);
+		if (term != null)
+			return term;
+		String name = unquote(literal);
+		if (name == null)
+			return null;
+		term = FrontEnd.makeName(name);
+		names.put(literal, term);
+		return term;
+	}
+
+	// Same as the parser does for a string literal: strip the quotes and
+	// unescape. Returns null if literal is not a quoted string.
+	private static String unquote(String literal) {
+		if (literal.length() < 2 || literal.charAt(0) != '"'
+				|| literal.charAt(literal.length() - 1) != '"')
+			return null;
+		StringBuffer name = new StringBuffer(literal.length());
+		for (int i = 1; i < literal.length() - 1; i++) {
+			if (literal.charAt(i) == '\\' && i < literal.length() - 2)
+				i++;
+			name.append(literal.charAt(i));
+		}
+		return name.toString();
+	}
+
+	// A matched constant as it is written in LSD rules. Symbols keep theirs,
+	// so it is not rebuilt for every result frame.
+	private static String quoted(RBTerm term) {
+		if (term instanceof RBSymbol)
+			return ((RBSymbol) term).quotedName();
+		return "\"" + term.toString() + "\"";
+	}
+
+	// Runs a query, reusing the compiled query of an earlier call if it only
+	// differed in its constants on the same thread.
+	// The resulting frames also bind the template variables, whose names never
+	// match those of LSD variables.
+	private ElementSource runQuery(String query) throws ParseException,
+			TypeModeError {
+		return runQuery(query, null, 0);
+	}
+
+	// Same as above, but if countVars is not null the query is wrapped in a
+	// COUNTALL of the distinct bindings of countVars, which stops counting at
+	// max (if max > 0). The single resulting frame binds countVar.
+	private ElementSource runQuery(String query, Collection<LSDVariable> countVars,
+			int max) throws ParseException, TypeModeError {
+		List<String> constants = new ArrayList<String>();
+		String shape = toQueryShape(query, constants);
+		if (shape != null) {
+			String key = (countVars == null ? shape : "COUNTALL" + countVars
+					+ max + ":" + shape);
+			Map<String, PreparedQuery> prepared = preparedQueries.get();
+			Map<String, Boolean> unprepared = unpreparedShapes.get();
+			if (!unprepared.containsKey(key)) {
+				try {
+					PreparedQuery statement = prepared.get(key);
+					if (statement == null) {
+						statement = frontend.prepareForRunning(makeQuery(shape,
+								countVars, max));
+						prepared.put(key, statement);
+					}
+					for (int i = 0; i < constants.size(); i++)
+						statement.put("!c" + i, constants.get(i));
+					return frontend.frameQuery(statement);
+				} catch (TyrubaException e) {
+					// A constant that can't be put as a String; don't try this
+					// shape again and just run the query as is.
+					prepared.remove(key);
+					unprepared.put(key, Boolean.TRUE);
+				}
+			}
+		}
+		return frontend.frameQuery(makeQuery(query, countVars, max));
+	}
+
+	private RBExpression makeQuery(String query, Collection<LSDVariable> countVars,
+			int max) throws ParseException, TypeModeError {
+		RBExpression exp = frontend.makeExpression(query);
+		if (countVars == null)
+			return exp;
+		ArrayList<RBTerm> extract = new ArrayList<RBTerm>();
+		for (LSDVariable var : countVars)
+			extract.add(FrontEnd.makeVar(var.toString()));
+		Collection localVars = exp.getVariables();
+		localVars.removeAll(extract);
+		if (!localVars.isEmpty())
+			exp = new RBExistsQuantifier(localVars, exp);
+		return new RBCountAll(exp, FrontEnd.makeTuple(extract), countVar, max);
+	}
+
+	// Replaces every string constant in query by a template variable !c0,
+	// !c1, ... and adds the unquoted constants to constants in that order.
+	// Returns null if query has an unterminated string.
+	private static String toQueryShape(String query, List<String> constants) {
+		StringBuffer shape = new StringBuffer(query.length());
+		int i = 0;
+		while (i < query.length()) {
+			char c = query.charAt(i);
+			if (c != '"') {
+				shape.append(c);
+				i++;
+				continue;
+			}
+			int end = i + 1;
+			while (end < query.length() && query.charAt(end) != '"') {
+				if (query.charAt(end) == '\\')
+					end++;
+				end++;
+			}
+			if (end >= query.length())
+				return null;
+			constants.add(unquote(query.substring(i, end + 1)));
+			shape.append("!c").append(constants.size() - 1);
+			i = end + 1;
+		}
+		return shape.toString();
 	}
 
 	// Invokes a query in TyRuBa.
@@ -134,8 +334,7 @@ public class LSDTyrubaRuleChecker {
 
 		try {
 			//System.out.println("Executing " + query);
-			RBExpression exp = frontend.makeExpression(query);
-			ElementSource es = frontend.frameQuery(exp);
+			ElementSource es = runQuery(query);
 			try {
 				if (es.status() == ElementSource.NO_MORE_ELEMENTS) {
 					//System.out.println("Failure --- which is success for us!");
@@ -145,15 +344,15 @@ public class LSDTyrubaRuleChecker {
 						return exceptions;
 				}
 				// iterate through all the frames in the result
-				
+			
 				while (es.status() == ElementSource.ELEMENT_READY) {
 					Frame frame = (Frame) es.nextElement();
 					Set<String> exceptionMatchStrings = new HashSet<String>();
 					LinkedHashMap<LSDVariable, String> exception = new LinkedHashMap<LSDVariable, String>();
 					LSDRule newRule = null;
-					for (RBVariable matchedVar : (Set<RBVariable>) frame.keySet()) {
+					for (RBSubstitutable matchedVar : (Set<RBSubstitutable>) frame.keySet()) {
 						RBTerm term = frame.get(matchedVar);
-						String constant = "\"" + term.toString() + "\"";
+						String constant = quoted(term);
 						LSDVariable toReplace = null;
 
 						// find the free variable in our list that matches with tyruba free variable.
@@ -172,7 +371,7 @@ public class LSDTyrubaRuleChecker {
 								.substitute(toReplace, new LSDBinding(constant));
 					}
 					//System.out.println("progress: " + newRule);
-					
+				
 					if (!exceptionMatches.contains(exceptionMatchStrings)) {
 							exceptions.add(exception);
 							exceptionMatches.add(exceptionMatchStrings);
@@ -207,21 +406,20 @@ public class LSDTyrubaRuleChecker {
 		
 		try {
 			//System.out.println("Executing " + query);
-			RBExpression exp = frontend.makeExpression(query);
-			ElementSource es = frontend.frameQuery(exp);
+			ElementSource es = runQuery(query);
 			try {
 				if (es.status() == ElementSource.NO_MORE_ELEMENTS) {
 					//System.out.println("Failure --- which is success for us!");
 					return new ArrayList<LSDFact>();
 				}
 				// iterate through all the frames in the result
-				
+			
 				while (es.status() == ElementSource.ELEMENT_READY) {
 					Frame frame = (Frame) es.nextElement();
 					LSDRule newRule = null;
-					for (RBVariable matchedVar : (Set<RBVariable>) frame.keySet()) {
+					for (RBSubstitutable matchedVar : (Set<RBSubstitutable>) frame.keySet()) {
 						RBTerm term = frame.get(matchedVar);
-						String constant = "\"" + term.toString() + "\"";
+						String constant = quoted(term);
 						LSDVariable toReplace = null;
 						// find the free variable in our list that matches with tyruba free variable.
 						for (LSDVariable freeVar : new LinkedHashSet<LSDVariable>(freeVars)) {
@@ -236,7 +434,7 @@ public class LSDTyrubaRuleChecker {
 						newRule = ((newRule == null)?substitute:newRule)
 								.substitute(toReplace, new LSDBinding(constant));
 					}
-					
+				
 					if (newRule != null) {
 						newSubstitutedRules.add(newRule);
 					}
@@ -266,30 +464,15 @@ public class LSDTyrubaRuleChecker {
 	
 	// MK 020611 : This is a place to look at when choosing the most specific constants to consider 
 	private int countMatches(String query, List<LSDVariable> freeVars, int max) {
-		Set<Set<String>> matches = new HashSet<Set<String>>();
 		try {
-			RBExpression exp = frontend.makeExpression(query);
-			ElementSource es = frontend.frameQuery(exp);
-			if (es.status() == ElementSource.NO_MORE_ELEMENTS)
-				return 0;
-			while (es.status() == ElementSource.ELEMENT_READY && (max == 0  || matches.size() < max)) {
-				Frame frame = (Frame) es.nextElement();
-				Set<String> matchStrings = new HashSet<String>();
-				for (RBVariable matchedVar : (Set<RBVariable>) frame.keySet()) {
-					RBTerm term = frame.get(matchedVar);
-					String constant = "\"" + term.toString() + "\"";
-					// find the free variable in our list that matches with tyruba free variable.
-					for (LSDVariable freeVar : new LinkedHashSet<LSDVariable>(freeVars)) {
-						if (freeVar.toString().equals(matchedVar.toString()))
-							matchStrings.add(freeVar.toString() + constant);
-					}
-				}
-				matches.add(matchStrings);
-			}
+			ElementSource es = runQuery(query,
+					new LinkedHashSet<LSDVariable>(freeVars), max);
+			Frame frame = (Frame) es.nextElement();
+			return ((Integer) frame.get(countVar).up()).intValue();
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
-		return matches.size();
+		return 0;
 	}
 	
 	// Count the number of distinct facts which match the conclusion of rule.
@@ -324,21 +507,20 @@ public class LSDTyrubaRuleChecker {
 		Set<String> replacements = new LinkedHashSet<String>();
 		try {
 			//System.out.println("Executing " + query);
-			RBExpression exp = frontend.makeExpression(query);
-			ElementSource es = frontend.frameQuery(exp);
+			ElementSource es = runQuery(query);
 			try {
 				if (es.status() == ElementSource.NO_MORE_ELEMENTS) {
 					return replacements; 
 				}
 				// iterate through all the frames in the result
-//				RBVariable RBVar = null;
+//					RBVariable RBVar = null;
 				while (es.status() == ElementSource.ELEMENT_READY) {
 					Frame frame = (Frame) es.nextElement();
-					for (RBVariable matchedVar : (Set<RBVariable>) frame.keySet()) {
+					for (RBSubstitutable matchedVar : (Set<RBSubstitutable>) frame.keySet()) {
 						if (matchedVar.toString().equals(match.toString())){
 							RBTerm term = frame.get(matchedVar);
 							if (term != null)
-								replacements.add("\"" + term.toString() + "\"");
+								replacements.add(quoted(term));
 							break;
 						}
 					}
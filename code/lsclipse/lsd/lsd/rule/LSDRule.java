@@ -19,6 +19,7 @@ package lsd.rule;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -26,6 +27,7 @@ import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
 
 import lsclipse.RestrictionOption;
 import lsd.io.LSDAlchemyRuleReader;
@@ -40,6 +42,10 @@ public class LSDRule implements Comparable<LSDRule>{
 	private ArrayList<LSDLiteral> literals = new ArrayList<LSDLiteral>();
 
 	private Set<LSDVariable> freeVars = new HashSet<LSDVariable>();
+
+	// Cached result of canonicalRepresentation, which equals, hashCode and
+	// compareTo use. Reset by addLiteral.
+	private String canonical = null;
 	
 	private static HashMap<Character, Integer> penaltyLookup = new HashMap<Character, Integer>();
 	
@@ -102,6 +108,7 @@ public class LSDRule implements Comparable<LSDRule>{
 		Collection<LSDVariable> newFreeVars = newLiteral.freeVars();
 		literals.add(newLiteral);
 		freeVars.addAll(newFreeVars);
+		canonical = null;
 		return true;
 	}
 
@@ -331,69 +338,168 @@ public class LSDRule implements Comparable<LSDRule>{
 		return output + (commandLine ? "." : "");
 	}
 	
+	// A representation of this rule that is the same for all rules that only
+	// differ in the names of their variables and the order of their literals.
+	// Variables are first coloured by the way they occur in the literals
+	// (colour refinement), so literals can be put in order by their colours.
+	// Only literals that can't be told apart that way need to be tried one by
+	// one, which for rules in practice means no backtracking at all.
 	private String canonicalRepresentation() {
-		return canonicalRepresentation(this.getLiterals(), new HashMap<LSDVariable, String>(), 0);
+		if (canonical == null)
+			canonical = canonicalRepresentation(this.getLiterals(),
+					refineVariableColors(), new HashMap<LSDVariable, String>(), 0);
+		return canonical;
+	}
+	
+	private Map<LSDVariable, String> refineVariableColors() {
+		Map<LSDVariable, String> colors = new HashMap<LSDVariable, String>();
+		for (LSDLiteral literal : literals)
+			for (LSDVariable variable : literal.freeVars())
+				colors.put(variable, String.valueOf(variable.getType()));
+		int numColors = 1;
+		while (true) {
+			Map<LSDVariable, List<String>> occurrences = new HashMap<LSDVariable, List<String>>();
+			for (LSDVariable variable : colors.keySet())
+				occurrences.put(variable, new ArrayList<String>());
+			for (LSDLiteral literal : literals) {
+				String key = literalKey(literal, colors, null);
+				List<LSDBinding> bindings = literal.getBindings();
+				for (int i = 0; i < bindings.size(); i++) {
+					if (!bindings.get(i).isBound())
+						occurrences.get(bindings.get(i).getVariable()).add(key + "@" + i);
+				}
+			}
+			// Number the new colours by sorting them, so the numbering doesn't
+			// depend on variable names or literal order either.
+			Map<LSDVariable, String> signatures = new HashMap<LSDVariable, String>();
+			for (LSDVariable variable : colors.keySet()) {
+				List<String> occurs = occurrences.get(variable);
+				Collections.sort(occurs);
+				signatures.put(variable, colors.get(variable) + occurs);
+			}
+			List<String> sorted = new ArrayList<String>(new TreeSet<String>(signatures.values()));
+			if (sorted.size() <= numColors)
+				return colors;
+			numColors = sorted.size();
+			for (LSDVariable variable : colors.keySet())
+				colors.put(variable, "#" + sorted.indexOf(signatures.get(variable)));
+		}
+	}
+
+	// The literal with each variable replaced by its label in varMap, or by
+	// its colour if it has no label yet (or itself if there are no colours).
+	private static String literalKey(LSDLiteral literal, Map<LSDVariable, ?> colors,
+			Map<LSDVariable, ?> varMap) {
+		StringBuffer key = new StringBuffer();
+		if (literal.isNegated())
+			key.append("!");
+		key.append(literal.getPredicate().getName());
+		key.append("(");
+		for (LSDBinding binding : literal.getBindings()) {
+			if (binding.isBound())
+				key.append(binding.toString());
+			else if (varMap != null && varMap.containsKey(binding.getVariable()))
+				key.append(varMap.get(binding.getVariable()));
+			else if (colors != null)
+				key.append(colors.get(binding.getVariable()));
+			else
+				key.append(binding.getVariable());
+			key.append(",");
+		}
+		key.append(")");
+		return key.toString();
 	}
 	
-	private String canonicalRepresentation(List<LSDLiteral> literals, Map<LSDVariable, String> varMap, int nextVarNum) {
+	private static String canonicalRepresentation(List<LSDLiteral> literals,
+			Map<LSDVariable, String> colors, Map<LSDVariable, String> varMap, int nextVarNum) {
 		if (literals.size() == 0)
 			return new String();
-		List<LSDPredicate> predicates = LSDPredicate.getPredicates();
-		int firstPredicateIndex = predicates.size();
-		List<Integer> firstPredicateList = null;
+		String firstKey = null;
+		List<Integer> firstLiteralList = null;
 		for (int i = 0; i < literals.size(); i++) {
-			LSDLiteral literal = literals.get(i);
-			int thisIndex = predicates.indexOf(literal.getPredicate());
-			if (thisIndex < firstPredicateIndex && thisIndex >= 0) {
-				firstPredicateIndex = thisIndex;
-				firstPredicateList = new ArrayList<Integer>();
-				firstPredicateList.add(i);
+			String key = literalKey(literals.get(i), colors, varMap);
+			int cmp = (firstKey == null ? -1 : key.compareTo(firstKey));
+			if (cmp < 0) {
+				firstKey = key;
+				firstLiteralList = new ArrayList<Integer>();
+				firstLiteralList.add(i);
 			}
-			else if (thisIndex == firstPredicateIndex)
-				firstPredicateList.add(i);
+			else if (cmp == 0)
+				firstLiteralList.add(i);
 		}
 		String repr = null;
-		for (int index : firstPredicateList) {
-
-			String thisRepr = new String();
+		List<LSDLiteral> tried = new ArrayList<LSDLiteral>();
+		candidates:
+		for (int index : firstLiteralList) {
+			for (LSDLiteral other : tried) {
+				if (isSymmetric(other, literals.get(index), literals, varMap))
+					continue candidates;
+			}
+			tried.add(literals.get(index));
 			Map<LSDVariable, String> thisVarMap = new HashMap<LSDVariable, String>(varMap);
 			int thisNextVarNum = nextVarNum;
 			LSDLiteral literal = literals.get(index);
-			if (literal.isNegated())
-				thisRepr += "!";
-			thisRepr += literal.getPredicate().getName();
-			thisRepr += "(";
 			for (LSDBinding binding : literal.getBindings()) {
-				if (binding.isBound())
-					thisRepr += binding.toString();
-				else {
-					LSDVariable variable = binding.getVariable();
-					if (!thisVarMap.containsKey(variable)) {
-						thisVarMap.put(variable, "?x" + thisNextVarNum);
-						thisNextVarNum += 1;
-					}
-					thisRepr += thisVarMap.get(variable);
+				LSDVariable variable = binding.getVariable();
+				if (!binding.isBound() && !thisVarMap.containsKey(variable)) {
+					thisVarMap.put(variable, "?x" + thisNextVarNum);
+					thisNextVarNum += 1;
 				}
-				thisRepr += ",";
 			}
-			thisRepr += ")";
+			String thisRepr = literalKey(literal, colors, thisVarMap);
 			List<LSDLiteral> newLiterals= new ArrayList<LSDLiteral>(literals);
 			newLiterals.remove(index);
-			thisRepr += canonicalRepresentation(newLiterals, thisVarMap, thisNextVarNum);
+			thisRepr += canonicalRepresentation(newLiterals, colors, thisVarMap, thisNextVarNum);
 			if (repr == null || thisRepr.compareTo(repr) < 0)
 				repr = thisRepr;
 		}
 		return repr;
 	}
 	
+	// True if swapping the unlabelled variables of first with those of second
+	// maps literals onto themselves. Starting with either literal then gives
+	// the same representation, so only one of them needs to be tried.
+	private static boolean isSymmetric(LSDLiteral first, LSDLiteral second,
+			List<LSDLiteral> literals, Map<LSDVariable, String> varMap) {
+		Map<LSDVariable, LSDVariable> swap = new HashMap<LSDVariable, LSDVariable>();
+		List<LSDBinding> firstBindings = first.getBindings();
+		List<LSDBinding> secondBindings = second.getBindings();
+		for (int i = 0; i < firstBindings.size(); i++) {
+			LSDVariable a = firstBindings.get(i).getVariable();
+			LSDVariable b = secondBindings.get(i).getVariable();
+			if (a == null || b == null || a.equals(b))
+				continue;
+			if (varMap.containsKey(a) || varMap.containsKey(b))
+				return false;
+			if ((swap.containsKey(a) && !swap.get(a).equals(b))
+					|| (swap.containsKey(b) && !swap.get(b).equals(a)))
+				return false;
+			swap.put(a, b);
+			swap.put(b, a);
+		}
+		List<String> original = new ArrayList<String>();
+		List<String> swapped = new ArrayList<String>();
+		for (LSDLiteral literal : literals) {
+			original.add(literalKey(literal, null, null));
+			swapped.add(literalKey(literal, null, swap));
+		}
+		Collections.sort(original);
+		Collections.sort(swapped);
+		return original.equals(swapped);
+	}
+
 	public boolean equals(Object o) {
+		if (this == o)
+			return true;
 		if (!(o instanceof LSDRule))
 			return false;
-		return this.hashCode()==o.hashCode();
+		LSDRule other = (LSDRule) o;
+		return this.hashCode() == other.hashCode()
+			&& canonicalRepresentation().equals(other.canonicalRepresentation());
 	}
 	
 	public int hashCode() {
-		return toStringIgnoreConstantHolders().hashCode();
+		return canonicalRepresentation().hashCode();
 	}
 
 	// Negative when this is less general than r2
@@ -551,7 +657,7 @@ public class LSDRule implements Comparable<LSDRule>{
 
 	@Override
 	public int compareTo(LSDRule o) {
-		return this.hashCode()-o.hashCode() ;
+		return canonicalRepresentation().compareTo(o.canonicalRepresentation());
 	}
 
 //	public boolean sameIgnoreConstantHolders(LSDRule ur2) {
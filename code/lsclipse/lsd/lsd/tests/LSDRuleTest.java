@@ -0,0 +1,97 @@
+/*
+*    Logical Structural Diff (LSDiff)
+*    Copyright (C) <2015>  <Dr. Miryung Kim miryung@cs.ucla.edu>
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package lsd.tests;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import junit.framework.TestCase;
+import lsd.io.LSDAlchemyRuleReader;
+import lsd.rule.LSDRule;
+
+/**
+ * Tests that rules are equal exactly when they only differ in the names of
+ * their variables and the order of their literals.
+ */
+public class LSDRuleTest extends TestCase {
+
+	public LSDRuleTest(String arg0) {
+		super(arg0);
+	}
+
+	private static LSDRule rule(String rule) {
+		return LSDAlchemyRuleReader.parseAlchemyRule(rule);
+	}
+
+	private static void assertSameRule(LSDRule a, LSDRule b) {
+		assertEquals(a, b);
+		assertEquals(b, a);
+		assertEquals(a.hashCode(), b.hashCode());
+		assertEquals(0, a.compareTo(b));
+	}
+
+	private static void assertDifferentRule(LSDRule a, LSDRule b) {
+		assertFalse(a.equals(b));
+		assertFalse(b.equals(a));
+		assertTrue(a.compareTo(b) != 0);
+		assertEquals(-Integer.signum(a.compareTo(b)), Integer.signum(b.compareTo(a)));
+	}
+
+	public void testVariableNamesAndLiteralOrder() {
+		LSDRule rule = rule("before_subtype(x, y) ^ before_typeintype(y, z) => added_subtype(x, z)");
+		assertSameRule(rule, rule("before_typeintype(q, r) ^ before_subtype(p, q) => added_subtype(p, r)"));
+		assertSameRule(rule, rule("before_subtype(z, x) ^ before_typeintype(x, y) => added_subtype(z, y)"));
+	}
+
+	public void testSymmetricRules() {
+		// swapping x and y maps the antecedents onto each other
+		assertSameRule(rule("before_typeintype(x, y) ^ before_typeintype(y, x) => deleted_subtype(x, y)"),
+				rule("before_typeintype(x, y) ^ before_typeintype(y, x) => deleted_subtype(y, x)"));
+	}
+
+	public void testDifferentRules() {
+		LSDRule rule = rule("before_subtype(x, y) ^ before_typeintype(y, z) => added_subtype(x, z)");
+		assertDifferentRule(rule, rule("before_subtype(x, y) ^ before_typeintype(z, y) => added_subtype(x, z)"));
+		assertDifferentRule(rule, rule("before_subtype(x, y) ^ before_typeintype(y, z) => added_subtype(z, x)"));
+		assertDifferentRule(rule, rule("before_subtype(x, y) ^ before_typeintype(y, z) => deleted_subtype(x, z)"));
+		assertDifferentRule(rule("before_typeintype(x, y) ^ before_typeintype(y, x) => deleted_subtype(x, y)"),
+				rule("before_typeintype(x, y) ^ before_typeintype(y, z) => deleted_subtype(x, z)"));
+		assertDifferentRule(rule("before_subtype(x, \"p.A\") => added_subtype(x, \"p.A\")"),
+				rule("before_subtype(x, \"p.B\") => added_subtype(x, \"p.B\")"));
+	}
+
+	public void testDeduplication() {
+		Set<LSDRule> rules = new HashSet<LSDRule>();
+		rules.add(rule("before_subtype(x, y) ^ before_typeintype(y, z) => added_subtype(x, z)"));
+		rules.add(rule("before_typeintype(b, c) ^ before_subtype(a, b) => added_subtype(a, c)"));
+		rules.add(rule("before_subtype(x, y) ^ before_typeintype(z, y) => added_subtype(x, z)"));
+		assertEquals(2, rules.size());
+	}
+
+	public void testHashIsResetByAddLiteral() {
+		LSDRule rule = rule("before_subtype(x, y) => added_subtype(x, y)");
+		LSDRule longer = rule("before_subtype(x, y) ^ before_typeintype(y, z) => added_subtype(x, y)");
+		int hash = rule.hashCode();
+		assertEquals(hash, rule.hashCode());
+		assertDifferentRule(rule, longer);
+		rule.addLiteral(longer.getLiterals().get(1));
+		assertSameRule(rule, longer);
+		assertTrue(rule.hashCode() != hash);
+	}
+
+}
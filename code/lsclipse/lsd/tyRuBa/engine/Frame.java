@@ -17,31 +17,273 @@
 */
 package tyRuBa.engine;
 
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.Enumeration;
-import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
 
-public class Frame extends Hashtable {
+/**
+ * Variable bindings. Most frames only bind a handful of variables, so the
+ * bindings are kept in two arrays (slots) that are searched from the start;
+ * only frames that grow large get a hash table of slot numbers on top.
+ * Frames are copied on write: clone and append share the arrays until either
+ * frame is changed. Unlike the Hashtable frames used to be, Frames are not
+ * synchronized; a frame is only changed by the thread that made it. Other
+ * threads can read and clone it once it is published (answers in a done
+ * table of the TablingCache): reading never writes, and clone only marks
+ * the frame as shared, through a volatile.
+ */
+public class Frame extends AbstractMap implements Cloneable, Serializable {
 
-	/** Frame maintains a stack of rules that where applied to bind variables
-	  in this frame */
-	//Stack rules = new Stack();
+	private static final long serialVersionUID = 1L;
 
-	/** Add a rule */
-	//void pushRule(RBRule r) {
-	// rules.push(r);
-	//}
+	/** Frames with more bindings than this get a hash table of slots. */
+	private static final int LINEAR_LIMIT = 8;
 
-	//    public RBTerm get(String s) {
-	//	return get(new RBVariable(s));
-	//}
+	private RBSubstitutable[] vars;
+	private RBTerm[] values;
+	private int size = 0;
+
+	/** Whether the arrays are shared with a clone and must be copied before
+	 * they are changed. Set by clone, on whatever thread clones the frame. */
+	private transient volatile boolean shared = false;
+
+	/** Open addressing table of slot + 1 (0 is empty), null while the frame
+	 * is small. Kept up to date by the writes, not built on a read. Shared
+	 * like the arrays. */
+	private transient int[] table = null;
+
+	public Frame() {
+		this(4);
+	}
+
+	private Frame(int capacity) {
+		vars = new RBSubstitutable[capacity];
+		values = new RBTerm[capacity];
+	}
+
+	private int slotOf(Object v) {
+		int[] table = this.table;
+		if (table != null) {
+			int mask = table.length - 1;
+			for (int i = v.hashCode() & mask; table[i] != 0; i = (i + 1) & mask) {
+				int slot = table[i] - 1;
+				if (vars[slot] == v || vars[slot].equals(v))
+					return slot;
+			}
+			return -1;
+		}
+		// small, or deserialized (the table is transient) and not written since
+		for (int i = 0; i < size; i++) {
+			if (vars[i] == v || vars[i].equals(v))
+				return i;
+		}
+		return -1;
+	}
+
+	/** Builds the hash table after a write, if the frame is large. */
+	private void updateTable() {
+		if (table == null && size > LINEAR_LIMIT)
+			rehash(vars.length);
+	}
+
+	/** Rebuild the hash table, with room for capacity slots. */
+	private void rehash(int capacity) {
+		int length = 32;
+		while (length < capacity * 2)
+			length <<= 1;
+		int[] newTable = new int[length];
+		int mask = length - 1;
+		for (int slot = 0; slot < size; slot++) {
+			int i = vars[slot].hashCode() & mask;
+			while (newTable[i] != 0)
+				i = (i + 1) & mask;
+			newTable[i] = slot + 1;
+		}
+		table = newTable;
+	}
+
+	/** Make sure the arrays are ours and have room for one more binding. */
+	private void prepareWrite() {
+		if (shared || size == vars.length) {
+			int capacity = size == vars.length ? vars.length * 2 : vars.length;
+			RBSubstitutable[] newVars = new RBSubstitutable[capacity];
+			RBTerm[] newValues = new RBTerm[capacity];
+			System.arraycopy(vars, 0, newVars, 0, size);
+			System.arraycopy(values, 0, newValues, 0, size);
+			vars = newVars;
+			values = newValues;
+			if (table != null && (shared || table.length < capacity * 2)) {
+				table = null;
+			}
+			shared = false;
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public boolean containsKey(Object key) {
+		return slotOf(key) != -1;
+	}
+
+	public Object get(Object key) {
+		int slot = slotOf(key);
+		return slot == -1 ? null : values[slot];
+	}
+
+	public Object put(Object key, Object value) {
+		if (value == null)
+			throw new NullPointerException();
+		int slot = slotOf(key);
+		prepareWrite();
+		if (slot != -1) {
+			RBTerm old = values[slot];
+			values[slot] = (RBTerm) value;
+			updateTable();
+			return old;
+		}
+		slot = size++;
+		vars[slot] = (RBSubstitutable) key;
+		values[slot] = (RBTerm) value;
+		if (table == null) {
+			updateTable();
+		} else {
+			int mask = table.length - 1;
+			int i = key.hashCode() & mask;
+			while (table[i] != 0)
+				i = (i + 1) & mask;
+			table[i] = slot + 1;
+		}
+		return null;
+	}
+
+	public Object remove(Object key) {
+		int slot = slotOf(key);
+		if (slot == -1)
+			return null;
+		prepareWrite();
+		RBTerm old = values[slot];
+		size--;
+		vars[slot] = vars[size];
+		values[slot] = values[size];
+		vars[size] = null;
+		values[size] = null;
+		table = null;
+		updateTable();
+		return old;
+	}
+
+	public void clear() {
+		if (shared) {
+			vars = new RBSubstitutable[vars.length];
+			values = new RBTerm[values.length];
+			shared = false;
+		} else {
+			for (int i = 0; i < size; i++) {
+				vars[i] = null;
+				values[i] = null;
+			}
+		}
+		size = 0;
+		table = null;
+	}
+
+	/** The bound variables, like Hashtable.keys */
+	public Enumeration keys() {
+		return new SlotEnumeration(true);
+	}
+
+	/** The values, like Hashtable.elements */
+	public Enumeration elements() {
+		return new SlotEnumeration(false);
+	}
+
+	private class SlotEnumeration implements Enumeration {
+		private final boolean keys;
+		private int next = 0;
+
+		SlotEnumeration(boolean keys) {
+			this.keys = keys;
+		}
+
+		public boolean hasMoreElements() {
+			return next < size;
+		}
+
+		public Object nextElement() {
+			if (next >= size)
+				throw new NoSuchElementException();
+			return keys ? (Object) vars[next++] : values[next++];
+		}
+	}
+
+	public Set entrySet() {
+		return new AbstractSet() {
+			public int size() {
+				return size;
+			}
+
+			public Iterator iterator() {
+				return new Iterator() {
+					private int next = 0;
+
+					public boolean hasNext() {
+						return next < size;
+					}
+
+					public Object next() {
+						if (next >= size)
+							throw new NoSuchElementException();
+						final int slot = next++;
+						return new Map.Entry() {
+							public Object getKey() {
+								return vars[slot];
+							}
+
+							public Object getValue() {
+								return values[slot];
+							}
+
+							public Object setValue(Object value) {
+								return put(vars[slot], value);
+							}
+						};
+					}
+
+					public void remove() {
+						Frame.this.remove(vars[--next]);
+					}
+				};
+			}
+		};
+	}
 
 	public RBTerm get(RBSubstitutable v) {
-		return (RBTerm) super.get(v);
+		int slot = slotOf(v);
+		return slot == -1 ? null : values[slot];
 	}
 
 	public Object clone() {
-		Frame cl = (Frame) super.clone();
+		Frame cl;
+		try {
+			cl = (Frame) super.clone();
+		} catch (CloneNotSupportedException e) {
+			throw new Error("Cannot happen");
+		}
 		//cl.rules = (Stack)rules.clone();
+		if (!shared)
+			shared = true;
+		cl.shared = true;
 		return cl;
 	}
 
@@ -64,25 +306,23 @@ public class Frame extends Hashtable {
 	/** This is a call Frame. bodyresult comes from further evaluations in the
 	  body. copy new stuff from body into "this" */
 	public Frame callResult(Frame body) {
-		Frame result = new Frame();
-		Enumeration keys = this.keys();
+		Frame result = new Frame(Math.max(4, size));
 		Frame instAux = new Frame();
-		while (keys.hasMoreElements()) {
-			RBSubstitutable key = (RBSubstitutable) keys.nextElement();
-			RBTerm value = get(key);
-			result.put(key, value.substantiate(body, instAux));
+		for (int i = 0; i < size; i++) {
+			result.put(vars[i], values[i].substantiate(body, instAux));
 		}
 		return result;
 	}
 
 	/** Append this and other and return the result (functional) */
 	public Frame append(Frame other) {
+		if (other.size == 0)
+			return (Frame) this.clone();
+		if (size == 0)
+			return (Frame) other.clone();
 		Frame f = (Frame) this.clone();
-		Enumeration others = other.keys();
-		while (others.hasMoreElements()) {
-			Object key = others.nextElement();
-			Object val = other.get(key);
-			f.put(key, val);
+		for (int i = 0; i < other.size; i++) {
+			f.put(other.vars[i], other.values[i]);
 		}
 
 		// others = other.rules.elements();
@@ -101,22 +341,16 @@ public class Frame extends Hashtable {
 		Frame other = (Frame) x;
 		Frame l = new Frame();
 		Frame r = new Frame();
-		Enumeration keys = this.keys();
-		while (equal && keys.hasMoreElements()) {
-			RBSubstitutable key = (RBSubstitutable) keys.nextElement();
-			RBTerm value = get(key);
-			equal = value.sameForm(other.get(key), l, r);
+		for (int i = 0; equal && i < size; i++) {
+			equal = values[i].sameForm(other.get(vars[i]), l, r);
 		}
 		return equal;
 	}
 
 	public int hashCode() {
 		int hash = 0;
-		Enumeration keys = this.keys();
-		while (keys.hasMoreElements()) {
-			RBSubstitutable key = (RBSubstitutable) keys.nextElement();
-			RBTerm value = get(key);
-			hash += key.hashCode() * ((RBTerm) value).formHashCode();
+		for (int i = 0; i < size; i++) {
+			hash += vars[i].hashCode() * values[i].formHashCode();
 		}
 		return hash; 
 	}
@@ -39,6 +39,7 @@ import tyRuBa.engine.factbase.FactLibraryManager;
 import tyRuBa.engine.factbase.FileBasedValidatorManager;
 import tyRuBa.engine.factbase.NamePersistenceManager;
 import tyRuBa.engine.factbase.ValidatorManager;
+import tyRuBa.engine.factbase.hashtable.IndexPageCodec;
 import tyRuBa.modes.ConstructorType;
 import tyRuBa.modes.PredInfo;
 import tyRuBa.modes.TypeModeError;
@@ -81,8 +82,12 @@ implements SynchResource {
 	private ValidatorManager validatorManager;
 	private NamePersistenceManager namePersistenceManager;
 	private FactLibraryManager factLibraryManager;
+
+	private TablingCache tablingCache = new TablingCache();
 	
 	private File path;
+	/** Set for FrontEnds that never use the Pager or the disk, see makeInMemory */
+	private boolean inMemory = false;
 	private String identifier;
 	public static final int defaultPagerCacheSize = 5000;
     private static final int defaultPagerQueueSize = 1000;
@@ -92,35 +97,46 @@ implements SynchResource {
 	 * @codegroup metadata
 	 */
 	public FrontEnd(boolean loadInitFile, File path, boolean persistent, ProgressMonitor mon,boolean clean,boolean enableBackgroundCleaning) {
+		this(loadInitFile, path, persistent, mon, clean, enableBackgroundCleaning, false);
+	}
+
+	private FrontEnd(boolean loadInitFile, File path, boolean persistent, ProgressMonitor mon,boolean clean,boolean enableBackgroundCleaning,boolean inMemory) {
         
         progressMonitor = mon;
         this.path = path;
+        this.inMemory = inMemory;
+
+        if (inMemory) {
+            this.validatorManager = new FileBasedValidatorManager((String) null);
+            this.namePersistenceManager = new NamePersistenceManager((String) null);
+        } else {
+            if (pager != null) {
+                pager.shutdown();
+            }
+            
+            if (!checkAndFixConsistency()) {
+    		    clean = true;
+            }
 
-        if (pager != null) {
-            pager.shutdown();
-        }
-        
-        if (!checkAndFixConsistency()) {
-		    clean = true;
-        }
+            if (clean) {
+                deleteDirectory(path);
+            }
+            pager = new Pager(defaultPagerCacheSize,defaultPagerQueueSize, lastBackupTime, enableBackgroundCleaning);
+            pager.setResourceCodec(new IndexPageCodec());
 
-        if (clean) {
-            deleteDirectory(path);
-        }
-        pager = new Pager(defaultPagerCacheSize,defaultPagerQueueSize, lastBackupTime, enableBackgroundCleaning);
+            if (!path.exists()) {
+            		path.mkdirs();
+            }
+            
+            try {
+        			new File(path.getPath() + "/running.data").createNewFile();
+            } catch (IOException e) {
+                throw new Error("Could not create running \"lock\" file");
+            }
 
-        if (!path.exists()) {
-        		path.mkdirs();
+            this.validatorManager = new FileBasedValidatorManager(path.getPath());
+    		this.namePersistenceManager = new NamePersistenceManager(path.getPath());
         }
-        
-        try {
-    			new File(path.getPath() + "/running.data").createNewFile();
-        } catch (IOException e) {
-            throw new Error("Could not create running \"lock\" file");
-        }
-
-        this.validatorManager = new FileBasedValidatorManager(path.getPath());
-		this.namePersistenceManager = new NamePersistenceManager(path.getPath());
 		this.factLibraryManager = new FactLibraryManager(this);
 		
 		this.identifier = "**frontend**";
@@ -166,6 +182,20 @@ implements SynchResource {
 		}
 	}
 
+	/**
+	 * Makes a FrontEnd that keeps all its facts in memory, indexed per mode
+	 * (see InMemoryFactBase). It never touches the Pager or the disk, which
+	 * makes it much cheaper for short lived engines that are thrown away after
+	 * use. Nothing is persisted by backupFactBase or shutdown.
+	 */
+	public static FrontEnd makeInMemory(boolean loadInitFile) {
+		return new FrontEnd(loadInitFile, null, false, null, false, false, true);
+	}
+
+	public boolean isInMemory() {
+		return inMemory;
+	}
+
 	private static Collection makeBucketCollection() {
 		return new LinkedHashSet();
 	}
@@ -190,11 +220,12 @@ implements SynchResource {
     }
 
     public void setCacheSize(int cacheSize) {
-		pager.setCacheSize(cacheSize);
+		if (!inMemory)
+			pager.setCacheSize(cacheSize);
 	}
 	
 	public int getCacheSize() {
-	    return pager.getCacheSize();
+	    return inMemory ? 0 : pager.getCacheSize();
 	}
 
 	private boolean checkAndFixConsistency() {
@@ -324,7 +355,7 @@ implements SynchResource {
 	 * @throws BackupFailedException if backup was attempted but failed for some reason.
 	 */
 	public boolean fastBackupFactBase() throws BackupFailedException {
-		if (pager.isDirty())
+		if (!inMemory && pager.isDirty())
 			return false;
 		else {
 			backupFactBase();
@@ -346,6 +377,8 @@ implements SynchResource {
                 bucket.backup(); //XXX: This might not be necessary anymore
             }
             
+            if (inMemory)
+                return;
             pager.backup();
             validatorManager.backup();
             namePersistenceManager.backup();
@@ -387,12 +420,14 @@ implements SynchResource {
                     }
                 }
             }
-            pager.backup();
-	        validatorManager.backup();
-	        namePersistenceManager.backup();
+            if (!inMemory) {
+                pager.backup();
+    	        validatorManager.backup();
+    	        namePersistenceManager.backup();
 
-	        //delete the running "lock" file
-			new File(path.getPath() + "/running.data").delete();
+    	        //delete the running "lock" file
+    			new File(path.getPath() + "/running.data").delete();
+            }
 	    } finally {
 	        getSynchPolicy().allowSources();
 	    }
@@ -406,6 +441,7 @@ implements SynchResource {
 
 	/** Flush the query cache */
 	public void flush() {
+		tablingCache.clear();
 		updateCounter++;
 //		rules.update();
 	}
@@ -589,7 +625,8 @@ implements SynchResource {
 				if (progressMonitor!=null)
 					progressMonitor.done();		
 				System.err.println("[DEBUG] - updateBuckets() - done updating buckets (" + (System.currentTimeMillis() - startTime) + "ms)");
-                pager.printStats();
+                if (!inMemory)
+                    pager.printStats();
 			}
 		}
 	}
@@ -641,7 +678,7 @@ implements SynchResource {
 	
 	
 	public String getStoragePath() {
-	    return path.getPath();	    
+	    return inMemory ? null : path.getPath();	    
 	}
 	
 	public ValidatorManager getValidatorManager() {
@@ -659,6 +696,11 @@ implements SynchResource {
     public Pager getPager() {
         return pager;
     }
+
+	/** The answers of queries that are kept, see TablingCache */
+	public TablingCache getTablingCache() {
+		return tablingCache;
+	}
 	
 	public String getIdentifier() {
 	    return identifier;
@@ -671,6 +713,8 @@ implements SynchResource {
 	 * Used for testing purposes (see testBackup 
 	 */
 	public void crash() {
+		if (inMemory)
+			return;
 		pager.crash();
 		pager = null;
 		
@@ -58,6 +58,10 @@ public class ModedRuleBase extends RuleBase {
 		}
 	}
 
+	public PredicateIdentifier getPredId() {
+		return predId;
+	}
+
 	public void insert(RBComponent r, ModedRuleBaseIndex insertedFrom,
 	TupleType inferredTypes) throws TypeModeError {
 		try {
@@ -127,6 +131,18 @@ public class ModedRuleBase extends RuleBase {
 		rules.insert(converted);
 	}
 	
+	/**
+	 * Forgets the rules, after they have been replaced by the facts they
+	 * derive (see SemiNaiveEvaluator).
+	 */
+	void dropRules() {
+		rules = new RBComponentVector();
+		currMode = null;
+		for (int i = 0; i < currTypes.length; i++) {
+			currTypes[i].clear();
+		}
+	}
+
 	private void ensureRuleBase() {
 		if (rules == null) {
 			rules = new RBComponentVector();
@@ -145,6 +161,24 @@ public class ModedRuleBase extends RuleBase {
 		throw new Error("That's strange... who wants to know my hashcode??");
 	}
 
+	/**
+	 * Only predicates that are all facts can be estimated, from the
+	 * statistics their FactBase keeps.
+	 */
+	public double estimateResults(BindingList bindings) {
+		if (!rules.isEmpty() || (isPersistent() && !libraryManager.isEmpty()))
+			return -1;
+		FactStatistics statistics = facts.getStatistics();
+		if (statistics == null)
+			return -1;
+		return statistics.estimateResults(bindings);
+	}
+
+	public boolean scansFacts() {
+		BindingList bindings = getParamModes();
+		return bindings.getNumBound() > 0 && !facts.isIndexed(bindings);
+	}
+
 	protected Compiled compile(CompilationContext context) {
 		if (rules != null) {
             if (isPersistent()) {
@@ -19,6 +19,7 @@ package tyRuBa.engine;
 
 import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Iterator;
 
 import tyRuBa.engine.factbase.*;
@@ -140,6 +141,7 @@ public class ModedRuleBaseCollection {
 		        throw new Error("Rules cannot be added to persistent factbases");
 		    }
 		}
+		engine.frontend().getTablingCache().changed(predId);
 	}
 	
 	/** return the ModedRuleBase in this collection that has the "best"
@@ -179,6 +181,32 @@ public class ModedRuleBaseCollection {
 		}		
 	}
 	
+	/** The rules of this predicate, in normal form. */
+	ArrayList getRules() {
+		ArrayList result = new ArrayList();
+		for (Iterator iter = unconvertedRules.iterator(); iter.hasNext();) {
+			InsertionInfo insertion = (InsertionInfo) iter.next();
+			if (insertion.isValid())
+				result.add(insertion.rule);
+		}
+		return result;
+	}
+
+	/**
+	 * Replaces the rules of this predicate by the facts they derive. Each
+	 * element of tuples is the RBTuple of one fact.
+	 */
+	void materialize(Collection tuples) {
+		unconvertedRules.clear();
+		for (int i = 0; i < modedRBs.size(); i++) {
+			((ModedRuleBase) modedRBs.get(i)).dropRules();
+		}
+		for (Iterator iter = tuples.iterator(); iter.hasNext();) {
+			facts.insert(new RBFact(new RBPredicateExpression(predId, (RBTuple) iter.next())));
+		}
+		engine.frontend().getTablingCache().changed(predId);
+	}
+
 	public void dumpFacts(PrintStream out) {
 		out.print(facts);
 	}
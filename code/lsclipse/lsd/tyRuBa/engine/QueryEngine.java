@@ -23,6 +23,8 @@ import java.io.InputStream;
 import java.io.PrintStream;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
 
 import tyRuBa.engine.factbase.FactLibraryManager;
 import tyRuBa.engine.factbase.NamePersistenceManager;
@@ -48,6 +50,7 @@ import tyRuBa.util.DelayedElementSource;
 import tyRuBa.util.ElementSource;
 import tyRuBa.util.NullQueryLogger;
 import tyRuBa.util.QueryLogger;
+import tyRuBa.util.SynchronizedElementSource;
 import tyRuBa.util.pager.Pager;
 
 /**
@@ -80,6 +83,47 @@ public abstract class QueryEngine {
 		insert(new RBFact(exp));
 	}
 
+	/**
+	 * Insert a ground fact given its predicate name and argument terms. This
+	 * is the same as parsing "predName(args)." but skips rendering and
+	 * re-parsing the fact text.
+	 */
+	public void insert(String predName, RBTerm[] args) throws TypeModeError {
+		insert(new RBPredicateExpression(predName, args));
+	}
+
+	/**
+	 * Insert many ground facts of one predicate in a single pass. Each element
+	 * of tuples is an RBTerm[] holding the arguments of one fact.
+	 */
+	public void insertAll(String predName, Collection tuples) throws TypeModeError {
+		PredicateIdentifier pred = null;
+		for (Iterator iter = tuples.iterator(); iter.hasNext();) {
+			RBTerm[] args = (RBTerm[]) iter.next();
+			if (pred == null || pred.getArity() != args.length)
+				pred = new PredicateIdentifier(predName, args.length);
+			insert(new RBPredicateExpression(pred, RBTuple.make(args)));
+		}
+	}
+
+	/**
+	 * Derives all the facts of the given predicates bottom up and replaces
+	 * their rules, and the rules of the predicates they depend on, by those
+	 * facts (see SemiNaiveEvaluator). Later queries, and facts inserted
+	 * later, do not go through the rules any more.
+	 */
+	public void materialize(PredicateIdentifier[] preds) throws TypeModeError,
+			ParseException {
+		synchronized (frontend()) {
+			frontend().getSynchPolicy().stopSources();
+			try {
+				new SemiNaiveEvaluator(this, rulebase()).materialize(preds);
+			} finally {
+				frontend().getSynchPolicy().allowSources();
+			}
+		}
+	}
+
 	/** Every QueryEngine must have a frontend */
 	abstract FrontEnd frontend();
 
@@ -120,6 +164,11 @@ public abstract class QueryEngine {
 		return frontend().getPager();
 	}
 
+	/** True if this engine keeps its facts in memory only */
+	public boolean isInMemory() {
+		return frontend().isInMemory();
+	}
+
 	/** Load a file from the default library directory (stored somewhere
 	 in the classpath */
 	public void loadLibrary(String fileName) throws ParseException,
@@ -164,17 +213,43 @@ public abstract class QueryEngine {
 	public ElementSource frameQuery(RBExpression e) throws TypeModeError,
 			ParseException {
 		frontend().autoUpdateBuckets();
-		final PreparedQuery runable = e.prepareForRunning(this);
+		final PreparedQuery runable = prepareForRunning(e);
 		//		System.out.println("--- query result structure dump ----");
 		//		System.out.println(result);
 		//		System.out.println("------------------------------------");
 		logger.logQuery(e);
+		return startQuery(runable);
+	}
+
+	/** Run an already prepared query, whose template variables have all been
+	 put, and return an enumeration of frames with bindings for the values in
+	 the query. This allows a PreparedQuery to be compiled once and run many
+	 times with different constants. */
+	public ElementSource frameQuery(PreparedQuery runable) throws TypeModeError,
+			ParseException {
+		frontend().autoUpdateBuckets();
+		return startQuery(runable);
+	}
+
+	/**
+	 * Queries hold the frontend's lock only to register with its SynchPolicy.
+	 * Their elements are taken without it, so queries on several threads run
+	 * at the same time. What they share is safe for that: RuleBases compile
+	 * under their own lock, the TablingCache and the FactBases synchronize
+	 * what they change, and the Pager allows concurrent readers. Mode
+	 * checking and compiling a query change the rulebase index, so they do
+	 * hold the frontend's lock (see prepareForRunning). Anything that changes
+	 * the rules or the facts as a whole (backup, updating buckets,
+	 * materialize, shutdown) first waits for the registered queries to be
+	 * released.
+	 */
+	private ElementSource startQuery(final PreparedQuery runable) {
 		synchronized (frontend()) {
 			// CAUTION! 
 			// In very rare occasions, there is potential problem that
 			// something like outdaing buckets or saving factbase comes
-			// in between the end of runable.start() and synchronizeOn.
-			// Since not all elementsources are 100% lazy the start()
+			// in between the end of runable.start() and registering the
+			// source. Since not all elementsources are 100% lazy the start()
 			// invocation may actually have
 			// started working on the first element. If the engine state
 			// is altered in between there is thus
@@ -195,7 +270,7 @@ public abstract class QueryEngine {
 				}
 			};
 			frontend().getSynchPolicy().sourceDone();
-			ElementSource ret = result.synchronizeOn(frontend());
+			ElementSource ret = new SynchronizedElementSource(frontend(), result, false);
 			//System.err.println("[INFO] - QueryEngine - Done Query");
 			return ret;
 		}
@@ -371,7 +446,9 @@ public abstract class QueryEngine {
 	}
 
 	public PreparedQuery prepareForRunning(RBExpression e) throws TypeModeError {
-		return e.prepareForRunning(this);
+		synchronized (frontend()) {
+			return e.prepareForRunning(this);
+		}
 	}
 
 	public PreparedQuery prepareForRunning(String queryTemplate)
@@ -84,6 +84,10 @@ public class RBComponentVector {
 //			return this;
 //	}
 
+	public boolean isEmpty() {
+		return contents.isEmpty();
+	}
+
 	public void insert(RBComponent c) {
 		if (c == null)
 			throw new NullPointerException("Not allowed to insert null");
@@ -56,7 +56,9 @@ public abstract class RBCompoundTerm extends RBTerm {
                 terms[i] = makeJava(array[i]);
             return FrontEnd.makeList(terms);
         }
-        if (o instanceof UppedTerm) {
+        if (o instanceof String) {
+            return SymbolTable.intern((String) o);
+        } else if (o instanceof UppedTerm) {
             return ((UppedTerm)o).down();
         } else {
             return new RBJavaObjectCompoundTerm(o);
@@ -33,6 +33,19 @@ import tyRuBa.modes.TypeModeError;
 
 public class RBConjunction extends RBCompoundExpression {
 
+	/**
+	 * Whether conjuncts are ordered by the estimated number of results of
+	 * their predicates, where the fact statistics give one, before mode.
+	 */
+	public static boolean costBasedOrdering = true;
+
+	/**
+	 * Whether a predicate made up of facts that has no index for the
+	 * variables bound by the conjunct before it, which is also made up of
+	 * facts, is joined with it by hashing instead of a nested loop.
+	 */
+	public static boolean hashJoins = true;
+
 	public RBConjunction() {
 		super();
 	}
@@ -53,7 +66,15 @@ public class RBConjunction extends RBCompoundExpression {
 	public final Compiled compile(CompilationContext c) {
 		Compiled res = Compiled.succeed;
 		for (int i = 0; i < getNumSubexps(); i++) {
-			res = res.conjoin(getSubexp(i).compile(c));
+			RBExpression exp = getSubexp(i);
+			if (i > 0 && exp instanceof RBPredicateExpression
+					&& ((RBPredicateExpression) exp).canHashJoin()
+					&& getSubexp(i - 1).estimatedResults() >= 0) {
+				double leftResults = i == 1 ? getSubexp(0).estimatedResults() : -1;
+				res = ((RBPredicateExpression) exp).compileHashJoin(res, leftResults);
+			} else {
+				res = res.conjoin(exp.compile(c));
+			}
 		}
 		return res;
 	}
@@ -92,7 +113,7 @@ public class RBConjunction extends RBCompoundExpression {
 				for (int i = 1; i < toBeChecked.size(); i++) {
 					RBExpression exp =  (RBExpression) toBeChecked.get(i);
 					RBExpression converted = exp.convertToMode(context, true);
-					if (converted.isBetterThan(best)) {
+					if (runsBefore(converted, best)) {
 						best = converted;
 						bestPos = i;
 					}
@@ -116,6 +137,24 @@ public class RBConjunction extends RBCompoundExpression {
 		return Factory.makeModedExpression(result, resultMode, context);
 	}
 
+	/**
+	 * Whether converted should run before best: the one that is estimated to
+	 * produce fewer results if there are estimates for both, otherwise the
+	 * one with the better mode.
+	 */
+	private static boolean runsBefore(RBExpression converted, RBExpression best) {
+		if (costBasedOrdering
+				&& !(converted.getMode() instanceof ErrorMode)
+				&& !(best.getMode() instanceof ErrorMode)) {
+			double convertedResults = converted.estimatedResults();
+			double bestResults = best.estimatedResults();
+			if (convertedResults >= 0 && bestResults >= 0 && convertedResults != bestResults) {
+				return convertedResults < bestResults;
+			}
+		}
+		return converted.isBetterThan(best);
+	}
+
 	public RBExpression convertToNormalForm(boolean negate) {
 		if (negate) {
 			RBDisjunction result = new RBDisjunction();
@@ -37,11 +37,21 @@ public class RBCountAll extends RBExpression {
 	private RBExpression query;
 	private RBTerm extract;
 	private RBTerm result;
+	private int limit;
 
 	public RBCountAll(RBExpression q, RBTerm e, RBTerm r) {
+		this(q, e, r, 0);
+	}
+
+	/**
+	 * A count that stops looking for more solutions of q once it has found
+	 * limit distinct values of e. A limit of 0 means no limit.
+	 */
+	public RBCountAll(RBExpression q, RBTerm e, RBTerm r, int limit) {
 		query = q;
 		extract = e;
 		result = r;
+		this.limit = limit;
 	}
 
 	public RBExpression getQuery() {
@@ -56,12 +66,17 @@ public class RBCountAll extends RBExpression {
 		return result; 
 	}
 
+	public int getLimit() {
+		return limit;
+	}
+
 	public String toString() {
-		return "COUNTALL(" + getQuery() + "," + getExtract() + "," + getResult() + ")";
+		return "COUNTALL(" + getQuery() + "," + getExtract() + "," + getResult()
+			+ (limit > 0 ? "," + limit : "") + ")";
 	}
 
 	public Compiled compile(CompilationContext c) {
-		return new CompiledCount(getQuery().compile(c),getExtract(),getResult());
+		return new CompiledCount(getQuery().compile(c),getExtract(),getResult(),getLimit());
 	}
 
 	public TypeEnv typecheck(PredInfoProvider predinfo, TypeEnv startEnv) throws TypeModeError {
@@ -99,7 +114,7 @@ public class RBCountAll extends RBExpression {
 				ModeCheckContext newContext = (ModeCheckContext)context.clone();
 				result.makeAllBound(newContext);
 				return Factory.makeModedExpression(
-					new RBCountAll(convQuery, getExtract(), getResult()),
+					new RBCountAll(convQuery, getExtract(), getResult(), getLimit()),
 					convertedMode.findAll(), newContext);
 			}
 		}
@@ -108,7 +123,7 @@ public class RBCountAll extends RBExpression {
 	public RBExpression convertToNormalForm(boolean negate) {
 		RBExpression result = 
 			new RBCountAll(getQuery().convertToNormalForm(false), 
-					getExtract(), getResult());
+					getExtract(), getResult(), getLimit());
 		if (negate) {
 			return new RBNotFilter(result);
 		} else {
@@ -159,6 +159,14 @@ public abstract class RBExpression implements Cloneable {
         return mode;
     }
 
+    /**
+     * Estimated number of results of this moded expression per call, or a
+     * negative number if there is no estimate.
+     */
+    public double estimatedResults() {
+        return -1;
+    }
+
     public ModeCheckContext getNewContext() {
         Assert.assertNotNull(newContext);
         return newContext;
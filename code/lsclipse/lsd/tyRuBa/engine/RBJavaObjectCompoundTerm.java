@@ -21,6 +21,7 @@
 package tyRuBa.engine;
 
 import java.io.IOException;
+import java.io.ObjectStreamException;
 
 import org.apache.regexp.RE;
 
@@ -144,6 +145,9 @@ public class RBJavaObjectCompoundTerm extends RBCompoundTerm {
 	public boolean equals(Object x) {
 		if (x.getClass().equals(this.getClass())) {
 			return arg.equals(((RBJavaObjectCompoundTerm)x).arg);
+		} else if (x instanceof RBSymbol && this.getClass() == RBJavaObjectCompoundTerm.class) {
+			// a String constant that was not interned
+			return arg.equals(((RBSymbol)x).getObject());
 		} else {
 			return false;
 		}
@@ -175,6 +179,7 @@ public class RBJavaObjectCompoundTerm extends RBCompoundTerm {
 	 * @see tyRuBa.util.TwoLevelKey#getFirst()
 	 */
 	public String getFirst() {
+		Object arg = getObject();
 		if (arg instanceof String) {
 			String str = (String) arg;
 			int firstindexofhash = str.indexOf('#');
@@ -196,6 +201,7 @@ public class RBJavaObjectCompoundTerm extends RBCompoundTerm {
 	 * @see tyRuBa.util.TwoLevelKey#getSecond()
 	 */
 	public Object getSecond() {
+		Object arg = getObject();
 		if (arg instanceof String) {
 			String str = (String) arg;
 			int firstindexofhash = str.indexOf('#');
@@ -224,6 +230,15 @@ public class RBJavaObjectCompoundTerm extends RBCompoundTerm {
 		}
 	}
 	
+	/** String constants written before there were RBSymbols */
+	private Object readResolve() throws ObjectStreamException {
+		if (arg instanceof String) {
+			return SymbolTable.intern((String) arg);
+		} else {
+			return this;
+		}
+	}
+	
 	public int intValue() {
 		if (arg instanceof Integer) {
 			return ((Integer)arg).intValue();
@@ -18,6 +18,7 @@
 package tyRuBa.engine;
 
 import java.util.Collection;
+import java.util.Iterator;
 
 import tyRuBa.engine.compilation.CompilationContext;
 import tyRuBa.engine.compilation.Compiled;
@@ -52,7 +53,14 @@ public class RBNotFilter extends RBExpression {
 
 	public TypeEnv typecheck(PredInfoProvider predinfo, TypeEnv startEnv) throws TypeModeError {
 		try {
-			getNegatedQuery().typecheck(predinfo, startEnv);
+			TypeEnv negatedEnv = getNegatedQuery().typecheck(predinfo, startEnv);
+			// Variables of the negated query are not visible outside of it,
+			// but template variables are (they will be replaced by constants).
+			for (Iterator iter = negatedEnv.keySet().iterator(); iter.hasNext();) {
+				RBSubstitutable var = (RBSubstitutable) iter.next();
+				if (var instanceof RBTemplateVar && !startEnv.containsKey(var))
+					startEnv.put(var, negatedEnv.basicGet(var));
+			}
 			return startEnv;
 		} catch (TypeModeError e) {
 			throw new TypeModeError(e, this);
@@ -24,6 +24,7 @@ import junit.framework.Assert;
 
 import tyRuBa.engine.compilation.CompilationContext;
 import tyRuBa.engine.compilation.Compiled;
+import tyRuBa.engine.compilation.CompiledHashJoin;
 import tyRuBa.engine.compilation.CompiledPredicateExpression;
 import tyRuBa.engine.compilation.SemiDetCompiledPredicateExpression;
 import tyRuBa.engine.visitor.ExpressionVisitor;
@@ -53,6 +54,13 @@ public class RBPredicateExpression extends RBExpression {
     private RuleBase rules = null; 
       // This is set by modeChecking and points to the moded rulebase for this predicate's 
       // execution.
+    private double estimatedResults = -1;
+      // Also set by modeChecking, from the statistics of the predicate's facts.
+    private RuleBase joinRules = null;
+    private RBVariable[] joinVars = null;
+    private double joinResults = -1;
+      // Set by modeChecking when this can be hash joined with what comes
+      // before it: the moded rulebase with the join variables free.
 
 	/** Constructor */
 	public RBPredicateExpression(String predName, ArrayList argTerms) {
@@ -189,7 +197,15 @@ public class RBPredicateExpression extends RBExpression {
 				resultMode.setPercentFree(bindings);
 			}
 		 
-			return Factory.makeModedExpression(this,resultMode, resultContext, bestRuleBase);
+			RBPredicateExpression result = (RBPredicateExpression)
+				Factory.makeModedExpression(this,resultMode, resultContext, bestRuleBase);
+			result.estimatedResults = bestRuleBase.estimateResults(bindings);
+			if (RBConjunction.hashJoins && result.estimatedResults >= 0
+					&& resultMode.hi.compareTo(Multiplicity.one) > 0
+					&& bestRuleBase.scansFacts()) {
+				result.findJoinRules(context, bindings);
+			}
+			return result;
 		}
 	}
 
@@ -203,6 +219,62 @@ public class RBPredicateExpression extends RBExpression {
         return modedExp;
     }
 
+    /**
+     * Looks for a rulebase that can produce all the facts for the variables
+     * that are bound in context, so they can be put in a table once instead
+     * of being scanned for each of their values. Only variables and
+     * constants can be bound arguments.
+     */
+    private void findJoinRules(ModeCheckContext context, BindingList bindings) {
+        ArrayList vars = new ArrayList();
+        BindingList freeBindings = Factory.makeBindingList();
+        for (int i = 0; i < getNumArgs(); i++) {
+            RBTerm arg = getArgAt(i);
+            if (!bindings.get(i).isBound()) {
+                freeBindings.add(bindings.get(i));
+            } else if (arg instanceof RBVariable && !(arg instanceof RBIgnoredVariable)) {
+                if (!vars.contains(arg))
+                    vars.add(arg);
+                freeBindings.add(Factory.makeFree());
+            } else if (args.isGround(i)) {
+                freeBindings.add(bindings.get(i));
+            } else {
+                return;
+            }
+        }
+        if (vars.isEmpty())
+            return;
+        RuleBase free = context.getModedRuleBaseIndex().getBest(getPredId(), freeBindings);
+        if (free != null && free.getMode().hi.compareTo(Multiplicity.one) > 0) {
+            joinRules = free;
+            joinVars = (RBVariable[]) vars.toArray(new RBVariable[vars.size()]);
+            joinResults = free.estimateResults(freeBindings);
+        }
+    }
+
+    /**
+     * Returns true if this can be joined by hashing with what comes before
+     * it in a conjunction.
+     */
+    public boolean canHashJoin() {
+        return joinRules != null;
+    }
+
+    /**
+     * Compiles this as a hash join with left. The side that is estimated to
+     * be smaller goes in the table.
+     * @param leftResults estimated number of frames from left, or a
+     * negative number if there is no estimate.
+     */
+    public Compiled compileHashJoin(Compiled left, double leftResults) {
+        boolean buildLeft = leftResults >= 0 && joinResults >= 0 && leftResults < joinResults;
+        return new CompiledHashJoin(left, getMode(), rules, joinRules, getArgs(), joinVars, buildLeft);
+    }
+
+    public double estimatedResults() {
+        return estimatedResults;
+    }
+
     private void setRuleBase(RuleBase bestRuleBase) {
         Assert.assertNull(rules);
         this.rules = bestRuleBase;
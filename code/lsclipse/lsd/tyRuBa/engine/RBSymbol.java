@@ -0,0 +1,111 @@
+/* 
+*    Logical Structural Diff (LSDiff)  
+*    Copyright (C) <2015>  <Dr. Miryung Kim miryung@cs.ucla.edu>
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package tyRuBa.engine;
+
+import java.io.ObjectStreamException;
+
+import tyRuBa.modes.ConstructorType;
+
+/**
+ * A String constant. RBSymbols are made by the SymbolTable, which keeps one
+ * per distinct string, so they are compared by reference. They are equal to
+ * RBJavaObjectCompoundTerms of the same string, which are not interned.
+ */
+public class RBSymbol extends RBJavaObjectCompoundTerm {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final ConstructorType stringConstructor = ConstructorType.makeJava(String.class);
+
+	/** The name, it is also held in the SymbolTable. */
+	private transient String name;
+
+	/** Same as the hashCode of an RBJavaObjectCompoundTerm for name. */
+	private transient int hash;
+
+	/** The name in double quotes, made when it is first asked for. */
+	private transient String quoted = null;
+
+	RBSymbol(String name) {
+		super(name);
+		this.name = name;
+		this.hash = 9595 + name.hashCode();
+	}
+
+	/** The name of this symbol in double quotes, as it is written in rules. */
+	public String quotedName() {
+		if (quoted == null) {
+			quoted = "\"" + name + "\"";
+		}
+		return quoted;
+	}
+
+	public ConstructorType getConstructorType() {
+		return stringConstructor;
+	}
+
+	public int formHashCode() {
+		return hash;
+	}
+
+	public int hashCode() {
+		return hash;
+	}
+
+	public boolean equals(Object x) {
+		if (x == this)
+			return true;
+		else if (x != null && x.getClass() == RBJavaObjectCompoundTerm.class)
+			return x.equals(this);
+		else
+			return false;
+	}
+
+	public Frame unify(RBTerm other, Frame f) {
+		if (other == this)
+			return f;
+		else if (other instanceof RBVariable)
+			return other.unify(this, f);
+		else if (equals(other))
+			return f;
+		else
+			return null;
+	}
+
+	public int intValue() {
+		throw new Error("This is not an integer");
+	}
+
+	public Object up() {
+		return name;
+	}
+
+	public Object getObject() {
+		return name;
+	}
+
+	public String toString() {
+		return name;
+	}
+
+	/** The superclass writes the name, reading it back gives the symbol of the SymbolTable. */
+	private Object readResolve() throws ObjectStreamException {
+		return SymbolTable.intern((String) super.getObject());
+	}
+
+}
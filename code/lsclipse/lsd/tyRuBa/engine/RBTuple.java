@@ -127,6 +127,11 @@ public class RBTuple extends RBTerm implements TwoLevelKey {
 		return Factory.makeBound();
 	}
 	
+	/** Whether subterm i is ground. */
+	public boolean isGround(int i) {
+		return subterms[i].isGround();
+	}
+
 	public boolean isGround() {
 		for (int i = 0; i < getNumSubterms(); i++) {
 			if (! getSubterm(i).isGround()) {
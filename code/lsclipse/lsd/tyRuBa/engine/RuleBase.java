@@ -60,11 +60,7 @@ public abstract class RuleBase {
 	/** Use a cache which remember query results ? */
 	public static boolean useCache = true;
 
-	/** If true Cache will use SoftValueMap which allows entries to be reclaimed
-	  * by the garbage collector when low on memory */
-	public static boolean softCache = true;
-
-	/** Do not print Ho. characters while computing queries */
+	/** Do not print the modes and types inferred while converting queries and rules */
 	public static boolean silent = false;
 
 	/** 
@@ -122,6 +118,9 @@ public abstract class RuleBase {
 		return predMode;
 	}
 
+	/** return the predicate whose rules and facts are in this rulebase */
+	public abstract PredicateIdentifier getPredId();
+
 	/** return the list of binding modes of the predicate mode */
 	public BindingList getParamModes() {
 		return getPredMode().getParamModes();
@@ -138,6 +137,22 @@ public abstract class RuleBase {
 	public boolean isBetterThan(RuleBase other) {
 		return getMode().isBetterThan(other.getMode());
 	}
+
+	/**
+	 * Returns the estimated number of results of a call with the given
+	 * bindings, or a negative number if there is no estimate.
+	 */
+	public double estimateResults(BindingList bindings) {
+		return -1;
+	}
+
+	/**
+	 * Returns true if a call to this rulebase looks through all the facts of
+	 * the predicate instead of looking up its bound arguments in an index.
+	 */
+	public boolean scansFacts() {
+		return false;
+	}
 	
 	public static BasicModedRuleBaseIndex make(FrontEnd frontEnd) {
 		return new BasicModedRuleBaseIndex(frontEnd, null);
@@ -170,18 +185,20 @@ public abstract class RuleBase {
 	public void dumpFacts(PrintStream out) {
 	}
 
-	public Compiled getCompiled() {
+	/** Compiles on first use, queries on several threads may ask at once */
+	public synchronized Compiled getCompiled() {
 		uptodateCheck();
 		if (compiledRules == null) {
 			compiledRules = compile(new CompilationContext());
 			if (RuleBase.useCache)
-				compiledRules = Compiled.makeCachedRuleBase(compiledRules);
+				compiledRules = Compiled.makeCachedRuleBase(compiledRules,
+					engine.frontend().getTablingCache(), this, getPredId());
 			upToDateWith = engine.frontend().updateCounter;
 		}
 		return compiledRules;
 	}
 
-	public SemiDetCompiled getSemiDetCompiledRules() {
+	public synchronized SemiDetCompiled getSemiDetCompiledRules() {
 		uptodateCheck();
 		if (semidetCompiledRules == null) {
 			Compiled compiled = getCompiled();
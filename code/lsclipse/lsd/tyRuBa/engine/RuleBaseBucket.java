@@ -18,6 +18,7 @@
 package tyRuBa.engine;
 
 import java.io.File;
+import java.util.HashSet;
 
 import junit.framework.Assert;
 import tyRuBa.modes.TypeModeError;
@@ -53,6 +54,9 @@ public abstract class RuleBaseBucket extends QueryEngine {
 	FrontEnd frontend;
 	BucketModedRuleBaseIndex rulebase;
 
+	/** The PredicateIdentifiers this bucket has inserted facts or rules for */
+	private HashSet predicates = new HashSet();
+
 	public void setOutdated() {
 		synchronized (frontend) {
 		    frontend.getFrontEndValidatorManager().update(validator.handle(), new Boolean(true), null);
@@ -87,6 +91,7 @@ public abstract class RuleBaseBucket extends QueryEngine {
 
 	/** Add a fact into this bucket */
 	public void insert(RBComponent t) throws TypeModeError {
+		predicates.add(t.getPredId());
 		super.insert(new ValidatorComponent(t, validator));
 	}
 
@@ -119,7 +124,10 @@ public abstract class RuleBaseBucket extends QueryEngine {
 		validator = frontend.obtainGroupValidator(identifier, temporary);
 		// And also clear out the stuff in our componentVector
 		rulebase.clear();
-		frontend.flush();
+		// Only the tables that depend on what was in this bucket are out of date
+		frontend.getTablingCache().changed(predicates);
+		predicates.clear();
+		frontend.updateCounter++;
 	}
 
 	public FrontEnd frontend() {
@@ -160,7 +168,7 @@ public abstract class RuleBaseBucket extends QueryEngine {
 				clear();
 				frontend.removeBucket(this);
 				//if it was a temporary bucket, delete the database (if it exists)
-				if (temporary) {
+				if (temporary && !holdOn.isInMemory()) {
 			        File f = new File(getStoragePath());
 			        Files.deleteDirectory(f);
 				}
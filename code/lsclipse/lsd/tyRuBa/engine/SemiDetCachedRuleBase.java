@@ -17,52 +17,54 @@
 */
 package tyRuBa.engine;
 
-import java.util.HashMap;
-import java.util.Map;
-
-import serp.util.SoftValueMap;
 import tyRuBa.engine.compilation.SemiDetCompiled;
 
 public class SemiDetCachedRuleBase extends SemiDetCompiled {
 
 	SemiDetCompiled compiledContents;
 
-	/** Cache of already performed (simple)queries. */
-	private Map cache = null;
+	/** Where the answers of already performed (simple)queries are kept. */
+	private final TablingCache table;
+
+	/** The rulebase compiledContents comes from, its tables are kept under it. */
+	private final RuleBase rules;
+
+	private final PredicateIdentifier predId;
 
-	public SemiDetCachedRuleBase(SemiDetCompiled compiledRuleBase) {
+	public SemiDetCachedRuleBase(SemiDetCompiled compiledRuleBase, TablingCache table,
+	RuleBase rules, PredicateIdentifier predId) {
 		super(compiledRuleBase.getMode());
 		compiledContents = compiledRuleBase;
-		initCache();
-	}
-
-	private void initCache() {
-		cache = RuleBase.softCache ? (Map) new SoftValueMap() : new HashMap();
+		this.table = table;
+		this.rules = rules;
+		this.predId = predId;
 	}
 
 	/** Unification, check cache first */
 	public Frame runSemiDet(Object input, RBContext context) {
 		final RBTuple other = (RBTuple)input;
-		FormKey k = new FormKey(other);
-		CacheEntry entry = (CacheEntry) cache.get(k);
-		Frame cachedResult;
-		if (entry == null
-			|| (cachedResult = entry.getCachedResult()) == null) {
+		TablingCache.Entry entry = table.lookup(rules, true, other);
+		if (entry == null) {
 			/* Not found in the cache */
-			if (!RuleBase.silent)
-				if (entry == null)
-					System.err.print(".");
-				else
-					System.err.print("@");
-			Frame result = compiledContents.runSemiDet(input, context);
-			entry = new CacheEntry(k, result);
-			cache.put(k, entry);
-			return result;
+			entry = table.put(rules, true, predId, other, null);
+			if (entry == null) /* another thread is filling it */
+				return compiledContents.runSemiDet(input, context);
+			long start = table.startFilling(entry);
+			boolean done = false;
+			try {
+				Frame result = compiledContents.runSemiDet(input, context);
+				entry.setAnswers(result);
+				done = true;
+				return result;
+			} finally {
+				table.doneFilling(entry, start, done ? 1 : 0, done);
+			}
 		} else { /* Found in the Cache */
-			if (!RuleBase.silent)
-				System.err.print("H");
+			Frame cachedResult = (Frame) entry.getAnswers();
+			if (cachedResult == null)
+				return null;
 			final Frame call = new Frame();
-			if (other.sameForm(entry.key.theKey, call, new Frame())) {
+			if (other.sameForm(entry.getCall(), call, new Frame())) {
 				return call.callResult(cachedResult);
 			} else {
 				throw new Error("Should never happen");
@@ -70,16 +72,14 @@ public class SemiDetCachedRuleBase extends SemiDetCompiled {
 		}
 	}
 
-	private class CacheEntry {
-		FormKey key;
-		Frame result;
-		CacheEntry(FormKey k, Frame r) {
-			result = r;
-			key = k;
-		}
-		Frame getCachedResult() {
-			return result;
-		}
+	public boolean canPrefetch() {
+		return compiledContents.canPrefetch();
+	}
+
+	/** Only worth passing on when the answer is not cached. */
+	public void prefetch(Object input, RBContext context) {
+		if (!table.contains(rules, true, (RBTuple)input))
+			compiledContents.prefetch(input, context);
 	}
 	
 	public String toString() {
@@ -0,0 +1,590 @@
+/* 
+*    Logical Structural Diff (LSDiff)  
+*    Copyright (C) <2015>  <Dr. Miryung Kim miryung@cs.ucla.edu>
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package tyRuBa.engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import tyRuBa.engine.compilation.CompilationContext;
+import tyRuBa.engine.factbase.FactBase;
+import tyRuBa.engine.visitor.ExpressionVisitor;
+import tyRuBa.modes.BindingList;
+import tyRuBa.modes.Factory;
+import tyRuBa.modes.Mode;
+import tyRuBa.modes.PredicateMode;
+import tyRuBa.modes.TypeModeError;
+import tyRuBa.parser.ParseException;
+import tyRuBa.util.ElementSource;
+
+/**
+ * Evaluates the rules of derived predicates bottom up, a set of facts at a
+ * time, and replaces the rules by the facts they derive. Predicates that
+ * depend on each other are evaluated together, in strata ordered so that a
+ * predicate that is negated is derived completely before it is used. Within
+ * a stratum the evaluation is semi-naive: after the first round a rule only
+ * produces facts from at least one fact that was new in the round before,
+ * until no more new facts come out.
+ * <p>
+ * Calls to predicates and negations of calls are joined with the facts in
+ * memory, indexed on the arguments that are bound. Anything else in a rule
+ * body is run as a query for each frame.
+ */
+public class SemiNaiveEvaluator {
+
+	private final QueryEngine engine;
+	private final ModedRuleBaseIndex rulebases;
+
+	/** Derived PredicateIdentifier => ArrayList of Clauses */
+	private HashMap clauses = new HashMap();
+
+	/** PredicateIdentifier => Relation, of the facts that have been read in
+	 * or derived so far. Predicates that can not be read in map to null. */
+	private HashMap relations = new HashMap();
+
+	/** Derived PredicateIdentifier => HashSet of the facts it already had */
+	private HashMap storedFacts = new HashMap();
+
+	/** A rule with a body that is a conjunction of literals. */
+	private static class Clause {
+		final RBTuple head;
+		final RBExpression[] literals;
+
+		Clause(RBTuple head, ArrayList literals) {
+			this.head = head;
+			this.literals = (RBExpression[]) literals.toArray(new RBExpression[literals.size()]);
+		}
+
+		public String toString() {
+			return head + " :- " + Arrays.asList(literals);
+		}
+	}
+
+	/** A set of facts, with indexes on the argument positions that are looked up. */
+	private static class Relation {
+		final HashSet tuples = new HashSet();
+		final ArrayList list = new ArrayList();
+		/** Integer mask of the bound positions => HashMap key => ArrayList */
+		private final HashMap indexes = new HashMap();
+
+		boolean add(RBTuple tuple) {
+			if (!tuples.add(tuple))
+				return false;
+			list.add(tuple);
+			for (Iterator iter = indexes.entrySet().iterator(); iter.hasNext();) {
+				Map.Entry entry = (Map.Entry) iter.next();
+				int mask = ((Integer) entry.getKey()).intValue();
+				addTo((HashMap) entry.getValue(), keyOf(mask, tuple), tuple);
+			}
+			return true;
+		}
+
+		boolean isEmpty() {
+			return list.isEmpty();
+		}
+
+		/** The facts that can match pattern. */
+		List lookup(RBTuple pattern) {
+			int mask = 0;
+			for (int i = 0; i < pattern.getNumSubterms() && i < 31; i++) {
+				if (pattern.isGround(i))
+					mask |= 1 << i;
+			}
+			if (mask == 0)
+				return list;
+			Integer key = new Integer(mask);
+			HashMap index = (HashMap) indexes.get(key);
+			if (index == null) {
+				index = new HashMap();
+				for (int i = 0; i < list.size(); i++) {
+					RBTuple tuple = (RBTuple) list.get(i);
+					addTo(index, keyOf(mask, tuple), tuple);
+				}
+				indexes.put(key, index);
+			}
+			List result = (List) index.get(keyOf(mask, pattern));
+			return result == null ? Collections.EMPTY_LIST : result;
+		}
+
+		private static RBTuple keyOf(int mask, RBTuple tuple) {
+			ArrayList key = new ArrayList();
+			for (int i = 0; i < tuple.getNumSubterms() && i < 31; i++) {
+				if ((mask & (1 << i)) != 0)
+					key.add(tuple.getSubterm(i));
+			}
+			return RBTuple.make(key);
+		}
+
+		private static void addTo(HashMap index, RBTuple key, RBTuple tuple) {
+			ArrayList tuples = (ArrayList) index.get(key);
+			if (tuples == null) {
+				tuples = new ArrayList();
+				index.put(key, tuples);
+			}
+			tuples.add(tuple);
+		}
+	}
+
+	SemiNaiveEvaluator(QueryEngine engine, ModedRuleBaseIndex rulebases) {
+		this.engine = engine;
+		this.rulebases = rulebases;
+	}
+
+	/**
+	 * Derives all the facts of preds, and of the predicates with rules they
+	 * depend on, and replaces their rules by those facts. Nothing is changed
+	 * if the rules can not be evaluated bottom up.
+	 */
+	void materialize(PredicateIdentifier[] preds) throws TypeModeError,
+	ParseException {
+		for (int i = 0; i < preds.length; i++) {
+			collectClauses(preds[i]);
+		}
+		ArrayList strata = stratify();
+		for (int i = 0; i < strata.size(); i++) {
+			evaluate((ArrayList) strata.get(i));
+		}
+		for (Iterator iter = clauses.keySet().iterator(); iter.hasNext();) {
+			PredicateIdentifier pred = (PredicateIdentifier) iter.next();
+			HashSet stored = (HashSet) storedFacts.get(pred);
+			ArrayList derived = new ArrayList();
+			ArrayList all = ((Relation) relations.get(pred)).list;
+			for (int i = 0; i < all.size(); i++) {
+				if (!stored.contains(all.get(i)))
+					derived.add(all.get(i));
+			}
+			rulebases.getModedRuleBases(pred).materialize(derived);
+		}
+		engine.frontend().updateCounter++;
+	}
+
+	/** Finds the rules of pred and of the predicates with rules it calls. */
+	private void collectClauses(PredicateIdentifier pred) throws TypeModeError {
+		if (clauses.containsKey(pred))
+			return;
+		ArrayList rules = rulebases.getModedRuleBases(pred).getRules();
+		if (rules.isEmpty())
+			return;
+		ArrayList predClauses = new ArrayList();
+		clauses.put(pred, predClauses);
+		for (int i = 0; i < rules.size(); i++) {
+			RBComponent rule = (RBComponent) rules.get(i);
+			if (rule instanceof RBRule) {
+				addClauses(rule.getArgs(), ((RBRule) rule).getCondition(), predClauses);
+			} else {
+				predClauses.add(new Clause(rule.getArgs(), new ArrayList()));
+			}
+		}
+		for (int i = 0; i < predClauses.size(); i++) {
+			Clause clause = (Clause) predClauses.get(i);
+			for (int j = 0; j < clause.literals.length; j++) {
+				for (Iterator iter = calledPredicates(clause.literals[j]).iterator(); iter.hasNext();) {
+					collectClauses((PredicateIdentifier) iter.next());
+				}
+			}
+		}
+	}
+
+	/** Splits a condition in normal form into one clause per disjunct. */
+	private static void addClauses(RBTuple head, RBExpression cond, ArrayList result) {
+		if (cond instanceof RBDisjunction) {
+			RBDisjunction disjunction = (RBDisjunction) cond;
+			for (int i = 0; i < disjunction.getNumSubexps(); i++) {
+				addClauses(head, disjunction.getSubexp(i), result);
+			}
+		} else {
+			ArrayList literals = new ArrayList();
+			addLiterals(cond, literals);
+			result.add(new Clause(head, literals));
+		}
+	}
+
+	private static void addLiterals(RBExpression exp, ArrayList literals) {
+		if (exp instanceof RBConjunction) {
+			RBConjunction conjunction = (RBConjunction) exp;
+			for (int i = 0; i < conjunction.getNumSubexps(); i++) {
+				addLiterals(conjunction.getSubexp(i), literals);
+			}
+		} else {
+			literals.add(exp);
+		}
+	}
+
+	/** Whether literal is a call, rather than a negation or some other query. */
+	private static boolean isPositive(RBExpression literal) {
+		return literal instanceof RBPredicateExpression;
+	}
+
+	/** The predicates that literal calls, at any depth. */
+	private static HashSet calledPredicates(RBExpression literal) {
+		final HashSet result = new HashSet();
+		literal.accept(new ExpressionVisitor() {
+			private void visitAll(RBCompoundExpression exp) {
+				for (int i = 0; i < exp.getNumSubexps(); i++) {
+					exp.getSubexp(i).accept(this);
+				}
+			}
+			public Object visit(RBConjunction conjunction) {
+				visitAll(conjunction);
+				return null;
+			}
+			public Object visit(RBDisjunction disjunction) {
+				visitAll(disjunction);
+				return null;
+			}
+			public Object visit(RBExistsQuantifier exists) {
+				return exists.getExp().accept(this);
+			}
+			public Object visit(RBFindAll findAll) {
+				return findAll.getQuery().accept(this);
+			}
+			public Object visit(RBCountAll count) {
+				return count.getQuery().accept(this);
+			}
+			public Object visit(RBModeSwitchExpression modeSwitch) {
+				for (int i = 0; i < modeSwitch.getNumModeCases(); i++) {
+					modeSwitch.getModeCaseAt(i).getExp().accept(this);
+				}
+				if (modeSwitch.getDefaultExp() != null)
+					modeSwitch.getDefaultExp().accept(this);
+				return null;
+			}
+			public Object visit(RBNotFilter notFilter) {
+				return notFilter.getNegatedQuery().accept(this);
+			}
+			public Object visit(RBPredicateExpression predExp) {
+				result.add(predExp.getPredId());
+				return null;
+			}
+			public Object visit(RBTestFilter testFilter) {
+				return testFilter.getQuery().accept(this);
+			}
+			public Object visit(RBUniqueQuantifier unique) {
+				return unique.getExp().accept(this);
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * Orders the derived predicates into strata: the strongly connected
+	 * components of the call graph (Tarjan's algorithm), each one after the
+	 * ones it calls. A predicate may only call predicates in its own
+	 * stratum positively.
+	 */
+	private ArrayList stratify() throws TypeModeError {
+		ArrayList strata = new ArrayList();
+		HashMap numbers = new HashMap();
+		HashMap lowLinks = new HashMap();
+		ArrayList stack = new ArrayList();
+		for (Iterator iter = clauses.keySet().iterator(); iter.hasNext();) {
+			PredicateIdentifier pred = (PredicateIdentifier) iter.next();
+			if (!numbers.containsKey(pred))
+				strongConnect(pred, numbers, lowLinks, stack, strata);
+		}
+		for (int i = 0; i < strata.size(); i++) {
+			ArrayList stratum = (ArrayList) strata.get(i);
+			for (int j = 0; j < stratum.size(); j++) {
+				PredicateIdentifier pred = (PredicateIdentifier) stratum.get(j);
+				ArrayList predClauses = (ArrayList) clauses.get(pred);
+				for (int k = 0; k < predClauses.size(); k++) {
+					Clause clause = (Clause) predClauses.get(k);
+					for (int l = 0; l < clause.literals.length; l++) {
+						if (isPositive(clause.literals[l]))
+							continue;
+						for (Iterator iter = calledPredicates(clause.literals[l]).iterator(); iter.hasNext();) {
+							if (stratum.contains(iter.next()))
+								throw new TypeModeError("Rules for " + pred
+									+ " are not stratified: " + clause.literals[l]);
+						}
+					}
+				}
+			}
+		}
+		return strata;
+	}
+
+	private int strongConnect(PredicateIdentifier pred, HashMap numbers,
+	HashMap lowLinks, ArrayList stack, ArrayList strata) {
+		int number = numbers.size();
+		numbers.put(pred, new Integer(number));
+		int lowLink = number;
+		stack.add(pred);
+		ArrayList predClauses = (ArrayList) clauses.get(pred);
+		for (int i = 0; i < predClauses.size(); i++) {
+			Clause clause = (Clause) predClauses.get(i);
+			for (int j = 0; j < clause.literals.length; j++) {
+				for (Iterator iter = calledPredicates(clause.literals[j]).iterator(); iter.hasNext();) {
+					PredicateIdentifier called = (PredicateIdentifier) iter.next();
+					if (!clauses.containsKey(called))
+						continue;
+					if (!numbers.containsKey(called)) {
+						lowLink = Math.min(lowLink,
+							strongConnect(called, numbers, lowLinks, stack, strata));
+					} else if (stack.contains(called)) {
+						lowLink = Math.min(lowLink, ((Integer) numbers.get(called)).intValue());
+					}
+				}
+			}
+		}
+		lowLinks.put(pred, new Integer(lowLink));
+		if (lowLink == number) {
+			ArrayList stratum = new ArrayList();
+			PredicateIdentifier member;
+			do {
+				member = (PredicateIdentifier) stack.remove(stack.size() - 1);
+				stratum.add(member);
+			} while (!member.equals(pred));
+			strata.add(stratum);
+		}
+		return lowLink;
+	}
+
+	/** Derives all the facts of the predicates in stratum. */
+	private void evaluate(ArrayList stratum) throws TypeModeError, ParseException {
+		HashMap delta = new HashMap();
+		for (int i = 0; i < stratum.size(); i++) {
+			PredicateIdentifier pred = (PredicateIdentifier) stratum.get(i);
+			Relation facts = readFacts(pred);
+			HashSet stored = new HashSet(facts.tuples);
+			storedFacts.put(pred, stored);
+			relations.put(pred, facts);
+			delta.put(pred, new Relation());
+		}
+		// the first round uses all the facts for every call
+		HashMap next = newRelations(stratum);
+		for (int i = 0; i < stratum.size(); i++) {
+			PredicateIdentifier pred = (PredicateIdentifier) stratum.get(i);
+			ArrayList predClauses = (ArrayList) clauses.get(pred);
+			for (int j = 0; j < predClauses.size(); j++) {
+				derive(pred, (Clause) predClauses.get(j), -1, delta, next);
+			}
+		}
+		delta = addNew(stratum, next);
+		// the next rounds need a fact that is new for one of the calls
+		while (!isEmpty(delta)) {
+			next = newRelations(stratum);
+			for (int i = 0; i < stratum.size(); i++) {
+				PredicateIdentifier pred = (PredicateIdentifier) stratum.get(i);
+				ArrayList predClauses = (ArrayList) clauses.get(pred);
+				for (int j = 0; j < predClauses.size(); j++) {
+					Clause clause = (Clause) predClauses.get(j);
+					for (int k = 0; k < clause.literals.length; k++) {
+						if (isPositive(clause.literals[k])) {
+							Relation newFacts = (Relation) delta.get(
+								((RBPredicateExpression) clause.literals[k]).getPredId());
+							if (newFacts != null && !newFacts.isEmpty())
+								derive(pred, clause, k, delta, next);
+						}
+					}
+				}
+			}
+			delta = addNew(stratum, next);
+		}
+	}
+
+	private static HashMap newRelations(ArrayList stratum) {
+		HashMap result = new HashMap();
+		for (int i = 0; i < stratum.size(); i++) {
+			result.put(stratum.get(i), new Relation());
+		}
+		return result;
+	}
+
+	/** Adds the facts in next to the relations, returns the ones that were new. */
+	private HashMap addNew(ArrayList stratum, HashMap next) {
+		HashMap delta = newRelations(stratum);
+		for (int i = 0; i < stratum.size(); i++) {
+			Object pred = stratum.get(i);
+			Relation all = (Relation) relations.get(pred);
+			Relation newFacts = (Relation) delta.get(pred);
+			ArrayList derived = ((Relation) next.get(pred)).list;
+			for (int j = 0; j < derived.size(); j++) {
+				RBTuple tuple = (RBTuple) derived.get(j);
+				if (all.add(tuple))
+					newFacts.add(tuple);
+			}
+		}
+		return delta;
+	}
+
+	private static boolean isEmpty(HashMap delta) {
+		for (Iterator iter = delta.values().iterator(); iter.hasNext();) {
+			if (!((Relation) iter.next()).isEmpty())
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Runs clause, with the new facts for the literal at position deltaPos
+	 * (which goes first) if that is not -1, and adds the facts it derives
+	 * for pred to next.
+	 */
+	private void derive(PredicateIdentifier pred, Clause clause, int deltaPos,
+	HashMap delta, HashMap next) throws TypeModeError, ParseException {
+		ArrayList frames = new ArrayList();
+		frames.add(new Frame());
+		if (deltaPos != -1) {
+			RBPredicateExpression literal = (RBPredicateExpression) clause.literals[deltaPos];
+			frames = join(frames, literal, (Relation) delta.get(literal.getPredId()));
+		}
+		for (int i = 0; i < clause.literals.length && !frames.isEmpty(); i++) {
+			if (i != deltaPos)
+				frames = run(frames, clause.literals[i]);
+		}
+		Relation derived = (Relation) next.get(pred);
+		Relation all = (Relation) relations.get(pred);
+		for (int i = 0; i < frames.size(); i++) {
+			RBTuple fact = (RBTuple) clause.head.substitute((Frame) frames.get(i));
+			if (!fact.isGround())
+				throw new TypeModeError("Cannot derive the facts of " + pred
+					+ " bottom up: " + clause + " derives " + fact);
+			if (!all.tuples.contains(fact))
+				derived.add(fact);
+		}
+	}
+
+	private ArrayList run(ArrayList frames, RBExpression literal) throws TypeModeError,
+	ParseException {
+		if (literal instanceof RBPredicateExpression) {
+			RBPredicateExpression call = (RBPredicateExpression) literal;
+			Relation facts = getRelation(call.getPredId());
+			if (facts != null)
+				return join(frames, call, facts);
+		} else if (literal instanceof RBNotFilter
+				&& ((RBNotFilter) literal).getNegatedQuery() instanceof RBPredicateExpression) {
+			RBPredicateExpression call = (RBPredicateExpression)
+				((RBNotFilter) literal).getNegatedQuery();
+			Relation facts = getRelation(call.getPredId());
+			if (facts != null)
+				return antiJoin(frames, call, facts);
+		}
+		ArrayList result = new ArrayList();
+		Object[] batch = new Object[ElementSource.BATCH_SIZE];
+		for (int i = 0; i < frames.size(); i++) {
+			Frame frame = (Frame) frames.get(i);
+			ElementSource answers = query(literal.substitute(frame));
+			int n;
+			while ((n = answers.nextBatch(batch)) > 0) {
+				for (int j = 0; j < n; j++)
+					result.add(frame.append((Frame) batch[j]));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Runs a query directly, not through QueryEngine.frameQuery: the queries
+	 * of other threads are stopped while materializing, which would keep a
+	 * query from registering as well.
+	 */
+	private ElementSource query(RBExpression query) throws TypeModeError {
+		return engine.prepareForRunning(query).start();
+	}
+
+	private static ArrayList join(ArrayList frames, RBPredicateExpression call, Relation facts) {
+		ArrayList result = new ArrayList();
+		RBTuple args = call.getArgs();
+		for (int i = 0; i < frames.size(); i++) {
+			Frame frame = (Frame) frames.get(i);
+			List candidates = facts.lookup((RBTuple) args.substitute(frame));
+			for (int j = 0; j < candidates.size(); j++) {
+				Frame joined = args.unify((RBTuple) candidates.get(j), (Frame) frame.clone());
+				if (joined != null)
+					result.add(joined);
+			}
+		}
+		return result;
+	}
+
+	private static ArrayList antiJoin(ArrayList frames, RBPredicateExpression call, Relation facts) {
+		ArrayList result = new ArrayList();
+		RBTuple args = call.getArgs();
+		for (int i = 0; i < frames.size(); i++) {
+			Frame frame = (Frame) frames.get(i);
+			List candidates = facts.lookup((RBTuple) args.substitute(frame));
+			boolean found = false;
+			for (int j = 0; j < candidates.size() && !found; j++) {
+				found = args.unify((RBTuple) candidates.get(j), (Frame) frame.clone()) != null;
+			}
+			if (!found)
+				result.add(frame);
+		}
+		return result;
+	}
+
+	/**
+	 * The facts of pred. Predicates that are not derived are read in with a
+	 * query, if they have a mode with all arguments free.
+	 */
+	private Relation getRelation(PredicateIdentifier pred) throws TypeModeError,
+	ParseException {
+		if (relations.containsKey(pred))
+			return (Relation) relations.get(pred);
+		Relation result = null;
+		BindingList allFree = Factory.makeBindingList(pred.getArity(), Factory.makeFree());
+		if (rulebases.getBest(pred, allFree) != null) {
+			result = new Relation();
+			RBTuple goal = freeGoal(pred);
+			ElementSource frames = query(new RBPredicateExpression(pred, goal));
+			addAll(result, goal, frames);
+		}
+		relations.put(pred, result);
+		return result;
+	}
+
+	/** The facts that a derived predicate has besides its rules. */
+	private Relation readFacts(PredicateIdentifier pred) throws TypeModeError {
+		Relation result = new Relation();
+		FactBase facts = rulebases.getModedRuleBases(pred).facts;
+		if (!facts.isEmpty()) {
+			PredicateMode mode = Factory.makePredicateMode(
+				Factory.makeBindingList(pred.getArity(), Factory.makeFree()), Mode.makeNondet());
+			RBTuple goal = freeGoal(pred);
+			ElementSource frames = facts.compile(mode, new CompilationContext())
+				.runNonDet(goal, new RBContext());
+			addAll(result, goal, frames);
+		}
+		return result;
+	}
+
+	/** Adds goal instantiated with each of frames to relation. */
+	private static void addAll(Relation relation, RBTuple goal, ElementSource frames) {
+		Object[] batch = new Object[ElementSource.BATCH_SIZE];
+		int n;
+		while ((n = frames.nextBatch(batch)) > 0) {
+			for (int i = 0; i < n; i++)
+				relation.add((RBTuple) goal.substitute((Frame) batch[i]));
+		}
+	}
+
+	private static RBTuple freeGoal(PredicateIdentifier pred) {
+		RBTerm[] vars = new RBTerm[pred.getArity()];
+		for (int i = 0; i < vars.length; i++) {
+			vars[i] = RBVariable.makeUnique("?arg" + i);
+		}
+		return RBTuple.make(vars);
+	}
+
+}
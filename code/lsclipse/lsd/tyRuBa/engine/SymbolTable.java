@@ -0,0 +1,92 @@
+/* 
+*    Logical Structural Diff (LSDiff)  
+*    Copyright (C) <2015>  <Dr. Miryung Kim miryung@cs.ucla.edu>
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package tyRuBa.engine;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interns the string constants of all the QueryEngines to RBSymbols. There is
+ * one RBSymbol per distinct string, so unifying two constants compares two
+ * references instead of two (often long) strings.
+ * 
+ * The symbols are only held weakly: a symbol that no term refers to any more
+ * is collected, and its entry is removed the next time a symbol is made.
+ * RBSymbols are written to disk by name and interned again when they are read
+ * back in.
+ */
+public class SymbolTable {
+
+	/** String => SymbolRef */
+	private static final ConcurrentHashMap symbols = new ConcurrentHashMap();
+
+	/** The SymbolRefs of the symbols that have been collected. */
+	private static final ReferenceQueue collected = new ReferenceQueue();
+
+	private static final class SymbolRef extends WeakReference {
+
+		/** The key of this entry, the symbol is gone when it is removed. */
+		private final String name;
+
+		SymbolRef(String name, RBSymbol symbol) {
+			super(symbol, collected);
+			this.name = name;
+		}
+	}
+
+	private SymbolTable() {
+	}
+
+	/** The RBSymbol for name, made if there is none yet. */
+	public static RBSymbol intern(String name) {
+		RBSymbol symbol = lookup(name);
+		if (symbol == null) {
+			synchronized (SymbolTable.class) {
+				purge();
+				symbol = lookup(name);
+				if (symbol == null) {
+					name = name.intern();
+					symbol = new RBSymbol(name);
+					symbols.put(name, new SymbolRef(name, symbol));
+				}
+			}
+		}
+		return symbol;
+	}
+
+	private static RBSymbol lookup(String name) {
+		SymbolRef ref = (SymbolRef) symbols.get(name);
+		return ref == null ? null : (RBSymbol) ref.get();
+	}
+
+	/** Removes the entries of the symbols that have been collected. */
+	private static void purge() {
+		SymbolRef ref;
+		while ((ref = (SymbolRef) collected.poll()) != null) {
+			symbols.remove(ref.name, ref);
+		}
+	}
+
+	/** Number of symbols in the table. */
+	public static synchronized int size() {
+		purge();
+		return symbols.size();
+	}
+
+}
@@ -0,0 +1,518 @@
+/* 
+*    Logical Structural Diff (LSDiff)  
+*    Copyright (C) <2015>  <Dr. Miryung Kim miryung@cs.ucla.edu>
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package tyRuBa.engine;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+
+import tyRuBa.util.ElementSource;
+import tyRuBa.util.PrintingState;
+import tyRuBa.util.pager.TinyLFUEvictionPolicy;
+
+/**
+ * Keeps the answers to calls of rulebases (tables) for CachedRuleBase and
+ * SemiDetCachedRuleBase. There is one TablingCache per FrontEnd, its limits
+ * hold for the tables of all the rulebases together.
+ * <p>
+ * The number of tables and their estimated size in bytes are bounded. When
+ * there is no room, W-TinyLFU decides which table goes, where a table only
+ * takes the place of another one if it is used more often, weighed by how
+ * long it took to fill per byte. A table that comes out bigger than a
+ * MAX_SHARE'th of the memory bound is not kept at all. A table that is being
+ * filled is never dropped: a recursive call has to find it to stop.
+ * <p>
+ * While a table is filled the cache notes which other tables it calls. When
+ * the facts or rules of a predicate change, the tables of that predicate, and
+ * the tables that called them directly or indirectly, are dropped the next
+ * time they are looked up. The other tables stay. The tables that called a
+ * table that is dropped take over what it depended on, so they do not hold
+ * on to it.
+ * <p>
+ * All methods are synchronized, so queries on different threads can share
+ * the tables. A table is only shared once it is done: until then it belongs
+ * to the thread that made it (its answers are collected as that thread reads
+ * them), and the other threads run the call without a table.
+ */
+public class TablingCache {
+
+	/** Default bound on the number of tables. */
+	public static final int DEFAULT_MAX_ENTRIES = 100000;
+
+	/** Estimated bytes taken by a table besides its answers. */
+	static final long ENTRY_BYTES = 256;
+
+	/** Estimated bytes taken by an answer in a table. */
+	static final long ANSWER_BYTES = 128;
+
+	/** A table bigger than this share of the memory bound is not kept. */
+	private static final int MAX_SHARE = 16;
+
+	private int maxEntries = DEFAULT_MAX_ENTRIES;
+
+	private long maxBytes = Runtime.getRuntime().maxMemory() / 8;
+
+	private long estimatedBytes = 0;
+
+	/** Key => Entry */
+	private HashMap entries = new HashMap();
+
+	private final CostAwarePolicy policy = new CostAwarePolicy();
+
+	/** Counts the changes, each change gets the next number. */
+	private long clock = 0;
+
+	/** PredicateIdentifier => Long, the number of its last change */
+	private HashMap lastChanged = new HashMap();
+
+	/** Per thread, an ArrayList of the Entries being filled, innermost last. */
+	private final ThreadLocal filling = new ThreadLocal() {
+		protected Object initialValue() {
+			return new ArrayList();
+		}
+	};
+
+	private final TablingStatistics statistics = new TablingStatistics(this);
+
+	/** Which table: of which rulebase, first answer only or not, for a call of which form. */
+	private static final class Key {
+		final RuleBase rules;
+		final boolean first;
+		final FormKey form;
+
+		Key(RuleBase rules, boolean first, RBTuple call) {
+			this.rules = rules;
+			this.first = first;
+			this.form = new FormKey(call);
+		}
+
+		public boolean equals(Object other) {
+			if (other instanceof Key) {
+				Key key = (Key) other;
+				return rules == key.rules && first == key.first && form.equals(key.form);
+			} else {
+				return false;
+			}
+		}
+
+		public int hashCode() {
+			// RuleBases do not want to be hashed
+			return System.identityHashCode(rules) * 31 + form.hashCode() + (first ? 1 : 0);
+		}
+	}
+
+	/**
+	 * What the answers of a table depend on: the facts and rules of its
+	 * predicate as they were when it was made, and the tables it called. Kept
+	 * apart from the Entry so that it does not hold on to the answers.
+	 */
+	private static final class Dependencies {
+		final PredicateIdentifier pred;
+		final long made;
+		/** Dependencies of the tables called that are in the cache */
+		final HashSet callees = new HashSet();
+		/** Dependencies of the tables in the cache that call this one */
+		final HashSet callers = new HashSet();
+		/**
+		 * PredicateIdentifier => Long, the predicates that the tables called
+		 * depended on when they were dropped (see drop), with the earliest
+		 * time they were made. Null if there are none.
+		 */
+		HashMap dropped = null;
+		/** Value of the clock when all of these were last found up to date */
+		long checkedAt = -1;
+		boolean stale = false;
+
+		Dependencies(PredicateIdentifier pred, long made) {
+			this.pred = pred;
+			this.made = made;
+		}
+
+		void dependsOn(PredicateIdentifier pred, long made) {
+			if (dropped == null)
+				dropped = new HashMap();
+			Long old = (Long) dropped.get(pred);
+			if (old == null || old.longValue() > made)
+				dropped.put(pred, new Long(made));
+		}
+	}
+
+	/** A table. */
+	static final class Entry {
+		private final Key key;
+		private final Dependencies dependencies;
+		/** An ElementCollector, or for a first answer table the Frame (null if the call fails). */
+		private Object answers;
+		private long bytes = ENTRY_BYTES;
+		/** Time spent filling it */
+		private long nanos = 0;
+		/** How many fillings are running */
+		private int fillers = 0;
+		private boolean done = false;
+		private boolean inCache = true;
+		/** The thread that fills it */
+		private final Thread owner = Thread.currentThread();
+
+		Entry(Key key, Dependencies dependencies, Object answers) {
+			this.key = key;
+			this.dependencies = dependencies;
+			this.answers = answers;
+		}
+
+		RBTuple getCall() {
+			return (RBTuple) key.form.theKey;
+		}
+
+		Object getAnswers() {
+			return answers;
+		}
+
+		/** Only for first answer tables, before they are done. */
+		void setAnswers(Frame answer) {
+			answers = answer;
+		}
+	}
+
+	/**
+	 * W-TinyLFU where how often a table is used is weighed by how long it
+	 * took to fill per byte it takes.
+	 */
+	private class CostAwarePolicy extends TinyLFUEvictionPolicy {
+
+		protected boolean admit(Object candidate, int candidateFrequency, Object victim,
+				int victimFrequency) {
+			return candidateFrequency * costPerByte(candidate) > victimFrequency * costPerByte(victim);
+		}
+
+		public String getName() {
+			return "cost aware W-TinyLFU";
+		}
+	}
+
+	/** Only called by the policy, while this is locked. */
+	private double costPerByte(Object key) {
+		Entry entry = (Entry) entries.get(key);
+		return entry == null ? 0 : (entry.nanos + 1.0) / entry.bytes;
+	}
+
+	/**
+	 * Returns the table for a call that can be used, or null if there is
+	 * none. A first answer table can only be used once it is done, another
+	 * thread's table too.
+	 */
+	synchronized Entry lookup(RuleBase rules, boolean first, RBTuple call) {
+		Key key = new Key(rules, first, call);
+		Entry entry = (Entry) entries.get(key);
+		if (entry != null && !isUpToDate(entry.dependencies)) {
+			remove(entry);
+			statistics.invalidated();
+			entry = null;
+		}
+		if (entry == null || (first || !isOwner(entry)) && !entry.done) {
+			statistics.miss();
+			policy.missed(key);
+			return null;
+		} else {
+			statistics.hit();
+			policy.referenced(key);
+			calledFrom(entry);
+			return entry;
+		}
+	}
+
+	/** Whether there is a table for a call, without counting it as a use. */
+	synchronized boolean contains(RuleBase rules, boolean first, RBTuple call) {
+		return entries.containsKey(new Key(rules, first, call));
+	}
+
+	private boolean isOwner(Entry entry) {
+		return entry.owner == Thread.currentThread();
+	}
+
+	/**
+	 * Makes a new table for a call of predicate pred, replacing the one there
+	 * was. The answers to a call of all answers are an ElementCollector, the
+	 * table is filled as it gets them (see filling). A first answer table is
+	 * filled between startFilling and doneFilling. Returns null, and makes no
+	 * table, while another thread is still filling the one there is.
+	 */
+	synchronized Entry put(RuleBase rules, boolean first, PredicateIdentifier pred,
+			RBTuple call, Object answers) {
+		Key key = new Key(rules, first, call);
+		Entry old = (Entry) entries.get(key);
+		if (old != null && !old.done && !isOwner(old))
+			return null;
+		if (old != null)
+			remove(old);
+		Entry entry = new Entry(key, new Dependencies(pred, clock), answers);
+		entries.put(key, entry);
+		estimatedBytes += entry.bytes;
+		policy.admitted(key);
+		calledFrom(entry);
+		// it is about to be filled, so not this one
+		evict(entry);
+		return entry;
+	}
+
+	/**
+	 * An ElementSource that takes the answers from source into entry, and
+	 * marks entry as being filled while it works.
+	 */
+	ElementSource filling(final Entry entry, final ElementSource source) {
+		return new ElementSource() {
+			public int status() {
+				long start = startFilling(entry);
+				int status = NO_ELEMENTS_READY;
+				try {
+					status = source.status();
+				} finally {
+					doneFilling(entry, start, 0, status == NO_MORE_ELEMENTS);
+				}
+				return status;
+			}
+			public Object nextElement() {
+				long start = startFilling(entry);
+				try {
+					return source.nextElement();
+				} finally {
+					doneFilling(entry, start, 1, false);
+				}
+			}
+			public void print(PrintingState p) {
+				source.print(p);
+			}
+			public void release() {
+				source.release();
+			}
+		};
+	}
+
+	/** Returns the time it starts. */
+	synchronized long startFilling(Entry entry) {
+		entry.fillers++;
+		((ArrayList) filling.get()).add(entry);
+		return System.nanoTime();
+	}
+
+	/** Adds newAnswers answers to the size of entry. */
+	synchronized void doneFilling(Entry entry, long start, int newAnswers, boolean done) {
+		ArrayList stack = (ArrayList) filling.get();
+		stack.remove(stack.size() - 1);
+		entry.fillers--;
+		entry.nanos += System.nanoTime() - start;
+		entry.done |= done;
+		long added = newAnswers * ANSWER_BYTES;
+		entry.bytes += added;
+		if (entry.inCache) {
+			estimatedBytes += added;
+			if (entry.fillers == 0 && entry.bytes > maxBytes / MAX_SHARE) {
+				remove(entry);
+				statistics.rejected();
+			}
+		}
+		evict(null);
+	}
+
+	/** Records that the table being filled on this thread calls entry. */
+	private void calledFrom(Entry entry) {
+		ArrayList stack = (ArrayList) filling.get();
+		if (!stack.isEmpty()) {
+			Entry caller = (Entry) stack.get(stack.size() - 1);
+			// a caller that was dropped while it is filled is not looked up again
+			if (caller != entry && caller.inCache) {
+				caller.dependencies.callees.add(entry.dependencies);
+				entry.dependencies.callers.add(caller.dependencies);
+			}
+		}
+	}
+
+	/**
+	 * Whether nothing that dependencies depends on changed since it was made.
+	 * When it is, so is everything it depends on, which is remembered until
+	 * the next change.
+	 */
+	private boolean isUpToDate(Dependencies dependencies) {
+		if (dependencies.stale)
+			return false;
+		if (dependencies.checkedAt == clock)
+			return true;
+		HashSet seen = new HashSet();
+		ArrayList todo = new ArrayList();
+		seen.add(dependencies);
+		todo.add(dependencies);
+		while (!todo.isEmpty()) {
+			Dependencies next = (Dependencies) todo.remove(todo.size() - 1);
+			Long changed = (Long) lastChanged.get(next.pred);
+			if (next.stale || (changed != null && changed.longValue() > next.made)) {
+				dependencies.stale = true;
+				return false;
+			}
+			if (next.dropped != null && changedSince(next.dropped)) {
+				dependencies.stale = true;
+				return false;
+			}
+			for (Iterator iter = next.callees.iterator(); iter.hasNext();) {
+				Dependencies callee = (Dependencies) iter.next();
+				if (callee.checkedAt != clock && seen.add(callee))
+					todo.add(callee);
+			}
+		}
+		for (Iterator iter = seen.iterator(); iter.hasNext();) {
+			((Dependencies) iter.next()).checkedAt = clock;
+		}
+		return true;
+	}
+
+	/** Whether any of the predicates changed since the time they are mapped to. */
+	private boolean changedSince(HashMap made) {
+		for (Iterator iter = made.entrySet().iterator(); iter.hasNext();) {
+			Map.Entry entry = (Map.Entry) iter.next();
+			Long changed = (Long) lastChanged.get(entry.getKey());
+			if (changed != null && changed.longValue() > ((Long) entry.getValue()).longValue())
+				return true;
+		}
+		return false;
+	}
+
+	/** Call when facts or rules of pred are added or taken away. */
+	public synchronized void changed(PredicateIdentifier pred) {
+		lastChanged.put(pred, new Long(++clock));
+	}
+
+	/** Call when facts or rules of each PredicateIdentifier in preds are added or taken away. */
+	public synchronized void changed(Collection preds) {
+		clock++;
+		for (Iterator iter = preds.iterator(); iter.hasNext();) {
+			lastChanged.put(iter.next(), new Long(clock));
+		}
+	}
+
+	/** Drops all the tables. */
+	public synchronized void clear() {
+		Object[] all = entries.values().toArray();
+		for (int i = 0; i < all.length; i++) {
+			remove((Entry) all[i]);
+		}
+	}
+
+	private void remove(Entry entry) {
+		entries.remove(entry.key);
+		policy.removed(entry.key);
+		estimatedBytes -= entry.bytes;
+		entry.inCache = false;
+		drop(entry.dependencies);
+	}
+
+	/**
+	 * Takes the Dependencies of a table that is no longer in the cache out of
+	 * the graph. The tables that called it depend on what it depended on
+	 * instead, so the same changes still invalidate them, and no table in
+	 * the cache keeps it reachable.
+	 */
+	private void drop(Dependencies dropped) {
+		for (Iterator iter = dropped.callees.iterator(); iter.hasNext();) {
+			((Dependencies) iter.next()).callers.remove(dropped);
+		}
+		for (Iterator iter = dropped.callers.iterator(); iter.hasNext();) {
+			Dependencies caller = (Dependencies) iter.next();
+			caller.callees.remove(dropped);
+			caller.stale |= dropped.stale;
+			caller.dependsOn(dropped.pred, dropped.made);
+			if (dropped.dropped != null) {
+				for (Iterator preds = dropped.dropped.entrySet().iterator(); preds.hasNext();) {
+					Map.Entry pred = (Map.Entry) preds.next();
+					caller.dependsOn((PredicateIdentifier) pred.getKey(), ((Long) pred.getValue()).longValue());
+				}
+			}
+			for (Iterator callees = dropped.callees.iterator(); callees.hasNext();) {
+				Dependencies callee = (Dependencies) callees.next();
+				if (callee != caller) {
+					caller.callees.add(callee);
+					callee.callers.add(caller);
+				}
+			}
+		}
+		dropped.callees.clear();
+		dropped.callers.clear();
+	}
+
+	/** Drops tables, other than keep, until the cache is within its bounds. */
+	private void evict(Entry keep) {
+		ArrayList busy = null;
+		while (entries.size() > maxEntries || estimatedBytes > maxBytes) {
+			Object victim = policy.nextVictim();
+			if (victim == null)
+				break;
+			Entry entry = (Entry) entries.get(victim);
+			if (entry.fillers > 0 || entry == keep) {
+				// still needed, it goes back in when the others are out
+				policy.removed(victim);
+				if (busy == null)
+					busy = new ArrayList();
+				busy.add(victim);
+			} else {
+				remove(entry);
+				statistics.evicted();
+			}
+		}
+		if (busy != null) {
+			for (int i = 0; i < busy.size(); i++) {
+				policy.admitted(busy.get(i));
+			}
+		}
+	}
+
+	public synchronized void setMaxEntries(int maxEntries) {
+		this.maxEntries = maxEntries;
+		evict(null);
+	}
+
+	public synchronized int getMaxEntries() {
+		return maxEntries;
+	}
+
+	/** Bounds the estimated size of the tables, in bytes. */
+	public synchronized void setMemoryBound(long maxBytes) {
+		this.maxBytes = maxBytes;
+		evict(null);
+	}
+
+	public synchronized long getMemoryBound() {
+		return maxBytes;
+	}
+
+	public synchronized int getNumEntries() {
+		return entries.size();
+	}
+
+	public synchronized long getEstimatedBytes() {
+		return estimatedBytes;
+	}
+
+	public TablingStatistics getStatistics() {
+		return statistics;
+	}
+
+	public String toString() {
+		return "TablingCache[" + policy.getName() + "] " + statistics;
+	}
+
+}
@@ -0,0 +1,156 @@
+/* 
+*    Logical Structural Diff (LSDiff)  
+*    Copyright (C) <2015>  <Dr. Miryung Kim miryung@cs.ucla.edu>
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package tyRuBa.engine;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import tyRuBa.util.Statistics;
+
+/**
+ * Counts what the TablingCache is doing. Counting is on by default, it only
+ * costs a few atomic increments per call.
+ */
+public class TablingStatistics implements Statistics {
+
+	/** Calls answered from a table (long). */
+	public static final String HITS = "hits";
+	/** Calls that started a new table (long). */
+	public static final String MISSES = "misses";
+	/** hits / (hits + misses) (float). */
+	public static final String HIT_RATIO = "hitRatio";
+	/** Tables dropped to stay within the limits (long). */
+	public static final String EVICTIONS = "evictions";
+	/** Tables dropped because facts or rules they depend on changed (long). */
+	public static final String INVALIDATIONS = "invalidations";
+	/** Tables not kept because they came out too big (long). */
+	public static final String REJECTIONS = "rejections";
+	/** Tables kept now (int). */
+	public static final String ENTRIES = "entries";
+	/** Estimated size of the tables kept now, in bytes (long). */
+	public static final String ESTIMATED_BYTES = "estimatedBytes";
+
+	private final TablingCache cache;
+
+	private volatile boolean gathering = true;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	private final AtomicLong invalidations = new AtomicLong();
+	private final AtomicLong rejections = new AtomicLong();
+
+	TablingStatistics(TablingCache cache) {
+		this.cache = cache;
+	}
+
+	void hit() {
+		if (gathering)
+			hits.incrementAndGet();
+	}
+
+	void miss() {
+		if (gathering)
+			misses.incrementAndGet();
+	}
+
+	void evicted() {
+		if (gathering)
+			evictions.incrementAndGet();
+	}
+
+	void invalidated() {
+		if (gathering)
+			invalidations.incrementAndGet();
+	}
+
+	void rejected() {
+		if (gathering)
+			rejections.incrementAndGet();
+	}
+
+	public void stopGathering() {
+		gathering = false;
+	}
+
+	public void startGathering() {
+		gathering = true;
+	}
+
+	public void reset() {
+		hits.set(0);
+		misses.set(0);
+		evictions.set(0);
+		invalidations.set(0);
+		rejections.set(0);
+	}
+
+	public int getIntStat(String statName) {
+		if (ENTRIES.equals(statName))
+			return cache.getNumEntries();
+		else
+			return (int) getLongStat(statName);
+	}
+
+	public long getLongStat(String statName) {
+		if (HITS.equals(statName))
+			return hits.get();
+		else if (MISSES.equals(statName))
+			return misses.get();
+		else if (EVICTIONS.equals(statName))
+			return evictions.get();
+		else if (INVALIDATIONS.equals(statName))
+			return invalidations.get();
+		else if (REJECTIONS.equals(statName))
+			return rejections.get();
+		else if (ENTRIES.equals(statName))
+			return cache.getNumEntries();
+		else if (ESTIMATED_BYTES.equals(statName))
+			return cache.getEstimatedBytes();
+		else
+			throw new Error("Unknown tabling statistic: " + statName);
+	}
+
+	public float getFloatStat(String statName) {
+		if (HIT_RATIO.equals(statName)) {
+			long h = hits.get();
+			long total = h + misses.get();
+			return total == 0 ? 0 : (float) h / total;
+		} else {
+			return getLongStat(statName);
+		}
+	}
+
+	public Object getObjectStat(String statName) {
+		if (HIT_RATIO.equals(statName))
+			return new Float(getFloatStat(statName));
+		else
+			return new Long(getLongStat(statName));
+	}
+
+	public String toString() {
+		return "Tabling hits = " + hits.get()
+			+ " misses = " + misses.get()
+			+ " hitRatio = " + getFloatStat(HIT_RATIO)
+			+ " evictions = " + evictions.get()
+			+ " invalidations = " + invalidations.get()
+			+ " rejections = " + rejections.get()
+			+ " entries = " + cache.getNumEntries()
+			+ " estimatedBytes = " + cache.getEstimatedBytes();
+	}
+
+}
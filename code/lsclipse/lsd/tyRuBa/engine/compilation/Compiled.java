@@ -42,6 +42,14 @@ public abstract class Compiled {
 //		}
 //	};
 	
+	/**
+	 * How many frames a conjunction takes ahead from its left side so its
+	 * right side can prefetch what it will need for them. 0 turns it off.
+	 * Off by default: on the workloads measured so far taking frames ahead
+	 * cost more than the prefetching saved.
+	 */
+	public static int prefetchDistance = 0;
+	
 	public Compiled(Mode mode) {
 		this.mode = mode;
 	}
@@ -111,12 +119,52 @@ public abstract class Compiled {
 	 */
 	public abstract ElementSource runNonDet(Object input, RBContext context);
 
+	/**
+	 * Whether prefetch does anything for this compiled right now, so it is
+	 * worth taking frames ahead to give it hints. Default: no.
+	 */
+	public boolean canPrefetch() {
+		return false;
+	}
+
+	/**
+	 * Hint that this compiled will soon be run with input, so it can start
+	 * reading in what it will need. Must not have any other effect.
+	 * Default implementation does nothing.
+	 */
+	public void prefetch(Object input, RBContext context) {
+	}
+
+	/**
+	 * Frames from a left side that next will be run on. If next can prefetch,
+	 * frames are taken prefetchDistance ahead and next gets a prefetch hint
+	 * for each one as it is taken.
+	 */
+	protected static ElementSource prefetching(ElementSource frames, final Compiled next,
+			final RBContext context) {
+		if (prefetchDistance <= 0 || !next.canPrefetch()) {
+			return frames;
+		} else {
+			return frames.lookahead(prefetchDistance, new Action() {
+				public Object compute(Object frame) {
+					next.prefetch(frame, context);
+					return null;
+				}
+				public String toString() {
+					return "PREFETCH " + next;
+				}
+			});
+		}
+	}
+
 	/** 
 	 * Called by a client to start a compiled. Subclasses may overrride
 	 * with an equivalent but more efficient version.
 	 */
 	public ElementSource start(Frame putMap) {
-		return runNonDet(putMap, new RBContext());
+		// Some compiled (e.g. COUNTALL) bind variables in their input frame.
+		// Pass a copy so a PreparedQuery can be started again with its putMap.
+		return runNonDet((Frame) putMap.clone(), new RBContext());
 	}
 
 	/** Default implementation... can do better in subclasses for sure */
@@ -158,13 +206,15 @@ public abstract class Compiled {
 		return new CompiledTest(this);
 	}
 
-	public static Compiled makeCachedRuleBase(Compiled compiledRules) {
+	/** Keeps the answers of compiledRules, which are those of rules, in table. */
+	public static Compiled makeCachedRuleBase(Compiled compiledRules, TablingCache table,
+	RuleBase rules, PredicateIdentifier predId) {
 		if (compiledRules.getMode().hi.compareTo(Multiplicity.one)<=0) {
 //			PoormansProfiler.countSemiDetCachedRB++;
-			return new SemiDetCachedRuleBase((SemiDetCompiled)compiledRules);
+			return new SemiDetCachedRuleBase((SemiDetCompiled)compiledRules, table, rules, predId);
 		} else {
 //			PoormansProfiler.countCachedRB++;
-			return new CachedRuleBase(compiledRules);
+			return new CachedRuleBase(compiledRules, table, rules, predId);
 		}
 	}
 
@@ -32,11 +32,19 @@ public class CompiledConjunction extends Compiled {
 	}
 
 	public ElementSource run(ElementSource inputs, RBContext context) {
-		return right.run(left.run(inputs, context), context);
+		return right.run(prefetching(left.run(inputs, context), right, context), context);
 	}
 
 	public ElementSource runNonDet(Object input, RBContext context) {
-		return right.run(left.runNonDet(input, context), context);
+		return right.run(prefetching(left.runNonDet(input, context), right, context), context);
+	}
+
+	public boolean canPrefetch() {
+		return left.canPrefetch();
+	}
+
+	public void prefetch(Object input, RBContext context) {
+		left.prefetch(input, context);
 	}
 
 	public String toString() {
@@ -34,13 +34,21 @@ public class CompiledConjunction_Nondet_Semidet extends Compiled {
 	}
 
 	public ElementSource runNonDet(Object input, final RBContext context) {
-		return left.runNonDet(input, context).map(new Action() {
+		return prefetching(left.runNonDet(input, context), right, context).map(new Action() {
 			public Object compute(Object arg) {
 				return right.runSemiDet(arg, context); 
 			}
 		});
 	}
 	
+	public boolean canPrefetch() {
+		return left.canPrefetch();
+	}
+
+	public void prefetch(Object input, RBContext context) {
+		left.prefetch(input, context);
+	}
+
 	public String toString() {
 		return "(" + right + " ==> " + left + ")";
 	}
@@ -40,6 +40,14 @@ public class CompiledConjunction_SemiDet_NonDet extends Compiled {
 			return right.runNonDet(leftResult, context);
 	}
 	
+	public boolean canPrefetch() {
+		return left.canPrefetch();
+	}
+
+	public void prefetch(Object input, RBContext context) {
+		left.prefetch(input, context);
+	}
+
 	public String toString() {
 		return "(" + right + "==>" + left + ")";
 	}
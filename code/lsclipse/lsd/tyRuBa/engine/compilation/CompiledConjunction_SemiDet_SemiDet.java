@@ -39,6 +39,14 @@ public class CompiledConjunction_SemiDet_SemiDet extends SemiDetCompiled {
 			return right.runSemiDet(leftResult, context);
 	}
 
+	public boolean canPrefetch() {
+		return left.canPrefetch();
+	}
+
+	public void prefetch(Object input, RBContext context) {
+		left.prefetch(input, context);
+	}
+
 	public String toString() {
 		return "(" + right + " ==> " + left + ")";
 	}
@@ -35,20 +35,30 @@ public class CompiledCount extends SemiDetCompiled {
 	private final Compiled query;
 	private final RBTerm extract;
 	private final RBTerm result;
+	private final int limit;
+	   // Stop counting once this many distinct values are found (0 = no limit)
 
 	public CompiledCount(Compiled query,RBTerm extract, RBTerm result) {
+		this(query, extract, result, 0);
+	}
+
+	public CompiledCount(Compiled query,RBTerm extract, RBTerm result, int limit) {
 		super(Mode.makeDet());
 		this.query = query;
 		this.extract = extract;
 		this.result = result;
+		this.limit = limit;
 	}
 
 	public Frame runSemiDet(Object input, RBContext context) {
 		ElementSource res = query.runNonDet(((Frame)input).clone(), context);
 		Set results = new HashSet();
-		while (res.hasMoreElements()) {
-			Frame frame = (Frame)res.nextElement();
-			results.add(extract.substitute(frame));
+		Object[] batch = new Object[ElementSource.BATCH_SIZE];
+		int n;
+		while ((limit == 0 || results.size() < limit) && (n = res.nextBatch(batch)) > 0) {
+			for (int i = 0; i < n && (limit == 0 || results.size() < limit); i++) {
+				results.add(extract.substitute((Frame)batch[i]));
+			}
 		}
 		RBTerm resultCount = FrontEnd.makeInteger(results.size());
 		return result.unify(resultCount, (Frame)input);
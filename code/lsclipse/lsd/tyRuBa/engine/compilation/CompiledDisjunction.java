@@ -39,6 +39,15 @@ public class CompiledDisjunction extends Compiled {
 		return left.negate().conjoin(right.negate());
 	}
 
+	public boolean canPrefetch() {
+		return left.canPrefetch() || right.canPrefetch();
+	}
+
+	public void prefetch(Object input, RBContext context) {
+		left.prefetch(input, context);
+		right.prefetch(input, context);
+	}
+
 	public String toString() {
 		return "(" + right + " + " + left + ")";
 	}
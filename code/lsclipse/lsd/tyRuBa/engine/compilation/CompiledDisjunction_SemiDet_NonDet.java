@@ -49,6 +49,15 @@ public class CompiledDisjunction_SemiDet_NonDet extends Compiled {
 		return new SemiDetCompiledDisjunction(left,right.first());
 	}
 
+	public boolean canPrefetch() {
+		return left.canPrefetch() || right.canPrefetch();
+	}
+
+	public void prefetch(Object input, RBContext context) {
+		left.prefetch(input, context);
+		right.prefetch(input, context);
+	}
+
 	public String toString() {
 		return "(" + left + " + " + right + ")";
 	}
@@ -55,6 +55,15 @@ public class CompiledDisjunction_SemiDet_SemiDet extends Compiled {
 		return new SemiDetCompiledDisjunction(left,right);
 	}
 
+	public boolean canPrefetch() {
+		return left.canPrefetch() || right.canPrefetch();
+	}
+
+	public void prefetch(Object input, RBContext context) {
+		left.prefetch(input, context);
+		right.prefetch(input, context);
+	}
+
 	public String toString() {
 		return "(" + right + " + " + left + ")";
 	}
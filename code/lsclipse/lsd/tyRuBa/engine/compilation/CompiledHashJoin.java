@@ -0,0 +1,186 @@
+/* 
+*    Logical Structural Diff (LSDiff)  
+*    Copyright (C) <2015>  <Dr. Miryung Kim miryung@cs.ucla.edu>
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package tyRuBa.engine.compilation;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import tyRuBa.engine.Frame;
+import tyRuBa.engine.RBContext;
+import tyRuBa.engine.RBTerm;
+import tyRuBa.engine.RBTuple;
+import tyRuBa.engine.RBVariable;
+import tyRuBa.engine.RuleBase;
+import tyRuBa.modes.Mode;
+import tyRuBa.util.Action;
+import tyRuBa.util.ElementSource;
+
+/**
+ * Joins the frames from left with a predicate made up of facts that has no
+ * index for the variables left binds. Calling the predicate for every frame
+ * from left would scan all of its facts every time, so instead, for each
+ * input, the smaller side is put in a table keyed on the values of the join
+ * variables and the other side is looked up in it.
+ */
+public class CompiledHashJoin extends Compiled {
+
+	private final Compiled left;
+	private final RuleBase joinRules;
+	   // The predicate, moded with the join variables free
+	private final RBTuple args;
+	private final RBVariable[] joinVars;
+	private final boolean buildLeft;
+	   // Put the frames from left in the table instead of the facts
+	private final Compiled nested;
+	   // The nested loop, for frames that do not bind the join variables
+
+	public CompiledHashJoin(Compiled left, Mode rightMode, RuleBase rules,
+	RuleBase joinRules, RBTuple args, RBVariable[] joinVars, boolean buildLeft) {
+		super(left.getMode().multiply(rightMode));
+		this.left = left;
+		this.joinRules = joinRules;
+		this.args = args;
+		this.joinVars = joinVars;
+		this.buildLeft = buildLeft;
+		this.nested = new CompiledPredicateExpression(rightMode, rules, args);
+	}
+
+	public ElementSource runNonDet(Object input, RBContext context) {
+		Frame frame = (Frame) input;
+		// join variables that are bound by the input are constants in the
+		// goal, the others are bound by left
+		ArrayList keyVars = new ArrayList();
+		for (int i = 0; i < joinVars.length; i++) {
+			if (frame.get(joinVars[i]) == null)
+				keyVars.add(joinVars[i]);
+		}
+		RBVariable[] key = (RBVariable[]) keyVars.toArray(new RBVariable[keyVars.size()]);
+		if (buildLeft)
+			return probeFacts(frame, key, context);
+		else
+			return probeLeft(frame, key, context);
+	}
+
+	/** The facts that match the goal with the join variables free. */
+	private ElementSource facts(Frame input, RBContext context) {
+		RBTuple goal = (RBTuple) args.substitute(input);
+		return joinRules.getCompiled().runNonDet(goal, context);
+	}
+
+	private static RBTuple keyOf(RBVariable[] key, Frame frame) {
+		RBTerm[] values = new RBTerm[key.length];
+		for (int i = 0; i < key.length; i++) {
+			values[i] = key[i].substitute(frame);
+		}
+		return RBTuple.make(values);
+	}
+
+	private static void addTo(HashMap table, RBTuple key, Frame frame) {
+		ArrayList frames = (ArrayList) table.get(key);
+		if (frames == null) {
+			frames = new ArrayList();
+			table.put(key, frames);
+		}
+		frames.add(frame);
+	}
+
+	/**
+	 * Puts the facts in a table, the first time left produces a frame, and
+	 * looks up each frame from left in it.
+	 */
+	private ElementSource probeLeft(final Frame input, final RBVariable[] key,
+	final RBContext context) {
+		return left.runNonDet(input, context).map(new Action() {
+			private HashMap table = null;
+
+			public Object compute(Object arg) {
+				final Frame leftFrame = (Frame) arg;
+				RBTuple values = keyOf(key, leftFrame);
+				if (!values.isGround())
+					return nested.runNonDet(leftFrame, context);
+				if (table == null) {
+					table = new HashMap();
+					ElementSource facts = facts(input, context);
+					Object[] batch = new Object[ElementSource.BATCH_SIZE];
+					int n;
+					while ((n = facts.nextBatch(batch)) > 0) {
+						for (int i = 0; i < n; i++) {
+							Frame fact = (Frame) batch[i];
+							addTo(table, keyOf(key, fact), fact);
+						}
+					}
+				}
+				ArrayList matches = (ArrayList) table.get(values);
+				if (matches == null)
+					return ElementSource.theEmpty;
+				return ElementSource.with(matches).map(new Action() {
+					public Object compute(Object fact) {
+						return leftFrame.append((Frame) fact);
+					}
+				});
+			}
+		}).flatten();
+	}
+
+	/**
+	 * Puts the frames from left in a table and looks up each fact in it.
+	 */
+	private ElementSource probeFacts(Frame input, final RBVariable[] key,
+	final RBContext context) {
+		final HashMap table = new HashMap();
+		ArrayList unkeyed = new ArrayList();
+		ElementSource leftFrames = left.runNonDet(input, context);
+		Object[] batch = new Object[ElementSource.BATCH_SIZE];
+		int n;
+		while ((n = leftFrames.nextBatch(batch)) > 0) {
+			for (int i = 0; i < n; i++) {
+				Frame leftFrame = (Frame) batch[i];
+				RBTuple values = keyOf(key, leftFrame);
+				if (values.isGround())
+					addTo(table, values, leftFrame);
+				else
+					unkeyed.add(leftFrame);
+			}
+		}
+		ElementSource result = ElementSource.theEmpty;
+		if (!table.isEmpty()) {
+			result = facts(input, context).map(new Action() {
+				public Object compute(Object arg) {
+					final Frame fact = (Frame) arg;
+					ArrayList matches = (ArrayList) table.get(keyOf(key, fact));
+					if (matches == null)
+						return ElementSource.theEmpty;
+					return ElementSource.with(matches).map(new Action() {
+						public Object compute(Object leftFrame) {
+							return ((Frame) leftFrame).append(fact);
+						}
+					});
+				}
+			}).flatten();
+		}
+		if (!unkeyed.isEmpty()) {
+			result = result.append(nested.run(ElementSource.with(unkeyed), context));
+		}
+		return result;
+	}
+
+	public String toString() {
+		return "(" + nested + "=HASHJOIN=>" + left + ")";
+	}
+
+}
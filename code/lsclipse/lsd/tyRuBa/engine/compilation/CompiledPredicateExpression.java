@@ -54,6 +54,14 @@ public class CompiledPredicateExpression extends Compiled {
 		}
 	}
 
+	public boolean canPrefetch() {
+		return compiledRules().canPrefetch();
+	}
+
+	public void prefetch(Object input, RBContext context) {
+		compiledRules().prefetch(args.substitute((Frame)input), context);
+	}
+
 	private Compiled compiledRules() {
 		return rules.getCompiled();
 	}
@@ -38,6 +38,15 @@ public class SemiDetCompiledDisjunction extends SemiDetCompiled {
 			return result;
 	}
 	
+	public boolean canPrefetch() {
+		return left.canPrefetch() || right.canPrefetch();
+	}
+
+	public void prefetch(Object input, RBContext context) {
+		left.prefetch(input, context);
+		right.prefetch(input, context);
+	}
+
 	public String toString() {
 		return "SEMIDET(" + left + " + " + right + ")";
 	}
@@ -47,6 +47,14 @@ public class SemiDetCompiledPredicateExpression extends SemiDetCompiled {
 		}
 	}
 
+	public boolean canPrefetch() {
+		return compiledRules().canPrefetch();
+	}
+
+	public void prefetch(Object input, RBContext context) {
+		compiledRules().prefetch(args.substitute((Frame)input), context);
+	}
+
 	private SemiDetCompiled compiledRules() {
 		return rules.getSemiDetCompiledRules();
 	}
@@ -23,6 +23,7 @@ package tyRuBa.engine.factbase;
 import tyRuBa.engine.RBComponent;
 import tyRuBa.engine.compilation.CompilationContext;
 import tyRuBa.engine.compilation.Compiled;
+import tyRuBa.modes.BindingList;
 import tyRuBa.modes.PredicateMode;
 
 /**
@@ -53,6 +54,22 @@ public abstract class FactBase {
      */
     public abstract boolean isEmpty();
 
+    /**
+     * Returns the statistics of the facts in this factbase, or null if it
+     * does not keep any (or they are not known).
+     */
+    public FactStatistics getStatistics() {
+        return null;
+    }
+
+    /**
+     * Returns true if looking up facts with the given bindings goes through
+     * an index, false if it looks through all the facts.
+     */
+    public boolean isIndexed(BindingList bindings) {
+        return true;
+    }
+
     /**
      * Compiles this FactBase. Wraps the basicCompile method to fail if this
      * FactBase is empty.
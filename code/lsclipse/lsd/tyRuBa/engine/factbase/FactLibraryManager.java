@@ -100,6 +100,11 @@ public class FactLibraryManager {
         libraries.remove(location);
     }
 
+    /** Returns true if there are no fact libraries. */
+    public boolean isEmpty() {
+        return libraries.isEmpty();
+    }
+
     /** Removes all fact libraries. */
     public void removeAll() {
         libraries = new HashMap();
@@ -107,6 +112,20 @@ public class FactLibraryManager {
 //        addLibraryURLLocation("file:///Users/kdvolder/Desktop/eclipse/eclipse-facts/");
     }
 
+    private static boolean canPrefetchAny(Index[] indexes) {
+        for (int i = 0; i < indexes.length; i++) {
+            if (indexes[i].canPrefetch())
+                return true;
+        }
+        return false;
+    }
+
+    private static void prefetchAll(Index[] indexes, RBTuple inputPars) {
+        for (int i = 0; i < indexes.length; i++) {
+            indexes[i].prefetch(inputPars);
+        }
+    }
+
     /**
      * Compiles the fact libraries for a given predicate and mode.
      * @param pm the mode this compilation is for.
@@ -131,6 +150,14 @@ public class FactLibraryManager {
                 // Case 1: SemiDet and NOT all bound
                 return new SemiDetCompiled(pm.getMode()) {
 
+                    public boolean canPrefetch() {
+                        return canPrefetchAny(indexes);
+                    }
+
+                    public void prefetch(Object input, RBContext context) {
+                        prefetchAll(indexes, indexes[0].extractBound((RBTuple) input));
+                    }
+
                     public Frame runSemiDet(Object input, RBContext context) {
                         final RBTuple goal = (RBTuple) input;
                         final RBTuple inputPars;
@@ -150,6 +177,14 @@ public class FactLibraryManager {
                 // Case 2: SemiDet and all bound
                 return new SemiDetCompiled(pm.getMode()) {
 
+                    public boolean canPrefetch() {
+                        return canPrefetchAny(indexes);
+                    }
+
+                    public void prefetch(Object input, RBContext context) {
+                        prefetchAll(indexes, (RBTuple) input);
+                    }
+
                     public Frame runSemiDet(Object input, RBContext context) {
                         final RBTuple goal = (RBTuple) input;
                         for (int i = 0; i < indexes.length; i++) {
@@ -167,6 +202,14 @@ public class FactLibraryManager {
                 //CASE 3: NonDet and NOT all bound
                 return new Compiled(pm.getMode()) {
 
+                    public boolean canPrefetch() {
+                        return canPrefetchAny(indexes);
+                    }
+
+                    public void prefetch(Object input, RBContext context) {
+                        prefetchAll(indexes, indexes[0].extractBound((RBTuple) input));
+                    }
+
                     public ElementSource runNonDet(Object input, RBContext context) {
                         final RBTuple goal = (RBTuple) input;
                         final RBTuple inputPars;
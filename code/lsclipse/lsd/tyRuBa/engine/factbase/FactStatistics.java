@@ -0,0 +1,120 @@
+/* 
+*    Logical Structural Diff (LSDiff)  
+*    Copyright (C) <2015>  <Dr. Miryung Kim miryung@cs.ucla.edu>
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package tyRuBa.engine.factbase;
+
+import java.io.Serializable;
+
+import tyRuBa.engine.RBTuple;
+import tyRuBa.modes.BindingList;
+
+/**
+ * Counts the facts in a FactBase and estimates how many distinct values each
+ * argument position holds, so that the mode checker can estimate how many
+ * results a call to a predicate produces for a given binding pattern.
+ * Distinct values are counted approximately (HyperLogLog, about 3% error),
+ * so the statistics take a few KB per predicate however many facts there are.
+ * @category FactBase
+ */
+public class FactStatistics implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** log2 of the number of registers per argument position. */
+    private static final int PRECISION = 10;
+
+    private static final int NUM_REGISTERS = 1 << PRECISION;
+
+    /** Number of facts inserted. */
+    private long numFacts = 0;
+
+    /** HyperLogLog registers, one array per argument position. */
+    private final byte[][] registers;
+
+    public FactStatistics(int arity) {
+        registers = new byte[arity][NUM_REGISTERS];
+    }
+
+    /** Count a fact. */
+    public synchronized void add(RBTuple args) {
+        numFacts++;
+        for (int i = 0; i < registers.length && i < args.getNumSubterms(); i++) {
+            int hash = mix(args.getSubterm(i).hashCode());
+            int register = hash >>> (32 - PRECISION);
+            int rank = Integer.numberOfLeadingZeros((hash << PRECISION) | (1 << (PRECISION - 1))) + 1;
+            if (rank > registers[i][register]) {
+                registers[i][register] = (byte) rank;
+            }
+        }
+    }
+
+    /** Spread the bits of a hashCode, String hashCodes of similar names are close. */
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    public synchronized long getNumFacts() {
+        return numFacts;
+    }
+
+    /** Estimated number of distinct values at argument position pos. */
+    public synchronized double getNumDistinct(int pos) {
+        byte[] regs = registers[pos];
+        double sum = 0;
+        int zeros = 0;
+        for (int i = 0; i < NUM_REGISTERS; i++) {
+            sum += 1.0 / (1L << regs[i]);
+            if (regs[i] == 0)
+                zeros++;
+        }
+        double m = NUM_REGISTERS;
+        double estimate = 0.7213 / (1 + 1.079 / m) * m * m / sum;
+        if (estimate <= 2.5 * m && zeros != 0) {
+            // linear counting is better for small numbers
+            estimate = m * Math.log(m / zeros);
+        }
+        return Math.min(estimate, numFacts);
+    }
+
+    /**
+     * Estimated number of facts that match a call with the given bindings,
+     * assuming the argument positions are independent.
+     */
+    public synchronized double estimateResults(BindingList bindings) {
+        double result = numFacts;
+        for (int i = 0; i < registers.length && i < bindings.size(); i++) {
+            if (bindings.get(i).isBound()) {
+                result /= Math.max(1, getNumDistinct(i));
+            }
+        }
+        return result;
+    }
+
+    public String toString() {
+        StringBuffer result = new StringBuffer("FactStatistics(" + getNumFacts() + " facts, distinct:");
+        for (int i = 0; i < registers.length; i++) {
+            result.append(" " + Math.round(getNumDistinct(i)));
+        }
+        return result.append(")").toString();
+    }
+
+}
@@ -70,8 +70,9 @@ public class FileBasedValidatorManager implements ValidatorManager {
         this.lastInvalidateTime = -1;
         this.validatorCounter = 0;
 
+        //a null storagePath keeps the validators in memory only
         File validatorFile = new File(storagePath + "/validators.data");
-        if (validatorFile.exists()) {
+        if (storagePath != null && validatorFile.exists()) {
             try {
                 FileInputStream fis = new FileInputStream(validatorFile);
                 ObjectInputStream ois = new ObjectInputStream(fis);
@@ -227,6 +228,8 @@ public class FileBasedValidatorManager implements ValidatorManager {
      * @see tyRuBa.engine.factbase.ValidatorManager#backup()
      */
     public void backup() {
+        if (storagePath == null)
+            return;
         try {
             FileOutputStream fos = new FileOutputStream(new File(storagePath + "/validators.data"), false);
             ObjectOutputStream oos = new ObjectOutputStream(fos);
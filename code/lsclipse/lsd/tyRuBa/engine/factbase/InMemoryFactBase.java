@@ -0,0 +1,236 @@
+/* 
+*    Logical Structural Diff (LSDiff)  
+*    Copyright (C) <2015>  <Dr. Miryung Kim miryung@cs.ucla.edu>
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package tyRuBa.engine.factbase;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import tyRuBa.engine.Frame;
+import tyRuBa.engine.FrontEnd;
+import tyRuBa.engine.RBComponent;
+import tyRuBa.engine.RBContext;
+import tyRuBa.engine.RBTerm;
+import tyRuBa.engine.RBTuple;
+import tyRuBa.engine.compilation.CompilationContext;
+import tyRuBa.engine.compilation.Compiled;
+import tyRuBa.engine.compilation.SemiDetCompiled;
+import tyRuBa.modes.BindingList;
+import tyRuBa.modes.Multiplicity;
+import tyRuBa.modes.PredInfo;
+import tyRuBa.modes.PredicateMode;
+import tyRuBa.util.Action;
+import tyRuBa.util.ArrayListSource;
+import tyRuBa.util.ElementSource;
+
+/**
+ * A FactBase that keeps its facts in memory only. Like HashTableFactBase it
+ * has a hash index on the bound arguments of each mode it is compiled for, but
+ * the indexes are plain HashMaps and never go through the Pager. Indexes are
+ * built the first time a mode is compiled and kept up to date on insert. Used
+ * by in memory FrontEnds (see FrontEnd.makeInMemory).
+ * <p>
+ * A mode that has not been compiled yet counts as not indexed, so a join on
+ * it can be done by hashing instead of building an index that lives as long
+ * as the FactBase (see RBPredicateExpression.findJoinRules).
+ * @category FactBase
+ */
+public class InMemoryFactBase extends FactBase {
+
+    /** All of the facts in this FactBase, used for the all free mode. */
+    private ArrayList facts = new ArrayList();
+
+    /** The indexes on the facts, by the BindingList of the mode. */
+    private Map indexes = new HashMap();
+
+    private FactStatistics statistics;
+
+    /**
+     * Creates a new InMemoryFactBase.
+     */
+    public InMemoryFactBase(PredInfo info) {
+        statistics = new FactStatistics(info.getArity());
+    }
+
+    public FactStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * @see tyRuBa.engine.factbase.FactBase#isEmpty()
+     */
+    public boolean isEmpty() {
+        return facts.isEmpty();
+    }
+
+    /**
+     * @see tyRuBa.engine.factbase.FactBase#isPersistent()
+     */
+    public boolean isPersistent() {
+        return false;
+    }
+
+    /**
+     * @see tyRuBa.engine.factbase.FactBase#insert(tyRuBa.engine.RBComponent)
+     */
+    public synchronized void insert(RBComponent f) {
+        facts.add(f);
+        statistics.add(f.getArgs());
+        for (Iterator iter = indexes.values().iterator(); iter.hasNext();) {
+            ((ModeIndex) iter.next()).add(f);
+        }
+    }
+
+    /**
+     * Only modes that have been compiled have an index.
+     * @see tyRuBa.engine.factbase.FactBase#isIndexed(tyRuBa.modes.BindingList)
+     */
+    public synchronized boolean isIndexed(BindingList bindings) {
+        return bindings.getNumBound() == 0 || indexes.containsKey(bindings);
+    }
+
+    /**
+     * Gets the index for the given bindings, building it if there is none yet.
+     */
+    private synchronized ModeIndex getIndex(BindingList bindings) {
+        ModeIndex index = (ModeIndex) indexes.get(bindings);
+        if (index == null) {
+            index = new ModeIndex(bindings);
+            for (Iterator iter = facts.iterator(); iter.hasNext();) {
+                index.add((RBComponent) iter.next());
+            }
+            indexes.put(bindings, index);
+        }
+        return index;
+    }
+
+    /**
+     * @see tyRuBa.engine.factbase.FactBase#compile(tyRuBa.modes.PredicateMode,
+     * tyRuBa.engine.compilation.CompilationContext)
+     */
+    public Compiled basicCompile(PredicateMode mode, CompilationContext context) {
+        BindingList bindings = mode.getParamModes();
+        final ModeIndex index = bindings.getNumBound() == 0 ? null : getIndex(bindings);
+        if (mode.getMode().hi.compareTo(Multiplicity.one) <= 0) {
+            return new SemiDetCompiled(mode.getMode()) {
+
+                public Frame runSemiDet(Object input, RBContext context) {
+                    RBTuple goal = (RBTuple) input;
+                    ArrayList candidates = getCandidates(index, goal);
+                    for (int i = 0; i < candidates.size(); i++) {
+                        RBComponent fact = (RBComponent) candidates.get(i);
+                        if (fact.isValid()) {
+                            Frame result = goal.unify(fact.getArgs(), new Frame());
+                            if (result != null)
+                                return result;
+                        }
+                    }
+                    return null;
+                }
+
+            };
+        } else {
+            return new Compiled(mode.getMode()) {
+
+                public ElementSource runNonDet(Object input, RBContext context) {
+                    final RBTuple goal = (RBTuple) input;
+                    ArrayList candidates = getCandidates(index, goal);
+                    if (candidates.isEmpty())
+                        return ElementSource.theEmpty;
+                    return new ArrayListSource(candidates).map(new Action() {
+
+                        public Object compute(Object arg) {
+                            RBComponent fact = (RBComponent) arg;
+                            if (!fact.isValid())
+                                return null;
+                            return goal.unify(fact.getArgs(), new Frame());
+                        }
+                    });
+                }
+
+            };
+        }
+    }
+
+    /**
+     * The facts that may match the goal: all of them when there is no index,
+     * otherwise the ones with the same bound arguments.
+     */
+    private ArrayList getCandidates(ModeIndex index, RBTuple goal) {
+        if (index == null)
+            return facts;
+        synchronized (this) {
+            return index.get(goal);
+        }
+    }
+
+    /**
+     * @see tyRuBa.engine.factbase.FactBase#backup()
+     */
+    public void backup() {
+        //this factbase is not persistent
+    }
+
+    /**
+     * A hash index from the bound arguments of a mode to the facts that have
+     * them.
+     */
+    private static class ModeIndex {
+
+        private static final ArrayList noFacts = new ArrayList();
+
+        /** Positions of the bound arguments. */
+        private int[] boundPlaces;
+
+        private HashMap map = new HashMap();
+
+        ModeIndex(BindingList bindings) {
+            boundPlaces = new int[bindings.getNumBound()];
+            int boundPos = 0;
+            for (int i = 0; i < bindings.size(); i++) {
+                if (bindings.get(i).isBound()) {
+                    boundPlaces[boundPos++] = i;
+                }
+            }
+        }
+
+        private RBTuple extractBound(RBTuple from) {
+            RBTerm[] extracted = new RBTerm[boundPlaces.length];
+            for (int i = 0; i < extracted.length; i++) {
+                extracted[i] = from.getSubterm(boundPlaces[i]);
+            }
+            return FrontEnd.makeTuple(extracted);
+        }
+
+        void add(RBComponent f) {
+            RBTuple key = extractBound(f.getArgs());
+            ArrayList matches = (ArrayList) map.get(key);
+            if (matches == null) {
+                matches = new ArrayList(1);
+                map.put(key, matches);
+            }
+            matches.add(f);
+        }
+
+        ArrayList get(RBTuple goal) {
+            ArrayList matches = (ArrayList) map.get(extractBound(goal));
+            return matches == null ? noFacts : matches;
+        }
+    }
+}
@@ -50,9 +50,10 @@ public class NamePersistenceManager implements Serializable {
      * @param storagePath path at which the mappings are persisted.
      */
     public NamePersistenceManager(String storagePath) {
+        //a null storagePath keeps the names in memory only
         File nameFile = new File(storagePath + "/names.data");
         this.storagePath = storagePath;
-        if (nameFile.exists()) {
+        if (storagePath != null && nameFile.exists()) {
             try {
                 FileInputStream fis = new FileInputStream(nameFile);
                 ObjectInputStream ois = new ObjectInputStream(fis);
@@ -109,6 +110,8 @@ public class NamePersistenceManager implements Serializable {
      * loaded at some future point.
      */
     public void backup() {
+        if (storagePath == null)
+            return;
         File nameFile = new File(storagePath + "/names.data");
         try {
             FileOutputStream fos = new FileOutputStream(nameFile, false);
@@ -21,7 +21,6 @@
 package tyRuBa.engine.factbase;
 
 import java.util.ArrayList;
-import java.util.Iterator;
 
 import tyRuBa.engine.Frame;
 import tyRuBa.engine.RBComponent;
@@ -30,6 +29,7 @@ import tyRuBa.engine.RBTuple;
 import tyRuBa.engine.compilation.CompilationContext;
 import tyRuBa.engine.compilation.Compiled;
 import tyRuBa.engine.compilation.SemiDetCompiled;
+import tyRuBa.modes.BindingList;
 import tyRuBa.modes.Multiplicity;
 import tyRuBa.modes.PredInfo;
 import tyRuBa.modes.PredicateMode;
@@ -47,10 +47,17 @@ public class SimpleArrayListFactBase extends FactBase {
     /** All of the facts in this FactBase. */
     ArrayList facts = new ArrayList();
 
+    private FactStatistics statistics;
+
     /**
      * Creates a new SimpleArrayListFactBase.
      */
     public SimpleArrayListFactBase(PredInfo info) {
+        statistics = new FactStatistics(info.getArity());
+    }
+
+    public FactStatistics getStatistics() {
+        return statistics;
     }
 
     /**
@@ -60,6 +67,14 @@ public class SimpleArrayListFactBase extends FactBase {
         return facts.isEmpty();
     }
 
+    /**
+     * Every lookup looks through all the facts.
+     * @see tyRuBa.engine.factbase.FactBase#isIndexed(tyRuBa.modes.BindingList)
+     */
+    public boolean isIndexed(BindingList bindings) {
+        return false;
+    }
+
     /**
      * @see tyRuBa.engine.factbase.FactBase#isPersistent()
      */
@@ -72,6 +87,7 @@ public class SimpleArrayListFactBase extends FactBase {
      */
     public void insert(RBComponent f) {
         facts.add(f);
+        statistics.add(f.getArgs());
     }
 
     /**
@@ -85,11 +101,11 @@ public class SimpleArrayListFactBase extends FactBase {
                 public Frame runSemiDet(Object input, RBContext context) {
                     final RBTuple goal = (RBTuple) input;
                     Frame result = null;
-                    for (Iterator iter = facts.iterator(); result == null && iter.hasNext();) {
-                        RBComponent fact = (RBComponent) iter.next();
-                        if (!fact.isValid()) {
-                            iter.remove();
-                        } else
+                    // invalid facts are skipped, not removed: other
+                    // queries may be reading the facts at the same time
+                    for (int i = 0; result == null && i < facts.size(); i++) {
+                        RBComponent fact = (RBComponent) facts.get(i);
+                        if (fact.isValid())
                             result = goal.unify(fact.getArgs(), new Frame());
                     }
                     return result;
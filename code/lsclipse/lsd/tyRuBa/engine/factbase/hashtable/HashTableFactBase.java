@@ -20,10 +20,28 @@
  */
 package tyRuBa.engine.factbase.hashtable;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import junit.framework.Assert;
 
@@ -37,6 +55,7 @@ import tyRuBa.engine.compilation.CompilationContext;
 import tyRuBa.engine.compilation.Compiled;
 import tyRuBa.engine.compilation.SemiDetCompiled;
 import tyRuBa.engine.factbase.FactBase;
+import tyRuBa.engine.factbase.FactStatistics;
 import tyRuBa.modes.BindingList;
 import tyRuBa.modes.Factory;
 import tyRuBa.modes.Mode;
@@ -82,6 +101,72 @@ public class HashTableFactBase extends FactBase {
     /** Where this FactBase is persisted to. */
     private String storageLocation;
 
+    /**
+     * Facts that have been inserted but not yet added to the indexes. They are
+     * added in batches, see flushInserts.
+     */
+    private ArrayList pendingInserts = new ArrayList();
+
+    /** Largest number of facts that are kept in pendingInserts. */
+    public static int insertBatchSize = 1000;
+
+    /** Whether pendingInserts may be non empty, read without locking. */
+    private volatile boolean hasPendingInserts = false;
+
+    /**
+     * For each index that allows one fact per bound part, the bound parts of
+     * pendingInserts (Index => bound part => free part), see checkDet.
+     */
+    private final Map pendingDetParts = new HashMap();
+
+    /**
+     * How many times a binding pattern must be looked up through an index
+     * that does not bind all its ground arguments before an index for the
+     * pattern is built. 0 turns adaptive indexing off.
+     */
+    public static int adaptiveIndexThreshold = 3;
+
+    /** Most indexes built for one FactBase because of the queries. */
+    public static int maxAdaptiveIndexes = 4;
+
+    /**
+     * The indexes that lookups can choose from, with the bound places of each
+     * one as a bit mask. Replaced, never changed, when an index is added.
+     */
+    private volatile Index[] lookupIndexes = new Index[0];
+    private volatile int[] lookupMasks = new int[0];
+
+    /** Binding pattern (bit mask of the ground arguments) => number of lookups. */
+    private final ConcurrentHashMap patternCounts = new ConcurrentHashMap();
+
+    /**
+     * Binding patterns that have an index built, or scheduled to be built
+     * (pattern => pattern). Lookups use it without locking, so they do not
+     * wait for an index that is being built.
+     */
+    private final ConcurrentHashMap builtPatterns = new ConcurrentHashMap();
+
+    /** Number of indexes scheduled to be built because of the queries. */
+    private final AtomicInteger numAdaptiveIndexes = new AtomicInteger();
+
+    /** Fact counts for the planner, null if they are not known. */
+    private FactStatistics statistics = null;
+
+    private static final String STATISTICS_FILE = "statistics.data";
+
+    /**
+     * Written into the directory of an index built on the fly once all the
+     * facts are in it. Directories of such indexes that do not have it were
+     * left behind by a build that did not finish and are deleted.
+     */
+    private static final String INDEX_COMPLETE_FILE = "complete.data";
+
+    /** Builds indexes in the background, for all HashTableFactBases. */
+    private static ExecutorService indexBuilder = null;
+
+    /** The Futures of the index builds scheduled for this FactBase, see backup. */
+    private final ArrayList indexBuilds = new ArrayList();
+
     /** Creates a new HashTableFactBase. */
     public HashTableFactBase(PredInfo info) {
         arity = info.getArity();
@@ -89,13 +174,45 @@ public class HashTableFactBase extends FactBase {
         engine = info.getQueryEngine();
         storageLocation = engine.getStoragePath() + "/" + engine.getFrontendNamePersistenceManager().getPersistentName(name) + "/" + arity + "/";
         initIndexes(info);
+        initStatistics();
+    }
+
+    /**
+     * Reads the statistics back in if they were backed up. A FactBase that
+     * has facts on disk but no statistics has none (they are not rebuilt).
+     */
+    private void initStatistics() {
+        File file = new File(storageLocation, STATISTICS_FILE);
+        if (file.exists()) {
+            try {
+                ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)));
+                try {
+                    statistics = (FactStatistics) in.readObject();
+                } finally {
+                    in.close();
+                }
+            } catch (IOException e) {
+                throw new Error("Could not load fact statistics because of IOException");
+            } catch (ClassNotFoundException e) {
+                throw new Error("Could not load fact statistics because of ClassNotFoundException");
+            }
+        } else if (isEmpty) {
+            statistics = new FactStatistics(arity);
+        }
+    }
+
+    public FactStatistics getStatistics() {
+        return statistics;
     }
 
     /**
      * Initializes the indexes. Indexes are always created for the all bound
      * mode and all free mode. In addition, any other modes defined in the
      * predicate declaration have indexes created for them. Any other modes will
-     * have their indexes created on the fly.
+     * have their indexes created on the fly: right away if they are SemiDet,
+     * in the background once they have been used often enough otherwise (see
+     * chooseIndex). Indexes that are found on disk are reconnected to, the
+     * ones that were built on the fly only if their build finished.
      */
     private void initIndexes(PredInfo info) {
         indexes = new HashMap();
@@ -113,11 +230,18 @@ public class HashTableFactBase extends FactBase {
         PredicateMode boundMode = new PredicateMode(allBound, new Mode(Multiplicity.zero, Multiplicity.one), false);
         indexes.put(boundMode.getParamModes(), allFreeIndex);
 
+        //The index directories that are on disk
+        Set onDisk = new HashSet();
+        String[] dirs = new File(storageLocation).list();
+        if (dirs != null) {
+            onDisk.addAll(Arrays.asList(dirs));
+        }
+
         //At least make the indexes for modes that are defined..
         for (int i = 0; i < info.getNumPredicateMode(); i++) {
             PredicateMode pm = info.getPredicateModeAt(i);
             BindingList paramModes = pm.getParamModes();
-            if (new File(storageLocation + "/" + paramModes.getBFString()).exists()) {
+            if (onDisk.contains(paramModes.getBFString())) {
                 isEmpty = false;
             }
             if (!(paramModes.getNumFree() == arity) && !(paramModes.getNumBound() == arity)) {
@@ -126,42 +250,237 @@ public class HashTableFactBase extends FactBase {
             }
         }
 
-        //Try to reconnect to indexes if they're around
-        int numIndexes = (int) (Math.pow(2, arity));
-        for (int i = 0; i < numIndexes; i++) {
-            BindingList blist = Factory.makeBindingList();
-            int checkNum = 1;
-            for (int j = 0; j < arity; j++) {
-                if ((i & checkNum) == 0) {
-                    blist.add(Factory.makeBound());
-                } else {
-                    blist.add(Factory.makeFree());
+        //Try to reconnect to indexes if they're around (including the ones that
+        //were built for the queries)
+        for (Iterator iter = onDisk.iterator(); iter.hasNext();) {
+            String bf = (String) iter.next();
+            BindingList blist = parseBFString(bf);
+            if (blist != null && !(blist.getNumBound() == 0 || blist.getNumFree() == 0) && !indexes.containsKey(blist)) {
+                File dir = new File(storageLocation, bf);
+                if (!new File(dir, INDEX_COMPLETE_FILE).exists()) {
+                    //the build was cut short, the index is built again if
+                    //it is still needed
+                    deleteDirectory(dir);
+                    continue;
                 }
-                checkNum *= 2;
+                isEmpty = false;
+                PredicateMode mode = new PredicateMode(blist, new Mode(Multiplicity.zero, Multiplicity.many), false);
+                Index idx = new Index(mode, new FileLocation(storageLocation + "/"
+                        + mode.getParamModes().getBFString() + "/"), engine, name + "/" + arity);
+                indexes.put(mode.getParamModes(), idx);
             }
+        }
 
-            if (!(blist.getNumBound() == 0 || blist.getNumFree() == 0) && !indexes.containsKey(blist)) {
-                if (new File(storageLocation + "/" + blist.getBFString()).exists()) {
-                    isEmpty = false;
-                    PredicateMode mode = new PredicateMode(blist, new Mode(Multiplicity.zero, Multiplicity.many), false);
-                    Index idx = new Index(mode, new FileLocation(storageLocation + "/"
-                            + mode.getParamModes().getBFString() + "/"), engine, name + "/" + arity);
-                    indexes.put(mode.getParamModes(), idx);
-                }
+        for (Iterator iter = indexes.entrySet().iterator(); iter.hasNext();) {
+            Map.Entry entry = (Map.Entry) iter.next();
+            BindingList blist = (BindingList) entry.getKey();
+            if (blist.getNumBound() != 0 && blist.getNumFree() != 0) {
+                addLookupIndex(blist, (Index) entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * The BindingList an index directory name stands for, or null if the name
+     * is not a "BF" string for this arity.
+     */
+    private BindingList parseBFString(String bf) {
+        if (bf.length() != arity)
+            return null;
+        BindingList blist = Factory.makeBindingList();
+        for (int i = 0; i < arity; i++) {
+            char c = bf.charAt(i);
+            if (c == 'B') {
+                blist.add(Factory.makeBound());
+            } else if (c == 'F') {
+                blist.add(Factory.makeFree());
+            } else {
+                return null;
+            }
+        }
+        return blist;
+    }
+
+    /** The bound places of a binding list as a bit mask. */
+    private static int boundMask(BindingList blist) {
+        int mask = 0;
+        for (int i = 0; i < blist.size(); i++) {
+            if (blist.get(i).isBound())
+                mask |= 1 << i;
+        }
+        return mask;
+    }
+
+    /** Make an index available to lookups. The caller holds the lock. */
+    private void addLookupIndex(BindingList blist, Index index) {
+        Integer pattern = new Integer(boundMask(blist));
+        builtPatterns.put(pattern, pattern);
+        int n = lookupIndexes.length;
+        Index[] newIndexes = new Index[n + 1];
+        int[] newMasks = new int[n + 1];
+        System.arraycopy(lookupIndexes, 0, newIndexes, 0, n);
+        System.arraycopy(lookupMasks, 0, newMasks, 0, n);
+        newIndexes[n] = index;
+        newMasks[n] = boundMask(blist);
+        lookupMasks = newMasks;
+        lookupIndexes = newIndexes;
+    }
+
+    /**
+     * Chooses the index for a lookup of goal: the one that binds the most of
+     * the ground arguments of goal, if it binds more of them than index (the
+     * index that the lookup was compiled for). Counts the lookups of goal's
+     * binding pattern and schedules an index for it to be built when it is
+     * looked up often enough without one.
+     */
+    private Index chooseIndex(Index index, int compiledMask, RBTuple goal) {
+        if (adaptiveIndexThreshold <= 0 || arity > 30)
+            return index;
+        int groundMask = 0;
+        for (int i = 0; i < arity; i++) {
+            if (goal.isGround(i))
+                groundMask |= 1 << i;
+        }
+        if (groundMask == compiledMask)
+            return index;
+        Index[] candidates = lookupIndexes;
+        int[] masks = lookupMasks;
+        Index best = index;
+        int bestBound = Integer.bitCount(compiledMask);
+        boolean exact = false;
+        for (int i = 0; i < candidates.length; i++) {
+            if ((masks[i] & ~groundMask) == 0 && Integer.bitCount(masks[i]) > bestBound) {
+                best = candidates[i];
+                bestBound = Integer.bitCount(masks[i]);
+                exact = masks[i] == groundMask;
+            }
+        }
+        if (!exact && groundMask != (1 << arity) - 1) {
+            countLookup(groundMask);
+        }
+        return best;
+    }
+
+    /** Count a lookup with a binding pattern that has no index. */
+    private void countLookup(int groundMask) {
+        Integer pattern = new Integer(groundMask);
+        AtomicInteger count = (AtomicInteger) patternCounts.get(pattern);
+        if (count == null) {
+            patternCounts.putIfAbsent(pattern, new AtomicInteger());
+            count = (AtomicInteger) patternCounts.get(pattern);
+        }
+        if (count.incrementAndGet() >= adaptiveIndexThreshold && !builtPatterns.containsKey(pattern)) {
+            scheduleIndexBuild(groundMask);
+        }
+    }
+
+    private void scheduleIndexBuild(int groundMask) {
+        if (numAdaptiveIndexes.get() >= maxAdaptiveIndexes)
+            return;
+        Integer pattern = new Integer(groundMask);
+        if (builtPatterns.putIfAbsent(pattern, pattern) != null)
+            return;
+        numAdaptiveIndexes.incrementAndGet();
+        final BindingList blist = Factory.makeBindingList();
+        for (int i = 0; i < arity; i++) {
+            blist.add((groundMask & (1 << i)) != 0 ? Factory.makeBound() : Factory.makeFree());
+        }
+        Future build = getIndexBuilder().submit(new Runnable() {
+            public void run() {
+                buildIndex(blist);
+            }
+        });
+        synchronized (indexBuilds) {
+            indexBuilds.add(build);
+        }
+    }
+
+    /**
+     * Waits until the indexes scheduled for this FactBase are built. The
+     * caller must not hold the lock, the builds need it.
+     */
+    private void awaitIndexBuilds() {
+        Object[] builds;
+        synchronized (indexBuilds) {
+            builds = indexBuilds.toArray();
+            indexBuilds.clear();
+        }
+        for (int i = 0; i < builds.length; i++) {
+            try {
+                ((Future) builds[i]).get();
+            } catch (InterruptedException e) {
+                throw new Error(e);
+            } catch (ExecutionException e) {
+                throw new Error(e.getCause());
             }
         }
+    }
 
+    /**
+     * Builds an index for a binding pattern from the all free index. Inserts
+     * into this FactBase wait until it is done, lookups do not.
+     */
+    private synchronized void buildIndex(BindingList blist) {
+        if (indexes.containsKey(blist))
+            return;
+        Index index = makeIndex(new PredicateMode(blist, new Mode(Multiplicity.zero, Multiplicity.many), false));
+        indexes.put(blist, index);
+        addLookupIndex(blist, index);
+    }
+
+    private static synchronized ExecutorService getIndexBuilder() {
+        if (indexBuilder == null) {
+            indexBuilder = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "tyRuBa.IndexBuilder");
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }
+            });
+        }
+        return indexBuilder;
+    }
+
+    /** Waits until the indexes that have been scheduled to be built are built. */
+    public static void waitForIndexBuilds() {
+        try {
+            getIndexBuilder().submit(new Runnable() {
+                public void run() {
+                }
+            }).get();
+        } catch (InterruptedException e) {
+            throw new Error(e);
+        } catch (ExecutionException e) {
+            throw new Error(e);
+        }
+    }
+
+    /**
+     * Modes that are waiting for an index look through all the facts (see
+     * getIndex).
+     * @see tyRuBa.engine.factbase.FactBase#isIndexed(tyRuBa.modes.BindingList)
+     */
+    public synchronized boolean isIndexed(BindingList bindings) {
+        Index index = (Index) indexes.get(bindings);
+        return index != null && (index != allFreeIndex || !bindings.hasFree());
     }
 
     /**
      * Gets an index for a given mode.
      * @param mode mode to get the index for.
      */
-    private Index getIndex(PredicateMode mode) {
+    private synchronized Index getIndex(PredicateMode mode) {
         Index index = (Index) indexes.get(mode.getParamModes());
         if (index == null) {
+            if (adaptiveIndexThreshold > 0 && mode.getMode().hi.compareTo(Multiplicity.one) > 0) {
+                // scan until the mode has been used often enough to be worth
+                // an index
+                return allFreeIndex;
+            }
             index = makeIndex(mode);
             indexes.put(mode.getParamModes(), index);
+            addLookupIndex(mode.getParamModes(), index);
         }
 
         return index;
@@ -175,20 +494,49 @@ public class HashTableFactBase extends FactBase {
      * process. Depending on how large the data set is, it may take several
      * minutes to create a new index. It is best if all modes that will be used
      * are defined in the rules files so that indexes will always be created for
-     * them.
+     * them. The facts are added in batches of insertBatchSize, and the index
+     * is marked complete once they are all in (see initIndexes).
      */
-    private Index makeIndex(PredicateMode mode) {
+    private synchronized Index makeIndex(PredicateMode mode) {
         Index index;
 
+        addPendingInserts();
+
+        File dir = new File(storageLocation, mode.getParamModes().getBFString());
+        deleteDirectory(dir);
         index = new Index(mode, new FileLocation(storageLocation + "/" + mode.getParamModes().getBFString() + "/"),
                 engine, name + "/" + arity);
+        ArrayList batch = new ArrayList();
         for (ElementSource iter = allFreeIndex.values(); iter.hasMoreElements();) {
-            IndexValue fact = (IndexValue) iter.nextElement();
-            index.addFact(fact);
+            batch.add(iter.nextElement());
+            if (batch.size() >= insertBatchSize) {
+                index.addFacts(batch);
+                batch = new ArrayList();
+            }
+        }
+        if (!batch.isEmpty()) {
+            index.addFacts(batch);
+        }
+
+        try {
+            dir.mkdirs();
+            new File(dir, INDEX_COMPLETE_FILE).createNewFile();
+        } catch (IOException e) {
+            throw new Error("Could not mark index " + index + " as complete because of IOException");
         }
         return index;
     }
 
+    private static void deleteDirectory(File dir) {
+        File[] children = dir.listFiles();
+        if (children != null) {
+            for (int i = 0; i < children.length; i++) {
+                deleteDirectory(children[i]);
+            }
+        }
+        dir.delete();
+    }
+
     /**
      * @see tyRuBa.engine.factbase.FactBase#isEmpty()
      */
@@ -208,18 +556,92 @@ public class HashTableFactBase extends FactBase {
      */
     public void insert(RBComponent f) {
         Assert.assertTrue("Only ground facts should be insterted in to FactBases", f.isGroundFact());
-        isEmpty = false;
 
         Validator v = f.getValidator();
+        IndexValue fact = IndexValue.make(v, f.getArgs());
+        synchronized (this) {
+            checkDet(fact, f);
+            isEmpty = false;
+            pendingInserts.add(fact);
+            hasPendingInserts = true;
+            if (statistics != null) {
+                statistics.add(f.getArgs());
+            }
+            if (pendingInserts.size() >= insertBatchSize) {
+                addPendingInserts();
+            }
+        }
+    }
+
+    /**
+     * Throws the Error about a fact that breaks the Det/SemiDet uniqueness of
+     * one of the indexes, before anything is changed, so it is the insert of
+     * that fact that fails and no other fact is lost. Otherwise remembers the
+     * fact, so the facts inserted after it are checked against it too.
+     */
+    private void checkDet(IndexValue fact, RBComponent f) {
+        ArrayList checked = new ArrayList();
+        for (Iterator iter = indexes.entrySet().iterator(); iter.hasNext();) {
+            Map.Entry entry = (Map.Entry) iter.next();
+            BindingList key = (BindingList) entry.getKey();
+            Index index = (Index) entry.getValue();
+            if (key.getNumFree() != 0 && index.checksDet()) { //skip for all bound
+                Map pending = (Map) pendingDetParts.get(index);
+                if (pending == null) {
+                    pending = new HashMap();
+                    pendingDetParts.put(index, pending);
+                }
+                String violation = index.detViolation(fact, pending);
+                if (violation != null)
+                    throw new Error(violation + " (inserting " + f + ")");
+                checked.add(index);
+            }
+        }
+        for (Iterator iter = checked.iterator(); iter.hasNext();) {
+            Index index = (Index) iter.next();
+            index.addPending(fact, (Map) pendingDetParts.get(index));
+        }
+    }
 
+    /**
+     * Adds the pending facts to every index, one batch per index, so each
+     * page is changed once per batch instead of once per fact. Must be called
+     * before the indexes are read.
+     */
+    private void flushInserts() {
+        if (hasPendingInserts) {
+            synchronized (this) {
+                addPendingInserts();
+            }
+        }
+    }
+
+    private synchronized void addPendingInserts() {
+        if (pendingInserts.isEmpty())
+            return;
+        ArrayList batch = pendingInserts;
+        pendingInserts = new ArrayList();
+        hasPendingInserts = false;
+        pendingDetParts.clear();
+        // the facts were checked when they were inserted; should an index
+        // still find a violation, the batch goes into all the other indexes
+        // before it is reported
+        Error failure = null;
         for (Iterator iter = indexes.entrySet().iterator(); iter.hasNext();) {
             Map.Entry entry = (Map.Entry) iter.next();
             BindingList key = (BindingList) entry.getKey();
             if (key.getNumFree() != 0) { //skip for all bound
                 Index index = (Index) entry.getValue();
-                index.addFact(IndexValue.make(v, f.getArgs()));
+                try {
+                    index.addFacts(batch);
+                } catch (Error e) {
+                    if (failure == null)
+                        failure = e;
+                }
             }
         }
+        if (failure != null)
+            throw failure;
     }
 
     /**
@@ -234,7 +656,16 @@ public class HashTableFactBase extends FactBase {
                 // Case 1: SemiDet and NOT all bound
                 return new SemiDetCompiled(mode.getMode()) {
 
+                    public boolean canPrefetch() {
+                        return index.canPrefetch();
+                    }
+
+                    public void prefetch(Object input, RBContext context) {
+                        index.prefetch(index.extractBound((RBTuple) input));
+                    }
+
                     public Frame runSemiDet(Object input, RBContext context) {
+                        flushInserts();
                         final RBTuple goal = (RBTuple) input;
                         final RBTuple inputPars;
                         final RBTuple outputPars;
@@ -252,7 +683,16 @@ public class HashTableFactBase extends FactBase {
                 // Case 2: SemiDet and all bound
                 return new SemiDetCompiled(mode.getMode()) {
 
+                    public boolean canPrefetch() {
+                        return index.canPrefetch();
+                    }
+
+                    public void prefetch(Object input, RBContext context) {
+                        index.prefetch((RBTuple) input);
+                    }
+
                     public Frame runSemiDet(Object input, RBContext context) {
+                        flushInserts();
                         final RBTuple goal = (RBTuple) input;
                         RBTuple retrieved = index.getMatchSingle(goal);
                         if (retrieved == null) {
@@ -266,15 +706,26 @@ public class HashTableFactBase extends FactBase {
         } else {
             if (mode.getParamModes().getNumFree() != 0) {
                 //CASE 3: NonDet and NOT all bound
+                final int compiledMask = index == allFreeIndex ? 0 : boundMask(mode.getParamModes());
                 return new Compiled(mode.getMode()) {
 
+                    public boolean canPrefetch() {
+                        return index.canPrefetch();
+                    }
+
+                    public void prefetch(Object input, RBContext context) {
+                        index.prefetch(index.extractBound((RBTuple) input));
+                    }
+
                     public ElementSource runNonDet(Object input, RBContext context) {
+                        flushInserts();
                         final RBTuple goal = (RBTuple) input;
                         final RBTuple inputPars;
                         final RBTuple outputPars;
-                        inputPars = index.extractBound(goal);
-                        outputPars = index.extractFree(goal);
-                        ElementSource matches = index.getMatchElementSource(inputPars);
+                        Index lookup = chooseIndex(index, compiledMask, goal);
+                        inputPars = lookup.extractBound(goal);
+                        outputPars = lookup.extractFree(goal);
+                        ElementSource matches = lookup.getMatchElementSource(inputPars);
                         return matches.map(new Action() {
 
                             public Object compute(Object arg) {
@@ -293,15 +744,34 @@ public class HashTableFactBase extends FactBase {
     }
 
     /**
+     * Waits for the indexes that are being built first, so they are backed up
+     * too and no build is still writing pages after a shutdown.
      * @see tyRuBa.engine.factbase.FactBase#backup()
      */
     public void backup() {
-        for (Iterator iter = indexes.entrySet().iterator(); iter.hasNext();) {
-            Map.Entry entry = (Map.Entry) iter.next();
-            BindingList key = (BindingList) entry.getKey();
-            if (key.getNumFree() != 0) { //skip for all bound
-                Index idx = (Index) entry.getValue();
-                idx.backup();
+        awaitIndexBuilds();
+        synchronized (this) {
+            addPendingInserts();
+            for (Iterator iter = indexes.entrySet().iterator(); iter.hasNext();) {
+                Map.Entry entry = (Map.Entry) iter.next();
+                BindingList key = (BindingList) entry.getKey();
+                if (key.getNumFree() != 0) { //skip for all bound
+                    Index idx = (Index) entry.getValue();
+                    idx.backup();
+                }
+            }
+            if (statistics != null && !isEmpty) {
+                try {
+                    new File(storageLocation).mkdirs();
+                    ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(new File(storageLocation, STATISTICS_FILE))));
+                    try {
+                        out.writeObject(statistics);
+                    } finally {
+                        out.close();
+                    }
+                } catch (IOException e) {
+                    throw new Error("Could not backup fact statistics because of IOException");
+                }
             }
         }
     }
@@ -21,10 +21,14 @@
 package tyRuBa.engine.factbase.hashtable;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
 
 import tyRuBa.engine.FrontEnd;
 import tyRuBa.engine.QueryEngine;
@@ -53,9 +57,48 @@ public final class Index {
      * Wraps a HashMap in a Pager resource. This wrapper also knows how to clean
      * itself.
      */
-    static class HashMapResource extends HashMap implements Pager.Resource {
+    static class HashMapResource extends HashMap implements Pager.SizedResource {
 
-        private long myLastCleanTime = System.currentTimeMillis();
+        /** Rough sizes in bytes of a map entry with its key and of an IndexValue. */
+        private static final int ENTRY_SIZE = 96;
+        private static final int VALUE_SIZE = 128;
+
+        private long myLastCleanTime;
+
+        /** Number of IndexValues in the map, if numValuesKnown. */
+        private transient int numValues;
+
+        private transient boolean numValuesKnown;
+
+        HashMapResource() {
+            this(System.currentTimeMillis());
+        }
+
+        /** Used by IndexPageCodec to restore a page that was paged out. */
+        HashMapResource(long lastCleanTime) {
+            myLastCleanTime = lastCleanTime;
+        }
+
+        long getLastCleanTime() {
+            return myLastCleanTime;
+        }
+
+        /** Called by addFact after adding a value. */
+        void addedValue() {
+            numValues++;
+        }
+
+        public long estimatedSize() {
+            if (!numValuesKnown) {
+                numValues = 0;
+                for (Iterator iter = values().iterator(); iter.hasNext();) {
+                    Object whatIsThere = iter.next();
+                    numValues += whatIsThere instanceof ArrayList ? ((ArrayList) whatIsThere).size() : 1;
+                }
+                numValuesKnown = true;
+            }
+            return size() * ENTRY_SIZE + numValues * VALUE_SIZE;
+        }
 
         public boolean isClean(ValidatorManager vm) {
             long lastDirty = vm.getLastInvalidatedTime();
@@ -64,6 +107,7 @@ public final class Index {
 
         public void clean(ValidatorManager vm) {
             myLastCleanTime = System.currentTimeMillis();
+            numValuesKnown = false;
             for (Iterator iter = entrySet().iterator(); iter.hasNext();) {
                 Map.Entry entry = (Map.Entry) iter.next();
                 Object whatIsThere = entry.getValue();
@@ -96,7 +140,11 @@ public final class Index {
     /**
      * Wraps a HashSet in a Pager resource.
      */
-    static class HashSetResource extends HashSet implements Pager.Resource {
+    static class HashSetResource extends HashSet implements Pager.SizedResource {
+
+        public long estimatedSize() {
+            return size() * 64;
+        }
     }
 
     /** Locations in the mode that are free. */
@@ -122,6 +170,12 @@ public final class Index {
 
     /** Location that this index is located at. */
     private Location storageLocation;
+
+    /**
+     * Mapped segment holding all the pages of a read only index, or null if
+     * the pages are read through the Pager.
+     */
+    private IndexSegment segment = null;
     
     public String toString() {
     		String result = "Index(" + predicateName + " ";
@@ -175,6 +229,16 @@ public final class Index {
         this.validatorManager = validatorManager;
     }
 
+    /**
+     * Creates a read only Index (of a fact library) that reads its pages from
+     * a mapped segment file instead of through the Pager.
+     */
+    Index(PredicateMode mode, IndexSegment segment, QueryEngine engine, String predicateName,
+            NamePersistenceManager nameManager, ValidatorManager validatorManager) {
+        this(mode, (Location) null, engine, predicateName, nameManager, validatorManager);
+        this.segment = segment;
+    }
+
     /**
      * Retrieves the Pager from the QueryEngine.
      */
@@ -216,78 +280,158 @@ public final class Index {
      * @param fact fact to insert.
      */
     public void addFact(IndexValue fact) {
+        addFacts(Collections.singletonList(fact));
+    }
+
+    /** Whether this index allows only one fact per bound part. */
+    boolean checksDet() {
+        return checkDet;
+    }
+
+    /**
+     * Whether fact can be added without breaking the Det/SemiDet uniqueness
+     * of this index. It can not if a valid fact in the index, or one of the
+     * facts in pending that have not been added yet, has the same bound part
+     * and a different free part.
+     * @param pending bound part => free part, see addPending.
+     * @return a description of the violation, or null if there is none.
+     */
+    String detViolation(IndexValue fact, Map pending) {
+        if (!checkDet)
+            return null;
         RBTuple parts = fact.getParts();
         RBTuple whole_key = extractBound(parts);
         RBTuple free = extractFree(parts);
+        RBTuple present = (RBTuple) pending.get(whole_key);
+        if (present == null)
+            present = getMatchSingle(whole_key);
+        if (present == null || present.equals(free))
+            return null;
+        return violation(present, free, whole_key.getSecond());
+    }
 
-        //Special Behaviour for the all free index
-        if (whole_key == RBTuple.theEmpty) {
-            whole_key = free;
+    /** Remember in pending that fact is about to be added, see detViolation. */
+    void addPending(IndexValue fact, Map pending) {
+        if (checkDet) {
+            RBTuple parts = fact.getParts();
+            pending.put(extractBound(parts), extractFree(parts));
         }
-        final Object key = whole_key.getSecond();
-        final String topLevelKey = whole_key.getFirst();
-        final IndexValue value = IndexValue.make(fact.getValidatorHandle(), free);
+    }
 
-        getPager().asynchDoTask(getResourceFromKey(whole_key), new Pager.Task(true) {
+    private String violation(Object present, Object added, Object key) {
+        return "OOPS!! More than one fact has been inserted into a Det/SemiDet predicate (" + predicateName
+                + ") present = " + present + " ||| new = " + added + key;
+    }
 
-            public Object doIt(Resource map_rsrc) {
-                HashMapResource map = (HashMapResource) map_rsrc;
+    /**
+     * Adds many facts into the index. The facts are grouped by the page they
+     * go to, and each page (and keys.data) is changed by a single pager task.
+     * A fact that breaks the Det/SemiDet uniqueness of the index is left out,
+     * the others are all added before the Error about it is thrown.
+     * @param facts IndexValues to insert.
+     */
+    public void addFacts(Collection facts) {
+        // page => keys and values to put in it, alternating
+        Map groups = new LinkedHashMap();
+        final Set topLevelKeys = new HashSet();
+        for (Iterator iter = facts.iterator(); iter.hasNext();) {
+            IndexValue fact = (IndexValue) iter.next();
+            RBTuple parts = fact.getParts();
+            RBTuple whole_key = extractBound(parts);
+            RBTuple free = extractFree(parts);
+
+            //Special Behaviour for the all free index
+            if (whole_key == RBTuple.theEmpty) {
+                whole_key = free;
+            }
+            ResourceId page = getResourceFromKey(whole_key);
+            ArrayList group = (ArrayList) groups.get(page);
+            if (group == null) {
+                group = new ArrayList();
+                groups.put(page, group);
+            }
+            group.add(whole_key.getSecond());
+            group.add(IndexValue.make(fact.getValidatorHandle(), free));
+            topLevelKeys.add(whole_key.getFirst());
+        }
 
-                if (map != null && !map.isClean(validatorManager)) {
-                    map.clean(validatorManager);
-                }
+        final String[] firstViolation = new String[1];
+        for (Iterator iter = groups.entrySet().iterator(); iter.hasNext();) {
+            Map.Entry entry = (Map.Entry) iter.next();
+            final ArrayList group = (ArrayList) entry.getValue();
+            getPager().asynchDoTask((ResourceId) entry.getKey(), new Pager.Task(true) {
 
-                if (map == null)
-                    map = new HashMapResource(); //new resource is
-                // automatically clean
+                public Object doIt(Resource map_rsrc) {
+                    HashMapResource map = (HashMapResource) map_rsrc;
 
-                Object whatIsThere = map.get(key);
-                if (whatIsThere == null) {
-                    map.put(key, value);
-                } else if (whatIsThere instanceof ArrayList) {
-                    ArrayList lstWhatIsThere = (ArrayList) whatIsThere;
-                    if (checkDet) { //SemiDet/Det uniqueness check
-                        for (Iterator iter = lstWhatIsThere.iterator(); iter.hasNext();) {
-                            IndexValue element = (IndexValue) iter.next();
-                            if (!element.getParts().equals(value.getParts())) {
-                                throw new Error(
-                                        "OOPS!! More than one fact has been inserted into a Det/SemiDet predicate ("+predicateName+") present = "
-                                                + element.getParts() + " ||| new = " + value.getParts() + key);
-                            }
-                        }
+                    if (map != null && !map.isClean(validatorManager)) {
+                        map.clean(validatorManager);
                     }
-                    lstWhatIsThere.add(value);
-                } else { //It's an indexValue
-                    IndexValue idxWhatIsThere = (IndexValue) whatIsThere;
-                    if (checkDet) { //SemiDet/Det uniqueness check
-                        if (!idxWhatIsThere.getParts().equals(value.getParts())) {
-                            throw new Error(
-                            		"OOPS!! More than one fact has been inserted into a Det/SemiDet predicate ("+predicateName+") present = "
-                                            + idxWhatIsThere.getParts() + " ||| new = " + value.getParts() + key);
-                        }
+
+                    if (map == null)
+                        map = new HashMapResource(); //new resource is
+                    // automatically clean
+
+                    for (int i = 0; i < group.size(); i += 2) {
+                        String violation = addValue(map, group.get(i), (IndexValue) group.get(i + 1));
+                        if (violation != null && firstViolation[0] == null)
+                            firstViolation[0] = violation;
                     }
-                    ArrayList lstWhatIsThere = new ArrayList(2);
-                    lstWhatIsThere.add(whatIsThere);
-                    lstWhatIsThere.add(value);
-                    map.put(key, lstWhatIsThere);
+                    this.changedResource(map);
+                    return null;
                 }
 
-                this.changedResource(map);
-                return null;
-            }
-
-        });
+            });
+        }
         getPager().asynchDoTask(storageLocation.getResourceID("keys.data"), new Pager.Task(true) {
 
             public Object doIt(Resource rsrc) {
                 HashSetResource toplevelKeys = (HashSetResource) rsrc;
                 if (toplevelKeys == null)
                     toplevelKeys = new HashSetResource();
-                if (toplevelKeys.add(topLevelKey))
+                if (toplevelKeys.addAll(topLevelKeys))
                     changedResource(toplevelKeys);
                 return null;
             }
         });
+        if (firstViolation[0] != null)
+            throw new Error(firstViolation[0]);
+    }
+
+    /**
+     * Adds a value under key to a page of the index. A value that breaks the
+     * Det/SemiDet uniqueness is not added.
+     * @return a description of the violation, or null if the value was added.
+     */
+    private String addValue(HashMapResource map, Object key, IndexValue value) {
+        Object whatIsThere = map.get(key);
+        if (whatIsThere == null) {
+            map.put(key, value);
+        } else if (whatIsThere instanceof ArrayList) {
+            ArrayList lstWhatIsThere = (ArrayList) whatIsThere;
+            if (checkDet) { //SemiDet/Det uniqueness check
+                for (Iterator iter = lstWhatIsThere.iterator(); iter.hasNext();) {
+                    IndexValue element = (IndexValue) iter.next();
+                    if (!element.getParts().equals(value.getParts())) {
+                        return violation(element.getParts(), value.getParts(), key);
+                    }
+                }
+            }
+            lstWhatIsThere.add(value);
+        } else { //It's an indexValue
+            IndexValue idxWhatIsThere = (IndexValue) whatIsThere;
+            if (checkDet) { //SemiDet/Det uniqueness check
+                if (!idxWhatIsThere.getParts().equals(value.getParts())) {
+                    return violation(idxWhatIsThere.getParts(), value.getParts(), key);
+                }
+            }
+            ArrayList lstWhatIsThere = new ArrayList(2);
+            lstWhatIsThere.add(whatIsThere);
+            lstWhatIsThere.add(value);
+            map.put(key, lstWhatIsThere);
+        }
+        map.addedValue();
+        return null;
     }
 
     /**
@@ -307,6 +451,11 @@ public final class Index {
 
         final Object key = inputPars.getSecond();
 
+        if (segment != null) {
+            String page = nameManager.getPersistentName(inputPars.getFirst());
+            return convertIndexValuesToRBTuples(removeInvalids(segment.lookup(page, key)));
+        }
+
         return (ElementSource) getPager().synchDoTask(getResourceFromKey(inputPars), new Pager.Task(false) {
 
             public Object doIt(Resource rsrc) {
@@ -321,6 +470,24 @@ public final class Index {
 
     }
 
+    /**
+     * Whether it is worth calling prefetch: the index is paged and the pages
+     * do not all fit in the pager's cache.
+     */
+    public boolean canPrefetch() {
+        return segment == null && getPager().isPrefetchUseful();
+    }
+
+    /**
+     * Hint that getMatchElementSource or getMatchSingle will soon be called
+     * with inputPars, so the pager can start reading in the page it needs.
+     */
+    public void prefetch(RBTuple inputPars) {
+        if (segment == null && inputPars != RBTuple.theEmpty) {
+            getPager().prefetch(getResourceFromKey(inputPars));
+        }
+    }
+
     /** Returns a match for a SemiDet / Det exectution. */
     public RBTuple getMatchSingle(RBTuple inputPars) {
         return (RBTuple) getMatchElementSource(inputPars).firstElementOrNull();
@@ -343,6 +510,10 @@ public final class Index {
      * Strings).
      */
     private ElementSource getTopLevelKeys() {
+        if (segment != null) {
+            Set keys = segment.keySet("keys.data");
+            return keys == null ? ElementSource.theEmpty : ElementSource.with(keys.iterator());
+        }
         HashSetResource topLevelKeys = (HashSetResource) getPager().synchDoTask(
                 storageLocation.getResourceID("keys.data"), new Pager.Task(false) {
                     public Object doIt(Resource rsrc) {
@@ -358,6 +529,13 @@ public final class Index {
      * top-level key.
      */
     private ElementSource getTopKeyValues(String topkey) {
+        if (segment != null) {
+            return segment.values(nameManager.getPersistentName(topkey)).map(new Action() {
+                public Object compute(Object arg) {
+                    return removeInvalids(arg);
+                }
+            }).flatten();
+        }
         ElementSource valid_values = (ElementSource) getPager().synchDoTask(
                 storageLocation.getResourceID(nameManager.getPersistentName(topkey)), new Pager.Task(false) {
                     public Object doIt(Resource rsrc) {
@@ -0,0 +1,479 @@
+/*
+*    Logical Structural Diff (LSDiff)
+*    Copyright (C) <2015>  <Dr. Miryung Kim miryung@cs.ucla.edu>
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package tyRuBa.engine.factbase.hashtable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import tyRuBa.engine.FrontEnd;
+import tyRuBa.engine.RBJavaObjectCompoundTerm;
+import tyRuBa.engine.RBPair;
+import tyRuBa.engine.RBSymbol;
+import tyRuBa.engine.RBTerm;
+import tyRuBa.engine.RBTuple;
+import tyRuBa.engine.SymbolTable;
+import tyRuBa.engine.factbase.hashtable.Index.HashMapResource;
+import tyRuBa.engine.factbase.hashtable.Index.HashSetResource;
+import tyRuBa.util.ObjectTuple;
+import tyRuBa.util.pager.Pager;
+import tyRuBa.util.pager.Pager.Resource;
+
+/**
+ * Reads and writes the pages of an Index (HashMapResource and
+ * HashSetResource) in a compact binary format instead of Java serialization.
+ * <p>
+ * A page starts with a magic number, a format version and the kind of page,
+ * followed by a table of all the strings in the page (each stored once, as a
+ * length prefixed UTF-8 string) and then the body. In the body strings are
+ * references into the table, and the terms and tuples that are commonly
+ * found in an Index (names, integers, lists, tuples) have their own tags.
+ * Anything else is stored as a length prefixed Java serialization of that
+ * object only. Counts and references are written as variable length ints.
+ * @category FactBase
+ */
+public class IndexPageCodec implements Pager.ResourceCodec {
+
+    /** Marks a page written by this codec ("TRPG"). */
+    static final int MAGIC = 0x54525047;
+
+    /** Version of the page format, bumped on every incompatible change. */
+    static final int VERSION = 1;
+
+    /** Page kinds. */
+    private static final int MAP_PAGE = 1;
+    private static final int SET_PAGE = 2;
+
+    /** Tags for the values stored in a HashMapResource. */
+    private static final int SINGLE_VALUE = 1;
+    private static final int VALUE_LIST = 2;
+
+    /** Tags for keys and terms. */
+    private static final int NULL = 0;
+    private static final int STRING = 1;
+    private static final int INTEGER = 2;
+    private static final int NAME = 3;
+    private static final int INTEGER_TERM = 4;
+    private static final int EMPTY_LIST = 5;
+    private static final int LIST = 6;
+    private static final int TUPLE = 7;
+    private static final int OBJECT_TUPLE = 8;
+    private static final int SERIALIZED = 9;
+
+    public boolean canEncode(Resource rsrc) {
+        return rsrc instanceof HashMapResource || rsrc instanceof HashSetResource;
+    }
+
+    public void encode(Resource rsrc, OutputStream os) throws IOException {
+        Encoder enc = new Encoder();
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os));
+        if (rsrc instanceof HashMapResource) {
+            HashMapResource map = (HashMapResource) rsrc;
+            enc.writeVarInt(map.size());
+            for (Iterator iter = map.entrySet().iterator(); iter.hasNext();) {
+                Map.Entry entry = (Map.Entry) iter.next();
+                enc.writeObject(entry.getKey());
+                enc.writeValues(entry.getValue());
+            }
+            writeHeader(out, MAP_PAGE);
+            out.writeLong(map.getLastCleanTime());
+        } else {
+            HashSetResource set = (HashSetResource) rsrc;
+            enc.writeVarInt(set.size());
+            for (Iterator iter = set.iterator(); iter.hasNext();) {
+                enc.writeObject(iter.next());
+            }
+            writeHeader(out, SET_PAGE);
+        }
+        enc.writeTo(out);
+        out.close();
+    }
+
+    public Resource decode(InputStream is) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(is));
+        try {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not an index page");
+            }
+            int version = in.readByte();
+            if (version != VERSION) {
+                throw new IOException("Unsupported index page version " + version);
+            }
+            int kind = in.readByte();
+            if (kind == MAP_PAGE) {
+                HashMapResource map = new HashMapResource(in.readLong());
+                Decoder dec = new Decoder(in);
+                int size = dec.readVarInt();
+                for (int i = 0; i < size; i++) {
+                    Object key = dec.readObject();
+                    map.put(key, dec.readValues());
+                }
+                return map;
+            } else if (kind == SET_PAGE) {
+                HashSetResource set = new HashSetResource();
+                Decoder dec = new Decoder(in);
+                int size = dec.readVarInt();
+                for (int i = 0; i < size; i++) {
+                    set.add(dec.readObject());
+                }
+                return set;
+            } else {
+                throw new IOException("Corrupt index page: page kind " + kind);
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void writeHeader(DataOutputStream out, int kind) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeByte(kind);
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Corrupt index page: bad varint");
+    }
+
+    /**
+     * Writes the body of a page into a buffer, collecting the strings, so the
+     * string table can be written out in front of it. An inline Encoder
+     * writes every string in place instead, which gives equal objects equal
+     * bytes (used by IndexSegment to compare keys without decoding them).
+     */
+    static class Encoder {
+
+        private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+        DataOutputStream body = new DataOutputStream(buffer);
+
+        private boolean inlineStrings;
+
+        /** Did anything have to be written with Java serialization? */
+        private boolean usedSerialization = false;
+
+        private Map stringIds = new HashMap();
+
+        private ArrayList strings = new ArrayList();
+
+        Encoder() {
+            this(false);
+        }
+
+        Encoder(boolean inlineStrings) {
+            this.inlineStrings = inlineStrings;
+        }
+
+        boolean usedSerialization() {
+            return usedSerialization;
+        }
+
+        /** Returns what has been written since the last call, and starts over. */
+        byte[] takeBytes() throws IOException {
+            body.flush();
+            byte[] result = buffer.toByteArray();
+            buffer.reset();
+            usedSerialization = false;
+            return result;
+        }
+
+        void writeVarInt(int value) throws IOException {
+            IndexPageCodec.writeVarInt(body, value);
+        }
+
+        void writeString(String str) throws IOException {
+            if (inlineStrings) {
+                byte[] utf8 = str.getBytes("UTF-8");
+                writeVarInt(utf8.length);
+                body.write(utf8);
+                return;
+            }
+            Integer id = (Integer) stringIds.get(str);
+            if (id == null) {
+                id = new Integer(strings.size());
+                stringIds.put(str, id);
+                strings.add(str);
+            }
+            writeVarInt(id.intValue());
+        }
+
+        /**
+         * Writes what a HashMapResource maps a key to: an IndexValue or an
+         * ArrayList of IndexValues.
+         */
+        void writeValues(Object value) throws IOException {
+            if (value instanceof ArrayList) {
+                ArrayList values = (ArrayList) value;
+                body.writeByte(VALUE_LIST);
+                writeVarInt(values.size());
+                for (int i = 0; i < values.size(); i++) {
+                    writeIndexValue((IndexValue) values.get(i));
+                }
+            } else {
+                body.writeByte(SINGLE_VALUE);
+                writeIndexValue((IndexValue) value);
+            }
+        }
+
+        void writeIndexValue(IndexValue value) throws IOException {
+            body.writeLong(value.getValidatorHandle());
+            writeTuple(value.getParts());
+        }
+
+        void writeTuple(RBTuple tuple) throws IOException {
+            int size = tuple.getNumSubterms();
+            writeVarInt(size);
+            for (int i = 0; i < size; i++) {
+                writeObject(tuple.getSubterm(i));
+            }
+        }
+
+        void writeObject(Object obj) throws IOException {
+            if (obj == null) {
+                body.writeByte(NULL);
+            } else if (obj instanceof String) {
+                body.writeByte(STRING);
+                writeString((String) obj);
+            } else if (obj instanceof Integer) {
+                body.writeByte(INTEGER);
+                body.writeInt(((Integer) obj).intValue());
+            } else if (obj.getClass() == RBSymbol.class) {
+                body.writeByte(NAME);
+                writeString(obj.toString());
+            } else if (obj.getClass() == RBJavaObjectCompoundTerm.class) {
+                Object arg = ((RBJavaObjectCompoundTerm) obj).getObject();
+                if (arg instanceof String) {
+                    body.writeByte(NAME);
+                    writeString((String) arg);
+                } else if (arg instanceof Integer) {
+                    body.writeByte(INTEGER_TERM);
+                    body.writeInt(((Integer) arg).intValue());
+                } else {
+                    writeSerialized(obj);
+                }
+            } else if (obj.getClass() == FrontEnd.theEmptyList.getClass()) {
+                body.writeByte(EMPTY_LIST);
+            } else if (obj.getClass() == RBPair.class) {
+                // Lists are written iteratively, long lists would otherwise
+                // recurse once per element.
+                ArrayList elements = new ArrayList();
+                RBTerm rest = (RBTerm) obj;
+                while (rest.getClass() == RBPair.class) {
+                    RBPair pair = (RBPair) rest;
+                    elements.add(pair.getCar());
+                    rest = pair.getCdr();
+                }
+                body.writeByte(LIST);
+                writeVarInt(elements.size());
+                for (int i = 0; i < elements.size(); i++) {
+                    writeObject(elements.get(i));
+                }
+                writeObject(rest);
+            } else if (obj.getClass() == RBTuple.class) {
+                body.writeByte(TUPLE);
+                writeTuple((RBTuple) obj);
+            } else if (obj instanceof ObjectTuple) {
+                ObjectTuple tuple = (ObjectTuple) obj;
+                body.writeByte(OBJECT_TUPLE);
+                writeVarInt(tuple.size());
+                for (int i = 0; i < tuple.size(); i++) {
+                    writeObject(tuple.get(i));
+                }
+            } else {
+                writeSerialized(obj);
+            }
+        }
+
+        private void writeSerialized(Object obj) throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ObjectOutputStream oos = new ObjectOutputStream(bytes);
+            oos.writeObject(obj);
+            oos.close();
+            usedSerialization = true;
+            body.writeByte(SERIALIZED);
+            writeVarInt(bytes.size());
+            bytes.writeTo(body);
+        }
+
+        /** Writes the string table followed by the body. */
+        void writeTo(DataOutputStream out) throws IOException {
+            body.flush();
+            IndexPageCodec.writeVarInt(out, strings.size());
+            for (int i = 0; i < strings.size(); i++) {
+                byte[] utf8 = ((String) strings.get(i)).getBytes("UTF-8");
+                IndexPageCodec.writeVarInt(out, utf8.length);
+                out.write(utf8);
+            }
+            buffer.writeTo(out);
+        }
+    }
+
+    /**
+     * Reads the string table and then the body of a page, or, for an inline
+     * Decoder, a body written by an inline Encoder.
+     */
+    static class Decoder {
+
+        private DataInputStream in;
+
+        private String[] strings;
+
+        Decoder(DataInputStream in) throws IOException {
+            this(in, false);
+        }
+
+        Decoder(DataInputStream in, boolean inlineStrings) throws IOException {
+            this.in = in;
+            if (!inlineStrings) {
+                strings = new String[readVarInt()];
+                for (int i = 0; i < strings.length; i++) {
+                    strings[i] = readUTF8();
+                }
+            }
+        }
+
+        private String readUTF8() throws IOException {
+            byte[] utf8 = new byte[readVarInt()];
+            in.readFully(utf8);
+            return new String(utf8, "UTF-8").intern();
+        }
+
+        int readVarInt() throws IOException {
+            return IndexPageCodec.readVarInt(in);
+        }
+
+        String readString() throws IOException {
+            if (strings == null) {
+                return readUTF8();
+            }
+            int id = readVarInt();
+            if (id >= strings.length) {
+                throw new IOException("Corrupt index page: string " + id);
+            }
+            return strings[id];
+        }
+
+        Object readValues() throws IOException {
+            int tag = in.readByte();
+            if (tag == SINGLE_VALUE) {
+                return readIndexValue();
+            } else if (tag == VALUE_LIST) {
+                int numValues = readVarInt();
+                ArrayList values = new ArrayList(numValues);
+                for (int j = 0; j < numValues; j++) {
+                    values.add(readIndexValue());
+                }
+                return values;
+            } else {
+                throw new IOException("Corrupt index page: value tag " + tag);
+            }
+        }
+
+        IndexValue readIndexValue() throws IOException {
+            long handle = in.readLong();
+            return IndexValue.make(handle, readTuple());
+        }
+
+        RBTuple readTuple() throws IOException {
+            RBTerm[] terms = new RBTerm[readVarInt()];
+            for (int i = 0; i < terms.length; i++) {
+                terms[i] = (RBTerm) readObject();
+            }
+            return RBTuple.make(terms);
+        }
+
+        Object readObject() throws IOException {
+            int tag = in.readByte();
+            switch (tag) {
+            case NULL:
+                return null;
+            case STRING:
+                return readString();
+            case INTEGER:
+                return new Integer(in.readInt());
+            case NAME:
+                return SymbolTable.intern(readString());
+            case INTEGER_TERM:
+                return new RBJavaObjectCompoundTerm(new Integer(in.readInt()));
+            case EMPTY_LIST:
+                return FrontEnd.theEmptyList;
+            case LIST: {
+                RBTerm[] elements = new RBTerm[readVarInt()];
+                for (int i = 0; i < elements.length; i++) {
+                    elements[i] = (RBTerm) readObject();
+                }
+                RBTerm list = (RBTerm) readObject();
+                for (int i = elements.length - 1; i >= 0; i--) {
+                    list = new RBPair(elements[i], list);
+                }
+                return list;
+            }
+            case TUPLE:
+                return readTuple();
+            case OBJECT_TUPLE: {
+                Object[] objs = new Object[readVarInt()];
+                for (int i = 0; i < objs.length; i++) {
+                    objs[i] = readObject();
+                }
+                return ObjectTuple.make(objs);
+            }
+            case SERIALIZED: {
+                byte[] bytes = new byte[readVarInt()];
+                in.readFully(bytes);
+                ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes));
+                try {
+                    return ois.readObject();
+                } catch (ClassNotFoundException e) {
+                    throw new IOException("Could not read index page: " + e.getMessage());
+                }
+            }
+            default:
+                throw new IOException("Corrupt index page: tag " + tag);
+            }
+        }
+    }
+
+}
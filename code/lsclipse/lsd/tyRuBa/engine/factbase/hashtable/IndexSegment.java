@@ -0,0 +1,511 @@
+/*
+*    Logical Structural Diff (LSDiff)
+*    Copyright (C) <2015>  <Dr. Miryung Kim miryung@cs.ucla.edu>
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package tyRuBa.engine.factbase.hashtable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import tyRuBa.engine.factbase.hashtable.Index.HashMapResource;
+import tyRuBa.engine.factbase.hashtable.Index.HashSetResource;
+import tyRuBa.util.ElementSource;
+import tyRuBa.util.pager.DiskManager;
+import tyRuBa.util.pager.Pager.Resource;
+
+/**
+ * All the pages of a read only Index packed into one file, which is read
+ * through a MappedByteBuffer instead of paging individual files in.
+ * <p>
+ * The file starts with a directory of the pages, which also has the size and
+ * the time of every page file it was packed from. When they no longer match
+ * the files (the directory was overwritten by a newer backup) the segment is
+ * ignored. Within a page the keys are
+ * written inline (see IndexPageCodec.Encoder) and sorted by their bytes, so a
+ * lookup encodes the key it is looking for and binary searches the page,
+ * comparing bytes in the mapping. Only the values of the key that is found
+ * get decoded. Pages whose keys can not be compared this way (a key that
+ * needed Java serialization) are stored in the IndexPageCodec format and
+ * decoded as a whole.
+ * @category FactBase
+ */
+final class IndexSegment {
+
+    /** Name of the segment file in the directory of an Index. */
+    static final String FILE_NAME = "pages.seg";
+
+    /** Marks a segment file ("TRSG"). */
+    private static final int MAGIC = 0x54525347;
+
+    /** Version of the segment format, bumped on every incompatible change. */
+    private static final int VERSION = 2;
+
+    /** Page kinds. */
+    private static final int SORTED_MAP_PAGE = 1;
+    private static final int SET_PAGE = 2;
+    private static final int ENCODED_PAGE = 3;
+
+    /** Bytes per key in a sorted page: key offset, key length, values offset. */
+    private static final int SLOT_SIZE = 12;
+
+    /** Bytes before the first slot of a sorted page: kind, number of keys. */
+    private static final int SLOTS_START = 5;
+
+    private final File file;
+
+    private final MappedByteBuffer buffer;
+
+    /** Page name => int[] { offset, length } */
+    private final Map pages = new HashMap();
+
+    /** Page name => long[] { size, last modified } of the file it was packed from */
+    private final Map packedFrom = new HashMap();
+
+    /** Written by another version of the format */
+    private boolean otherVersion = false;
+
+    /**
+     * Opens the segment in an Index directory.
+     * @return null if the directory has no segment file, or the pages in the
+     * directory are not the ones it was packed from.
+     */
+    static IndexSegment open(File indexDir) {
+        File file = new File(indexDir, FILE_NAME);
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            IndexSegment segment = new IndexSegment(file);
+            return segment.isPackedFrom(indexDir) ? segment : null;
+        } catch (IOException e) {
+            throw new Error("Could not open index segment " + file + ": " + e.getMessage());
+        }
+    }
+
+    private IndexSegment(File file) throws IOException {
+        this.file = file;
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Segment is too large to be mapped");
+            }
+            // The mapping stays valid after the channel is closed.
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            raf.close();
+        }
+        if (buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not an index segment");
+        }
+        if (buffer.get(4) != VERSION) {
+            otherVersion = true;
+            return;
+        }
+        DataInputStream in = streamAt(5);
+        int numPages = in.readInt();
+        for (int i = 0; i < numPages; i++) {
+            String name = in.readUTF();
+            int offset = in.readInt();
+            int length = in.readInt();
+            long size = in.readLong();
+            long modified = in.readLong();
+            pages.put(name, new int[] { offset, length });
+            packedFrom.put(name, new long[] { size, modified });
+        }
+    }
+
+    /** Whether the page files in indexDir are still the ones that were packed. */
+    private boolean isPackedFrom(File indexDir) {
+        if (otherVersion) {
+            return false;
+        }
+        File[] files = indexDir.listFiles();
+        int numPages = 0;
+        for (int i = 0; i < files.length; i++) {
+            if (!isPage(files[i])) {
+                continue;
+            }
+            numPages++;
+            long[] packed = (long[]) packedFrom.get(files[i].getName());
+            if (packed == null || packed[0] != files[i].length() || packed[1] != files[i].lastModified()) {
+                return false;
+            }
+        }
+        return numPages == packedFrom.size();
+    }
+
+    private static boolean isPage(File file) {
+        String name = file.getName();
+        return file.isFile() && !name.equals(FILE_NAME) && !name.endsWith(".tmp");
+    }
+
+    public String toString() {
+        return "IndexSegment(" + file + ")";
+    }
+
+    /** A stream that reads the mapping from the given offset, without copying. */
+    private DataInputStream streamAt(int offset) {
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset);
+        return new DataInputStream(new ByteBufferInputStream(view));
+    }
+
+    boolean hasPage(String pageName) {
+        return pages.containsKey(pageName);
+    }
+
+    /**
+     * Finds what a key maps to in a page: an IndexValue, an ArrayList of
+     * IndexValues or null if the key (or the page) is not there.
+     */
+    Object lookup(String pageName, Object key) {
+        int[] page = (int[]) pages.get(pageName);
+        if (page == null) {
+            return null;
+        }
+        try {
+            int start = page[0];
+            int kind = buffer.get(start);
+            if (kind == ENCODED_PAGE) {
+                return decodePage(page).get(key);
+            } else if (kind != SORTED_MAP_PAGE) {
+                throw new IOException("Not a map page: " + pageName);
+            }
+            IndexPageCodec.Encoder enc = new IndexPageCodec.Encoder(true);
+            enc.writeObject(key);
+            boolean canCompareBytes = !enc.usedSerialization();
+            byte[] probe = enc.takeBytes();
+
+            int numKeys = buffer.getInt(start + 1);
+            if (!canCompareBytes) {
+                for (int i = 0; i < numKeys; i++) {
+                    if (key.equals(readKey(start, i))) {
+                        return readValues(start, i);
+                    }
+                }
+                return null;
+            }
+            int lo = 0;
+            int hi = numKeys - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                int slot = start + SLOTS_START + mid * SLOT_SIZE;
+                int cmp = compare(start + buffer.getInt(slot), buffer.getInt(slot + 4), probe);
+                if (cmp < 0) {
+                    lo = mid + 1;
+                } else if (cmp > 0) {
+                    hi = mid - 1;
+                } else {
+                    return readValues(start, mid);
+                }
+            }
+            return null;
+        } catch (IOException e) {
+            throw new Error("Could not read index segment " + file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the values (IndexValues or ArrayLists of them) of all the keys
+     * in a page, decoding them one by one as they are asked for.
+     */
+    ElementSource values(String pageName) {
+        final int[] page = (int[]) pages.get(pageName);
+        if (page == null) {
+            return ElementSource.theEmpty;
+        }
+        try {
+            final int start = page[0];
+            int kind = buffer.get(start);
+            if (kind == ENCODED_PAGE) {
+                return ElementSource.with(decodePage(page).values().iterator());
+            } else if (kind != SORTED_MAP_PAGE) {
+                throw new IOException("Not a map page: " + pageName);
+            }
+            final int numKeys = buffer.getInt(start + 1);
+            return ElementSource.with(new Iterator() {
+                private int next = 0;
+
+                public boolean hasNext() {
+                    return next < numKeys;
+                }
+
+                public Object next() {
+                    if (next >= numKeys) {
+                        throw new NoSuchElementException();
+                    }
+                    try {
+                        return readValues(start, next++);
+                    } catch (IOException e) {
+                        throw new Error("Could not read index segment " + file + ": " + e.getMessage());
+                    }
+                }
+
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            });
+        } catch (IOException e) {
+            throw new Error("Could not read index segment " + file + ": " + e.getMessage());
+        }
+    }
+
+    /** Returns the contents of a set page (the top level keys of the Index). */
+    Set keySet(String pageName) {
+        int[] page = (int[]) pages.get(pageName);
+        if (page == null) {
+            return null;
+        }
+        try {
+            if (buffer.get(page[0]) != SET_PAGE) {
+                throw new IOException("Not a set page: " + pageName);
+            }
+            IndexPageCodec.Decoder dec = new IndexPageCodec.Decoder(streamAt(page[0] + 1), true);
+            int size = dec.readVarInt();
+            Set result = new HashSet();
+            for (int i = 0; i < size; i++) {
+                result.add(dec.readObject());
+            }
+            return result;
+        } catch (IOException e) {
+            throw new Error("Could not read index segment " + file + ": " + e.getMessage());
+        }
+    }
+
+    /** Compares the bytes of a key in the mapping with the probe. */
+    private int compare(int offset, int length, byte[] probe) {
+        int len = Math.min(length, probe.length);
+        for (int i = 0; i < len; i++) {
+            int cmp = (buffer.get(offset + i) & 0xFF) - (probe[i] & 0xFF);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return length - probe.length;
+    }
+
+    private Object readKey(int start, int index) throws IOException {
+        int slot = start + SLOTS_START + index * SLOT_SIZE;
+        return new IndexPageCodec.Decoder(streamAt(start + buffer.getInt(slot)), true).readObject();
+    }
+
+    private Object readValues(int start, int index) throws IOException {
+        int slot = start + SLOTS_START + index * SLOT_SIZE;
+        return new IndexPageCodec.Decoder(streamAt(start + buffer.getInt(slot + 8)), true).readValues();
+    }
+
+    private Map decodePage(int[] page) throws IOException {
+        return (Map) new IndexPageCodec().decode(new ByteBufferInputStream(slice(page[0] + 1, page[1] - 1)));
+    }
+
+    private ByteBuffer slice(int offset, int length) {
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset);
+        view.limit(offset + length);
+        return view.slice();
+    }
+
+    /**
+     * Packs all the pages in an Index directory into a segment file in that
+     * directory. The pages themselves are left in place.
+     */
+    static void write(File indexDir) throws IOException {
+        File[] files = indexDir.listFiles();
+        Arrays.sort(files);
+        ArrayList names = new ArrayList();
+        ArrayList packed = new ArrayList();
+        ArrayList contents = new ArrayList();
+        for (int i = 0; i < files.length; i++) {
+            if (!isPage(files[i])) {
+                continue;
+            }
+            String name = files[i].getName();
+            // taken before reading, so a page written meanwhile does not match
+            long[] stamp = new long[] { files[i].length(), files[i].lastModified() };
+            Resource page;
+            try {
+                page = DiskManager.readResource(new FileInputStream(files[i]), new IndexPageCodec());
+            } catch (ClassNotFoundException e) {
+                throw new IOException("Could not read page " + files[i] + ": " + e.getMessage());
+            }
+            names.add(name);
+            packed.add(stamp);
+            contents.add(encodePage(page));
+        }
+
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(header);
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeInt(names.size());
+        int directorySize = 0;
+        for (int i = 0; i < names.size(); i++) {
+            directorySize += utfLength((String) names.get(i)) + 2 + 8 + 16;
+        }
+        int offset = header.size() + directorySize;
+        for (int i = 0; i < names.size(); i++) {
+            int length = ((byte[]) contents.get(i)).length;
+            out.writeUTF((String) names.get(i));
+            out.writeInt(offset);
+            out.writeInt(length);
+            out.writeLong(((long[]) packed.get(i))[0]);
+            out.writeLong(((long[]) packed.get(i))[1]);
+            offset += length;
+        }
+        out.flush();
+
+        File tmp = new File(indexDir, FILE_NAME + ".tmp");
+        FileOutputStream fos = new FileOutputStream(tmp);
+        try {
+            header.writeTo(fos);
+            for (int i = 0; i < contents.size(); i++) {
+                fos.write((byte[]) contents.get(i));
+            }
+        } finally {
+            fos.close();
+        }
+        File target = new File(indexDir, FILE_NAME);
+        target.delete();
+        if (!tmp.renameTo(target)) {
+            throw new IOException("Could not create " + target);
+        }
+    }
+
+    private static int utfLength(String str) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new DataOutputStream(bytes).writeUTF(str);
+        return bytes.size() - 2;
+    }
+
+    private static byte[] encodePage(Resource page) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        IndexPageCodec.Encoder enc = new IndexPageCodec.Encoder(true);
+        if (page instanceof HashSetResource) {
+            HashSetResource set = (HashSetResource) page;
+            out.writeByte(SET_PAGE);
+            enc.writeVarInt(set.size());
+            for (Iterator iter = set.iterator(); iter.hasNext();) {
+                enc.writeObject(iter.next());
+            }
+            out.write(enc.takeBytes());
+            out.flush();
+            return bytes.toByteArray();
+        }
+
+        HashMapResource map = (HashMapResource) page;
+        final byte[][] keys = new byte[map.size()][];
+        byte[][] values = new byte[map.size()][];
+        int i = 0;
+        for (Iterator iter = map.entrySet().iterator(); iter.hasNext(); i++) {
+            Map.Entry entry = (Map.Entry) iter.next();
+            enc.writeObject(entry.getKey());
+            if (enc.usedSerialization()) {
+                out.writeByte(ENCODED_PAGE);
+                new IndexPageCodec().encode(map, out);
+                return bytes.toByteArray();
+            }
+            keys[i] = enc.takeBytes();
+            enc.writeValues(entry.getValue());
+            values[i] = enc.takeBytes();
+        }
+
+        Integer[] order = new Integer[keys.length];
+        for (i = 0; i < order.length; i++) {
+            order[i] = new Integer(i);
+        }
+        Arrays.sort(order, new Comparator() {
+            public int compare(Object o1, Object o2) {
+                byte[] k1 = keys[((Integer) o1).intValue()];
+                byte[] k2 = keys[((Integer) o2).intValue()];
+                int len = Math.min(k1.length, k2.length);
+                for (int j = 0; j < len; j++) {
+                    int cmp = (k1[j] & 0xFF) - (k2[j] & 0xFF);
+                    if (cmp != 0) {
+                        return cmp;
+                    }
+                }
+                return k1.length - k2.length;
+            }
+        });
+
+        out.writeByte(SORTED_MAP_PAGE);
+        out.writeInt(keys.length);
+        int offset = SLOTS_START + keys.length * SLOT_SIZE;
+        for (i = 0; i < order.length; i++) {
+            int k = order[i].intValue();
+            out.writeInt(offset);
+            out.writeInt(keys[k].length);
+            out.writeInt(offset + keys[k].length);
+            offset += keys[k].length + values[k].length;
+        }
+        for (i = 0; i < order.length; i++) {
+            int k = order[i].intValue();
+            out.write(keys[k]);
+            out.write(values[k]);
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /** Reads a ByteBuffer (a view on the mapping) as an InputStream. */
+    private static class ByteBufferInputStream extends InputStream {
+
+        private ByteBuffer buf;
+
+        ByteBufferInputStream(ByteBuffer buf) {
+            this.buf = buf;
+        }
+
+        public int read() {
+            return buf.hasRemaining() ? buf.get() & 0xFF : -1;
+        }
+
+        public int read(byte[] b, int off, int len) {
+            if (!buf.hasRemaining()) {
+                return -1;
+            }
+            len = Math.min(len, buf.remaining());
+            buf.get(b, off, len);
+            return len;
+        }
+
+        public int available() {
+            return buf.remaining();
+        }
+    }
+
+}
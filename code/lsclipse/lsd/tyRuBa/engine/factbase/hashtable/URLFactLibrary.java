@@ -20,7 +20,10 @@
  */
 package tyRuBa.engine.factbase.hashtable;
 
+import java.io.File;
+import java.io.IOException;
 import java.net.MalformedURLException;
+import java.net.URISyntaxException;
 import java.net.URL;
 import java.util.HashMap;
 
@@ -90,13 +93,22 @@ public class URLFactLibrary {
             bl = Factory.makeBindingList(arity, Factory.makeFree());
         }
 
-        Index result = (Index) indexes.get(predicateName + arity + bl.getBFString());
+        String indexKey = predicateName + arity + bl.getBFString();
+        Index result = (Index) indexes.get(indexKey);
 
         try {
             if (result == null) {
-                result = new Index(mode, new URLLocation(baseURL + nameManager.getPersistentName(predicateName) + "/"
-                        + arity + "/" + bl.getBFString() + "/"), engine, predicateName + "/" + arity + "/"
-                        + bl.getBFString(), nameManager, validatorManager);
+                String indexURL = baseURL + nameManager.getPersistentName(predicateName) + "/"
+                        + arity + "/" + bl.getBFString() + "/";
+                String name = predicateName + "/" + arity + "/" + bl.getBFString();
+                IndexSegment segment = openSegment(new URL(indexURL));
+                if (segment != null) {
+                    result = new Index(mode, segment, engine, name, nameManager, validatorManager);
+                } else {
+                    result = new Index(mode, new URLLocation(indexURL), engine, name, nameManager,
+                            validatorManager);
+                }
+                indexes.put(indexKey, result);
             }
         } catch (MalformedURLException e) {
             throw new Error("Malformed URL for Fact Library index: " + predicateName + "/" + arity + "/"
@@ -104,4 +116,44 @@ public class URLFactLibrary {
         }
         return result;
     }
+
+    /**
+     * Opens the segment file of an Index, if the library is a directory and
+     * it has been packed (see packSegments).
+     */
+    private static IndexSegment openSegment(URL indexURL) {
+        if (!"file".equals(indexURL.getProtocol())) {
+            return null;
+        }
+        try {
+            return IndexSegment.open(new File(indexURL.toURI()));
+        } catch (URISyntaxException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Packs the pages of every Index of a fact library directory into one
+     * segment file per Index. A URLFactLibrary for a packed directory reads
+     * its facts through memory mapped segments instead of page by page.
+     * <p>
+     * Packing is not done when a fact base is backed up, it is a separate
+     * step for the directory a library is published from. A segment whose
+     * pages were overwritten since is ignored, so pack again after that.
+     * @param libraryDir a directory with a backed up fact base.
+     */
+    public static void packSegments(File libraryDir) throws IOException {
+        File[] files = libraryDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        if (new File(libraryDir, "keys.data").isFile()) {
+            IndexSegment.write(libraryDir);
+        }
+        for (int i = 0; i < files.length; i++) {
+            if (files[i].isDirectory()) {
+                packSegments(files[i]);
+            }
+        }
+    }
 }
\ No newline at end of file
@@ -89,7 +89,7 @@ public abstract class SubstituteOrInstantiateVisitor implements ExpressionVisito
 		RBExpression query = (RBExpression) count.getQuery().accept(this);
 		RBTerm extract = (RBTerm) count.getExtract().accept(this);
 		RBTerm result = (RBTerm) count.getResult().accept(this);
-		return new RBCountAll(query, extract, result);
+		return new RBCountAll(query, extract, result, count.getLimit());
 	}
 
 	public Object visit(RBModeSwitchExpression modeSwitch) {
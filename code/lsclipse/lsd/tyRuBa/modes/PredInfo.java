@@ -26,6 +26,7 @@ import java.util.HashMap;
 import tyRuBa.engine.PredicateIdentifier;
 import tyRuBa.engine.QueryEngine;
 import tyRuBa.engine.factbase.FactBase;
+import tyRuBa.engine.factbase.InMemoryFactBase;
 import tyRuBa.engine.factbase.SimpleArrayListFactBase;
 import tyRuBa.engine.factbase.hashtable.HashTableFactBase;
 
@@ -103,7 +104,9 @@ public class PredInfo {
 	        //use the memory factbase if there are no arguments to the predicate
 	        factbase = new SimpleArrayListFactBase(this);
 	    } else if (factbase == null) {
-	        if (isPersistent) {
+	        if (engine.isInMemory()) {
+	            factbase = new InMemoryFactBase(this);
+	        } else if (isPersistent) {
 	            factbase = new HashTableFactBase(this);
 	        } else {
 	            factbase = new SimpleArrayListFactBase(this);
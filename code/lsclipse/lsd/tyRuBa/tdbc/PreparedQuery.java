@@ -66,4 +66,8 @@ public class PreparedQuery extends PreparedStatement{
 		return compiled.start(putMap);
 	}
 
+	public Compiled getCompiled() {
+		return compiled;
+	}
+
 }
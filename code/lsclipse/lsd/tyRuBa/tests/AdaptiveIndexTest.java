@@ -0,0 +1,142 @@
+/*
+*    Logical Structural Diff (LSDiff)
+*    Copyright (C) <2015>  <Dr. Miryung Kim miryung@cs.ucla.edu>
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package tyRuBa.tests;
+
+import java.io.File;
+import java.util.ArrayList;
+
+import tyRuBa.engine.FrontEnd;
+import tyRuBa.engine.RBTerm;
+import tyRuBa.engine.factbase.hashtable.HashTableFactBase;
+import tyRuBa.modes.TypeModeError;
+import tyRuBa.parser.ParseException;
+
+/**
+ * Checks that a persistent predicate that only declares the all free mode
+ * gets indexes built for the binding patterns it is queried with, and that
+ * the answers stay the same.
+ */
+public class AdaptiveIndexTest extends TyrubaTest {
+
+	static final int NUM_FACTS = 20000;
+
+	public AdaptiveIndexTest(String arg0) {
+		super(arg0);
+	}
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		declare(frontend);
+		ArrayList tuples = new ArrayList(NUM_FACTS);
+		for (int i = 0; i < NUM_FACTS; i++) {
+			tuples.add(new RBTerm[] {
+				FrontEnd.makeName("m" + (i % 100) + "()"),
+				FrontEnd.makeName("m" + i + "()"),
+				FrontEnd.makeName("p.C" + (i % 7))
+			});
+		}
+		frontend.insertAll("pcalls", tuples);
+	}
+
+	private static void declare(FrontEnd fe) throws ParseException, TypeModeError {
+		fe.parse("pcalls :: String, String, String\n" +
+				"PERSISTENT MODES (F,F,F) IS NONDET END");
+	}
+
+	/**
+	 * Looks up the callees of times different callers (results are cached, so
+	 * a lookup that is repeated does not reach the fact base).
+	 */
+	private void queryCallers(int first, int times) throws ParseException, TypeModeError {
+		for (int i = first; i < first + times; i++) {
+			test_resultcount("pcalls(\"m" + i + "()\",?y,?z)", NUM_FACTS / 100);
+		}
+	}
+
+	public void testAnswersDoNotChange() throws ParseException, TypeModeError {
+		test_must_findall("pcalls(?x,\"m42()\",?z)", "?z", new String[] { "\"p.C0\"" });
+		test_resultcount("pcalls(?x,?y,\"p.C3\")", 2857);
+		test_resultcount("pcalls(\"m3()\",?y,\"p.C3\")", 29);
+		queryCallers(10, HashTableFactBase.adaptiveIndexThreshold);
+		HashTableFactBase.waitForIndexBuilds();
+		test_resultcount("pcalls(\"m3()\",?y,?z)", 200);
+		test_resultcount("pcalls(\"m3()\",?y,\"p.C3\")", 29);
+		test_must_findall("pcalls(\"m3()\",\"m103()\",?z)", "?z", new String[] { "\"p.C5\"" });
+
+		// facts inserted after the index was built are found through it
+		frontend.parse("pcalls(\"m3()\",\"new()\",\"p.C3\").");
+		test_resultcount("pcalls(\"m3()\",?y,?z)", 201);
+		test_resultcount("pcalls(\"m3()\",?y,\"p.C3\")", 30);
+		test_resultcount("pcalls(?x,?y,?z)", NUM_FACTS + 1);
+	}
+
+	public void testUnfinishedBuildIsNotReconnected() throws Exception {
+		queryCallers(0, HashTableFactBase.adaptiveIndexThreshold);
+		// waits for the build
+		frontend.backupFactBase();
+		File index = findDirectory(new File(frontend.getStoragePath()), "BFF");
+		assertNotNull(index);
+		File marker = new File(index, "complete.data");
+		assertTrue(marker.exists());
+		frontend.shutdown();
+
+		marker.delete();
+		frontend = new FrontEnd(initfile, false);
+		declare(frontend);
+		assertFalse(index.exists());
+		test_resultcount("pcalls(\"m3()\",?y,?z)", NUM_FACTS / 100);
+		test_resultcount("pcalls(?x,?y,?z)", NUM_FACTS);
+	}
+
+	private static File findDirectory(File dir, String name) {
+		File[] files = dir.listFiles();
+		for (int i = 0; files != null && i < files.length; i++) {
+			if (files[i].isDirectory()) {
+				File found = files[i].getName().equals(name) ? files[i] : findDirectory(files[i], name);
+				if (found != null)
+					return found;
+			}
+		}
+		return null;
+	}
+
+	public void testIndexIsBuiltForQueriedPattern() throws ParseException, TypeModeError {
+		File storage = new File(frontend.getStoragePath());
+		int oldThreshold = HashTableFactBase.adaptiveIndexThreshold;
+		try {
+			HashTableFactBase.adaptiveIndexThreshold = Integer.MAX_VALUE;
+			queryCallers(0, 50);
+			HashTableFactBase.waitForIndexBuilds();
+			assertNull(findDirectory(storage, "BFF"));
+
+			HashTableFactBase.adaptiveIndexThreshold = oldThreshold;
+			queryCallers(50, oldThreshold);
+			HashTableFactBase.waitForIndexBuilds();
+			File index = findDirectory(storage, "BFF");
+			assertNotNull(index);
+			assertTrue(new File(index, "complete.data").exists());
+			// only for the pattern that was queried
+			assertNull(findDirectory(storage, "FBF"));
+			assertNull(findDirectory(storage, "BBF"));
+			queryCallers(60, 40);
+		} finally {
+			HashTableFactBase.adaptiveIndexThreshold = oldThreshold;
+		}
+	}
+
+}
@@ -0,0 +1,136 @@
+/*
+*    Logical Structural Diff (LSDiff)
+*    Copyright (C) <2015>  <Dr. Miryung Kim miryung@cs.ucla.edu>
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package tyRuBa.tests;
+
+import java.util.ArrayList;
+
+import tyRuBa.engine.Frame;
+import tyRuBa.engine.FrontEnd;
+import tyRuBa.engine.RBTerm;
+import tyRuBa.modes.TypeModeError;
+import tyRuBa.parser.ParseException;
+import tyRuBa.util.Action;
+import tyRuBa.util.ElementSource;
+
+/**
+ * Checks that taking elements a batch at a time gives the same elements as
+ * taking them one by one.
+ */
+public class BatchElementSourceTest extends TyrubaTest {
+
+	static final int NODES = 600;
+
+	public BatchElementSourceTest(String arg0) {
+		super(arg0);
+	}
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		frontend.parse("left :: String\n"
+				+ "MODES (F) IS NONDET END");
+		frontend.parse("right :: String\n"
+				+ "MODES (F) IS NONDET END");
+		ArrayList facts = new ArrayList();
+		for (int i = 0; i < NODES; i++) {
+			facts.add(new RBTerm[] { FrontEnd.makeName("n" + i) });
+		}
+		frontend.insertAll("left", facts);
+		frontend.insertAll("right", facts);
+	}
+
+	private static ElementSource numbers(int from, int to) {
+		ArrayList result = new ArrayList();
+		for (int i = from; i < to; i++) {
+			result.add(new Integer(i));
+		}
+		return ElementSource.with(result);
+	}
+
+	/** Odd numbers below 100 in groups of ten, doubled, then 1000 and 1001. */
+	private static ElementSource sample() {
+		return numbers(0, 10).map(new Action() {
+			public Object compute(Object arg) {
+				int group = ((Integer) arg).intValue();
+				return numbers(group * 10, group * 10 + 10).map(new Action() {
+					public Object compute(Object n) {
+						int i = ((Integer) n).intValue();
+						return i % 2 == 0 ? null : new Integer(2 * i);
+					}
+				});
+			}
+		}).flatten().append(ElementSource.with(new Object[] { new Integer(1000), new Integer(1001) }));
+	}
+
+	private static ArrayList oneByOne(ElementSource source) {
+		ArrayList result = new ArrayList();
+		while (source.hasMoreElements()) {
+			result.add(source.nextElement());
+		}
+		return result;
+	}
+
+	private static ArrayList batched(ElementSource source, int size) {
+		ArrayList result = new ArrayList();
+		Object[] batch = new Object[size];
+		int n;
+		while ((n = source.nextBatch(batch)) > 0) {
+			for (int i = 0; i < n; i++) {
+				result.add(batch[i]);
+			}
+		}
+		assertFalse(source.hasMoreElements());
+		return result;
+	}
+
+	public void testSameElements() {
+		ArrayList expected = oneByOne(sample());
+		assertEquals(52, expected.size());
+		int[] sizes = { 1, 3, 7, 52, 256 };
+		for (int i = 0; i < sizes.length; i++) {
+			assertEquals(expected, batched(sample(), sizes[i]));
+		}
+		// an element that status() already made ready comes first
+		ElementSource source = sample();
+		assertTrue(source.hasMoreElements());
+		assertEquals(expected, batched(source, 5));
+		assertEquals(52, sample().countElements());
+	}
+
+	public void testSameFrames() throws ParseException, TypeModeError {
+		ArrayList expected = oneByOne(frontend.frameQuery("left(?x), right(n7)"));
+		ArrayList actual = batched(frontend.frameQuery("left(?y), right(n7)"), 100);
+		assertEquals(NODES, actual.size());
+		for (int i = 0; i < actual.size(); i++) {
+			RBTerm x = ((Frame) expected.get(i)).get(FrontEnd.makeVar("?x"));
+			RBTerm y = ((Frame) actual.get(i)).get(FrontEnd.makeVar("?y"));
+			assertEquals(x, y);
+		}
+	}
+
+	public void testManyFrames() throws ParseException, TypeModeError {
+		assertEquals(NODES * NODES, frontend.frameQuery("left(?a), right(?b)").countElements());
+		ArrayList frames = batched(frontend.frameQuery("left(?a), right(?b)"), 256);
+		assertEquals(NODES * NODES, frames.size());
+		for (int i = 0; i < frames.size(); i += NODES + 1) {
+			Frame frame = (Frame) frames.get(i);
+			assertNotNull(frame.get(FrontEnd.makeVar("?a")));
+			assertNotNull(frame.get(FrontEnd.makeVar("?b")));
+		}
+	}
+
+}
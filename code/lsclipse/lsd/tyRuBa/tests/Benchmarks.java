@@ -0,0 +1,591 @@
+/*
+*    Logical Structural Diff (LSDiff)
+*    Copyright (C) <2015>  <Dr. Miryung Kim miryung@cs.ucla.edu>
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package tyRuBa.tests;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Random;
+
+import tyRuBa.engine.Frame;
+import tyRuBa.engine.FrontEnd;
+import tyRuBa.engine.PredicateIdentifier;
+import tyRuBa.engine.RBConjunction;
+import tyRuBa.engine.RBJavaObjectCompoundTerm;
+import tyRuBa.engine.RBTerm;
+import tyRuBa.engine.RBVariable;
+import tyRuBa.engine.RuleBase;
+import tyRuBa.engine.compilation.Compiled;
+import tyRuBa.engine.factbase.hashtable.HashTableFactBase;
+import tyRuBa.engine.factbase.hashtable.IndexPageCodec;
+import tyRuBa.engine.factbase.hashtable.URLFactLibrary;
+import tyRuBa.util.ElementSource;
+import tyRuBa.util.pager.ClockEvictionPolicy;
+import tyRuBa.util.pager.FileLocation;
+import tyRuBa.util.pager.LRUEvictionPolicy;
+import tyRuBa.util.pager.Pager;
+import tyRuBa.util.pager.TinyLFUEvictionPolicy;
+import tyRuBa.util.pager.Pager.Resource;
+import tyRuBa.util.pager.Pager.ResourceId;
+
+/**
+ * Times the optimizations of the engine against the way it worked without
+ * them and prints the results. These are not unit tests, they only print
+ * how long things take. Run them with
+ *
+ *     java tyRuBa.tests.Benchmarks [name ...]
+ *
+ * where each name is one of the public methods below; without names all of
+ * them are run.
+ */
+public class Benchmarks {
+
+	static final int NUM_FACTS = 20000;
+
+	private Benchmarks() {
+	}
+
+	public static void main(String[] args) throws Exception {
+		List names = Arrays.asList(args);
+		Method[] methods = Benchmarks.class.getDeclaredMethods();
+		Arrays.sort(methods, new Comparator() {
+			public int compare(Object o1, Object o2) {
+				return ((Method) o1).getName().compareTo(((Method) o2).getName());
+			}
+		});
+		for (int i = 0; i < methods.length; i++) {
+			Method m = methods[i];
+			if (Modifier.isPublic(m.getModifiers()) && m.getParameterTypes().length == 0
+					&& (names.isEmpty() || names.contains(m.getName()))) {
+				m.invoke(null, new Object[0]);
+			}
+		}
+		// the FrontEnds leave their worker threads behind
+		System.exit(0);
+	}
+
+	private static FrontEnd newFrontEnd() {
+		return new FrontEnd(TyrubaTest.initfile, true);
+	}
+
+	private static int count(FrontEnd fe, String query) throws Exception {
+		return fe.frameQuery(query).countElements();
+	}
+
+	/** Makes sure a query has the expected number of answers, returns the time it took. */
+	private static long timeQuery(FrontEnd fe, String query, int expected) throws Exception {
+		long start = System.currentTimeMillis();
+		int answers = count(fe, query);
+		long time = System.currentTimeMillis() - start;
+		if (answers != expected)
+			throw new Error(query + ": " + answers + " answers instead of " + expected);
+		return time;
+	}
+
+	private static RBTerm[] makeCall(int i) {
+		return new RBTerm[] {
+			FrontEnd.makeName("m" + (i % 100) + "()"),
+			FrontEnd.makeName("m" + i + "()"),
+			FrontEnd.makeName("p.C" + (i % 7))
+		};
+	}
+
+	private static ArrayList makeCalls(int numFacts) {
+		ArrayList tuples = new ArrayList(numFacts);
+		for (int i = 0; i < numFacts; i++)
+			tuples.add(makeCall(i));
+		return tuples;
+	}
+
+	private static void pageEverythingOut(FrontEnd fe) throws Exception {
+		int cacheSize = fe.getCacheSize();
+		fe.backupFactBase();
+		fe.setCacheSize(0);
+		fe.setCacheSize(cacheSize);
+	}
+
+	/** Loading persistent facts one at a time and in batches by index page. */
+	public static void bulkInsert() throws Exception {
+		int oldBatchSize = HashTableFactBase.insertBatchSize;
+		String declaration = "pcalls :: String, String, String\n"
+				+ "PERSISTENT MODES (F,F,F) IS NONDET (B,F,F) IS NONDET (F,B,F) IS NONDET (F,F,B) IS NONDET END";
+		ArrayList tuples = makeCalls(NUM_FACTS);
+		try {
+			FrontEnd fe = newFrontEnd();
+			fe.parse(declaration);
+			HashTableFactBase.insertBatchSize = 1;
+			long start = System.currentTimeMillis();
+			fe.insertAll("pcalls", tuples);
+			fe.backupFactBase();
+			long oneByOne = System.currentTimeMillis() - start;
+
+			fe = newFrontEnd();
+			fe.parse(declaration);
+			HashTableFactBase.insertBatchSize = oldBatchSize;
+			start = System.currentTimeMillis();
+			fe.insertAll("pcalls", tuples);
+			fe.backupFactBase();
+			long batched = System.currentTimeMillis() - start;
+			timeQuery(fe, "pcalls(?x,?y,?z)", NUM_FACTS);
+
+			System.out.println("Loading " + NUM_FACTS + " persistent facts into 4 indexes: one by one "
+					+ oneByOne + "ms, batches of " + oldBatchSize + " " + batched + "ms");
+		} finally {
+			HashTableFactBase.insertBatchSize = oldBatchSize;
+		}
+	}
+
+	/** Loading facts through the parser and as terms. */
+	public static void insertAll() throws Exception {
+		String declaration = "calls :: String, String, String\nMODES (F,F,F) IS NONDET END";
+		FrontEnd fe = newFrontEnd();
+		fe.parse(declaration);
+		long start = System.currentTimeMillis();
+		for (int i = 0; i < NUM_FACTS; i++) {
+			fe.parse("calls(\"m" + (i % 100) + "()\",\"m" + i + "()\",\"p.C" + (i % 7) + "\").");
+		}
+		long parseTime = System.currentTimeMillis() - start;
+		timeQuery(fe, "calls(?x,?y,?z)", NUM_FACTS);
+
+		fe = newFrontEnd();
+		fe.parse(declaration);
+		start = System.currentTimeMillis();
+		fe.insertAll("calls", makeCalls(NUM_FACTS));
+		long insertTime = System.currentTimeMillis() - start;
+		timeQuery(fe, "calls(?x,?y,?z)", NUM_FACTS);
+
+		System.out.println("Loading " + NUM_FACTS + " facts: parse " + parseTime + "ms, insertAll "
+				+ insertTime + "ms");
+	}
+
+	private static long queryCallers(FrontEnd fe, int first, int times) throws Exception {
+		long time = 0;
+		for (int i = first; i < first + times; i++) {
+			time += timeQuery(fe, "pcalls(\"m" + i + "()\",?y,?z)", NUM_FACTS / 100);
+		}
+		return time;
+	}
+
+	/** Lookups by a pattern without an index, scanning and with an adaptive index. */
+	public static void adaptiveIndex() throws Exception {
+		FrontEnd fe = newFrontEnd();
+		fe.parse("pcalls :: String, String, String\nPERSISTENT MODES (F,F,F) IS NONDET END");
+		fe.insertAll("pcalls", makeCalls(NUM_FACTS));
+		int oldThreshold = HashTableFactBase.adaptiveIndexThreshold;
+		try {
+			HashTableFactBase.adaptiveIndexThreshold = Integer.MAX_VALUE;
+			queryCallers(fe, 0, 5);
+			long scanning = queryCallers(fe, 5, 45);
+
+			HashTableFactBase.adaptiveIndexThreshold = oldThreshold;
+			queryCallers(fe, 50, oldThreshold);
+			HashTableFactBase.waitForIndexBuilds();
+			queryCallers(fe, 50 + oldThreshold, 5);
+			long indexed = queryCallers(fe, 55, 45);
+
+			System.out.println("45 lookups in " + NUM_FACTS + " facts by first argument: scanning "
+					+ scanning + "ms, adaptive index " + indexed + "ms");
+		} finally {
+			HashTableFactBase.adaptiveIndexThreshold = oldThreshold;
+		}
+	}
+
+	/** Lookups in a regular FrontEnd and in an in memory one. */
+	public static void inMemoryFrontEnd() throws Exception {
+		String declaration = "calls :: String, String, String\nMODES (F,F,F) IS NONDET END";
+		FrontEnd[] frontends = { newFrontEnd(), FrontEnd.makeInMemory(TyrubaTest.initfile) };
+		long[] times = new long[frontends.length];
+		for (int f = 0; f < frontends.length; f++) {
+			frontends[f].parse(declaration);
+			frontends[f].insertAll("calls", makeCalls(NUM_FACTS));
+			for (int i = 0; i < 200; i++)
+				times[f] += timeQuery(frontends[f], "calls(?x,\"m" + i + "()\",?z)", 1);
+		}
+		System.out.println("200 lookups in " + NUM_FACTS + " facts: regular " + times[0]
+				+ "ms, in memory " + times[1] + "ms");
+	}
+
+	private static void declareRefs(FrontEnd fe) throws Exception {
+		fe.parse("ref :: String, String, Integer\n"
+				+ "PERSISTENT MODES (F,F,F) IS NONDET (B,F,F) IS NONDET (F,B,F) IS NONDET END");
+		fe.parse("tags :: String, [String]\n"
+				+ "PERSISTENT MODES (F,F) IS NONDET (B,F) IS NONDET END");
+	}
+
+	private static void insertRefs(FrontEnd fe, int count) throws Exception {
+		for (int i = 0; i < count; i++) {
+			fe.parse("ref(\"p" + (i % 200) + "#m" + i + "()\",\"q" + (i % 50)
+					+ "#f" + (i % 1000) + "\"," + i + ").");
+		}
+	}
+
+	/** Paging Index pages out and in with Java serialization and the binary page format. */
+	public static void indexPageCodec() throws Exception {
+		for (int codec = 0; codec < 2; codec++) {
+			FrontEnd fe = newFrontEnd();
+			declareRefs(fe);
+			fe.getPager().setResourceCodec(codec == 1 ? new IndexPageCodec() : null);
+			insertRefs(fe, NUM_FACTS);
+
+			long start = System.currentTimeMillis();
+			fe.backupFactBase();
+			long pageOutTime = System.currentTimeMillis() - start;
+			long size = IndexPageCodecTest.sizeOf(new File(fe.getStoragePath()));
+
+			int cacheSize = fe.getCacheSize();
+			fe.setCacheSize(0);
+			fe.setCacheSize(cacheSize);
+			start = System.currentTimeMillis();
+			timeQuery(fe, "ref(?x,?y,?z)", NUM_FACTS);
+			for (int i = 0; i < 200; i++) {
+				timeQuery(fe, "ref(\"p" + i + "#m" + i + "()\",?y,?z)", 1);
+			}
+			long pageInTime = System.currentTimeMillis() - start;
+
+			System.out.println("Paging " + NUM_FACTS + " facts, "
+					+ (codec == 1 ? "binary page format" : "Java serialization") + ": page out "
+					+ pageOutTime + "ms, page in " + pageInTime + "ms, " + size / 1024 + "KB on disk");
+		}
+	}
+
+	/** Lookups in a fact library read through the Pager and through mapped segments. */
+	public static void indexSegments() throws Exception {
+		File libraryDir = new File("fdb-library");
+		try {
+			for (int pack = 0; pack < 2; pack++) {
+				FrontEnd fe = newFrontEnd();
+				declareRefs(fe);
+				insertRefs(fe, NUM_FACTS);
+				fe.backupFactBase();
+				PagerConcurrencyTest.deleteDirectory(libraryDir);
+				IndexSegmentTest.copyDirectory(new File(fe.getStoragePath()), libraryDir);
+				if (pack == 1)
+					URLFactLibrary.packSegments(libraryDir);
+
+				fe = newFrontEnd();
+				declareRefs(fe);
+				fe.getFactLibraryManager().addLibraryURLLocation(
+						libraryDir.getAbsoluteFile().toURI().toURL().toString());
+				long time = 0;
+				for (int i = 0; i < NUM_FACTS; i += 10) {
+					time += timeQuery(fe, "ref(\"p" + (i % 200) + "#m" + i + "()\",?y,?z)", 1);
+				}
+				System.out.println(NUM_FACTS / 10 + " lookups in a fact library of " + NUM_FACTS
+						+ " facts, " + (pack == 1 ? "mapped segments " : "paged ") + time + "ms");
+			}
+		} finally {
+			PagerConcurrencyTest.deleteDirectory(libraryDir);
+		}
+	}
+
+	/** Reads of resident pages from one thread and from several. */
+	public static void pagerReads() throws Exception {
+		File dir = new File("fdb-pager");
+		PagerConcurrencyTest.deleteDirectory(dir);
+		final Pager pager = new Pager(100, 100, 0, false);
+		try {
+			FileLocation location = new FileLocation(dir);
+			final ResourceId[] ids = new ResourceId[100];
+			for (int i = 0; i < ids.length; i++) {
+				ids[i] = location.getResourceID("counter" + i);
+				pager.synchDoTask(ids[i], new Pager.Task(true) {
+					public Object doIt(Resource rsrc) {
+						changedResource(new PagerConcurrencyTest.Counter());
+						return null;
+					}
+				});
+			}
+			final int numOps = 200000;
+			int[] numThreads = { 1, 8 };
+			for (int n = 0; n < numThreads.length; n++) {
+				Thread[] threads = new Thread[numThreads[n]];
+				for (int t = 0; t < threads.length; t++) {
+					final int seed = t;
+					final int ops = numOps / threads.length;
+					threads[t] = new Thread() {
+						public void run() {
+							Random random = new Random(seed);
+							for (int i = 0; i < ops; i++) {
+								pager.synchDoTask(ids[random.nextInt(ids.length)], new Pager.Task(false) {
+									public Object doIt(Resource rsrc) {
+										return rsrc;
+									}
+								});
+							}
+						}
+					};
+				}
+				long start = System.currentTimeMillis();
+				for (int t = 0; t < threads.length; t++)
+					threads[t].start();
+				for (int t = 0; t < threads.length; t++)
+					threads[t].join();
+				System.out.println(numOps + " pager reads, " + threads.length + " thread(s): "
+						+ (System.currentTimeMillis() - start) + "ms");
+			}
+		} finally {
+			pager.shutdown();
+			PagerConcurrencyTest.deleteDirectory(dir);
+		}
+	}
+
+	/** Hit ratios of the eviction policies on popular pages mixed with scans. */
+	public static void evictionPolicies() {
+		Random random = new Random(42);
+		int[] trace = new int[100000];
+		int scanKey = 100000;
+		for (int i = 0; i < trace.length; i++) {
+			if ((i / 500) % 2 == 1) {
+				trace[i] = scanKey++;
+			} else {
+				// roughly zipfian over 2000 keys
+				trace[i] = (int) Math.pow(2000, random.nextDouble());
+			}
+		}
+		int capacity = 100;
+		int lru = EvictionPolicyTest.simulate(new LRUEvictionPolicy(), trace, capacity);
+		int clock = EvictionPolicyTest.simulate(new ClockEvictionPolicy(), trace, capacity);
+		int tinyLFU = EvictionPolicyTest.simulate(new TinyLFUEvictionPolicy(), trace, capacity);
+		System.out.println("Hit ratios, cache of " + capacity + ": LRU " + (float) lru / trace.length
+				+ " CLOCK " + (float) clock / trace.length + " W-TinyLFU " + (float) tinyLFU / trace.length);
+	}
+
+	/** Binding and cloning variables in a Hashtable and in a Frame. */
+	public static void frames() {
+		RBVariable[] vars = new RBVariable[6];
+		RBTerm[] values = new RBTerm[6];
+		for (int i = 0; i < vars.length; i++) {
+			vars[i] = FrontEnd.makeVar("?v" + i);
+			values[i] = FrontEnd.makeInteger(i);
+		}
+		int rounds = 200000;
+		long start = System.currentTimeMillis();
+		for (int r = 0; r < rounds; r++) {
+			Hashtable t = new Hashtable();
+			for (int i = 0; i < vars.length; i++) {
+				t.put(vars[i], values[i]);
+				((Hashtable) t.clone()).get(vars[i / 2]);
+			}
+		}
+		long hashtable = System.currentTimeMillis() - start;
+		start = System.currentTimeMillis();
+		for (int r = 0; r < rounds; r++) {
+			Frame f = new Frame();
+			for (int i = 0; i < vars.length; i++) {
+				f.put(vars[i], values[i]);
+				((Frame) f.clone()).get(vars[i / 2]);
+			}
+		}
+		long frame = System.currentTimeMillis() - start;
+		System.out.println(rounds + " rounds of binding and cloning 6 variables: Hashtable "
+				+ hashtable + "ms, Frame " + frame + "ms");
+	}
+
+	private static int unifyAll(RBTerm[] terms) {
+		int matches = 0;
+		Frame frame = new Frame();
+		for (int i = 0; i < terms.length; i++) {
+			for (int j = 0; j < terms.length; j++) {
+				if (terms[i].unify(terms[j], frame) != null)
+					matches++;
+			}
+		}
+		return matches;
+	}
+
+	/** Unifying String constants as strings and as interned symbols. */
+	public static void symbols() {
+		int n = 2000;
+		RBTerm[] symbols = new RBTerm[n];
+		RBTerm[] strings = new RBTerm[n];
+		String prefix = "org.eclipse.jdt.internal.compiler.lookup.ProblemReferenceBinding#m";
+		for (int i = 0; i < n; i++) {
+			String name = prefix + (1000000 + i) + "()";
+			symbols[i] = FrontEnd.makeName(name);
+			strings[i] = new RBJavaObjectCompoundTerm(name);
+		}
+		long start = System.currentTimeMillis();
+		unifyAll(strings);
+		long stringTime = System.currentTimeMillis() - start;
+		start = System.currentTimeMillis();
+		unifyAll(symbols);
+		long symbolTime = System.currentTimeMillis() - start;
+		System.out.println(n + "x" + n + " unifications of constants: strings " + stringTime
+				+ "ms, symbols " + symbolTime + "ms");
+	}
+
+	/** A join of two fact predicates without an index, by hashing and by a nested loop. */
+	public static void hashJoin() throws Exception {
+		FrontEnd fe = newFrontEnd();
+		fe.parse("edge :: String, String\nMODES (F,F) IS NONDET END");
+		ArrayList edges = new ArrayList();
+		for (int i = 0; i < 1000; i++) {
+			edges.add(new RBTerm[] { FrontEnd.makeName("n" + i), FrontEnd.makeName("n" + ((i + 1) % 1000)) });
+			edges.add(new RBTerm[] { FrontEnd.makeName("n" + i), FrontEnd.makeName("n" + ((i * 7 + 3) % 1000)) });
+		}
+		fe.insertAll("edge", edges);
+		boolean old = RBConjunction.hashJoins;
+		try {
+			RBConjunction.hashJoins = true;
+			long hashed = timeQuery(fe, "edge(?x,?y), edge(?y,?z)", HashJoinTest.PATHS);
+			RBConjunction.hashJoins = false;
+			// a different query, so it is not answered from the cache
+			long nested = timeQuery(fe, "edge(?a,?b), edge(?b,?c)", HashJoinTest.PATHS);
+			System.out.println("edge(?x,?y), edge(?y,?z): hashed " + hashed + "ms, nested loop " + nested + "ms");
+		} finally {
+			RBConjunction.hashJoins = old;
+		}
+	}
+
+	/** A conjunction ordered by estimated results and by mode alone. */
+	public static void queryPlan() throws Exception {
+		FrontEnd fe = newFrontEnd();
+		fe.parse("method :: String, String\n"
+				+ "MODES (F,F) IS NONDET (B,F) IS NONDET (F,B) IS NONDET END");
+		fe.parse("changed :: String\nMODES (F) IS NONDET (B) IS SEMIDET END");
+		ArrayList methods = new ArrayList();
+		for (int i = 0; i < NUM_FACTS; i++) {
+			methods.add(new RBTerm[] { FrontEnd.makeName("p.C" + (i % 2000)), FrontEnd.makeName("p.C#m" + i + "()") });
+		}
+		fe.insertAll("method", methods);
+		for (int i = 0; i < 5; i++) {
+			fe.insert("changed", new RBTerm[] { FrontEnd.makeName("p.C#m" + (i * 1000) + "()") });
+		}
+		String query = "method(?c,?m), changed(?m)";
+		boolean old = RBConjunction.costBasedOrdering;
+		try {
+			RBConjunction.costBasedOrdering = true;
+			long costBased = timeQuery(fe, query, 5);
+			RBConjunction.costBasedOrdering = false;
+			long modeBased = timeQuery(fe, query + ", method(?c,?m)", 5);
+			System.out.println(query + ": cost based " + costBased + "ms, mode based " + modeBased + "ms");
+		} finally {
+			RBConjunction.costBasedOrdering = old;
+		}
+	}
+
+	/** A join over a fact base much larger than the page cache, with and without prefetching. */
+	public static void prefetch() throws Exception {
+		boolean oldUseCache = RuleBase.useCache;
+		int oldPrefetchDistance = Compiled.prefetchDistance;
+		try {
+			// every run has to look the facts up again
+			RuleBase.useCache = false;
+			FrontEnd fe = newFrontEnd();
+			fe.parse("calls :: String, String\nPERSISTENT MODES (F,F) IS NONDET END");
+			fe.parse("defined :: String, String\nPERSISTENT MODES (B,F) IS NONDET END");
+			int numFacts = 3000;
+			int numPages = 300;
+			for (int i = 0; i < numFacts; i++) {
+				String callee = "\"t" + (i % numPages) + "#m" + i + "()\"";
+				fe.parse("calls(\"c#m" + i + "()\"," + callee + ").");
+				fe.parse("defined(" + callee + ",\"file" + (i % numPages) + "\").");
+			}
+			fe.backupFactBase();
+			fe.setCacheSize(0);
+			fe.setCacheSize(20);
+			String query = "calls(?x,?y),defined(?y,?f)";
+			Compiled.prefetchDistance = 0;
+			timeQuery(fe, query, numFacts); // warm up
+			long without = timeQuery(fe, query, numFacts);
+			Compiled.prefetchDistance = 8;
+			long with = timeQuery(fe, query, numFacts);
+			System.out.println("Join over " + numFacts + " facts, " + numPages
+					+ " pages, cache of 20: no prefetch " + without + "ms, prefetch " + with + "ms");
+		} finally {
+			RuleBase.useCache = oldUseCache;
+			Compiled.prefetchDistance = oldPrefetchDistance;
+		}
+	}
+
+	/** Inherited methods derived by the rules and bottom up. */
+	public static void semiNaive() throws Exception {
+		FrontEnd fe = newFrontEnd();
+		fe.parse("method :: String, String, String\nMODES (F,F,F) IS NONDET END");
+		fe.parse("extends :: String, String\nMODES (F,F) IS NONDET END");
+		fe.parse("inheritedmethod :: String, String, String\nMODES (F,F,F) IS NONDET END");
+		fe.parse("inheritedmethod(?ms, ?t, ?t2) :- method(?, ?ms, ?t), extends(?t, ?t2), "
+				+ "NOT(method(?, ?ms, ?t2)).");
+		fe.parse("inheritedmethod(?ms, ?t, ?t3) :- inheritedmethod(?ms, ?t, ?t2), extends(?t2, ?t3), "
+				+ "NOT(method(?, ?ms, ?t3)).");
+		ArrayList methods = new ArrayList();
+		ArrayList extendsFacts = new ArrayList();
+		for (int i = 0; i < 200; i++) {
+			String type = "p.C" + i;
+			methods.add(new RBTerm[] { FrontEnd.makeName(type + "#own" + i + "()"),
+				FrontEnd.makeName("own" + i + "()"), FrontEnd.makeName(type) });
+			methods.add(new RBTerm[] { FrontEnd.makeName(type + "#m" + (i % 7) + "()"),
+				FrontEnd.makeName("m" + (i % 7) + "()"), FrontEnd.makeName(type) });
+			if (i > 0)
+				extendsFacts.add(new RBTerm[] { FrontEnd.makeName("p.C" + ((i - 1) / 3)), FrontEnd.makeName(type) });
+		}
+		fe.insertAll("method", methods);
+		fe.insertAll("extends", extendsFacts);
+
+		String query = "inheritedmethod(?ms, ?t, ?t2)";
+		long start = System.currentTimeMillis();
+		int answers = count(fe, query);
+		long topDownTime = System.currentTimeMillis() - start;
+		start = System.currentTimeMillis();
+		fe.materialize(new PredicateIdentifier[] { new PredicateIdentifier("inheritedmethod", 3) });
+		long bottomUpTime = System.currentTimeMillis() - start + timeQuery(fe, query, answers);
+		System.out.println(query + ": " + answers + " answers, top down " + topDownTime
+				+ "ms, bottom up " + bottomUpTime + "ms");
+	}
+
+	private static long timeFrames(ElementSource source, boolean batched) {
+		long start = System.currentTimeMillis();
+		if (batched) {
+			source.countElements();
+		} else {
+			while (source.hasMoreElements()) {
+				source.nextElement();
+			}
+		}
+		return System.currentTimeMillis() - start;
+	}
+
+	/** Taking the answers of a query with many answers one by one and in batches. */
+	public static void batchedFrames() throws Exception {
+		FrontEnd fe = newFrontEnd();
+		fe.parse("left :: String\nMODES (F) IS NONDET END");
+		fe.parse("right :: String\nMODES (F) IS NONDET END");
+		ArrayList facts = new ArrayList();
+		int nodes = 600;
+		for (int i = 0; i < nodes; i++) {
+			facts.add(new RBTerm[] { FrontEnd.makeName("n" + i) });
+		}
+		fe.insertAll("left", facts);
+		fe.insertAll("right", facts);
+		// best of a few rounds, taking turns, so a collection or the JIT
+		// kicking in during one of them does not decide it
+		long oneByOne = Long.MAX_VALUE;
+		long batched = Long.MAX_VALUE;
+		for (int round = 0; round < 5; round++) {
+			oneByOne = Math.min(oneByOne, timeFrames(fe.frameQuery("left(?a), right(?b)"), false));
+			batched = Math.min(batched, timeFrames(fe.frameQuery("left(?a), right(?b)"), true));
+		}
+		System.out.println(nodes * nodes + " frames: one by one " + oneByOne + "ms, in batches " + batched + "ms");
+	}
+
+}
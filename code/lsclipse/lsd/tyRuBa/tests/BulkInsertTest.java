@@ -0,0 +1,170 @@
+/*
+*    Logical Structural Diff (LSDiff)
+*    Copyright (C) <2015>  <Dr. Miryung Kim miryung@cs.ucla.edu>
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package tyRuBa.tests;
+
+import java.util.ArrayList;
+
+import tyRuBa.engine.FrontEnd;
+import tyRuBa.engine.RBTerm;
+import tyRuBa.engine.factbase.hashtable.HashTableFactBase;
+import tyRuBa.modes.TypeModeError;
+import tyRuBa.parser.ParseException;
+
+/**
+ * Checks that facts inserted directly as terms behave the same as parsed
+ * facts, and that persistent facts come out the same whatever the size of
+ * the batches they are added to the indexes in.
+ */
+public class BulkInsertTest extends TyrubaTest {
+
+	public BulkInsertTest(String arg0) {
+		super(arg0);
+	}
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		declare(frontend);
+	}
+
+	private static void declare(FrontEnd fe) throws ParseException, TypeModeError {
+		fe.parse("calls :: String, String, String\n" +
+				"MODES (F,F,F) IS NONDET END");
+		fe.parse("pcalls :: String, String, String\n" +
+				"PERSISTENT MODES (F,F,F) IS NONDET (B,F,F) IS NONDET (F,B,F) IS NONDET (F,F,B) IS NONDET END");
+	}
+
+	private static RBTerm[] makeArgs(int i) {
+		return new RBTerm[] {
+			FrontEnd.makeName("m" + (i % 100) + "()"),
+			FrontEnd.makeName("m" + i + "()"),
+			FrontEnd.makeName("p.C" + (i % 7))
+		};
+	}
+
+	public void testInsert() throws ParseException, TypeModeError {
+		frontend.insert("calls", new RBTerm[] {
+			FrontEnd.makeName("a()"), FrontEnd.makeName("b()"), FrontEnd.makeName("C") });
+		frontend.parse("calls(\"a()\",\"c()\",\"C\").");
+		test_must_succeed("calls(\"a()\",\"b()\",\"C\")");
+		test_must_findall("calls(\"a()\",?x,\"C\")", "?x",
+				new String[] { "\"b()\"", "\"c()\"" });
+	}
+
+	public void testInsertAll() throws ParseException, TypeModeError {
+		ArrayList tuples = new ArrayList();
+		for (int i = 0; i < 1000; i++)
+			tuples.add(makeArgs(i));
+		frontend.insertAll("calls", tuples);
+		test_resultcount("calls(?x,?y,?z)", 1000);
+		test_resultcount("calls(\"m3()\",?y,?z)", 10);
+		test_must_equal("calls(?x,\"m42()\",?z)", "?z", "\"p.C0\"");
+	}
+
+	public void testPersistentInsertsAreBatched() throws Exception {
+		ArrayList tuples = new ArrayList();
+		for (int i = 0; i < 2500; i++)
+			tuples.add(makeArgs(i));
+		frontend.insertAll("pcalls", tuples);
+		// the last facts are still waiting for a batch to fill up
+		test_resultcount("pcalls(?x,?y,?z)", 2500);
+		test_resultcount("pcalls(\"m3()\",?y,?z)", 25);
+		test_must_equal("pcalls(?x,\"m2499()\",?z)", "?z", "\"p.C0\"");
+		frontend.parse("pcalls(\"a()\",\"b()\",\"C\").");
+		test_must_succeed("pcalls(\"a()\",\"b()\",\"C\")");
+
+		int cacheSize = frontend.getCacheSize();
+		frontend.backupFactBase();
+		frontend.setCacheSize(0);
+		frontend.setCacheSize(cacheSize);
+		test_resultcount("pcalls(?x,?y,?z)", 2501);
+		test_resultcount("pcalls(?x,?y,\"p.C3\")", 357);
+	}
+
+	public void testDetViolationFailsItsInsert() throws Exception {
+		frontend.parse("ptype :: String, String\n" +
+				"PERSISTENT MODES (F,F) IS NONDET (B,F) IS SEMIDET END");
+		frontend.insert("ptype", new RBTerm[] { FrontEnd.makeName("a"), FrontEnd.makeName("1") });
+		frontend.insert("ptype", new RBTerm[] { FrontEnd.makeName("b"), FrontEnd.makeName("2") });
+		frontend.insert("ptype", new RBTerm[] { FrontEnd.makeName("a"), FrontEnd.makeName("1") });
+		try {
+			frontend.insert("ptype", new RBTerm[] { FrontEnd.makeName("a"), FrontEnd.makeName("3") });
+			fail("a second type for \"a\" should not be accepted");
+		} catch (Error e) {
+			assertTrue(e.getMessage(), e.getMessage().indexOf("Det/SemiDet") >= 0);
+		}
+		frontend.insert("ptype", new RBTerm[] { FrontEnd.makeName("c"), FrontEnd.makeName("4") });
+		// the pending facts around the violation all made it into every index
+		test_must_findall("ptype(?x,?y)", "?x", new String[] { "\"a\"", "\"b\"", "\"c\"" });
+		test_must_equal("ptype(\"a\",?y)", "?y", "\"1\"");
+		test_must_equal("ptype(\"c\",?y)", "?y", "\"4\"");
+	}
+
+	private void checkPersistentFacts(int batchSize) throws Exception {
+		int oldBatchSize = HashTableFactBase.insertBatchSize;
+		try {
+			HashTableFactBase.insertBatchSize = batchSize;
+			ArrayList tuples = new ArrayList();
+			for (int i = 0; i < 1000; i++)
+				tuples.add(makeArgs(i));
+			frontend.insertAll("pcalls", tuples);
+			int cacheSize = frontend.getCacheSize();
+			frontend.backupFactBase();
+			frontend.setCacheSize(0);
+			frontend.setCacheSize(cacheSize);
+		} finally {
+			HashTableFactBase.insertBatchSize = oldBatchSize;
+		}
+		test_resultcount("pcalls(?x,?y,?z)", 1000);
+		test_resultcount("pcalls(\"m3()\",?y,?z)", 10);
+		test_resultcount("pcalls(?x,?y,\"p.C3\")", 143);
+		test_must_equal("pcalls(?x,\"m999()\",?z)", "?z", "\"p.C5\"");
+	}
+
+	public void testPersistentOneByOne() throws Exception {
+		checkPersistentFacts(1);
+	}
+
+	public void testPersistentInOddBatches() throws Exception {
+		checkPersistentFacts(7);
+	}
+
+	public void testParsedSameAsInserted() throws ParseException, TypeModeError {
+		for (int i = 0; i < 300; i++) {
+			frontend.parse("calls(\"m" + (i % 100) + "()\",\"m" + i
+					+ "()\",\"p.C" + (i % 7) + "\").");
+		}
+		FrontEnd parsed = frontend;
+		frontend = new FrontEnd(initfile, true);
+		declare(frontend);
+		ArrayList tuples = new ArrayList();
+		for (int i = 0; i < 300; i++)
+			tuples.add(makeArgs(i));
+		frontend.insertAll("calls", tuples);
+		String[] queries = {
+			"calls(?x,?y,?z)",
+			"calls(\"m3()\",?y,?z)",
+			"calls(?x,?y,\"p.C2\")",
+			"calls(?x,\"m42()\",\"p.C0\")"
+		};
+		for (int i = 0; i < queries.length; i++) {
+			assertEquals(queries[i], parsed.frameQuery(queries[i]).countElements(),
+					frontend.frameQuery(queries[i]).countElements());
+		}
+	}
+
+}
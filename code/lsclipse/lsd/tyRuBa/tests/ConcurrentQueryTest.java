@@ -0,0 +1,140 @@
+/*
+*    Logical Structural Diff (LSDiff)
+*    Copyright (C) <2015>  <Dr. Miryung Kim miryung@cs.ucla.edu>
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package tyRuBa.tests;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import tyRuBa.engine.FrontEnd;
+import tyRuBa.engine.RBTerm;
+import tyRuBa.modes.TypeModeError;
+import tyRuBa.parser.ParseException;
+import tyRuBa.util.ElementSource;
+
+/**
+ * Checks that queries on several threads run at the same time on one
+ * FrontEnd and get the same answers as when they run one at a time.
+ */
+public class ConcurrentQueryTest extends TyrubaTest {
+
+	static final int NUM_THREADS = 8;
+
+	static final int NUM_CLASSES = 50;
+
+	public ConcurrentQueryTest(String arg0) {
+		super(arg0);
+	}
+
+	private void declare() throws ParseException, TypeModeError {
+		frontend.parse("method :: String, String\n"
+				+ "MODES (F,F) IS NONDET (B,F) IS NONDET (F,B) IS NONDET END");
+		frontend.parse("extends :: String, String\n"
+				+ "MODES (F,F) IS NONDET (B,F) IS NONDET (F,B) IS NONDET END");
+		frontend.parse("inherits :: String, String\n"
+				+ "MODES (B,F) IS NONDET END");
+		frontend.parse("inherits(?c,?m) :- extends(?c,?s), method(?s,?m).");
+		ArrayList methods = new ArrayList();
+		ArrayList extendsFacts = new ArrayList();
+		for (int i = 0; i < NUM_CLASSES; i++) {
+			for (int j = 0; j < 20; j++) {
+				methods.add(new RBTerm[] { FrontEnd.makeName("p.C" + i), FrontEnd.makeName("p.C" + i + "#m" + j + "()") });
+			}
+			if (i > 0)
+				extendsFacts.add(new RBTerm[] { FrontEnd.makeName("p.C" + i), FrontEnd.makeName("p.C" + (i - 1)) });
+		}
+		frontend.insertAll("method", methods);
+		frontend.insertAll("extends", extendsFacts);
+	}
+
+	/** Runs queries for every class on all the threads at once. */
+	private void checkConcurrentQueries() throws Exception {
+		final List failures = Collections.synchronizedList(new ArrayList());
+		Thread[] threads = new Thread[NUM_THREADS];
+		for (int t = 0; t < threads.length; t++) {
+			final int offset = t;
+			threads[t] = new Thread() {
+				public void run() {
+					try {
+						for (int n = 0; n < NUM_CLASSES; n++) {
+							int i = (n + offset * 7) % NUM_CLASSES;
+							int inherited = frontend.frameQuery("inherits(\"p.C" + i + "\",?m)").countElements();
+							if (inherited != (i == 0 ? 0 : 20))
+								failures.add("inherits p.C" + i + ": " + inherited);
+							int methods = frontend.frameQuery("extends(?c,\"p.C" + i + "\"), method(?c,?m)").countElements();
+							if (methods != (i == NUM_CLASSES - 1 ? 0 : 20))
+								failures.add("subclass methods p.C" + i + ": " + methods);
+						}
+					} catch (Throwable e) {
+						failures.add(e.toString());
+					}
+				}
+			};
+		}
+		for (int t = 0; t < threads.length; t++)
+			threads[t].start();
+		for (int t = 0; t < threads.length; t++)
+			threads[t].join();
+		assertEquals(failures.toString(), 0, failures.size());
+	}
+
+	public void testConcurrentQueries() throws Exception {
+		declare();
+		checkConcurrentQueries();
+	}
+
+	public void testConcurrentInMemoryQueries() throws Exception {
+		frontend = FrontEnd.makeInMemory(initfile);
+		declare();
+		checkConcurrentQueries();
+	}
+
+	/**
+	 * A query that has been started is read while another thread holds the
+	 * FrontEnd's lock (which it only needs again when it is released).
+	 */
+	public void testQueriesAreReadWithoutTheFrontEndLock() throws Exception {
+		declare();
+		final ElementSource methods = frontend.frameQuery("method(?c,?m)");
+		final CountDownLatch locked = new CountDownLatch(1);
+		final CountDownLatch counted = new CountDownLatch(1);
+		final boolean[] countedWhileLocked = { false };
+		Thread holder = new Thread() {
+			public void run() {
+				synchronized (frontend) {
+					locked.countDown();
+					try {
+						countedWhileLocked[0] = counted.await(10, TimeUnit.SECONDS);
+					} catch (InterruptedException e) {
+					}
+				}
+			}
+		};
+		holder.start();
+		locked.await();
+		for (int i = 0; i < 100; i++)
+			assertNotNull(methods.nextElement());
+		counted.countDown();
+		holder.join();
+		assertTrue(countedWhileLocked[0]);
+		assertEquals(NUM_CLASSES * 20 - 100, methods.countElements());
+	}
+
+}
@@ -0,0 +1,272 @@
+/*
+*    Logical Structural Diff (LSDiff)
+*    Copyright (C) <2015>  <Dr. Miryung Kim miryung@cs.ucla.edu>
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package tyRuBa.tests;
+
+import java.io.File;
+import java.util.HashSet;
+
+import junit.framework.TestCase;
+import tyRuBa.util.pager.ClockEvictionPolicy;
+import tyRuBa.util.pager.EvictionPolicy;
+import tyRuBa.util.pager.FileLocation;
+import tyRuBa.util.pager.LRUEvictionPolicy;
+import tyRuBa.util.pager.Pager;
+import tyRuBa.util.pager.PagerStatistics;
+import tyRuBa.util.pager.TinyLFUEvictionPolicy;
+import tyRuBa.util.pager.Pager.Resource;
+import tyRuBa.util.pager.Pager.ResourceId;
+
+/**
+ * Tests the Pager's eviction policies, its memory bound and its statistics.
+ */
+public class EvictionPolicyTest extends TestCase {
+
+	static final File dir = new File("fdb-eviction");
+
+	Pager pager;
+
+	/** A resource that claims to take size bytes. */
+	static class Blob implements Pager.SizedResource {
+		private static final long serialVersionUID = 1L;
+		int value;
+		long size;
+
+		Blob(int value, long size) {
+			this.value = value;
+			this.size = size;
+		}
+
+		public long estimatedSize() {
+			return size;
+		}
+	}
+
+	public EvictionPolicyTest(String arg0) {
+		super(arg0);
+	}
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		deleteDirectory(dir);
+		pager = new Pager(1000, 100, 0, false);
+	}
+
+	protected void tearDown() throws Exception {
+		pager.shutdown();
+		deleteDirectory(dir);
+		super.tearDown();
+	}
+
+	public void testLRU() {
+		EvictionPolicy lru = new LRUEvictionPolicy();
+		lru.admitted("a");
+		lru.admitted("b");
+		lru.admitted("c");
+		lru.referenced("a");
+		assertEquals("b", lru.nextVictim());
+		lru.removed("b");
+		assertEquals("c", lru.nextVictim());
+		lru.removed("c");
+		lru.removed("a");
+		assertNull(lru.nextVictim());
+	}
+
+	public void testClock() {
+		EvictionPolicy clock = new ClockEvictionPolicy();
+		clock.admitted("a");
+		clock.admitted("b");
+		clock.admitted("c");
+		Object first = clock.nextVictim();
+		assertNotNull(first);
+		clock.removed(first);
+		HashSet rest = new HashSet();
+		rest.add("a");
+		rest.add("b");
+		rest.add("c");
+		rest.remove(first);
+		Object used = rest.iterator().next();
+		rest.remove(used);
+		clock.referenced(used);
+		// the one that was used gets a second chance
+		assertEquals(rest.iterator().next(), clock.nextVictim());
+	}
+
+	public void testTinyLFUKeepsFrequentKeys() {
+		EvictionPolicy tinyLFU = new TinyLFUEvictionPolicy();
+		for (int i = 0; i < 100; i++) {
+			tinyLFU.admitted("k" + i);
+		}
+		for (int round = 0; round < 5; round++) {
+			for (int i = 0; i < 10; i++) {
+				tinyLFU.referenced("k" + i);
+			}
+		}
+		for (int i = 0; i < 50; i++) {
+			Object victim = tinyLFU.nextVictim();
+			String name = (String) victim;
+			assertTrue(name, Integer.parseInt(name.substring(1)) >= 10);
+			tinyLFU.removed(victim);
+		}
+	}
+
+	/**
+	 * Replays a trace through a cache of the given capacity that uses policy,
+	 * the way the Pager does. Returns the number of hits.
+	 */
+	static int simulate(EvictionPolicy policy, int[] trace, int capacity) {
+		HashSet resident = new HashSet();
+		int hits = 0;
+		for (int i = 0; i < trace.length; i++) {
+			Integer key = new Integer(trace[i]);
+			if (resident.contains(key)) {
+				hits++;
+				policy.referenced(key);
+			} else {
+				policy.missed(key);
+				if (resident.size() >= capacity) {
+					Object victim = policy.nextVictim();
+					resident.remove(victim);
+					policy.removed(victim);
+				}
+				resident.add(key);
+				policy.admitted(key);
+			}
+		}
+		return hits;
+	}
+
+	/**
+	 * Ten rounds over 50 popular pages, a scan over 1000 pages that are used
+	 * only once, and one more round over the popular pages.
+	 */
+	private static int[] popularPagesAndScan() {
+		int[] trace = new int[11 * 50 + 1000];
+		int n = 0;
+		for (int round = 0; round < 10; round++) {
+			for (int i = 0; i < 50; i++) {
+				trace[n++] = i;
+			}
+		}
+		for (int i = 0; i < 1000; i++) {
+			trace[n++] = 100000 + i;
+		}
+		for (int i = 0; i < 50; i++) {
+			trace[n++] = i;
+		}
+		return trace;
+	}
+
+	public void testScanResistance() {
+		int[] trace = popularPagesAndScan();
+		// the scan pushes all the popular pages out of LRU and CLOCK
+		assertEquals(9 * 50, simulate(new LRUEvictionPolicy(), trace, 100));
+		assertEquals(9 * 50, simulate(new ClockEvictionPolicy(), trace, 100));
+		// W-TinyLFU does not let the pages of the scan take the place of
+		// most of them
+		assertTrue(simulate(new TinyLFUEvictionPolicy(), trace, 100) > 9 * 50 + 30);
+	}
+
+	private void write(ResourceId id, final int value, final long size) {
+		pager.synchDoTask(id, new Pager.Task(true) {
+			public Object doIt(Resource rsrc) {
+				changedResource(new Blob(value, size));
+				return null;
+			}
+		});
+	}
+
+	private int read(ResourceId id) {
+		Integer value = (Integer) pager.synchDoTask(id, new Pager.Task(false) {
+			public Object doIt(Resource rsrc) {
+				return new Integer(rsrc == null ? -1 : ((Blob) rsrc).value);
+			}
+		});
+		return value.intValue();
+	}
+
+	private void checkMemoryBound(EvictionPolicy policy) {
+		pager.setEvictionPolicy(policy);
+		pager.setMemoryBound(10000);
+		FileLocation location = new FileLocation(dir);
+		ResourceId[] ids = new ResourceId[30];
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = location.getResourceID(policy.getName() + i);
+			write(ids[i], i, 1000);
+			assertTrue(pager.getEstimatedBytes() <= 10000);
+		}
+		assertTrue(pager.getNumResident() <= 10);
+		for (int i = 0; i < ids.length; i++) {
+			assertEquals(i, read(ids[i]));
+		}
+		// a resource that grows pushes others out
+		write(ids[0], 0, 6000);
+		assertTrue(pager.getEstimatedBytes() <= 10000);
+		assertTrue(pager.getNumResident() <= 5);
+		assertEquals(0, read(ids[0]));
+	}
+
+	public void testMemoryBound() {
+		checkMemoryBound(new LRUEvictionPolicy());
+		checkMemoryBound(new ClockEvictionPolicy());
+		checkMemoryBound(new TinyLFUEvictionPolicy());
+	}
+
+	public void testStatistics() {
+		PagerStatistics stats = pager.getStatistics();
+		FileLocation location = new FileLocation(dir);
+		ResourceId a = location.getResourceID("a");
+		ResourceId b = location.getResourceID("b");
+		stats.reset();
+		write(a, 1, 100);
+		write(b, 2, 100);
+		assertEquals(2, stats.getLongStat(PagerStatistics.MISSES));
+		assertEquals(1, read(a));
+		assertEquals(2, read(b));
+		assertEquals(1, read(a));
+		assertEquals(3, stats.getLongStat(PagerStatistics.HITS));
+		assertEquals(0.6f, stats.getFloatStat(PagerStatistics.HIT_RATIO), 0.001f);
+		assertEquals(2, stats.getIntStat(PagerStatistics.RESIDENT));
+		assertEquals(200, stats.getLongStat(PagerStatistics.ESTIMATED_BYTES));
+
+		pager.backup();
+		pager.setCacheSize(0);
+		assertEquals(2, stats.getLongStat(PagerStatistics.EVICTIONS));
+		assertEquals(0, stats.getLongStat(PagerStatistics.ESTIMATED_BYTES));
+		pager.setCacheSize(10);
+		assertEquals(1, read(a));
+		assertEquals(1, stats.getLongStat(PagerStatistics.PAGE_INS));
+		assertTrue(stats.getLongStat(PagerStatistics.PAGE_IN_NANOS) > 0);
+		assertEquals("CLOCK", stats.getObjectStat(PagerStatistics.POLICY));
+
+		stats.stopGathering();
+		read(a);
+		assertEquals(3, stats.getLongStat(PagerStatistics.HITS));
+		stats.startGathering();
+	}
+
+	private static void deleteDirectory(File dir) {
+		File[] children = dir.listFiles();
+		if (children != null) {
+			for (int i = 0; i < children.length; i++) {
+				deleteDirectory(children[i]);
+			}
+		}
+		dir.delete();
+	}
+
+}
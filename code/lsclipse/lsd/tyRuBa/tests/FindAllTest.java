@@ -17,8 +17,14 @@
 */
 package tyRuBa.tests;
 
+import tyRuBa.engine.Frame;
+import tyRuBa.engine.FrontEnd;
+import tyRuBa.engine.RBCountAll;
+import tyRuBa.engine.RBExpression;
+import tyRuBa.engine.RBVariable;
 import tyRuBa.modes.TypeModeError;
 import tyRuBa.parser.ParseException;
+import tyRuBa.util.ElementSource;
 
 public class FindAllTest extends TyrubaTest {
 
@@ -64,4 +70,17 @@ public class FindAllTest extends TyrubaTest {
 		}
 	}
 
+	public void testCountAllLimit() throws ParseException, TypeModeError {
+		RBExpression q = frontend.makeExpression("EXISTS ?y: append(?x,?y,[1,2,3])");
+		RBVariable n = FrontEnd.makeVar("?n");
+		ElementSource result = frontend.frameQuery(
+			new RBCountAll(q, FrontEnd.makeVar("?x"), n, 2));
+		assertEquals(FrontEnd.makeInteger(2), ((Frame)result.nextElement()).get(n));
+		assertFalse(result.hasMoreElements());
+
+		result = frontend.frameQuery(
+			new RBCountAll(q, FrontEnd.makeVar("?x"), n, 10));
+		assertEquals(FrontEnd.makeInteger(4), ((Frame)result.nextElement()).get(n));
+	}
+
 }
@@ -0,0 +1,186 @@
+/*
+*    Logical Structural Diff (LSDiff)
+*    Copyright (C) <2015>  <Dr. Miryung Kim miryung@cs.ucla.edu>
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package tyRuBa.tests;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Enumeration;
+import java.util.HashSet;
+
+import junit.framework.TestCase;
+import tyRuBa.engine.Frame;
+import tyRuBa.engine.FrontEnd;
+import tyRuBa.engine.RBTerm;
+import tyRuBa.engine.RBVariable;
+
+/**
+ * Tests the slot based Frame: bindings, copy on write and growing past the
+ * point where it starts hashing.
+ */
+public class FrameTest extends TestCase {
+
+	static RBVariable[] vars = new RBVariable[40];
+	static RBTerm[] values = new RBTerm[40];
+	static {
+		for (int i = 0; i < vars.length; i++) {
+			vars[i] = FrontEnd.makeVar("?v" + i);
+			values[i] = FrontEnd.makeInteger(i);
+		}
+	}
+
+	public FrameTest(String arg0) {
+		super(arg0);
+	}
+
+	public void testBindings() {
+		Frame f = new Frame();
+		assertTrue(f.isEmpty());
+		for (int i = 0; i < vars.length; i++) {
+			assertNull(f.get(vars[i]));
+			f.put(vars[i], values[i]);
+			assertEquals(i + 1, f.size());
+		}
+		for (int i = 0; i < vars.length; i++) {
+			assertSame(values[i], f.get(vars[i]));
+			// equal variables are the same binding
+			assertSame(values[i], f.get(FrontEnd.makeVar("?v" + i)));
+		}
+		f.put(vars[3], values[0]);
+		assertSame(values[0], f.get(vars[3]));
+		assertEquals(vars.length, f.size());
+
+		f.remove(vars[3]);
+		assertNull(f.get(vars[3]));
+		assertSame(values[39], f.get(vars[39]));
+		assertEquals(vars.length - 1, f.size());
+
+		HashSet keys = new HashSet();
+		for (Enumeration e = f.keys(); e.hasMoreElements();)
+			keys.add(e.nextElement());
+		assertEquals(f.keySet(), keys);
+		assertFalse(keys.contains(vars[3]));
+	}
+
+	public void testCopyOnWrite() {
+		Frame f = new Frame();
+		f.put(vars[0], values[0]);
+		Frame g = (Frame) f.clone();
+		g.put(vars[1], values[1]);
+		f.put(vars[0], values[2]);
+		assertEquals(1, f.size());
+		assertNull(f.get(vars[1]));
+		assertSame(values[0], g.get(vars[0]));
+		assertSame(values[2], f.get(vars[0]));
+
+		Frame h = g.append(f);
+		assertSame(values[2], h.get(vars[0]));
+		assertSame(values[1], h.get(vars[1]));
+		assertSame(values[0], g.get(vars[0]));
+
+		Frame r = h.removeVars(new RBVariable[] { vars[0] });
+		assertNull(r.get(vars[0]));
+		assertSame(values[2], h.get(vars[0]));
+	}
+
+	public void testEquality() {
+		Frame f = new Frame();
+		Frame g = new Frame();
+		for (int i = 0; i < 20; i++) {
+			f.put(vars[i], values[i]);
+			g.put(vars[19 - i], values[19 - i]);
+		}
+		assertEquals(f, g);
+		assertEquals(f.hashCode(), g.hashCode());
+		g.put(vars[5], values[6]);
+		assertFalse(f.equals(g));
+	}
+
+	public void testClonesKeepTheirBindings() {
+		Frame f = new Frame();
+		Frame[] copies = new Frame[vars.length];
+		for (int i = 0; i < vars.length; i++) {
+			f.put(vars[i], values[i]);
+			copies[i] = (Frame) f.clone();
+		}
+		for (int i = 0; i < copies.length; i++) {
+			assertEquals(i + 1, copies[i].size());
+			assertSame(values[i / 2], copies[i].get(vars[i / 2]));
+			if (i + 1 < vars.length)
+				assertNull(copies[i].get(vars[i + 1]));
+		}
+		copies[5].put(vars[0], values[1]);
+		assertSame(values[0], f.get(vars[0]));
+		assertSame(values[0], copies[6].get(vars[0]));
+	}
+
+	/** Answers in the tabling cache are read and cloned on several threads. */
+	public void testPublishedFrameReadByThreads() throws Exception {
+		final Frame f = new Frame();
+		for (int i = 0; i < vars.length - 1; i++) {
+			f.put(vars[i], values[i]);
+		}
+		final Throwable[] failure = new Throwable[1];
+		Thread[] readers = new Thread[4];
+		for (int t = 0; t < readers.length; t++) {
+			readers[t] = new Thread() {
+				public void run() {
+					try {
+						for (int n = 0; n < 1000; n++) {
+							Frame copy = (Frame) f.clone();
+							copy.put(vars[vars.length - 1], values[0]);
+							for (int i = 0; i < vars.length - 1; i++) {
+								assertSame(values[i], f.get(vars[i]));
+								assertSame(values[i], copy.get(vars[i]));
+							}
+							assertNull(f.get(vars[vars.length - 1]));
+						}
+					} catch (Throwable e) {
+						failure[0] = e;
+					}
+				}
+			};
+			readers[t].start();
+		}
+		for (int t = 0; t < readers.length; t++) {
+			readers[t].join();
+		}
+		if (failure[0] != null)
+			throw new Exception(failure[0]);
+	}
+
+	public void testSerializedFrame() throws Exception {
+		Frame f = new Frame();
+		for (int i = 0; i < vars.length; i++) {
+			f.put(vars[i], values[i]);
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(f);
+		out.close();
+		Frame g = (Frame) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+		for (int i = 0; i < vars.length; i++) {
+			assertEquals(values[i], g.get(FrontEnd.makeVar("?v" + i)));
+		}
+		g.remove(vars[0]);
+		assertNull(g.get(vars[0]));
+		assertEquals(values[1], g.get(FrontEnd.makeVar("?v1")));
+	}
+
+}
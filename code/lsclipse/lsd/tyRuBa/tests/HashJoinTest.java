@@ -0,0 +1,144 @@
+/*
+*    Logical Structural Diff (LSDiff)
+*    Copyright (C) <2015>  <Dr. Miryung Kim miryung@cs.ucla.edu>
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package tyRuBa.tests;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+
+import tyRuBa.engine.Frame;
+import tyRuBa.engine.FrontEnd;
+import tyRuBa.engine.RBConjunction;
+import tyRuBa.engine.RBTerm;
+import tyRuBa.modes.TypeModeError;
+import tyRuBa.parser.ParseException;
+import tyRuBa.tdbc.PreparedQuery;
+import tyRuBa.util.ElementSource;
+
+/**
+ * Checks that joins of fact predicates without a usable index give the same
+ * answers by hashing as by a nested loop.
+ */
+public class HashJoinTest extends TyrubaTest {
+
+	static final int NODES = 1000;
+
+	/** Paths of length two, less than four per node as two edges coincide. */
+	static final int PATHS = 3992;
+
+	public HashJoinTest(String arg0) {
+		super(arg0);
+	}
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		declare(false);
+	}
+
+	private void declare(boolean persistent) throws ParseException, TypeModeError {
+		frontend.parse("edge :: String, String\n" + (persistent ? "PERSISTENT " : "")
+				+ "MODES (F,F) IS NONDET END");
+		frontend.parse("path2 :: String, String\n"
+				+ "MODES (F,F) IS NONDET (B,F) IS NONDET END");
+		frontend.parse("path2(?x,?z) :- edge(?x,?y), edge(?y,?z).");
+		// two edges out of every node
+		ArrayList edges = new ArrayList();
+		for (int i = 0; i < NODES; i++) {
+			edges.add(new RBTerm[] { FrontEnd.makeName("n" + i), FrontEnd.makeName("n" + ((i + 1) % NODES)) });
+			edges.add(new RBTerm[] { FrontEnd.makeName("n" + i), FrontEnd.makeName("n" + ((i * 7 + 3) % NODES)) });
+		}
+		frontend.insertAll("edge", edges);
+	}
+
+	/** Checks that the join is compiled to a hash join and gives all the paths. */
+	private void checkHashJoinIsUsed() throws ParseException, TypeModeError {
+		String query = "edge(?x,?y), edge(?y,?z)";
+		PreparedQuery prepared = frontend.prepareForRunning(query);
+		assertTrue(prepared.getCompiled().toString(),
+			prepared.getCompiled().toString().indexOf("HASHJOIN") >= 0);
+		test_resultcount(query, PATHS);
+
+		boolean old = RBConjunction.hashJoins;
+		try {
+			RBConjunction.hashJoins = false;
+			prepared = frontend.prepareForRunning(query);
+			assertTrue(prepared.getCompiled().toString(),
+				prepared.getCompiled().toString().indexOf("HASHJOIN") < 0);
+		} finally {
+			RBConjunction.hashJoins = old;
+		}
+	}
+
+	public void testHashJoinIsUsed() throws ParseException, TypeModeError {
+		checkHashJoinIsUsed();
+	}
+
+	public void testPersistentHashJoinIsUsed() throws ParseException, TypeModeError {
+		frontend = new FrontEnd(initfile, true);
+		declare(true);
+		checkHashJoinIsUsed();
+	}
+
+	public void testInMemoryHashJoinIsUsed() throws ParseException, TypeModeError {
+		frontend = FrontEnd.makeInMemory(initfile);
+		declare(false);
+		checkHashJoinIsUsed();
+	}
+
+	public void testAnswers() throws ParseException, TypeModeError {
+		test_must_findall("path2(n1,?z)", "?z", new String[] { "n3", "n17", "n11", "n73" });
+		test_must_findall("edge(?x,n5), edge(n5,?z)", new String[] { "?x", "?z" },
+			new String[][] { { "n4", "n6" }, { "n4", "n38" }, { "n286", "n6" }, { "n286", "n38" } });
+		test_resultcount("edge(?x,?y), edge(?y,?z)", PATHS);
+		test_resultcount("edge(?x,?y), edge(?y,?x)", 12);
+		boolean old = RBConjunction.hashJoins;
+		try {
+			RBConjunction.hashJoins = false;
+			test_must_findall("path2(n2,?z)", "?z", new String[] { "n4", "n18", "n24", "n122" });
+			test_resultcount("edge(?x,?y), edge(?y,?z), edge(?z,n0)", 8);
+		} finally {
+			RBConjunction.hashJoins = old;
+		}
+		test_resultcount("edge(?x,?y), edge(?y,?z), edge(?z,n1)", 8);
+	}
+
+	private HashSet paths(String query) throws ParseException, TypeModeError {
+		HashSet paths = new HashSet();
+		for (ElementSource frames = frontend.frameQuery(query); frames.hasMoreElements();) {
+			Frame frame = (Frame) frames.nextElement();
+			paths.add(frame.get(FrontEnd.makeVar("?x")) + " " + frame.get(FrontEnd.makeVar("?y"))
+					+ " " + frame.get(FrontEnd.makeVar("?z")));
+		}
+		return paths;
+	}
+
+	public void testSameAnswersAsNestedLoop() throws ParseException, TypeModeError {
+		boolean old = RBConjunction.hashJoins;
+		try {
+			RBConjunction.hashJoins = true;
+			HashSet hashed = paths("edge(?x,?y), edge(?y,?z)");
+			RBConjunction.hashJoins = false;
+			// a different query, so it is not answered from the cache
+			HashSet nested = paths("edge(?x,?y), edge(?y,?z), edge(?x,?w)");
+			assertEquals(PATHS, hashed.size());
+			assertEquals(hashed, nested);
+		} finally {
+			RBConjunction.hashJoins = old;
+		}
+	}
+
+}
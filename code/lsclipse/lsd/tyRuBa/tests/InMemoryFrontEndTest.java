@@ -0,0 +1,116 @@
+/*
+*    Logical Structural Diff (LSDiff)
+*    Copyright (C) <2015>  <Dr. Miryung Kim miryung@cs.ucla.edu>
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package tyRuBa.tests;
+
+import java.util.ArrayList;
+
+import tyRuBa.engine.FrontEnd;
+import tyRuBa.engine.RBTerm;
+import tyRuBa.modes.TypeModeError;
+import tyRuBa.parser.ParseException;
+
+/**
+ * Runs queries against an in memory FrontEnd, whose facts are indexed per
+ * mode without going through the Pager, and compares the answers with a
+ * regular FrontEnd.
+ */
+public class InMemoryFrontEndTest extends TyrubaTest {
+
+	public InMemoryFrontEndTest(String arg0) {
+		super(arg0);
+	}
+
+	protected void setUp() throws Exception {
+		setUpNoFrontend();
+		frontend = FrontEnd.makeInMemory(initfile);
+		declare(frontend);
+	}
+
+	private static void declare(FrontEnd fe) throws ParseException, TypeModeError {
+		fe.parse("calls :: String, String, String\n" +
+				"MODES (F,F,F) IS NONDET END");
+	}
+
+	private static void load(FrontEnd fe, int numFacts) throws TypeModeError {
+		ArrayList tuples = new ArrayList(numFacts);
+		for (int i = 0; i < numFacts; i++) {
+			tuples.add(new RBTerm[] {
+				FrontEnd.makeName("m" + (i % 100) + "()"),
+				FrontEnd.makeName("m" + i + "()"),
+				FrontEnd.makeName("p.C" + (i % 7))
+			});
+		}
+		fe.insertAll("calls", tuples);
+	}
+
+	public void testBoundLookups() throws ParseException, TypeModeError {
+		load(frontend, 1000);
+		test_resultcount("calls(?x,?y,?z)", 1000);
+		test_resultcount("calls(\"m3()\",?y,?z)", 10);
+		test_resultcount("calls(?x,?y,\"p.C2\")", 143);
+		test_resultcount("calls(\"m3()\",?y,\"p.C3\")", 2);
+		test_must_equal("calls(?x,\"m42()\",?z)", "?z", "\"p.C0\"");
+		test_must_succeed("calls(\"m42()\",\"m42()\",\"p.C0\")");
+		test_must_fail("calls(\"m42()\",\"m43()\",\"p.C0\")");
+		test_must_fail("calls(\"nothing\",?y,?z)");
+	}
+
+	public void testInsertAfterQuery() throws ParseException, TypeModeError {
+		frontend.parse("calls(\"a()\",\"b()\",\"C\").");
+		test_resultcount("calls(\"a()\",?y,?z)", 1);
+		frontend.parse("calls(\"a()\",\"c()\",\"C\").");
+		test_must_findall("calls(\"a()\",?y,\"C\")", "?y",
+				new String[] { "\"b()\"", "\"c()\"" });
+		test_resultcount("calls(\"a()\",?y,?z)", 2);
+	}
+
+	public void testRules() throws ParseException, TypeModeError {
+		frontend.parse("calls(\"a()\",\"b()\",\"C\").");
+		frontend.parse("calls(\"b()\",\"c()\",\"C\").");
+		frontend.parse("calls(\"c()\",\"d()\",\"D\").");
+		frontend.parse("reaches :: String, String\n" +
+				"MODES (F,F) IS NONDET (B,F) IS NONDET END\n" +
+				"reaches(?x,?y) :- calls(?x,?y,?).\n" +
+				"reaches(?x,?z) :- calls(?x,?y,?), reaches(?y,?z).");
+		test_must_findall("reaches(\"a()\",?y)", "?y",
+				new String[] { "\"b()\"", "\"c()\"", "\"d()\"" });
+		test_resultcount("reaches(?x,?y)", 6);
+	}
+
+	public void testSameAnswersAsRegular() throws ParseException, TypeModeError {
+		FrontEnd regular = new FrontEnd(initfile, true);
+		declare(regular);
+		load(regular, 2000);
+		load(frontend, 2000);
+		String[] queries = {
+			"calls(?x,?y,?z)",
+			"calls(?x,\"m42()\",?z)",
+			"calls(\"m7()\",?y,?z)",
+			"calls(?x,?y,\"p.C4\")",
+			"calls(\"m7()\",?y,\"p.C4\")",
+			"calls(?x,?y,\"p.C4\"), calls(?y,?w,\"p.C4\")"
+		};
+		for (int i = 0; i < queries.length; i++) {
+			assertEquals(queries[i], regular.frameQuery(queries[i]).countElements(),
+					frontend.frameQuery(queries[i]).countElements());
+		}
+		assertNull(frontend.getStoragePath());
+		assertEquals(0, frontend.getCacheSize());
+	}
+
+}
@@ -0,0 +1,136 @@
+/*
+*    Logical Structural Diff (LSDiff)
+*    Copyright (C) <2015>  <Dr. Miryung Kim miryung@cs.ucla.edu>
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package tyRuBa.tests;
+
+import java.io.File;
+
+import tyRuBa.engine.BackupFailedException;
+import tyRuBa.engine.FrontEnd;
+import tyRuBa.engine.factbase.hashtable.IndexPageCodec;
+import tyRuBa.modes.TypeModeError;
+import tyRuBa.parser.ParseException;
+
+/**
+ * Checks that Index pages survive being paged out and back in with the
+ * binary page format, and that it takes less room on disk than Java
+ * serialization.
+ */
+public class IndexPageCodecTest extends TyrubaTest {
+
+	public IndexPageCodecTest(String arg0) {
+		super(arg0);
+	}
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		declare(frontend);
+	}
+
+	private static void declare(FrontEnd fe) throws ParseException, TypeModeError {
+		fe.parse("ref :: String, String, Integer\n" +
+				"PERSISTENT MODES (F,F,F) IS NONDET (B,F,F) IS NONDET (F,B,F) IS NONDET END");
+		fe.parse("tags :: String, [String]\n" +
+				"PERSISTENT MODES (F,F) IS NONDET (B,F) IS NONDET END");
+	}
+
+	private static void insertFacts(FrontEnd fe, int count) throws ParseException, TypeModeError {
+		for (int i = 0; i < count; i++) {
+			fe.parse("ref(\"p" + (i % 200) + "#m" + i + "()\",\"q" + (i % 50)
+					+ "#f" + (i % 1000) + "\"," + i + ").");
+		}
+	}
+
+	/** Makes the pager write out and forget every page it holds. */
+	private void pageEverythingOut() throws BackupFailedException {
+		int cacheSize = frontend.getCacheSize();
+		frontend.backupFactBase();
+		frontend.setCacheSize(0);
+		frontend.setCacheSize(cacheSize);
+	}
+
+	public void testRoundTrip() throws ParseException, TypeModeError, BackupFailedException {
+		insertFacts(frontend, 1000);
+		frontend.parse("tags(\"a#b\",[\"x\",\"y\",\"z\"]).");
+		frontend.parse("tags(\"a#c\",[]).");
+		frontend.parse("tags(plain,[\"w\"]).");
+		pageEverythingOut();
+
+		test_resultcount("ref(?x,?y,?z)", 1000);
+		test_resultcount("ref(\"p3#m203()\",?y,?z)", 1);
+		test_must_equal("ref(\"p3#m203()\",?y,?z)", "?z", "203");
+		test_resultcount("ref(?x,\"q7#f7\",?z)", 1);
+		test_resultcount("ref(?x,\"q7#f57\",?z)", 1);
+		test_must_equal("tags(\"a#b\",?l)", "?l", "[\"x\",\"y\",\"z\"]");
+		test_must_equal("tags(\"a#c\",?l)", "?l", "[]");
+		test_must_equal("tags(plain,?l)", "?l", "[\"w\"]");
+	}
+
+	public void testInsertAfterPageIn() throws ParseException, TypeModeError, BackupFailedException {
+		insertFacts(frontend, 100);
+		pageEverythingOut();
+		frontend.parse("ref(\"p0#extra()\",\"q0#f0\",-1).");
+		pageEverythingOut();
+		test_resultcount("ref(?x,?y,?z)", 101);
+		test_resultcount("ref(?x,\"q0#f0\",?z)", 2);
+	}
+
+	public void testReadsSerializedPages() throws ParseException, TypeModeError, BackupFailedException {
+		frontend.getPager().setResourceCodec(null);
+		insertFacts(frontend, 500);
+		pageEverythingOut();
+		frontend.getPager().setResourceCodec(new IndexPageCodec());
+		test_resultcount("ref(?x,?y,?z)", 500);
+		test_resultcount("ref(\"p1#m1()\",?y,?z)", 1);
+
+		// pages are rewritten in the new format once they are changed
+		frontend.parse("ref(\"p1#more()\",\"q1#f1\",-1).");
+		pageEverythingOut();
+		test_resultcount("ref(?x,?y,?z)", 501);
+	}
+
+	public void testSmallerThanSerialized() throws ParseException, TypeModeError, BackupFailedException {
+		long serialized = pagedOutSize(false);
+		frontend = new FrontEnd(initfile, true);
+		declare(frontend);
+		long binary = pagedOutSize(true);
+		assertTrue(binary + " >= " + serialized, binary < serialized);
+	}
+
+	private long pagedOutSize(boolean useCodec) throws ParseException, TypeModeError, BackupFailedException {
+		frontend.getPager().setResourceCodec(useCodec ? new IndexPageCodec() : null);
+		insertFacts(frontend, 2000);
+		pageEverythingOut();
+		test_resultcount("ref(?x,?y,?z)", 2000);
+		test_resultcount("ref(?x,\"q1#f1\",?z)", 2);
+		return sizeOf(new File(frontend.getStoragePath()));
+	}
+
+	static long sizeOf(File file) {
+		if (file.isDirectory()) {
+			long size = 0;
+			File[] children = file.listFiles();
+			for (int i = 0; i < children.length; i++) {
+				size += sizeOf(children[i]);
+			}
+			return size;
+		} else {
+			return file.length();
+		}
+	}
+
+}
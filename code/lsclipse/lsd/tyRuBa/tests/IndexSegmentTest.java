@@ -0,0 +1,175 @@
+/*
+*    Logical Structural Diff (LSDiff)
+*    Copyright (C) <2015>  <Dr. Miryung Kim miryung@cs.ucla.edu>
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package tyRuBa.tests;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import tyRuBa.engine.FrontEnd;
+import tyRuBa.engine.factbase.hashtable.URLFactLibrary;
+import tyRuBa.modes.TypeModeError;
+import tyRuBa.parser.ParseException;
+
+/**
+ * Checks that a fact library gives the same answers when its indexes are
+ * packed into memory mapped segment files.
+ */
+public class IndexSegmentTest extends TyrubaTest {
+
+	static final File libraryDir = new File("fdb-library");
+
+	static final File savedDir = new File("fdb-segments");
+
+	public IndexSegmentTest(String arg0) {
+		super(arg0);
+	}
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		declare(frontend);
+	}
+
+	protected void tearDown() throws Exception {
+		deleteDirectory(libraryDir);
+		deleteDirectory(savedDir);
+		super.tearDown();
+	}
+
+	private static void declare(FrontEnd fe) throws ParseException, TypeModeError {
+		fe.parse("ref :: String, String, Integer\n" +
+				"PERSISTENT MODES (F,F,F) IS NONDET (B,F,F) IS NONDET (F,B,F) IS NONDET END");
+		fe.parse("tags :: String, [String]\n" +
+				"PERSISTENT MODES (F,F) IS NONDET (B,F) IS NONDET END");
+	}
+
+	/**
+	 * Stores facts in the current fact base, copies it to libraryDir and
+	 * starts over with an empty fact base that uses it as a library.
+	 */
+	private void makeLibrary(int numFacts, boolean pack) throws Exception {
+		for (int i = 0; i < numFacts; i++) {
+			frontend.parse("ref(\"p" + (i % 200) + "#m" + i + "()\",\"q" + (i % 50)
+					+ "#f" + (i % 1000) + "\"," + i + ").");
+		}
+		frontend.parse("tags(\"a#b\",[\"x\",\"y\",\"z\"]).");
+		frontend.parse("tags(plain,[]).");
+		frontend.backupFactBase();
+
+		deleteDirectory(libraryDir);
+		copyDirectory(new File(frontend.getStoragePath()), libraryDir);
+		if (pack) {
+			URLFactLibrary.packSegments(libraryDir);
+		}
+
+		frontend = new FrontEnd(initfile, true);
+		declare(frontend);
+		frontend.getFactLibraryManager().addLibraryURLLocation(
+				libraryDir.getAbsoluteFile().toURI().toURL().toString());
+	}
+
+	private void checkLibraryFacts(int numFacts) throws ParseException, TypeModeError {
+		test_resultcount("ref(?x,?y,?z)", numFacts);
+		test_resultcount("ref(\"p3#m203()\",?y,?z)", 1);
+		test_must_equal("ref(\"p3#m203()\",?y,?z)", "?z", "203");
+		test_resultcount("ref(\"p3#nothere()\",?y,?z)", 0);
+		test_resultcount("ref(?x,\"q7#f7\",?z)", numFacts / 1000);
+		test_must_equal("tags(\"a#b\",?l)", "?l", "[\"x\",\"y\",\"z\"]");
+		test_must_equal("tags(plain,?l)", "?l", "[]");
+		for (int i = 0; i < numFacts; i += 10) {
+			assertEquals(1, get_resultcount("ref(\"p" + (i % 200) + "#m" + i + "()\",?y,?z)"));
+		}
+	}
+
+	public void testPagedLibrary() throws Exception {
+		makeLibrary(2000, false);
+		checkLibraryFacts(2000);
+	}
+
+	public void testMappedLibrary() throws Exception {
+		makeLibrary(2000, true);
+		assertTrue(countSegments(libraryDir) > 0);
+		checkLibraryFacts(2000);
+	}
+
+	public void testStaleSegmentIgnored() throws Exception {
+		makeLibrary(1000, true);
+		copySegments(libraryDir, savedDir);
+		// a newer backup copied over the library, with the old segments
+		makeLibrary(2000, false);
+		copySegments(savedDir, libraryDir);
+		assertTrue(countSegments(libraryDir) > 0);
+		checkLibraryFacts(2000);
+	}
+
+	/** Copies only the segment files, into the same directories under to. */
+	private static void copySegments(File from, File to) throws IOException {
+		File[] files = from.listFiles();
+		for (int i = 0; i < files.length; i++) {
+			File target = new File(to, files[i].getName());
+			if (files[i].isDirectory()) {
+				copySegments(files[i], target);
+			} else if (files[i].getName().equals("pages.seg")) {
+				to.mkdirs();
+				copyFile(files[i], target);
+			}
+		}
+	}
+
+	private static int countSegments(File dir) {
+		int count = 0;
+		File[] files = dir.listFiles();
+		for (int i = 0; i < files.length; i++) {
+			if (files[i].isDirectory()) {
+				count += countSegments(files[i]);
+			} else if (files[i].getName().equals("pages.seg")) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	static void copyDirectory(File from, File to) throws IOException {
+		to.mkdirs();
+		File[] files = from.listFiles();
+		for (int i = 0; i < files.length; i++) {
+			File target = new File(to, files[i].getName());
+			if (files[i].isDirectory()) {
+				copyDirectory(files[i], target);
+			} else {
+				copyFile(files[i], target);
+			}
+		}
+	}
+
+	static void copyFile(File from, File to) throws IOException {
+		InputStream in = new FileInputStream(from);
+		OutputStream out = new FileOutputStream(to);
+		byte[] buf = new byte[8192];
+		int len;
+		while ((len = in.read(buf)) > 0) {
+			out.write(buf, 0, len);
+		}
+		in.close();
+		out.close();
+	}
+
+}
@@ -0,0 +1,176 @@
+/*
+*    Logical Structural Diff (LSDiff)
+*    Copyright (C) <2015>  <Dr. Miryung Kim miryung@cs.ucla.edu>
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package tyRuBa.tests;
+
+import java.io.File;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import tyRuBa.util.pager.FileLocation;
+import tyRuBa.util.pager.Pager;
+import tyRuBa.util.pager.PagerStatistics;
+import tyRuBa.util.pager.Pager.Resource;
+import tyRuBa.util.pager.Pager.ResourceId;
+
+/**
+ * Runs many threads against one Pager, with a cache that is much smaller
+ * than the number of resources so they keep getting paged out and in.
+ */
+public class PagerConcurrencyTest extends TestCase {
+
+	static final int NUM_RESOURCES = 100;
+
+	static final int NUM_THREADS = 8;
+
+	static final File dir = new File("fdb-pager");
+
+	Pager pager;
+
+	ResourceId[] ids;
+
+	/** A resource that counts how often it has been changed. */
+	static class Counter implements Pager.Resource {
+		private static final long serialVersionUID = 1L;
+		int value = 0;
+	}
+
+	public PagerConcurrencyTest(String arg0) {
+		super(arg0);
+	}
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		deleteDirectory(dir);
+		pager = new Pager(16, 100, 0, false);
+		FileLocation location = new FileLocation(dir);
+		ids = new ResourceId[NUM_RESOURCES];
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = location.getResourceID("counter" + i);
+		}
+	}
+
+	protected void tearDown() throws Exception {
+		pager.shutdown();
+		deleteDirectory(dir);
+		super.tearDown();
+	}
+
+	private void increment(ResourceId id) {
+		pager.synchDoTask(id, new Pager.Task(true) {
+			public Object doIt(Resource rsrc) {
+				Counter counter = (Counter) rsrc;
+				if (counter == null)
+					counter = new Counter();
+				counter.value++;
+				changedResource(counter);
+				return null;
+			}
+		});
+	}
+
+	private int read(ResourceId id) {
+		Integer value = (Integer) pager.synchDoTask(id, new Pager.Task(false) {
+			public Object doIt(Resource rsrc) {
+				return new Integer(rsrc == null ? 0 : ((Counter) rsrc).value);
+			}
+		});
+		return value.intValue();
+	}
+
+	/** Runs NUM_THREADS threads, each doing numOps reads and writes. */
+	private void runThreads(final int numThreads, final int numOps, final int writePercent,
+			final int[] writes) throws InterruptedException {
+		final Throwable[] failure = new Throwable[1];
+		Thread[] threads = new Thread[numThreads];
+		for (int t = 0; t < threads.length; t++) {
+			final int seed = t;
+			threads[t] = new Thread() {
+				public void run() {
+					Random random = new Random(seed);
+					try {
+						for (int i = 0; i < numOps; i++) {
+							int r = random.nextInt(NUM_RESOURCES);
+							if (random.nextInt(100) < writePercent) {
+								increment(ids[r]);
+								synchronized (writes) {
+									writes[r]++;
+								}
+							} else {
+								assertTrue(read(ids[r]) >= 0);
+							}
+						}
+					} catch (Throwable e) {
+						failure[0] = e;
+					}
+				}
+			};
+		}
+		for (int t = 0; t < threads.length; t++)
+			threads[t].start();
+		for (int t = 0; t < threads.length; t++)
+			threads[t].join();
+		if (failure[0] != null)
+			throw new Error(failure[0]);
+	}
+
+	public void testConcurrentReadsAndWrites() throws InterruptedException {
+		int[] writes = new int[NUM_RESOURCES];
+		runThreads(NUM_THREADS, 3000, 30, writes);
+		for (int i = 0; i < NUM_RESOURCES; i++) {
+			assertEquals("counter" + i, writes[i], read(ids[i]));
+		}
+		pager.backup();
+		pager.setCacheSize(0);
+		pager.setCacheSize(16);
+		for (int i = 0; i < NUM_RESOURCES; i++) {
+			assertEquals("counter" + i + " after paging", writes[i], read(ids[i]));
+		}
+	}
+
+	public void testConcurrentReadsOfResidentPages() throws InterruptedException {
+		int[] writes = new int[NUM_RESOURCES];
+		for (int i = 0; i < NUM_RESOURCES; i++) {
+			increment(ids[i]);
+		}
+		pager.setCacheSize(NUM_RESOURCES);
+		for (int i = 0; i < NUM_RESOURCES; i++) {
+			read(ids[i]);
+		}
+		PagerStatistics stats = pager.getStatistics();
+		stats.reset();
+		runThreads(NUM_THREADS, 2000, 0, writes);
+		assertEquals(NUM_THREADS * 2000, stats.getLongStat(PagerStatistics.HITS));
+		assertEquals(0, stats.getLongStat(PagerStatistics.MISSES));
+		assertEquals(0, stats.getLongStat(PagerStatistics.EVICTIONS));
+		assertEquals(NUM_RESOURCES, pager.getNumResident());
+		for (int i = 0; i < NUM_RESOURCES; i++) {
+			assertEquals(1, read(ids[i]));
+		}
+	}
+
+	static void deleteDirectory(File dir) {
+		File[] children = dir.listFiles();
+		if (children != null) {
+			for (int i = 0; i < children.length; i++) {
+				deleteDirectory(children[i]);
+			}
+		}
+		dir.delete();
+	}
+
+}
@@ -0,0 +1,111 @@
+/*
+*    Logical Structural Diff (LSDiff)
+*    Copyright (C) <2015>  <Dr. Miryung Kim miryung@cs.ucla.edu>
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package tyRuBa.tests;
+
+import java.util.HashSet;
+
+import tyRuBa.engine.Frame;
+import tyRuBa.engine.FrontEnd;
+import tyRuBa.engine.RuleBase;
+import tyRuBa.engine.compilation.Compiled;
+import tyRuBa.modes.TypeModeError;
+import tyRuBa.parser.ParseException;
+import tyRuBa.util.ElementSource;
+import tyRuBa.util.pager.PagerStatistics;
+
+/**
+ * Runs a join over a fact base that is much larger than the page cache, with
+ * and without prefetching the pages the second literal will look up.
+ */
+public class PrefetchTest extends TyrubaTest {
+
+	static final int NUM_FACTS = 3000;
+
+	static final int NUM_PAGES = 300;
+
+	private boolean oldUseCache;
+
+	private int oldPrefetchDistance;
+
+	public PrefetchTest(String arg0) {
+		super(arg0);
+	}
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		oldUseCache = RuleBase.useCache;
+		oldPrefetchDistance = Compiled.prefetchDistance;
+		// every run has to look the facts up again
+		RuleBase.useCache = false;
+		frontend.parse("calls :: String, String\n" +
+				"PERSISTENT MODES (F,F) IS NONDET END");
+		frontend.parse("defined :: String, String\n" +
+				"PERSISTENT MODES (B,F) IS NONDET END");
+		for (int i = 0; i < NUM_FACTS; i++) {
+			String callee = "\"t" + (i % NUM_PAGES) + "#m" + i + "()\"";
+			frontend.parse("calls(\"c#m" + i + "()\"," + callee + ").");
+			frontend.parse("defined(" + callee + ",\"file" + (i % NUM_PAGES) + "\").");
+		}
+		frontend.backupFactBase();
+		frontend.setCacheSize(0);
+		frontend.setCacheSize(20);
+	}
+
+	protected void tearDown() throws Exception {
+		RuleBase.useCache = oldUseCache;
+		Compiled.prefetchDistance = oldPrefetchDistance;
+		super.tearDown();
+	}
+
+	private void join() throws ParseException, TypeModeError {
+		test_resultcount("calls(?x,?y),defined(?y,?f)", NUM_FACTS);
+	}
+
+	public void testSameAnswers() throws ParseException, TypeModeError {
+		PagerStatistics stats = frontend.getPager().getStatistics();
+		Compiled.prefetchDistance = 0;
+		stats.reset();
+		join();
+		assertEquals(0, stats.getLongStat(PagerStatistics.PREFETCHES));
+		Compiled.prefetchDistance = 8;
+		join();
+		assertTrue(stats.getLongStat(PagerStatistics.PREFETCHES) > 0);
+		test_must_equal("calls(\"c#m42()\",?y),defined(?y,?f)", "?f", "\"file42\"");
+	}
+
+	private HashSet definedIn() throws ParseException, TypeModeError {
+		HashSet result = new HashSet();
+		for (ElementSource frames = frontend.frameQuery("calls(?x,?y),defined(?y,?f)"); frames.hasMoreElements();) {
+			Frame frame = (Frame) frames.nextElement();
+			result.add(frame.get(FrontEnd.makeVar("?y")) + " " + frame.get(FrontEnd.makeVar("?f")));
+		}
+		return result;
+	}
+
+	public void testPrefetchStaysInTheCache() throws ParseException, TypeModeError {
+		Compiled.prefetchDistance = 0;
+		HashSet without = definedIn();
+		Compiled.prefetchDistance = 8;
+		HashSet with = definedIn();
+		assertEquals(NUM_FACTS, with.size());
+		assertEquals(without, with);
+		// the pages that are prefetched count against the cache like the others
+		assertTrue(frontend.getPager().getNumResident() <= 20);
+	}
+
+}
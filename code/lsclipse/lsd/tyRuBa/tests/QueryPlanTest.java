@@ -0,0 +1,121 @@
+/*
+*    Logical Structural Diff (LSDiff)
+*    Copyright (C) <2015>  <Dr. Miryung Kim miryung@cs.ucla.edu>
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package tyRuBa.tests;
+
+import java.util.ArrayList;
+
+import tyRuBa.engine.FrontEnd;
+import tyRuBa.engine.RBConjunction;
+import tyRuBa.engine.RBTerm;
+import tyRuBa.engine.RBTuple;
+import tyRuBa.engine.TablingStatistics;
+import tyRuBa.engine.factbase.FactStatistics;
+import tyRuBa.modes.BindingList;
+import tyRuBa.modes.Factory;
+import tyRuBa.modes.TypeModeError;
+import tyRuBa.parser.ParseException;
+
+/**
+ * Checks the fact statistics and that conjunctions are ordered by the
+ * estimated number of results of their literals.
+ */
+public class QueryPlanTest extends TyrubaTest {
+
+	public QueryPlanTest(String arg0) {
+		super(arg0);
+	}
+
+	public void testStatistics() {
+		FactStatistics stats = new FactStatistics(2);
+		for (int i = 0; i < 10000; i++) {
+			stats.add(RBTuple.make(new RBTerm[] {
+				FrontEnd.makeName("p.C" + (i % 100)), FrontEnd.makeName("p.C#m" + i + "()") }));
+		}
+		assertEquals(10000, stats.getNumFacts());
+		assertEquals(100, stats.getNumDistinct(0), 5);
+		assertEquals(10000, stats.getNumDistinct(1), 500);
+
+		BindingList bf = Factory.makeBindingList();
+		bf.add(Factory.makeBound());
+		bf.add(Factory.makeFree());
+		assertEquals(100, stats.estimateResults(bf), 10);
+		BindingList ff = Factory.makeBindingList(2, Factory.makeFree());
+		assertEquals(10000, stats.estimateResults(ff), 0.001);
+	}
+
+	private void declare(boolean persistent) throws ParseException, TypeModeError {
+		frontend.parse("method :: String, String\n" + (persistent ? "PERSISTENT " : "")
+				+ "MODES (F,F) IS NONDET (B,F) IS NONDET (F,B) IS NONDET END");
+		frontend.parse("changed :: String\n" + (persistent ? "PERSISTENT " : "")
+				+ "MODES (F) IS NONDET (B) IS SEMIDET END");
+		ArrayList methods = new ArrayList();
+		for (int i = 0; i < 20000; i++) {
+			methods.add(new RBTerm[] { FrontEnd.makeName("p.C" + (i % 2000)), FrontEnd.makeName("p.C#m" + i + "()") });
+		}
+		frontend.insertAll("method", methods);
+		for (int i = 0; i < 5; i++) {
+			frontend.insert("changed", new RBTerm[] { FrontEnd.makeName("p.C#m" + (i * 1000) + "()") });
+		}
+	}
+
+	/** The number of calls of predicates the query makes. */
+	private long calls(String query, int expected) throws ParseException, TypeModeError {
+		TablingStatistics stats = frontend.getTablingCache().getStatistics();
+		stats.reset();
+		test_resultcount(query, expected);
+		return stats.getLongStat(TablingStatistics.HITS) + stats.getLongStat(TablingStatistics.MISSES);
+	}
+
+	private void checkOrdering() throws ParseException, TypeModeError {
+		// by mode alone method(?c,?m) comes first, it is written first and
+		// both are NONDET with everything free
+		String query = "method(?c,?m), changed(?m)";
+		boolean old = RBConjunction.costBasedOrdering;
+		try {
+			RBConjunction.costBasedOrdering = true;
+			long costBased = calls(query, 5);
+			RBConjunction.costBasedOrdering = false;
+			// the extra (all bound) literal makes it a different query, so
+			// it is not answered from the cache
+			long modeBased = calls(query + ", method(?c,?m)", 5);
+			// changed(?m) first looks up the classes of five methods,
+			// method(?c,?m) first looks up every method in changed
+			assertTrue(costBased + " >= " + modeBased, costBased * 100 < modeBased);
+		} finally {
+			RBConjunction.costBasedOrdering = old;
+		}
+	}
+
+	public void testOrdering() throws ParseException, TypeModeError {
+		declare(false);
+		checkOrdering();
+	}
+
+	public void testPersistentOrdering() throws ParseException, TypeModeError {
+		declare(true);
+		checkOrdering();
+	}
+
+	/** Rule checkers run their queries on in memory FrontEnds. */
+	public void testInMemoryOrdering() throws ParseException, TypeModeError {
+		frontend = FrontEnd.makeInMemory(initfile);
+		declare(false);
+		checkOrdering();
+	}
+
+}
@@ -0,0 +1,145 @@
+/*
+*    Logical Structural Diff (LSDiff)
+*    Copyright (C) <2015>  <Dr. Miryung Kim miryung@cs.ucla.edu>
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package tyRuBa.tests;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
+
+import tyRuBa.engine.Frame;
+import tyRuBa.engine.FrontEnd;
+import tyRuBa.engine.PredicateIdentifier;
+import tyRuBa.engine.RBTerm;
+import tyRuBa.modes.TypeModeError;
+import tyRuBa.parser.ParseException;
+import tyRuBa.util.ElementSource;
+
+/**
+ * Checks that deriving facts bottom up gives the same answers as running
+ * the rules.
+ */
+public class SemiNaiveTest extends TyrubaTest {
+
+	public SemiNaiveTest(String arg0) {
+		super(arg0);
+	}
+
+	/** The inherited members rules, as in derivationRules.rub. */
+	private void declareInheritance() throws ParseException, TypeModeError {
+		frontend.parse("method :: String, String, String\n"
+				+ "MODES (F,F,F) IS NONDET END");
+		frontend.parse("extends :: String, String\n"
+				+ "MODES (F,F) IS NONDET END");
+		frontend.parse("inheritedmethod :: String, String, String\n"
+				+ "MODES (F,F,F) IS NONDET END");
+		frontend.parse("inheritedmethod(?ms, ?t, ?t2) :- method(?, ?ms, ?t), extends(?t, ?t2), "
+				+ "NOT(method(?, ?ms, ?t2)).");
+		frontend.parse("inheritedmethod(?ms, ?t, ?t3) :- inheritedmethod(?ms, ?t, ?t2), extends(?t2, ?t3), "
+				+ "NOT(method(?, ?ms, ?t3)).");
+	}
+
+	/**
+	 * A tree of classes, each with three subclasses. Every class declares a
+	 * method of its own and one of seven methods that are overridden.
+	 */
+	private void insertHierarchy(int numClasses) throws TypeModeError {
+		ArrayList methods = new ArrayList();
+		ArrayList extendsFacts = new ArrayList();
+		for (int i = 0; i < numClasses; i++) {
+			String type = "p.C" + i;
+			methods.add(new RBTerm[] { FrontEnd.makeName(type + "#own" + i + "()"),
+				FrontEnd.makeName("own" + i + "()"), FrontEnd.makeName(type) });
+			methods.add(new RBTerm[] { FrontEnd.makeName(type + "#m" + (i % 7) + "()"),
+				FrontEnd.makeName("m" + (i % 7) + "()"), FrontEnd.makeName(type) });
+			if (i > 0)
+				extendsFacts.add(new RBTerm[] { FrontEnd.makeName("p.C" + ((i - 1) / 3)), FrontEnd.makeName(type) });
+		}
+		frontend.insertAll("method", methods);
+		frontend.insertAll("extends", extendsFacts);
+	}
+
+	private Set answers(String query) throws ParseException, TypeModeError {
+		Set result = new HashSet();
+		ElementSource frames = frontend.frameQuery(query);
+		while (frames.hasMoreElements()) {
+			Frame frame = (Frame) frames.nextElement();
+			result.add(frame.toString());
+		}
+		return result;
+	}
+
+	private void materialize(String name, int arity) throws ParseException, TypeModeError {
+		frontend.materialize(new PredicateIdentifier[] { new PredicateIdentifier(name, arity) });
+	}
+
+	public void testSameAnswers() throws ParseException, TypeModeError {
+		declareInheritance();
+		insertHierarchy(200);
+		String query = "inheritedmethod(?ms, ?t, ?t2)";
+		Set topDown = answers(query);
+		materialize("inheritedmethod", 3);
+		Set bottomUp = answers(query);
+		assertFalse(topDown.isEmpty());
+		assertEquals(topDown, bottomUp);
+		// the inherited own method of the root class
+		test_must_succeed("inheritedmethod(\"own0()\", \"p.C0\", \"p.C199\")");
+		test_must_fail("inheritedmethod(\"m0()\", \"p.C0\", \"p.C7\")");
+	}
+
+	public void testRecursion() throws ParseException, TypeModeError {
+		frontend.parse("parent :: String, String\n"
+				+ "MODES (F,F) IS NONDET END");
+		frontend.parse("ancestor :: String, String\n"
+				+ "MODES (F,F) IS NONDET END");
+		frontend.parse("ancestor(?a, ?b) :- parent(?a, ?b).");
+		frontend.parse("ancestor(?a, ?c) :- ancestor(?a, ?b), parent(?b, ?c).");
+		frontend.parse("ancestor(adam, eve).");
+		ArrayList parents = new ArrayList();
+		for (int i = 0; i < 99; i++) {
+			parents.add(new RBTerm[] { FrontEnd.makeName("n" + i), FrontEnd.makeName("n" + (i + 1)) });
+		}
+		frontend.insertAll("parent", parents);
+		materialize("ancestor", 2);
+		test_resultcount("ancestor(?a, ?b)", 100 * 99 / 2 + 1);
+		test_must_succeed("ancestor(n0, n99)");
+		test_must_succeed("ancestor(adam, eve)");
+		test_must_fail("ancestor(n99, n0)");
+		// facts inserted later do not go through the rules any more
+		frontend.parse("parent(n99, n100).");
+		test_must_fail("ancestor(n0, n100)");
+	}
+
+	public void testNotStratified() throws ParseException, TypeModeError {
+		frontend.parse("base :: String\n"
+				+ "MODES (F) IS NONDET END");
+		frontend.parse("r :: String\n"
+				+ "MODES (F) IS NONDET END");
+		frontend.parse("s :: String\n"
+				+ "MODES (F) IS NONDET END");
+		frontend.parse("r(?x) :- base(?x), NOT(s(?x)).");
+		frontend.parse("s(?x) :- base(?x), NOT(r(?x)).");
+		frontend.parse("base(a).");
+		try {
+			materialize("r", 1);
+			fail("r and s are not stratified");
+		} catch (TypeModeError e) {
+			assertTrue(e.getMessage(), e.getMessage().indexOf("not stratified") != -1);
+		}
+	}
+
+}
@@ -0,0 +1,149 @@
+/*
+*    Logical Structural Diff (LSDiff)
+*    Copyright (C) <2015>  <Dr. Miryung Kim miryung@cs.ucla.edu>
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package tyRuBa.tests;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import tyRuBa.engine.Frame;
+import tyRuBa.engine.FrontEnd;
+import tyRuBa.engine.RBJavaObjectCompoundTerm;
+import tyRuBa.engine.RBSymbol;
+import tyRuBa.engine.RBTerm;
+import tyRuBa.engine.SymbolTable;
+import tyRuBa.modes.TypeModeError;
+import tyRuBa.parser.ParseException;
+
+/**
+ * Checks that String constants are interned to one RBSymbol per string, and
+ * that they survive serialization.
+ */
+public class SymbolTableTest extends TyrubaTest {
+
+	public SymbolTableTest(String arg0) {
+		super(arg0);
+	}
+
+	public void testInterning() {
+		RBTerm a = FrontEnd.makeName("p.C#m()");
+		RBTerm b = FrontEnd.makeName(new String("p.C#m()"));
+		assertTrue(a instanceof RBSymbol);
+		assertSame(a, b);
+		assertEquals("p.C#m()", a.toString());
+		assertEquals("\"p.C#m()\"", ((RBSymbol) a).quotedName());
+		assertFalse(a.equals(FrontEnd.makeName("p.C#n()")));
+		assertNotNull(a.unify(b, new Frame()));
+		assertNull(a.unify(FrontEnd.makeName("p.C#n()"), new Frame()));
+		// same hash as before there were symbols, persistent pages depend on it
+		assertEquals(9595 + "p.C#m()".hashCode(), a.hashCode());
+	}
+
+	public void testPlainStringTerms() {
+		RBTerm a = FrontEnd.makeName("p.C#m()");
+		RBTerm plain = new RBJavaObjectCompoundTerm("p.C#m()");
+		assertEquals(a, plain);
+		assertEquals(plain, a);
+		assertEquals(a.hashCode(), plain.hashCode());
+		assertNotNull(a.unify(plain, new Frame()));
+		assertNotNull(plain.unify(a, new Frame()));
+		assertFalse(plain.equals(FrontEnd.makeName("p.C#n()")));
+
+		RBJavaObjectCompoundTerm symbol = (RBJavaObjectCompoundTerm) a;
+		assertEquals("p.C", symbol.getFirst());
+		assertEquals("#m()", symbol.getSecond());
+		try {
+			symbol.intValue();
+			fail("a String constant is not an integer");
+		} catch (Error e) {
+			assertEquals("This is not an integer", e.getMessage());
+		}
+	}
+
+	public void testUnusedSymbolsAreCollected() {
+		int before = SymbolTable.size();
+		for (int i = 0; i < 10000; i++) {
+			FrontEnd.makeName("unused#m" + i + "()");
+		}
+		for (int i = 0; i < 10 && SymbolTable.size() >= before + 10000; i++) {
+			System.gc();
+		}
+		assertTrue(SymbolTable.size() < before + 10000);
+		assertEquals("unused#m1()", FrontEnd.makeName("unused#m1()").toString());
+	}
+
+	private static Object copy(Object obj) throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(obj);
+		out.close();
+		return new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+	}
+
+	public void testSerialization() throws Exception {
+		RBTerm a = FrontEnd.makeName("p.C#m()");
+		assertSame(a, copy(a));
+		// String constants written before there were symbols
+		assertSame(a, copy(new RBJavaObjectCompoundTerm("p.C#m()")));
+		assertEquals(FrontEnd.makeInteger(3), copy(FrontEnd.makeInteger(3)));
+	}
+
+	public void testQueries() throws ParseException, TypeModeError {
+		frontend.parse("calls :: String, String\n" +
+				"MODES (F,F) IS NONDET END");
+		frontend.parse("calls(\"p.C#a()\",\"p.C#b()\").");
+		frontend.insert("calls", new RBTerm[] { FrontEnd.makeName("p.C#b()"), FrontEnd.makeName("p.C#c()") });
+		frontend.parse("reaches :: String, String\n" +
+				"MODES (B,F) IS NONDET END");
+		frontend.parse("reaches(?x,?y) :- calls(?x,?y).");
+		frontend.parse("reaches(?x,?z) :- calls(?x,?y), reaches(?y,?z).");
+		test_must_findall("reaches(\"p.C#a()\",?y)", "?y",
+				new String[] { "\"p.C#b()\"", "\"p.C#c()\"" });
+		test_must_succeed("string_append(\"p.C\",\"#c()\",?c), calls(\"p.C#b()\",?c)");
+	}
+
+	public void testUnifyOnlyEqualConstants() {
+		int n = 200;
+		RBTerm[] symbols = new RBTerm[n];
+		RBTerm[] strings = new RBTerm[n];
+		String prefix = "org.eclipse.jdt.internal.compiler.lookup.ProblemReferenceBinding#m";
+		for (int i = 0; i < n; i++) {
+			String name = prefix + (1000000 + i) + "()";
+			symbols[i] = FrontEnd.makeName(name);
+			strings[i] = new RBJavaObjectCompoundTerm(name);
+		}
+		assertEquals(n, unifyAll(symbols, symbols));
+		assertEquals(n, unifyAll(strings, strings));
+		assertEquals(n, unifyAll(symbols, strings));
+		assertEquals(n, unifyAll(strings, symbols));
+	}
+
+	private static int unifyAll(RBTerm[] left, RBTerm[] right) {
+		int matches = 0;
+		Frame frame = new Frame();
+		for (int i = 0; i < left.length; i++) {
+			for (int j = 0; j < right.length; j++) {
+				if (left[i].unify(right[j], frame) != null)
+					matches++;
+			}
+		}
+		return matches;
+	}
+
+}
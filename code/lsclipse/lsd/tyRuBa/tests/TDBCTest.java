@@ -104,6 +104,34 @@ public class TDBCTest extends TestCase {
 		assertEquals(count,1);
 	}
 
+	public void testPreparedQueryInNot() throws TyrubaException {
+		PreparedQuery stat = conn.prepareQuery("fooMem(?m,?s),NOT(fooMem(?m,!x))");
+		stat.put("!x","f_booh");
+		ResultSet results = stat.executeQuery();
+		assertTrue(results.next());
+		assertEquals("m_booh",results.getString("?s"));
+		assertFalse(results.next());
+
+		stat.put("!x","m_booh");
+		results = stat.executeQuery();
+		assertTrue(results.next());
+		assertEquals("f_booh",results.getString("?s"));
+		assertFalse(results.next());
+	}
+
+	public void testPreparedQueryCountAgain() throws TyrubaException {
+		PreparedQuery stat = conn.prepareQuery("COUNTALL(fooMem(?m,!x),?m,?n)");
+		stat.put("!x","f_booh");
+		ResultSet results = stat.executeQuery();
+		assertTrue(results.next());
+		assertEquals(1,results.getInt("?n"));
+
+		stat.put("!x","nothing");
+		results = stat.executeQuery();
+		assertTrue(results.next());
+		assertEquals(0,results.getInt("?n"));
+	}
+
 	public void testPreparedQueryMissingVar() throws TyrubaException {
 		PreparedQuery stat = conn.prepareQuery("string_append(!x,!y,?xy)");
 		String x = "a b c";
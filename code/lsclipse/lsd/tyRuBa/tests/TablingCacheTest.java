@@ -0,0 +1,201 @@
+/*
+*    Logical Structural Diff (LSDiff)
+*    Copyright (C) <2015>  <Dr. Miryung Kim miryung@cs.ucla.edu>
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package tyRuBa.tests;
+
+import java.util.ArrayList;
+
+import tyRuBa.engine.FrontEnd;
+import tyRuBa.engine.RBTerm;
+import tyRuBa.engine.TablingCache;
+import tyRuBa.engine.TablingStatistics;
+import tyRuBa.modes.TypeModeError;
+import tyRuBa.parser.ParseException;
+import tyRuBa.util.ElementSource;
+
+/**
+ * Tests that the TablingCache stays within its bounds, keeps the tables that
+ * do not depend on what changed and counts what it does.
+ */
+public class TablingCacheTest extends TyrubaTest {
+
+	static final int NODES = 200;
+
+	TablingCache table;
+	TablingStatistics stats;
+
+	public TablingCacheTest(String arg0) {
+		super(arg0);
+	}
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		table = frontend.getTablingCache();
+		stats = table.getStatistics();
+		frontend.parse("a, b, p, q :: String\n"
+				+ "MODES (F) IS NONDET END");
+		frontend.parse("edge, path :: String, String\n"
+				+ "MODES (F,F) IS NONDET (B,F) IS NONDET END");
+		frontend.parse("p(?x) :- a(?x).");
+		frontend.parse("q(?x) :- b(?x).");
+		frontend.parse("path(?x,?y) :- edge(?x,?y).");
+		frontend.parse("path(?x,?z) :- path(?x,?y), edge(?y,?z).");
+		frontend.parse("a(a1). a(a2). b(b1).");
+		// a ring
+		ArrayList edges = new ArrayList();
+		for (int i = 0; i < NODES; i++) {
+			edges.add(new RBTerm[] { FrontEnd.makeName("n" + i), FrontEnd.makeName("n" + ((i + 1) % NODES)) });
+		}
+		frontend.insertAll("edge", edges);
+	}
+
+	public void testHits() throws ParseException, TypeModeError {
+		stats.reset();
+		test_resultcount("p(?x)", 2);
+		long misses = stats.getLongStat(TablingStatistics.MISSES);
+		assertTrue(misses > 0);
+		assertEquals(0, stats.getLongStat(TablingStatistics.HITS));
+		test_resultcount("p(?y)", 2);
+		assertEquals(1, stats.getLongStat(TablingStatistics.HITS));
+		assertEquals(misses, stats.getLongStat(TablingStatistics.MISSES));
+		assertEquals(0.5f, stats.getFloatStat(TablingStatistics.HIT_RATIO), 0.5f);
+		assertTrue(stats.getIntStat(TablingStatistics.ENTRIES) > 0);
+		assertTrue(stats.getLongStat(TablingStatistics.ESTIMATED_BYTES) > 0);
+	}
+
+	public void testOnlyDependentTablesInvalidated() throws ParseException, TypeModeError {
+		test_resultcount("p(?x)", 2);
+		test_resultcount("q(?x)", 1);
+		stats.reset();
+		frontend.parse("b(b2).");
+		test_resultcount("p(?y)", 2);
+		assertEquals(1, stats.getLongStat(TablingStatistics.HITS));
+		assertEquals(0, stats.getLongStat(TablingStatistics.INVALIDATIONS));
+		// the tables of q and of b
+		test_resultcount("q(?y)", 2);
+		assertEquals(2, stats.getLongStat(TablingStatistics.INVALIDATIONS));
+		// a new rule changes the predicate too, the tables of a and b stay
+		stats.reset();
+		frontend.parse("p(?x) :- b(?x).");
+		test_resultcount("p(?z)", 4);
+		assertEquals(1, stats.getLongStat(TablingStatistics.INVALIDATIONS));
+		assertEquals(2, stats.getLongStat(TablingStatistics.HITS));
+	}
+
+	public void testCallersOfDroppedTablesInvalidated() throws ParseException, TypeModeError {
+		frontend.parse("big, small, both :: String\n"
+				+ "MODES (F) IS NONDET END");
+		frontend.parse("both(?x) :- big(?x), small(?x).");
+		ArrayList facts = new ArrayList();
+		for (int i = 0; i < 2000; i++) {
+			facts.add(new RBTerm[] { FrontEnd.makeName("n" + i) });
+		}
+		frontend.insertAll("big", facts);
+		frontend.parse("small(extra).");
+		// the table of big is too big to keep, the table of both stays
+		table.setMemoryBound(1000000);
+		test_resultcount("both(?x)", 0);
+		assertTrue(stats.getLongStat(TablingStatistics.REJECTIONS) > 0);
+		frontend.parse("big(extra).");
+		test_resultcount("both(?y)", 1);
+	}
+
+	public void testFlush() throws ParseException, TypeModeError {
+		test_resultcount("p(?x)", 2);
+		frontend.flush();
+		assertEquals(0, stats.getIntStat(TablingStatistics.ENTRIES));
+		assertEquals(0, stats.getLongStat(TablingStatistics.ESTIMATED_BYTES));
+		test_resultcount("p(?y)", 2);
+	}
+
+	public void testBounds() throws ParseException, TypeModeError {
+		table.setMaxEntries(20);
+		for (int i = 0; i < NODES; i++) {
+			test_resultcount("path(n" + i + ",?y)", NODES);
+			assertTrue(table.getNumEntries() <= 20);
+		}
+		assertTrue(stats.getLongStat(TablingStatistics.EVICTIONS) > 0);
+
+		table.setMaxEntries(TablingCache.DEFAULT_MAX_ENTRIES);
+		table.setMemoryBound(100000);
+		assertTrue(table.getEstimatedBytes() <= 100000);
+		stats.reset();
+		// too big to keep, but the answers are all there
+		test_resultcount("path(?x,?y)", NODES * NODES);
+		assertTrue(stats.getLongStat(TablingStatistics.REJECTIONS) > 0);
+		assertTrue(table.getEstimatedBytes() <= 100000);
+	}
+
+	public void testRecursionWithoutRoom() throws ParseException, TypeModeError {
+		// tables being filled stay, or the recursion would not stop
+		table.setMaxEntries(0);
+		test_resultcount("path(n0,?y)", NODES);
+		assertEquals(0, table.getNumEntries());
+		test_resultcount("path(n1,?y)", NODES);
+	}
+
+	public void testUnfinishedTablesStayWithTheirThread() throws Exception {
+		// the tables of p and a are half filled by this thread
+		ElementSource started = frontend.frameQuery("p(?x)");
+		assertNotNull(started.nextElement());
+		final int[] count = { -1 };
+		Thread other = new Thread() {
+			public void run() {
+				try {
+					count[0] = get_resultcount("p(?y)");
+				} catch (Exception e) {
+				}
+			}
+		};
+		other.start();
+		other.join();
+		assertEquals(2, count[0]);
+		assertEquals(1, started.countElements());
+		// done now, so shared
+		stats.reset();
+		test_resultcount("p(?z)", 2);
+		assertEquals(1, stats.getLongStat(TablingStatistics.HITS));
+	}
+
+	public void testConcurrentReaders() throws Exception {
+		final Throwable[] failure = new Throwable[1];
+		Thread[] readers = new Thread[4];
+		for (int t = 0; t < readers.length; t++) {
+			final int offset = t;
+			readers[t] = new Thread() {
+				public void run() {
+					try {
+						for (int i = 0; i < 50; i++) {
+							int node = (i * 7 + offset) % NODES;
+							assertEquals(NODES, get_resultcount("path(n" + node + ",?y)"));
+						}
+					} catch (Throwable e) {
+						failure[0] = e;
+					}
+				}
+			};
+			readers[t].start();
+		}
+		for (int t = 0; t < readers.length; t++) {
+			readers[t].join();
+		}
+		if (failure[0] != null)
+			throw new Exception(failure[0]);
+		assertTrue(stats.getLongStat(TablingStatistics.HITS) > 0);
+	}
+
+}
@@ -40,6 +40,20 @@ class AppendSource extends ElementSource {
 		else
 			return s2.nextElement();
 	}
+	public int nextBatch(Object[] batch, int from, int to) {
+		int n = from + s1.nextBatch(batch, from, to);
+		if (n < to) {
+			if (s1.status() == NO_MORE_ELEMENTS) {
+				s1 = s2;
+				s2 = theEmpty;
+				n += s1.nextBatch(batch, n, to);
+			} else {
+				// s1 is blocked, go back to checking it before each element of s2
+				n += super.nextBatch(batch, n, to);
+			}
+		}
+		return n - from;
+	}
 	public void print(PrintingState p) {
 		p.print("Append(");
 		p.indent();p.newline();
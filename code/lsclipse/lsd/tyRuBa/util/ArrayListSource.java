@@ -36,6 +36,12 @@ public class ArrayListSource extends ElementSource {
 	public Object nextElement() {
 		return els.get(pos++);
 	}
+	public int nextBatch(Object[] batch, int from, int to) {
+		int n = from;
+		while (n < to && pos < sz)
+			batch[n++] = els.get(pos++);
+		return n - from;
+	}
 	public void print(PrintingState p) {
 		p.print("{");
 		for (int i = pos; i < els.size(); i++) {
@@ -50,6 +50,10 @@ public abstract class DelayedElementSource extends ElementSource {
 		return delayed().nextElement();
 	}
 
+	public int nextBatch(Object[] batch, int from, int to) {
+		return delayed().nextBatch(batch, from, to);
+	}
+
 	public void print(PrintingState p) {
 		p.print("Delayed("+produceString());
 		if (delayed!=null) {
@@ -61,6 +61,29 @@ public abstract class ElementSource {
 		return status() == ELEMENT_READY;
 	}
 
+	/** How many elements consumers take at a time when they use nextBatch. */
+	public static final int BATCH_SIZE = 256;
+
+	/**
+	 * Move the elements that are ready right now into batch, starting at
+	 * from and stopping before to. Returns how many were moved. Fewer than
+	 * to - from means no element is ready anymore; status() tells whether
+	 * more may come later. Sources that can produce many elements at once
+	 * override this, so a consumer does not pay for a status() and a
+	 * nextElement() call per element.
+	 */
+	public int nextBatch(Object[] batch, int from, int to) {
+		int n = from;
+		while (n < to && status() == ELEMENT_READY)
+			batch[n++] = nextElement();
+		return n - from;
+	}
+
+	/** Fill batch from the start with the elements that are ready right now. */
+	public final int nextBatch(Object[] batch) {
+		return nextBatch(batch, 0, batch.length);
+	}
+
 	/** Make an ElementSource which produces a single element. */
 	public static ElementSource singleton(final Object e) {
 //		PoormansProfiler.countSingletons++;
@@ -112,6 +135,12 @@ public abstract class ElementSource {
 		return new MapElementSource(this, what);
 	}
 
+	/** Take up to distance elements ahead of the consumer, applying the action
+	 * to each one when it is taken. The elements are the same as this source's. */
+	public ElementSource lookahead(int distance, Action what) {
+		return new LookaheadElementSource(this, distance, what);
+	}
+
 	/** With elements from an enumeration */
 //	public static ElementSource with(final java.util.Enumeration els) {
 //		return new ElementSource() {
@@ -137,6 +166,12 @@ public abstract class ElementSource {
 			public Object nextElement() {
 				return els[pos++];
 			}
+			public int nextBatch(Object[] batch, int from, int to) {
+				int n = Math.min(to - from, els.length - pos);
+				System.arraycopy(els, pos, batch, from, n);
+				pos += n;
+				return n;
+			}
 			public void print(PrintingState p) {
 				p.print("{");
 				for (int i = 0; i < els.length; i++) {
@@ -176,6 +211,13 @@ public abstract class ElementSource {
 				return it.next();
 			}
 			
+			public int nextBatch(Object[] batch, int from, int to) {
+				int n = from;
+				while (n < to && it.hasNext())
+					batch[n++] = it.next();
+				return n - from;
+			}
+			
 			public void print(PrintingState p) {
 				p.print("{");
 				p.print("NOT CURRENTLY SUPPORTED");
@@ -190,8 +232,9 @@ public abstract class ElementSource {
 	 * actual values in the ElementSource.
 	 */
 	public void forceAll() {
-		while (hasMoreElements())
-			nextElement();
+		Object[] batch = new Object[BATCH_SIZE];
+		while (nextBatch(batch) > 0)
+			;
 	}
 	
 	public String toString() {
@@ -232,11 +275,11 @@ public abstract class ElementSource {
 	 * elements after you have counted them
 	 */
 	public int countElements() {
+		Object[] batch = new Object[BATCH_SIZE];
 		int result = 0;
-		while (this.hasMoreElements()) {
-			this.nextElement();
-			result++;
-		}
+		int n;
+		while ((n = nextBatch(batch)) > 0)
+			result += n;
 		return result;
 	}
 
@@ -27,6 +27,9 @@ class EmptySource extends ElementSource {
 	public Object nextElement() {
 		throw new Error("TheEmpty ElementSource has no elements");
 	}
+	public int nextBatch(Object[] batch, int from, int to) {
+		return 0;
+	}
 	/** More efficient append to forget about useless empty sources */
 	public ElementSource append(ElementSource other) {
 		return other;
@@ -80,7 +80,37 @@ public class FlattenElementSource extends ElementSource {
 		return result;
 	}
 
-	
+	/**
+	 * Drains the sources one after the other, in the same order status()
+	 * would visit them, but a whole batch from each source at a time.
+	 */
+	public int nextBatch(Object[] batch, int from, int to) {
+		int n = from;
+		if (e != null && n < to) {
+			batch[n++] = e;
+			e = null;
+		}
+		if (n < to) {
+			RemovableElementSource remainingSources = sources.elements();
+			while (n < to && remainingSources.status() == ELEMENT_READY) {
+				ElementSource firstSource =
+					(ElementSource) remainingSources.peekNextElement();
+				n += firstSource.nextBatch(batch, n, to);
+				if (n < to) {
+					switch (firstSource.status()) {
+						case NO_MORE_ELEMENTS :
+							remainingSources.removeNextElement();
+							break;
+						case NO_ELEMENTS_READY :
+							remainingSources.nextElement();
+							break;
+					}
+				}
+			}
+		}
+		return n - from;
+	}
+
 	public void print(PrintingState p) {
 		p.print("Flatten(");
 		p.indent();p.newline();
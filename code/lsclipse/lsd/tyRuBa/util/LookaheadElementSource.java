@@ -0,0 +1,98 @@
+/* 
+*    Logical Structural Diff (LSDiff)  
+*    Copyright (C) <2015>  <Dr. Miryung Kim miryung@cs.ucla.edu>
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package tyRuBa.util;
+
+import java.util.LinkedList;
+import java.util.NoSuchElementException;
+
+/** A lookahead ElementSource produces the same elements as the source it walks
+ * through, but takes up to distance elements from that source before they are
+ * asked for. The action is applied to each element as soon as it is taken, so
+ * it can start work (like reading in a page) that will be needed when the
+ * element is consumed. The result of the action is ignored. */
+final class LookaheadElementSource extends ElementSource {
+
+	private LinkedList buffer = new LinkedList();
+	private ElementSource remaining;
+	private Action action;
+	private final int distance;
+
+	public LookaheadElementSource(ElementSource on, int distance, Action what) {
+		this.remaining = on;
+		this.distance = distance;
+		this.action = what;
+	}
+
+	/** Take elements from remaining until the buffer is full or it has none ready. */
+	private void fill() {
+		while (buffer.size() < distance && remaining.status() == ELEMENT_READY) {
+			Object element = remaining.nextElement();
+			buffer.addLast(element);
+			action.compute(element);
+		}
+	}
+
+	public int status() {
+		if (remaining != null)
+			fill();
+		if (!buffer.isEmpty())
+			return ELEMENT_READY;
+		else if (remaining == null)
+			return NO_MORE_ELEMENTS;
+		else
+			return remaining.status();
+	}
+
+	public Object nextElement() {
+		if (status() == ELEMENT_READY)
+			return buffer.removeFirst();
+		else
+			throw new NoSuchElementException("LookaheadElementSource");
+	}
+
+	public boolean isEmpty() {
+		return buffer.isEmpty() && (remaining == null || remaining.isEmpty());
+	}
+
+	public void print(PrintingState p) {
+		p.print("Lookahead(");
+		p.indent();
+			p.print("buffered=" + buffer.size() + " ");
+			p.print("Action= " + action);p.newline();
+			p.print("on =");
+			p.indent();
+				if (remaining == null)
+					p.print("null");
+				else
+					remaining.print(p);
+			p.outdent();
+		p.outdent();
+		p.print(")");
+	}
+
+	public void release() {
+		super.release();
+		buffer.clear();
+		action = null;
+		if (remaining != null) {
+			remaining.release();
+			remaining = null;
+		}
+	}
+
+}
@@ -61,6 +61,28 @@ final class MapElementSource extends ElementSource {
       throw new NoSuchElementException("MapElementSource");
   }
 
+  /** Pulls a batch from the input straight into batch and maps it in place. */
+  public int nextBatch(Object[] batch, int from, int to) {
+    int n = from;
+    if (next!=null && n<to) {
+      batch[n++] = next;
+      next = null;
+    }
+    while (n<to && remaining!=null) {
+      int end = n + remaining.nextBatch(batch, n, to);
+      if (end==n)
+        break;
+      for (int i = n; i < end; i++) {
+        Object result = action.compute(batch[i]);
+        if (result!=null)
+          batch[n++] = result;
+      }
+      for (int i = n; i < end; i++)
+        batch[i] = null;
+    }
+    return n - from;
+  }
+
 	public void print(PrintingState p) {
 		p.print("Map(");
 		p.indent();
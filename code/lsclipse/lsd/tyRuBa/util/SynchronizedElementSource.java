@@ -27,7 +27,21 @@ public class SynchronizedElementSource extends ElementSource {
 	/** The elementsource that digs up element from the resource */
 	private ElementSource src;
 
+	/** Elements are taken while holding this lock */
+	private final Object lock;
+
 	public SynchronizedElementSource(SynchResource resource, ElementSource src) {
+		this(resource, src, true);
+	}
+
+	/**
+	 * If exclusive is false, elements are not taken while holding the
+	 * resource's lock, so several sources can be read at the same time. The
+	 * source still counts as busy in the resource's SynchPolicy until it is
+	 * released, which keeps out anything that stops the sources.
+	 */
+	public SynchronizedElementSource(SynchResource resource, ElementSource src, boolean exclusive) {
+		this.lock = exclusive ? (Object) resource : this;
 //		try {
 //			throw new Throwable("Creation of SynchronizedElementSource");
 //		}
@@ -51,7 +65,7 @@ public class SynchronizedElementSource extends ElementSource {
 		if (resource==null)
 			return NO_MORE_ELEMENTS;
 		else 
-		synchronized (resource) {
+		synchronized (lock) {
 			int result = src.status();
 			if (result==NO_MORE_ELEMENTS) {
 			    //System.err.println("[INFO] - status - no more elements");
@@ -82,11 +96,25 @@ public class SynchronizedElementSource extends ElementSource {
 	}
 
 	public Object nextElement() {
-		synchronized (resource) {
+		synchronized (lock) {
 			return src.nextElement();
 		}
 	}
 
+	/** Takes the lock once for the whole batch. */
+	public int nextBatch(Object[] batch, int from, int to) {
+		if (resource==null)
+			return 0;
+		else
+		synchronized (lock) {
+			int n = src.nextBatch(batch, from, to);
+			if (n < to - from && src.status()==NO_MORE_ELEMENTS) {
+				release();
+			}
+			return n;
+		}
+	}
+
 	protected void finalize() throws Throwable {
 	    //System.err.println("[INFO] - Synchronized Element source finalizer called.");
 		try {
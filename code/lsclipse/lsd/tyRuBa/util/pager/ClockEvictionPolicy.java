@@ -0,0 +1,86 @@
+/*
+*    Logical Structural Diff (LSDiff)
+*    Copyright (C) <2015>  <Dr. Miryung Kim miryung@cs.ucla.edu>
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package tyRuBa.util.pager;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Approximates LRU with the clock algorithm: a hand goes round the resources,
+ * giving the ones that have been used since it last passed a second chance.
+ * Using a resource only sets a flag, so readers never wait for each other.
+ * This is the Pager's default policy.
+ * @category FactBase
+ */
+public class ClockEvictionPolicy implements EvictionPolicy {
+
+	/** Per resource flag, set when the resource is used. */
+	private static class Flag {
+		volatile boolean referenced = true;
+	}
+
+	/** Resource => Flag */
+	private ConcurrentHashMap flags = new ConcurrentHashMap();
+
+	/** The clock hand, only moved by nextVictim. */
+	private Iterator hand = null;
+
+	public void admitted(Object key) {
+		flags.put(key, new Flag());
+	}
+
+	public void referenced(Object key) {
+		Flag flag = (Flag) flags.get(key);
+		if (flag != null) {
+			flag.referenced = true;
+		}
+	}
+
+	public void missed(Object key) {
+	}
+
+	public void removed(Object key) {
+		flags.remove(key);
+	}
+
+	public synchronized Object nextVictim() {
+		// two rounds clear every flag, so a victim is found unless the
+		// resources keep being used while the hand goes round
+		int budget = 2 * flags.size() + 1;
+		while (budget-- > 0) {
+			if (hand == null || !hand.hasNext()) {
+				hand = flags.entrySet().iterator();
+				if (!hand.hasNext())
+					return null;
+			}
+			java.util.Map.Entry entry = (java.util.Map.Entry) hand.next();
+			Flag flag = (Flag) entry.getValue();
+			if (flag.referenced) {
+				flag.referenced = false;
+			} else {
+				return entry.getKey();
+			}
+		}
+		return null;
+	}
+
+	public String getName() {
+		return "CLOCK";
+	}
+
+}
@@ -20,16 +20,20 @@
  */
 package tyRuBa.util.pager;
 
+import java.io.BufferedInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import serp.util.Semaphore;
 import tyRuBa.util.Aurelizer;
 import tyRuBa.util.DoubleLinkedList;
+import tyRuBa.util.pager.Pager.ResourceCodec;
 import tyRuBa.util.pager.Pager.ResourceId;
 import tyRuBa.util.pager.Pager.Resource;
 
@@ -72,14 +76,17 @@ public class DiskManager extends Thread {
     /** The task queue. */
     DoubleLinkedList taskQueue = new DoubleLinkedList();
 
-    /** A Map of resourceId => semaphore that provide locks on resources. */
-    Map resourceLocks = new HashMap();
+    /**
+     * A Map of resourceId => ResourceLock that provide locks on resources. A
+     * resource is in the map while someone holds or waits for its lock.
+     */
+    Map resourceLocks = new ConcurrentHashMap();
 
     /**
      * number of times a read operation occured for a resource that was
      * currently in the page out queue.
      */
-    public int couldHaveCanceledPageout;
+    private AtomicInteger couldHaveCanceledPageout = new AtomicInteger();
 
     /** maximum size that the queue grew to. */
     private int highWaterMark = 0;
@@ -88,7 +95,19 @@ public class DiskManager extends Thread {
     private int pageOutRequests = 0;
 
     /** Number of page in requests. */
-    private int pageInRequests = 0;
+    private AtomicInteger pageInRequests = new AtomicInteger();
+
+    /** Codec to write resources with, null to use Java serialization. */
+    private volatile ResourceCodec codec = null;
+
+    /** First two bytes of a Java serialization stream. */
+    private static final int SERIALIZATION_MAGIC = 0xACED;
+
+    /** A lock on a resource, with the number of threads that hold or want it. */
+    private static class ResourceLock {
+        Semaphore semaphore = new Semaphore(1);
+        int users = 0;
+    }
 
     /** A write out task */
     private static class Task extends DoubleLinkedList.Entry {
@@ -98,17 +117,26 @@ public class DiskManager extends Thread {
         /** Id for the resource. */
         ResourceId resourceID;
 
+        /** Codec to write the resource with (may be null). */
+        ResourceCodec codec;
+
         /** Creates a new Task */
-        Task(ResourceId resourceID, Resource rsrc) {
+        Task(ResourceId resourceID, Resource rsrc, ResourceCodec codec) {
             this.resourceID = resourceID;
             this.rsrc = rsrc;
+            this.codec = codec;
         }
 
         /** Write out the resource */
         void doIt() {
             try {
                 OutputStream os = resourceID.writeResource();
-                if (os != null) { //does resource support writing out
+                if (os == null) { //resource does not support writing out
+                    return;
+                }
+                if (codec != null && codec.canEncode(rsrc)) {
+                    codec.encode(rsrc, os);
+                } else {
                     ObjectOutputStream oos = new ObjectOutputStream(os);
                     oos.writeObject(rsrc);
                     oos.close();
@@ -119,6 +147,15 @@ public class DiskManager extends Thread {
         }
     }
 
+    /** Set the codec to write resources with, null to use Java serialization. */
+    public void setResourceCodec(ResourceCodec codec) {
+        this.codec = codec;
+    }
+
+    public ResourceCodec getResourceCodec() {
+        return codec;
+    }
+
     /**
      * Creates a new DiskManager.
      * @param maxQueueSize maximum size of the task queue.
@@ -173,13 +210,14 @@ public class DiskManager extends Thread {
      */
     void getResourceLock(ResourceId resID) {
         resourceLocksMutex.down();
-        Semaphore lock = (Semaphore) resourceLocks.get(resID);
+        ResourceLock lock = (ResourceLock) resourceLocks.get(resID);
         if (lock == null) {
-            lock = new Semaphore(1);
+            lock = new ResourceLock();
             resourceLocks.put(resID, lock);
         }
+        lock.users++;
         resourceLocksMutex.up();
-        lock.down();
+        lock.semaphore.down();
     }
 
     /**
@@ -188,10 +226,12 @@ public class DiskManager extends Thread {
      */
     void releaseResourceLock(ResourceId resID) {
         resourceLocksMutex.down();
-        Semaphore lock = (Semaphore) resourceLocks.get(resID);
+        ResourceLock lock = (ResourceLock) resourceLocks.get(resID);
         if (lock != null) {
-            resourceLocks.remove(resID);
-            lock.up();
+            if (--lock.users == 0) {
+                resourceLocks.remove(resID);
+            }
+            lock.semaphore.up();
         }
         resourceLocksMutex.up();
     }
@@ -201,7 +241,7 @@ public class DiskManager extends Thread {
      * returns immediately without actually having done the task yet.
      */
     public synchronized void writeOut(ResourceId resourceID, Resource rsrc) {
-        Task task = new Task(resourceID, rsrc);
+        Task task = new Task(resourceID, rsrc, codec);
         getResourceLock(resourceID);
         queueAvailable.down();
         queueMutex.down();
@@ -220,31 +260,60 @@ public class DiskManager extends Thread {
 	 * even though its actual representation on the storage device may
 	 * not yet have been created.
 	 */
-	public synchronized boolean resourceExists(ResourceId rsrcID) {
+	public boolean resourceExists(ResourceId rsrcID) {
 		return (resourceLocks.get(rsrcID) != null) // Resource exists in the writeOut task queue
 			|| rsrcID.resourceExists();
 	}
 	
-    /** Read in a resource from disk. */
-    public synchronized Resource readIn(ResourceId rsrcID) {
-        pageInRequests++;
+    /**
+     * Read in a resource from disk. Reads of different resources can happen
+     * at the same time, only the lock of the resource itself is taken.
+     */
+    public Resource readIn(ResourceId rsrcID) {
+        pageInRequests.incrementAndGet();
         Resource resource;
         if (resourceLocks.get(rsrcID) != null) {
-            couldHaveCanceledPageout++;
+            couldHaveCanceledPageout.incrementAndGet();
         }
         getResourceLock(rsrcID);
         try {
-            ObjectInputStream ois = new ObjectInputStream(rsrcID.readResource());
-            resource = (Resource) ois.readObject();
+            resource = readResource(rsrcID.readResource(), codec);
         } catch (IOException e) {
             throw new Error("Could not page in because of IOException: " + e.getMessage());
         } catch (ClassNotFoundException e) {
             throw new Error("Could not page in because of ClassNotFoundException: " + e.getMessage());
+        } finally {
+            releaseResourceLock(rsrcID);
         }
-        releaseResourceLock(rsrcID);
         return resource;
     }
 
+    /**
+     * Reads a resource back in. Resources written with Java serialization are
+     * recognized by their stream header, anything else is handed to the codec.
+     * Closes the stream.
+     */
+    public static Resource readResource(InputStream is, ResourceCodec codec)
+            throws IOException, ClassNotFoundException {
+        BufferedInputStream in = new BufferedInputStream(is);
+        in.mark(2);
+        int header = (in.read() << 8) | in.read();
+        in.reset();
+        if (header == SERIALIZATION_MAGIC) {
+            ObjectInputStream ois = new ObjectInputStream(in);
+            try {
+                return (Resource) ois.readObject();
+            } finally {
+                ois.close();
+            }
+        } else if (codec != null) {
+            return codec.decode(in);
+        } else {
+            in.close();
+            throw new IOException("Resource was not written with Java serialization and no codec is installed");
+        }
+    }
+
     /** Kill the write out thread */
     public synchronized void killMe() {
         alive = false;
@@ -282,14 +351,12 @@ public class DiskManager extends Thread {
 
     /** Prints out some statistics about the diskmanager. */
     public void printStats() {
-        System.err.println("Diskman.couldHaveCanceledPageout = " + couldHaveCanceledPageout);
-        couldHaveCanceledPageout = 0;
+        System.err.println("Diskman.couldHaveCanceledPageout = " + couldHaveCanceledPageout.getAndSet(0));
         System.err.println("Diskman.biggestQueueSize = " + highWaterMark);
         highWaterMark = 0;
         System.err.println("Diskman.pageOutRequests = " + pageOutRequests);
         pageOutRequests = 0;
-        System.err.println("Diskman.pageInRequests = " + pageInRequests);
-        pageInRequests = 0;
+        System.err.println("Diskman.pageInRequests = " + pageInRequests.getAndSet(0));
     }
 
 
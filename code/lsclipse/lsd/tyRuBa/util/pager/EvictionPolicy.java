@@ -0,0 +1,55 @@
+/*
+*    Logical Structural Diff (LSDiff)
+*    Copyright (C) <2015>  <Dr. Miryung Kim miryung@cs.ucla.edu>
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package tyRuBa.util.pager;
+
+/**
+ * Decides which resource the Pager pages out when it needs room. The Pager
+ * tells the policy about every resource that comes into memory, is used or
+ * leaves memory; the keys are ResourceIds. Implementations must be thread
+ * safe, referenced is called for every task the Pager runs.
+ * @category FactBase
+ */
+public interface EvictionPolicy {
+
+	/** A resource has been brought into memory. */
+	public void admitted(Object key);
+
+	/**
+	 * A resource in memory has been used (or could not be paged out because
+	 * it was in use).
+	 */
+	public void referenced(Object key);
+
+	/** A resource was asked for that was not in memory. */
+	public void missed(Object key);
+
+	/** A resource has left memory. */
+	public void removed(Object key);
+
+	/**
+	 * Chooses the next resource to page out. The resource stays known to the
+	 * policy until the Pager calls removed (or referenced, if it could not
+	 * page it out after all).
+	 * @return null if there are no resources.
+	 */
+	public Object nextVictim();
+
+	/** Name of the policy, for statistics. */
+	public String getName();
+
+}
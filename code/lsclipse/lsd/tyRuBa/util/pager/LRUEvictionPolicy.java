@@ -0,0 +1,57 @@
+/*
+*    Logical Structural Diff (LSDiff)
+*    Copyright (C) <2015>  <Dr. Miryung Kim miryung@cs.ucla.edu>
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package tyRuBa.util.pager;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Pages out the least recently used resource. Exact, but every use of a
+ * resource takes a lock to move it to the front of the queue.
+ * @category FactBase
+ */
+public class LRUEvictionPolicy implements EvictionPolicy {
+
+	/** Resources in order of use, least recently used first. */
+	private LinkedHashMap order = new LinkedHashMap(16, 0.75f, true);
+
+	public synchronized void admitted(Object key) {
+		order.put(key, key);
+	}
+
+	public synchronized void referenced(Object key) {
+		order.get(key);
+	}
+
+	public void missed(Object key) {
+	}
+
+	public synchronized void removed(Object key) {
+		order.remove(key);
+	}
+
+	public synchronized Object nextVictim() {
+		Iterator iter = order.keySet().iterator();
+		return iter.hasNext() ? iter.next() : null;
+	}
+
+	public String getName() {
+		return "LRU";
+	}
+
+}
@@ -25,17 +25,23 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.Serializable;
-import java.util.Currency;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.Iterator;
-import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import junit.framework.Assert;
 
-import tyRuBa.util.DoubleLinkedList;
-
 /**
  * This is an object that allows operations to be performed on files. The
  * responsibilty of the pager is to manage a queue of tasks and make sure that
@@ -80,6 +86,41 @@ public class Pager {
 		
 	}
 	
+	/**
+	 * A resource that can tell roughly how much memory it takes. Used when the
+	 * pager keeps the estimated size of the resources in memory under a
+	 * bound, other resources count as DEFAULT_RESOURCE_SIZE bytes.
+	 */
+	public static interface SizedResource extends Resource {
+		
+		/** Estimated number of bytes the resource takes in memory. */
+		long estimatedSize();
+		
+	}
+	
+	/** Estimated size of a resource that is not a SizedResource. */
+	public static final long DEFAULT_RESOURCE_SIZE = 4096;
+	
+	/**
+	 * Writes resources in a format of its own instead of using Java
+	 * serialization. Resources that the codec can not encode are still written
+	 * with Java serialization, and the DiskManager recognizes those (and
+	 * resources that were written before the codec was installed) when it
+	 * reads them back in.
+	 */
+	public static interface ResourceCodec {
+		
+		/** Can this resource be written by the codec? */
+		boolean canEncode(Resource rsrc);
+		
+		/** Write out the resource. Closes the stream. */
+		void encode(Resource rsrc, OutputStream os) throws IOException;
+		
+		/** Read back a resource written by encode. Closes the stream. */
+		Resource decode(InputStream is) throws IOException;
+		
+	}
+	
 	/** A task to be done by the pager. */
 	public static abstract class Task {
 		
@@ -137,22 +178,19 @@ public class Pager {
 	 * Information about a reference that the pager uses to determine what gets
 	 * paged out.
 	 */
-	private final class ResourceReferenceInfo extends DoubleLinkedList.Entry {
+	private final class ResourceReferenceInfo {
 		
 		/** The resource id. */
 		private ResourceId resId;
 		
 		/** The resource. */
-		private Resource resource;
-		
-		/** Whether the resource has been referenced. */
-		private boolean referenced;
-		
-		/** When the resource was last referenced. */
-		private long timeLastReferenced;
+		private volatile Resource resource;
 		
-		/** Number of times the resource has been referenced since last paged. */
-		private int numReferences;
+		/**
+		 * Estimated size of the resource, as counted in estimatedBytes.
+		 * Changed by the thread that holds the resource's write lock.
+		 */
+		private volatile long size;
 		
 		/** Whether the resource has been modified since the last page. */
 		private boolean dirty;
@@ -161,10 +199,8 @@ public class Pager {
 			// Assert.assertNotNull(resource);
 			this.resId = resId;
 			this.resource = resource;
-			this.referenced = false;
-			this.timeLastReferenced = 0;
+			this.size = estimateSize(resource);
 			this.dirty = false;
-			this.numReferences = 0;
 		}
 		
 		public ResourceId getResourceID() {
@@ -180,32 +216,21 @@ public class Pager {
 			this.resource = newResource;
 		}
 		
-		public boolean isReferenced() {
-			return referenced;
+		public long getSize() {
+			return size;
 		}
 		
-		public void setReferenced(boolean referenced) {
-			if (referenced == true) {
-				incrementReferenceCounter();
-				setTimeLastReferenced(System.currentTimeMillis());
-			}
-			this.referenced = referenced;
-		}
-		
-		private void setTimeLastReferenced(long timeLastReferenced) {
-			this.timeLastReferenced = timeLastReferenced;
-		}
-		
-		private void incrementReferenceCounter() {
-			this.numReferences++;
-		}
-		
-		public void resetReferenceCounter() {
-			this.numReferences = 0;
+		/** Estimate the size again, returns how much it grew. */
+		public long updateSize() {
+			long oldSize = size;
+			size = estimateSize(resource);
+			return size - oldSize;
 		}
 		
 		public boolean isDirty() {
-			return dirty;
+			synchronized (dirtyResources) {
+				return dirty;
+			}
 		}
 		
 		public void setDirty(boolean dirty) {
@@ -222,35 +247,29 @@ public class Pager {
 			}
 		}
 		
-		public int compareTo(Object o) {
-			ResourceReferenceInfo other = (ResourceReferenceInfo) o;
-			
-			long myCompareNumber = this.timeLastReferenced + this.numReferences;
-			long otherCompareNumber = other.timeLastReferenced + other.numReferences;
-			
-			if (otherCompareNumber > myCompareNumber) {
-				return -1;
-			} else if (otherCompareNumber < myCompareNumber) {
-				return 1;
-			} else {
-				return 0;
-			}
-		}
-		
 		public String toString() {
-			return "Rsrc("+resId+ (dirty?"=DIRTY":"") +")";
+			return "Rsrc("+resId+ (isDirty()?"=DIRTY":"") +")";
 		}
 	}
 	
 	/** Register last task time so we can detect if the QueryEngine is idle for some time 
 	 * and take advantage to do some stuff, like cleaning pages. */
-	private long lastTaskTime = System.currentTimeMillis();
+	private volatile long lastTaskTime = System.currentTimeMillis();
 
 	/** The maximum number of files the pager keeps in memory. */
-	private int cacheSize;
+	private volatile int cacheSize;
+	
+	/**
+	 * The maximum estimated size in bytes of the resources the pager keeps in
+	 * memory, 0 if only the number of resources is bounded.
+	 */
+	private volatile long memoryBound = 0;
+	
+	/** Estimated size in bytes of the resources in memory. */
+	private final AtomicLong estimatedBytes = new AtomicLong();
 	
 	/** The map that tracks resources that are in memory. */
-	private Map inMemory = new HashMap();
+	private ConcurrentHashMap inMemory = new ConcurrentHashMap();
 	
 	/** A Set that tracks all dirty ResourceReferenceInfo objects. */
 	private Set/*<ResourceReferenceInfo>*/ dirtyResources = new HashSet/*<ResourceReferenceInfo>*/();
@@ -258,11 +277,38 @@ public class Pager {
 	/** A Thread dedicated to writing out and reading from disk. */
 	private DiskManager diskMan;
 	
-	/** Least Recently Used queue that is used to determine what gets paged out. */
-	private DoubleLinkedList lruQueue;
+	/** Number of lock stripes, a power of two. */
+	private static final int NUM_STRIPES = 64;
+	
+	/**
+	 * Locks on resources, a resource uses the stripe its ResourceId hashes
+	 * to. Tasks that only read a resource share the lock, tasks that may
+	 * change it and writing it out take it exclusively.
+	 */
+	private final ReentrantReadWriteLock[] stripes = new ReentrantReadWriteLock[NUM_STRIPES];
+	
+	/**
+	 * Only one thread at a time picks victims to page out. Readers never take
+	 * this lock.
+	 */
+	private final Object evictionLock = new Object();
+	
+	/** Chooses the resources to page out. */
+	private volatile EvictionPolicy policy = new ClockEvictionPolicy();
+	
+	private final PagerStatistics statistics = new PagerStatistics(this);
+	
+	/** Most prefetch requests that may wait for a prefetch thread. */
+	private static final int PREFETCH_QUEUE_SIZE = 64;
+	
+	/** Threads that read in resources ahead of the tasks that need them. */
+	private ThreadPoolExecutor prefetcher = null;
+	
+	/** Resources with a prefetch request queued or running. */
+	private final ConcurrentHashMap pendingPrefetches = new ConcurrentHashMap();
 	
 	/** Flag to tell us whether we need to call backup. */
-	private boolean needToCallBackup;
+	private volatile boolean needToCallBackup;
 	
 	private PageCleaner pageCleaner = null;
 	
@@ -290,9 +336,7 @@ public class Pager {
 						toClean = (ResourceReferenceInfo) dirtyResources.iterator().next();
 				}
 				if (cleaningTime) {
-					//TODO: The writing of the resource should be able to live
-					// outside the sunchronized block!
-					writeResourceToDisk(toClean);
+					tryWriteResourceToDisk(toClean);
 //					System.err.println("Background cleaning: "+next.getResourceID());
 				}
 				try {
@@ -313,7 +357,9 @@ public class Pager {
 	public Pager(int cacheSize, int queueSize, long lastBackupTime, boolean backgrounCleaning) {
 		this.cacheSize = cacheSize;
 		this.needToCallBackup = false;
-		this.lruQueue = new DoubleLinkedList();
+		for (int i = 0; i < stripes.length; i++) {
+			stripes[i] = new ReentrantReadWriteLock();
+		}
 		this.diskMan = new DiskManager(queueSize);
 		diskMan.setPriority(Thread.MAX_PRIORITY);
 		diskMan.start();
@@ -321,37 +367,94 @@ public class Pager {
 			this.pageCleaner = new PageCleaner();
 			pageCleaner.start();
 		}
+		setPrefetchThreads(2);
 	}
 
 	public void enableBackGroundPaging() {
 	}
 	
 	/**
-	 * Make the pager perform a task synchronously. A synchronous task has to
-	 * wait until all other asynchronous tasks have been finished before it can
-	 * run.
+	 * Install the codec used to write resources out to disk. With a null
+	 * codec everything is written with Java serialization.
+	 */
+	public void setResourceCodec(ResourceCodec codec) {
+		diskMan.setResourceCodec(codec);
+	}
+	
+	public ResourceCodec getResourceCodec() {
+		return diskMan.getResourceCodec();
+	}
+	
+	/**
+	 * Change the policy that chooses which resources to page out. The
+	 * resources in memory are handed over to the new policy as if they had
+	 * just been brought in. Every call on the policy is made while holding
+	 * the lock of the resource or the evictionLock, so taking all of them
+	 * makes sure no admission goes to the old policy after the hand over.
+	 */
+	public void setEvictionPolicy(EvictionPolicy newPolicy) {
+		// stripes before the evictionLock, in the order tasks take them
+		for (int i = 0; i < stripes.length; i++) {
+			stripes[i].writeLock().lock();
+		}
+		try {
+			synchronized (evictionLock) {
+				for (Iterator iter = inMemory.keySet().iterator(); iter.hasNext();) {
+					newPolicy.admitted(iter.next());
+				}
+				policy = newPolicy;
+			}
+		} finally {
+			for (int i = stripes.length - 1; i >= 0; i--) {
+				stripes[i].writeLock().unlock();
+			}
+		}
+	}
+	
+	public EvictionPolicy getEvictionPolicy() {
+		return policy;
+	}
+	
+	/** Hit, miss, eviction and page in statistics. */
+	public PagerStatistics getStatistics() {
+		return statistics;
+	}
+	
+	/** The lock stripe for a resource. */
+	private ReentrantReadWriteLock lockFor(ResourceId rsrcID) {
+		int h = rsrcID.hashCode();
+		h ^= (h >>> 16);
+		return stripes[h & (NUM_STRIPES - 1)];
+	}
+	
+	/**
+	 * Make the pager perform a task synchronously. Tasks that can not change
+	 * their resource may run at the same time as other tasks on the same
+	 * resource, a task that may change its resource runs on its own.
+	 * Tasks on resources in different lock stripes never wait for each other.
 	 */
 	public Object synchDoTask(ResourceId rsrcID, Task task) {
-		boolean lockHeld = false;
 		this.lastTaskTime = System.currentTimeMillis();
-		Resource rsrc = getResource(rsrcID);
+		ReentrantReadWriteLock stripe = lockFor(rsrcID);
+		Lock lock = task.mayChangeResource() ? (Lock) stripe.writeLock() : (Lock) stripe.readLock();
+		lock.lock();
 		try {
+			Resource rsrc = getResource(rsrcID);
 			if (task.mayChangeResource()) {
+				// wait for a pending write out of this resource to finish
 				diskMan.getResourceLock(rsrcID);
-				lockHeld = true;
-			}
-		}
-		finally {
-			if (lockHeld)
 				diskMan.releaseResourceLock(rsrcID);
+			}
+			Object result = task.doIt(rsrc);
+			if (task.resourceIsChanged()) {
+				changeResource(rsrcID, task.getChangedResource());
+			} else {
+				referenceResource(rsrcID);
+			}
+			return result;
+		} finally {
+			lock.unlock();
 		}
-		Object result = task.doIt(rsrc);
-		if (task.resourceIsChanged()) {
-			changeResource(rsrcID, task.getChangedResource());
-		} else {
-			referenceResource(rsrcID);
-		}
-		return result;
 	}
 	
 	/**
@@ -363,18 +466,88 @@ public class Pager {
 		synchDoTask(rsrcID, task);
 	}
 	
+	/**
+	 * Change the number of threads that serve prefetch requests. With 0,
+	 * prefetch requests are ignored.
+	 */
+	public synchronized void setPrefetchThreads(int numThreads) {
+		if (prefetcher != null) {
+			prefetcher.shutdownNow();
+			prefetcher = null;
+			pendingPrefetches.clear();
+		}
+		if (numThreads > 0) {
+			prefetcher = new ThreadPoolExecutor(numThreads, numThreads, 0, TimeUnit.MILLISECONDS,
+					new ArrayBlockingQueue(PREFETCH_QUEUE_SIZE), new ThreadFactory() {
+						public Thread newThread(Runnable r) {
+							Thread thread = new Thread(r, "tyRuBa.Prefetcher");
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+		}
+	}
+	
+	/**
+	 * Whether prefetch hints are worth giving. Only when the cache is full:
+	 * as long as everything fits, resources stay in memory once they have
+	 * been read in.
+	 */
+	public boolean isPrefetchUseful() {
+		return prefetcher != null && needToPageOutIfOneMoreAdded();
+	}
+	
+	/**
+	 * Hint that a task on rsrcID will be done soon. If the resource is not in
+	 * memory a prefetch thread starts reading it in, so the disk access
+	 * overlaps with whatever the caller does in the meantime. Hints are
+	 * dropped when the prefetch threads are too far behind.
+	 */
+	public void prefetch(final ResourceId rsrcID) {
+		ThreadPoolExecutor executor = prefetcher;
+		if (executor == null || inMemory.containsKey(rsrcID)
+				|| pendingPrefetches.putIfAbsent(rsrcID, rsrcID) != null)
+			return;
+		try {
+			executor.execute(new Runnable() {
+				public void run() {
+					try {
+						prefetchNow(rsrcID);
+					} finally {
+						pendingPrefetches.remove(rsrcID);
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			pendingPrefetches.remove(rsrcID);
+		}
+	}
+	
+	/** Read in a resource for a prefetch request. */
+	private void prefetchNow(ResourceId rsrcID) {
+		Lock lock = lockFor(rsrcID).readLock();
+		lock.lock();
+		try {
+			if (!inMemory.containsKey(rsrcID) && diskMan.isAlive()) {
+				if (getResourceFromDisk(rsrcID) != null)
+					statistics.prefetched();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+	
 	/** Update the reference info for a resource. */
 	private void referenceResource(ResourceId rsrcID) {
-		ResourceReferenceInfo rsrc_ref = (ResourceReferenceInfo) inMemory.get(rsrcID);
-		if (rsrc_ref != null) {
-			rsrc_ref.setReferenced(true);
-			rsrc_ref.incrementReferenceCounter();
-			lruQueue.remove(rsrc_ref);
-			lruQueue.enqueue(rsrc_ref);
+		if (inMemory.containsKey(rsrcID)) {
+			policy.referenced(rsrcID);
 		}
 	}
 	
-	/** Change a resource. May cause paging to occur. */
+	/**
+	 * Change a resource. May cause paging to occur. The caller holds the write
+	 * lock of the resource.
+	 */
 	private void changeResource(ResourceId rsrcID, Resource newResource) {
 		needToCallBackup = true;
 		ResourceReferenceInfo rsrc_ref = (ResourceReferenceInfo) inMemory.get(rsrcID);
@@ -382,58 +555,90 @@ public class Pager {
 			//NEW
 			ResourceReferenceInfo newInfo = new ResourceReferenceInfo(rsrcID, newResource);
 			newInfo.setDirty(true);
-			newInfo.setReferenced(true);
-			if (needToPageOutIfOneMoreAdded()) {
-				pageOutOne();
-			}
+			makeRoomForOneMore();
 			inMemory.put(rsrcID, newInfo);
-			lruQueue.enqueue(newInfo);
+			admit(newInfo);
 		} else {
 			if (newResource == null) {
 				//DELETED
 				rsrcID.removeResource();
 				inMemory.remove(rsrcID);
-				lruQueue.remove(rsrc_ref);
+				policy.removed(rsrcID);
+				estimatedBytes.addAndGet(-rsrc_ref.getSize());
+				rsrc_ref.setDirty(false);
 			} else {
 				//UPDATED
 				rsrc_ref.updateResource(newResource);
 				rsrc_ref.setDirty(true);
-				rsrc_ref.setReferenced(true);
-				lruQueue.remove(rsrc_ref);
-				lruQueue.enqueue(rsrc_ref);
+				policy.referenced(rsrcID);
+				if (estimatedBytes.addAndGet(rsrc_ref.updateSize()) > memoryBound && memoryBound > 0)
+					pageUntilNonNeeded();
 			}
 		}
 	}
 	
+	/**
+	 * Tell the policy about a resource that has just been put in inMemory,
+	 * and page out others if it does not fit in the memory bound.
+	 */
+	private void admit(ResourceReferenceInfo info) {
+		policy.admitted(info.getResourceID());
+		if (estimatedBytes.addAndGet(info.getSize()) > memoryBound && memoryBound > 0)
+			pageUntilNonNeeded();
+	}
+	
+	/** The estimated size of a resource. */
+	private static long estimateSize(Resource rsrc) {
+		if (rsrc instanceof SizedResource)
+			return ((SizedResource) rsrc).estimatedSize();
+		else
+			return DEFAULT_RESOURCE_SIZE;
+	}
+	
 	/** Retrieve a resource. May cause paging to occur. */
 	private Resource getResource(ResourceId rsrcID) {
 		ResourceReferenceInfo rsrc_ref = (ResourceReferenceInfo) inMemory.get(rsrcID);
 		if (rsrc_ref == null) {
+			statistics.miss();
+			policy.missed(rsrcID);
 			Resource result = getResourceFromDisk(rsrcID);
 			return result;
 		} else {
+			statistics.hit();
 			Resource result = rsrc_ref.getResource();
 			return result;
 		}
 	}
 	
-	/** Backup the data that is stored in the pager to disk. */
+	/**
+	 * Backup the data that is stored in the pager to disk. The dirty
+	 * resources are written in the order of their names, so resources of the
+	 * same index are written one after the other.
+	 */
 	public void backup() {
 		//TODO: make backup work more as we would expect it to
 		if (needToCallBackup) {
-			for (Iterator iter = inMemory.values().iterator(); iter.hasNext();) {
-				ResourceReferenceInfo refInfo = (ResourceReferenceInfo) iter.next();
-				if (refInfo.isDirty()) {
-					writeResourceToDisk(refInfo);
+			needToCallBackup = false;
+			ResourceReferenceInfo[] dirty;
+			synchronized (dirtyResources) {
+				dirty = (ResourceReferenceInfo[]) dirtyResources.toArray(new ResourceReferenceInfo[dirtyResources.size()]);
+			}
+			Arrays.sort(dirty, new Comparator() {
+				public int compare(Object o1, Object o2) {
+					return ((ResourceReferenceInfo) o1).getResourceID().toString().compareTo(
+							((ResourceReferenceInfo) o2).getResourceID().toString());
 				}
+			});
+			for (int i = 0; i < dirty.length; i++) {
+				writeResourceToDisk(dirty[i]);
 			}
-			needToCallBackup = false;
 		}
 		diskMan.flush();
 	}
 	
 	/** Shut down the pager (which shuts down the DiskManager thread). */
 	public void shutdown() {
+		setPrefetchThreads(0);
 		backup();
 		diskMan.killMe();
 	}
@@ -443,6 +648,7 @@ public class Pager {
 	 * it kills the diskMan without a proper backup.
 	 */
 	public void crash() {
+		setPrefetchThreads(0);
 		diskMan.crash();
 	}
 	
@@ -457,58 +663,150 @@ public class Pager {
 		return cacheSize;
 	}
 	
+	/**
+	 * Also page out when the estimated size of the resources in memory goes
+	 * over maxBytes. With 0 only the cache size counts.
+	 */
+	public void setMemoryBound(long maxBytes) {
+		this.memoryBound = maxBytes;
+		pageUntilNonNeeded();
+	}
+	
+	public long getMemoryBound() {
+		return memoryBound;
+	}
+	
+	/** Number of resources in memory. */
+	public int getNumResident() {
+		return inMemory.size();
+	}
+	
+	/** Estimated size in bytes of the resources in memory. */
+	public long getEstimatedBytes() {
+		return estimatedBytes.get();
+	}
+	
 	/** Whether we need to page out. */
 	private boolean needToPageOut() {
-		return inMemory.size() > cacheSize;
+		return inMemory.size() > cacheSize
+			|| (memoryBound > 0 && estimatedBytes.get() > memoryBound);
 	}
 	
 	/** Whether we need to page out if we add one more resource to memory. */
 	private boolean needToPageOutIfOneMoreAdded() {
-		return (inMemory.size() + 1) > cacheSize;
+		return (inMemory.size() + 1) > cacheSize
+			|| (memoryBound > 0 && estimatedBytes.get() >= memoryBound);
 	}
 	
-	/** Page out one resource. */
-	private void pageOutOne() {
-		if (inMemory.size() > 0) {
-			ResourceReferenceInfo victim = null;
-			
-			//Get the Least recently used resource to page out
-			victim = (ResourceReferenceInfo) lruQueue.dequeue();
-			inMemory.remove(victim.getResourceID());
-			
-			if (victim != null) {
-				if (victim.isDirty()) {
-					writeResourceToDisk(victim);
+	/** Page out until there is room to bring in one more resource. */
+	private void makeRoomForOneMore() {
+		if (needToPageOutIfOneMoreAdded()) {
+			synchronized (evictionLock) {
+				while (needToPageOutIfOneMoreAdded() && pageOutOne()) {
 				}
-			} else {
-				throw new Error("Could not find a victim to page, probably a coding error somewhere.");
 			}
 		}
 	}
 	
+	/**
+	 * Page out one resource, chosen by the eviction policy. Resources that
+	 * another thread is working on are skipped, the policy hears about them as
+	 * if they had been referenced. Returns false if nothing could be paged out.
+	 * The caller holds the evictionLock.
+	 */
+	private boolean pageOutOne() {
+		int budget = 2 * inMemory.size() + 1;
+		while (budget-- > 0 && !inMemory.isEmpty()) {
+			Object victimID = policy.nextVictim();
+			if (victimID == null)
+				return false;
+			ResourceReferenceInfo candidate = (ResourceReferenceInfo) inMemory.get(victimID);
+			if (candidate == null) {
+				policy.removed(victimID); // already gone
+				continue;
+			}
+			ReentrantReadWriteLock.WriteLock lock = lockFor(candidate.getResourceID()).writeLock();
+			if (lock.isHeldByCurrentThread() || !lock.tryLock()) {
+				policy.referenced(victimID); // in use
+				continue;
+			}
+			try {
+				if (!inMemory.remove(victimID, candidate))
+					continue; // already gone
+				policy.removed(victimID);
+				estimatedBytes.addAndGet(-candidate.getSize());
+				statistics.evicted();
+				if (candidate.isDirty()) {
+					writeResourceToDisk(candidate);
+				}
+				return true;
+			} finally {
+				lock.unlock();
+			}
+		}
+		return false;
+	}
+	
 	/** Page until we are within the maximum cache size. */
 	private void pageUntilNonNeeded() {
-		while (needToPageOut()) {
-			pageOutOne();
+		synchronized (evictionLock) {
+			while (needToPageOut() && pageOutOne()) {
+			}
 		}
 	}
 	
-	/** Write a resource to disk. */
+	/**
+	 * Write a resource to disk. Waits until no task is working on the
+	 * resource, unless the current thread holds its lock already.
+	 */
 	private void writeResourceToDisk(ResourceReferenceInfo victim) {
-		diskMan.writeOut(victim.getResourceID(), victim.getResource());
-		victim.setDirty(false);
+		ReentrantReadWriteLock.WriteLock lock = lockFor(victim.getResourceID()).writeLock();
+		lock.lock();
+		try {
+			if (victim.isDirty()) {
+				diskMan.writeOut(victim.getResourceID(), victim.getResource());
+				victim.setDirty(false);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/** Like writeResourceToDisk, but gives up if the resource is in use. */
+	private void tryWriteResourceToDisk(ResourceReferenceInfo victim) {
+		ReentrantReadWriteLock.WriteLock lock = lockFor(victim.getResourceID()).writeLock();
+		if (lock.tryLock()) {
+			try {
+				if (victim.isDirty()) {
+					diskMan.writeOut(victim.getResourceID(), victim.getResource());
+					victim.setDirty(false);
+				}
+			} finally {
+				lock.unlock();
+			}
+		}
 	}
 	
-	/** Read a resource from disk. */
+	/**
+	 * Read a resource from disk. Readers of the same resource may get here at
+	 * the same time, the first one to finish reading puts it in memory and
+	 * the others use that copy.
+	 */
 	private Resource getResourceFromDisk(ResourceId rsrcID) {
 		if (diskMan.resourceExists(rsrcID)) {
-			if (needToPageOutIfOneMoreAdded()) {
-				pageOutOne();
-			}
+			makeRoomForOneMore();
 			
+			long start = System.nanoTime();
 			Resource resource = diskMan.readIn(rsrcID);
-			changeResource(rsrcID, resource);
-			return resource;
+			statistics.pagedIn(System.nanoTime() - start);
+			ResourceReferenceInfo info = new ResourceReferenceInfo(rsrcID, resource);
+			ResourceReferenceInfo present = (ResourceReferenceInfo) inMemory.putIfAbsent(rsrcID, info);
+			if (present == null) {
+				admit(info);
+				return resource;
+			} else {
+				return present.getResource();
+			}
 		} else {
 			return null;
 		}
@@ -516,6 +814,7 @@ public class Pager {
 	
 	/** Print some statistics. */
 	public void printStats() {
+		System.err.println(statistics);
 		diskMan.printStats();
 	}
 
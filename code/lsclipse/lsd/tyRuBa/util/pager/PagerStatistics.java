@@ -0,0 +1,175 @@
+/*
+*    Logical Structural Diff (LSDiff)
+*    Copyright (C) <2015>  <Dr. Miryung Kim miryung@cs.ucla.edu>
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package tyRuBa.util.pager;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import tyRuBa.util.Statistics;
+
+/**
+ * Counts what the Pager's cache is doing. Counting is on by default, it only
+ * costs a few atomic increments per task.
+ * @category FactBase
+ */
+public class PagerStatistics implements Statistics {
+
+	/** Tasks that found their resource in memory (long). */
+	public static final String HITS = "hits";
+	/** Tasks that did not find their resource in memory (long). */
+	public static final String MISSES = "misses";
+	/** hits / (hits + misses) (float). */
+	public static final String HIT_RATIO = "hitRatio";
+	/** Resources paged out to make room (long). */
+	public static final String EVICTIONS = "evictions";
+	/** Resources read in from disk (long). */
+	public static final String PAGE_INS = "pageIns";
+	/** Resources read in by prefetch threads (long). */
+	public static final String PREFETCHES = "prefetches";
+	/** Total time spent reading in resources, in nanoseconds (long). */
+	public static final String PAGE_IN_NANOS = "pageInNanos";
+	/** Average time to read in a resource, in milliseconds (float). */
+	public static final String AVERAGE_PAGE_IN_MILLIS = "averagePageInMillis";
+	/** Resources in memory now (int). */
+	public static final String RESIDENT = "resident";
+	/** Estimated size of the resources in memory now, in bytes (long). */
+	public static final String ESTIMATED_BYTES = "estimatedBytes";
+	/** Name of the eviction policy (Object). */
+	public static final String POLICY = "policy";
+
+	private final Pager pager;
+
+	private volatile boolean gathering = true;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	private final AtomicLong pageIns = new AtomicLong();
+	private final AtomicLong pageInNanos = new AtomicLong();
+	private final AtomicLong prefetches = new AtomicLong();
+
+	PagerStatistics(Pager pager) {
+		this.pager = pager;
+	}
+
+	void hit() {
+		if (gathering)
+			hits.incrementAndGet();
+	}
+
+	void miss() {
+		if (gathering)
+			misses.incrementAndGet();
+	}
+
+	void evicted() {
+		if (gathering)
+			evictions.incrementAndGet();
+	}
+
+	void pagedIn(long nanos) {
+		if (gathering) {
+			pageIns.incrementAndGet();
+			pageInNanos.addAndGet(nanos);
+		}
+	}
+
+	void prefetched() {
+		if (gathering)
+			prefetches.incrementAndGet();
+	}
+
+	public void stopGathering() {
+		gathering = false;
+	}
+
+	public void startGathering() {
+		gathering = true;
+	}
+
+	public void reset() {
+		hits.set(0);
+		misses.set(0);
+		evictions.set(0);
+		pageIns.set(0);
+		pageInNanos.set(0);
+		prefetches.set(0);
+	}
+
+	public int getIntStat(String statName) {
+		if (RESIDENT.equals(statName))
+			return pager.getNumResident();
+		else
+			return (int) getLongStat(statName);
+	}
+
+	public long getLongStat(String statName) {
+		if (HITS.equals(statName))
+			return hits.get();
+		else if (MISSES.equals(statName))
+			return misses.get();
+		else if (EVICTIONS.equals(statName))
+			return evictions.get();
+		else if (PAGE_INS.equals(statName))
+			return pageIns.get();
+		else if (PREFETCHES.equals(statName))
+			return prefetches.get();
+		else if (PAGE_IN_NANOS.equals(statName))
+			return pageInNanos.get();
+		else if (ESTIMATED_BYTES.equals(statName))
+			return pager.getEstimatedBytes();
+		else if (RESIDENT.equals(statName))
+			return pager.getNumResident();
+		else
+			throw new Error("Unknown pager statistic: " + statName);
+	}
+
+	public float getFloatStat(String statName) {
+		if (HIT_RATIO.equals(statName)) {
+			long h = hits.get();
+			long total = h + misses.get();
+			return total == 0 ? 0 : (float) h / total;
+		} else if (AVERAGE_PAGE_IN_MILLIS.equals(statName)) {
+			long n = pageIns.get();
+			return n == 0 ? 0 : pageInNanos.get() / (n * 1000000f);
+		} else {
+			return getLongStat(statName);
+		}
+	}
+
+	public Object getObjectStat(String statName) {
+		if (POLICY.equals(statName))
+			return pager.getEvictionPolicy().getName();
+		else if (HIT_RATIO.equals(statName) || AVERAGE_PAGE_IN_MILLIS.equals(statName))
+			return new Float(getFloatStat(statName));
+		else
+			return new Long(getLongStat(statName));
+	}
+
+	public String toString() {
+		return "Pager[" + getObjectStat(POLICY) + "] hits = " + hits.get()
+			+ " misses = " + misses.get()
+			+ " hitRatio = " + getFloatStat(HIT_RATIO)
+			+ " evictions = " + evictions.get()
+			+ " pageIns = " + pageIns.get()
+			+ " prefetches = " + prefetches.get()
+			+ " averagePageIn = " + getFloatStat(AVERAGE_PAGE_IN_MILLIS) + "ms"
+			+ " resident = " + pager.getNumResident()
+			+ " estimatedBytes = " + pager.getEstimatedBytes();
+	}
+
+}
@@ -0,0 +1,235 @@
+/*
+*    Logical Structural Diff (LSDiff)
+*    Copyright (C) <2015>  <Dr. Miryung Kim miryung@cs.ucla.edu>
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package tyRuBa.util.pager;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Window TinyLFU. New resources go into a small LRU window; a resource that
+ * falls out of the window only gets into the main region if it has been used
+ * more often than the resource it would push out. The main region is a
+ * segmented LRU: resources start out on probation and become protected when
+ * they are used again. How often resources are used is estimated with a
+ * count-min sketch whose counters are halved now and then, so old
+ * popularity fades. A scan through many pages that are used once (like
+ * reading through a whole fact library) only churns the window and does not
+ * push out the pages that queries keep coming back to.
+ * @category FactBase
+ */
+public class TinyLFUEvictionPolicy implements EvictionPolicy {
+
+	/** Percentage of the resources that live in the window. */
+	private static final int WINDOW_PERCENT = 1;
+
+	/** Percentage of the main region that is protected. */
+	private static final int PROTECTED_PERCENT = 80;
+
+	/** Counters are halved after this many increments per resource. */
+	private static final int SAMPLE_FACTOR = 10;
+
+	private static final int MIN_SAMPLE_SIZE = 1000;
+
+	/** The LRU queues, least recently used first. */
+	private LinkedHashMap window = new LinkedHashMap();
+	private LinkedHashMap probation = new LinkedHashMap();
+	private LinkedHashMap protectedQ = new LinkedHashMap();
+
+	private FrequencySketch sketch = new FrequencySketch();
+
+	/**
+	 * Estimates how often keys have been used, with four rows of counters
+	 * indexed by different hashes of the key. The estimate is the smallest of
+	 * the four counters, which can only be too high.
+	 */
+	static final class FrequencySketch {
+
+		private static final int ROWS = 4;
+
+		private static final int[] SEEDS = { 0x97cb3127, 0xbc9e4a2d, 0x5a7f3c15, 0x2f8b6e91 };
+
+		/** Counters saturate here. */
+		private static final int MAX_COUNT = 15;
+
+		private int[][] counts = new int[ROWS][64];
+
+		private int additions = 0;
+
+		/**
+		 * Grow the table so it has room for about numKeys keys. The table
+		 * grows while the cache fills up, when what has been used most is
+		 * worth knowing, so the counts are kept: a key's counter in the wider
+		 * table is one of the copies of its counter in the old one.
+		 */
+		void ensureCapacity(int numKeys) {
+			int oldWidth = counts[0].length;
+			if (oldWidth >= numKeys)
+				return;
+			int width = oldWidth;
+			while (width < numKeys)
+				width <<= 1;
+			int[][] grown = new int[ROWS][width];
+			for (int row = 0; row < ROWS; row++) {
+				for (int i = 0; i < width; i++) {
+					grown[row][i] = counts[row][i & (oldWidth - 1)];
+				}
+			}
+			counts = grown;
+		}
+
+		private int index(int hash, int row) {
+			int h = hash * SEEDS[row];
+			h ^= (h >>> 17);
+			return h & (counts[row].length - 1);
+		}
+
+		void increment(Object key, int sampleSize) {
+			int hash = key.hashCode();
+			boolean added = false;
+			for (int row = 0; row < ROWS; row++) {
+				int i = index(hash, row);
+				if (counts[row][i] < MAX_COUNT) {
+					counts[row][i]++;
+					added = true;
+				}
+			}
+			if (added && ++additions >= sampleSize) {
+				reset();
+			}
+		}
+
+		int frequency(Object key) {
+			int hash = key.hashCode();
+			int min = MAX_COUNT;
+			for (int row = 0; row < ROWS; row++) {
+				min = Math.min(min, counts[row][index(hash, row)]);
+			}
+			return min;
+		}
+
+		/** Halve all counters. */
+		private void reset() {
+			for (int row = 0; row < ROWS; row++) {
+				for (int i = 0; i < counts[row].length; i++) {
+					counts[row][i] >>>= 1;
+				}
+			}
+			additions /= 2;
+		}
+	}
+
+	private int size() {
+		return window.size() + probation.size() + protectedQ.size();
+	}
+
+	private void recordUse(Object key) {
+		int size = size();
+		sketch.ensureCapacity(size);
+		sketch.increment(key, Math.max(MIN_SAMPLE_SIZE, SAMPLE_FACTOR * size));
+	}
+
+	private int maxWindow() {
+		return Math.max(1, size() * WINDOW_PERCENT / 100);
+	}
+
+	public synchronized void admitted(Object key) {
+		// the use was recorded when the Pager missed it
+		window.put(key, key);
+		// while the cache is filling up the main region takes what falls out
+		// of the window without competing; once it is full nextVictim is
+		// called before each admission and the newest resource is the one
+		// over the window's size
+		while (window.size() > maxWindow() + 1) {
+			Object oldest = first(window);
+			window.remove(oldest);
+			probation.put(oldest, oldest);
+		}
+	}
+
+	public synchronized void referenced(Object key) {
+		recordUse(key);
+		if (window.containsKey(key)) {
+			window.remove(key);
+			window.put(key, key);
+		} else if (probation.containsKey(key)) {
+			probation.remove(key);
+			protectedQ.put(key, key);
+			int maxProtected = (size() - window.size()) * PROTECTED_PERCENT / 100;
+			while (protectedQ.size() > Math.max(1, maxProtected)) {
+				Object demoted = first(protectedQ);
+				protectedQ.remove(demoted);
+				probation.put(demoted, demoted);
+			}
+		} else if (protectedQ.containsKey(key)) {
+			protectedQ.remove(key);
+			protectedQ.put(key, key);
+		}
+	}
+
+	public synchronized void missed(Object key) {
+		recordUse(key);
+	}
+
+	public synchronized void removed(Object key) {
+		if (window.remove(key) == null && probation.remove(key) == null)
+			protectedQ.remove(key);
+	}
+
+	public synchronized Object nextVictim() {
+		if (window.size() > maxWindow()) {
+			// the oldest resource in the window has to compete for a place
+			// in the main region
+			Object candidate = first(window);
+			Object victim = probation.isEmpty() ? first(protectedQ) : first(probation);
+			if (victim == null)
+				return candidate;
+			if (admit(candidate, sketch.frequency(candidate), victim, sketch.frequency(victim))) {
+				window.remove(candidate);
+				probation.put(candidate, candidate);
+				return victim;
+			} else {
+				return candidate;
+			}
+		}
+		if (!probation.isEmpty())
+			return first(probation);
+		if (!protectedQ.isEmpty())
+			return first(protectedQ);
+		return first(window);
+	}
+
+	/**
+	 * Whether candidate, which falls out of the window, should take the place
+	 * of victim in the main region, given how often each has been used.
+	 * Subclasses can weigh in what else they know about the two.
+	 */
+	protected boolean admit(Object candidate, int candidateFrequency, Object victim,
+			int victimFrequency) {
+		return candidateFrequency > victimFrequency;
+	}
+
+	private static Object first(LinkedHashMap queue) {
+		Iterator iter = queue.keySet().iterator();
+		return iter.hasNext() ? iter.next() : null;
+	}
+
+	public String getName() {
+		return "W-TinyLFU";
+	}
+
+}
@@ -1,20 +1,20 @@
-/* 
-*    Logical Structural Diff (LSDiff)  
-*    Copyright (C) <2015>  <Dr. Miryung Kim miryung@cs.ucla.edu>
-*
-*    This program is free software: you can redistribute it and/or modify
-*    it under the terms of the GNU General Public License as published by
-*    the Free Software Foundation, either version 3 of the License, or
-*    (at your option) any later version.
-*
-*    This program is distributed in the hope that it will be useful,
-*    but WITHOUT ANY WARRANTY; without even the implied warranty of
-*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
-*    GNU General Public License for more details.
-*
-*    You should have received a copy of the GNU General Public License
-*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
-*/
+/* 
+*    Logical Structural Diff (LSDiff)  
+*    Copyright (C) <2015>  <Dr. Miryung Kim miryung@cs.ucla.edu>
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
 package lsclipse;
 
 import java.io.BufferedWriter;
@@ -22,11 +22,24 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 import lsclipse.LSDResult.Bookmark;
 import lsclipse.dialogs.ProgressBarDialog;
@@ -40,16 +53,22 @@ import metapackage.MetaInfo;
 
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.core.runtime.Path;
+import org.eclipse.jdt.core.IClasspathEntry;
+import org.eclipse.jdt.core.ICompilationUnit;
 import org.eclipse.jdt.core.IJavaProject;
 import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.JavaModelException;
 import org.eclipse.jdt.core.dom.AST;
 import org.eclipse.jdt.core.dom.ASTNode;
 import org.eclipse.jdt.core.dom.ASTParser;
+import org.eclipse.jdt.core.dom.ASTRequestor;
+import org.eclipse.jdt.core.dom.CompilationUnit;
 
 import utils.IO;
 import utils.WS;
@@ -58,6 +77,7 @@ import changetypes.AtomicChange;
 import changetypes.ChangeSet;
 import changetypes.Fact;
 import changetypes.FactBase;
+import changetypes.FactCache;
 import changetypes.AtomicChange.Modifier;
 //import edu.washington.cs.induction.FileNameService;
 //import edu.washington.cs.induction.OnePipeLineScript;
@@ -66,6 +86,14 @@ public class LSDiffRunner {
 
 	private static ProgressBarDialog progbar;
 
+	//Number of files given to one ASTParser, which resolves bindings once per batch
+	private static final int EXTRACTION_BATCH_SIZE = 50;
+	private static final int MAX_EXTRACTIONS_IN_FLIGHT = 2*EXTRACTION_BATCH_SIZE;
+
+	//Facts of files extracted in earlier runs, so unchanged files need not be parsed again
+	private static final FactCache factCache = new FactCache(new File(MetaInfo.factCacheDir), 
+			MetaInfo.factCacheMaxBytes);
+
 	private static String resultStringIncFE;
 	private static String resultStringGranularity;
 	private static String resultStringNHops;
@@ -237,82 +265,96 @@ public class LSDiffRunner {
 
 		long initendtime = System.currentTimeMillis();
 
-		//Extraction for FB1
-		progbar.setStep(1);
-		progbar.setMessage("Retrieving facts for FB1... \n");
-		FactBase commonfb = makeFactBase(proj1, commonFiles);
-		FactBase fb1 = new FactBase();
-		fb1.addAll(commonfb);
-		FactBase changedProj1FB = makeFactBase(proj1, changedProj1Files);
-		changedProj1FB.deriveDefaultConstructors();
-		fb1.addAll(changedProj1FB);
-		int numFacts1 = fb1.size();
-		progbar.appendLog("Extraction OK! Extracted "+numFacts1+" facts for FB1\n");
-		//Derived facts
-		progbar.setMessage("Adding derived facts for FB1... \n");
-		long fb1derivestarttime = System.currentTimeMillis();
-		fb1.deriveDefaultConstructors();
-		fb1.deriveInheritedMembers();
-		long fb1deriveendtime = System.currentTimeMillis();
-		progbar.appendLog("Derivation OK! Added "+(fb1.size()-numFacts1)+" facts to FB1\n");
-		progbar.appendLog("All done! FB1 contains "+fb1.size()+" facts\n");
-
-		long fb1endtime = System.currentTimeMillis();
-		long fb2derivestarttime = fb1endtime;
-		long fb2deriveendtime = fb1endtime;
-		long fb2endtime = fb1endtime;
-		int numFacts2;
-
+		//FB2 does not depend on FB1, so start extracting it while FB1 is extracted
+		ExecutorService extractors = Executors.newFixedThreadPool(Math.max(1, MetaInfo.numThreads));
+		SourceContexts contexts = new SourceContexts();
+		Future<FactBase> fb2Extraction = null;
+		FactBase fb1, changedProj1FB, fb2 = null;
 		ChangeSet cs = null;
-		FactBase fb2 = null;
-
-		//Extraction for FB2 and changeset
-		if (!incremental) {
-			progbar.setStep(2);
-			progbar.setMessage("Retrieving facts for FB2... ");
-			fb2 = makeFactBase(proj2, allProj2Files);
-			numFacts2 = fb2.size();
-			progbar.appendLog("Extraction OK! Extracted "+numFacts2+" facts for FB2\n");
-			fb2endtime = System.currentTimeMillis();
-
+		int numFacts1, numFacts2;
+		long fb1derivestarttime, fb1deriveendtime, fb1endtime;
+		long fb2derivestarttime, fb2deriveendtime, fb2endtime;
+		try {
+			fb2Extraction = startFactBase(proj2, 
+					incremental ? changedProj2Files : allProj2Files, extractors, contexts);
+
+			//Extraction for FB1
+			progbar.setStep(1);
+			progbar.setMessage("Retrieving facts for FB1... \n");
+			FactBase commonfb = makeFactBase(proj1, commonFiles, extractors, contexts);
+			fb1 = new FactBase();
+			fb1.addAll(commonfb);
+			changedProj1FB = makeFactBase(proj1, changedProj1Files, extractors, contexts);
+			changedProj1FB.deriveDefaultConstructors();
+			fb1.addAll(changedProj1FB);
+			numFacts1 = fb1.size();
+			progbar.appendLog("Extraction OK! Extracted "+numFacts1+" facts for FB1\n");
 			//Derived facts
-			progbar.setMessage("Adding derived facts for FB2... \n");
-			fb2derivestarttime = System.currentTimeMillis();
-			fb2.deriveDefaultConstructors();
-			fb2.deriveInheritedMembers();
-			fb2deriveendtime = System.currentTimeMillis();
-			progbar.appendLog("Derivation OK! Added "+(fb2.size()-numFacts2)+" facts to FB2\n");
-			progbar.appendLog("All done! FB2 contains "+fb2.size()+" facts\n");
-
-			//compute diff
-			progbar.setStep(3);
-			progbar.setMessage("Computing factbase differences... ");
-			cs = fb2.diff(fb1);
-			progbar.appendLog("All done! "+cs.size()+" changes found\n");
-		} else {
-			progbar.setStep(2);
-			progbar.setMessage("Retrieving facts for FB2... ");
-			FactBase changedProj2FB = makeFactBase(proj2, changedProj2Files);
-			fb2 = changedProj2FB;
-			numFacts2 = changedProj2FB.size();
-			fb2.deriveDefaultConstructors();
-			progbar.appendLog("Extraction OK! Extracted "+numFacts2+" facts for FB2\n");
-			fb2endtime = System.currentTimeMillis();
-
-			//add added files become ADDED_*, deleted files become delete_* and modified files must do set diff
-			progbar.setStep(3);
-			progbar.setMessage("Computing factbase differences... ");
-			cs = changedProj2FB.diff(changedProj1FB);
-			progbar.appendLog("All done! "+cs.size()+" changes found\n");
-
-			//now handle inheritance facts using Tyruba
-			progbar.setMessage("Adding derived facts for FB2... \n");
-			fb2derivestarttime = System.currentTimeMillis();
-			cs.deriveInheritedMembers(fb1, fb2);
-			fb2deriveendtime = System.currentTimeMillis();
-			progbar.appendLog("Derivation OK! Added "+(fb2.size()-numFacts2)+" facts to FB2\n");
-			progbar.appendLog("All done! FB2 contains "+fb2.size()+" facts\n");
+			progbar.setMessage("Adding derived facts for FB1... \n");
+			fb1derivestarttime = System.currentTimeMillis();
+			fb1.deriveTypeMembers();
+			fb1deriveendtime = System.currentTimeMillis();
+			progbar.appendLog("Derivation OK! Added "+(fb1.size()-numFacts1)+" facts to FB1\n");
+			progbar.appendLog("All done! FB1 contains "+fb1.size()+" facts\n");
+
+			fb1endtime = System.currentTimeMillis();
+			fb2derivestarttime = fb1endtime;
+			fb2deriveendtime = fb1endtime;
+			fb2endtime = fb1endtime;
+
+			//Extraction for FB2 and changeset
+			if (!incremental) {
+				progbar.setStep(2);
+				progbar.setMessage("Retrieving facts for FB2... ");
+				fb2 = finishFactBase(fb2Extraction, extractors);
+				numFacts2 = fb2.size();
+				progbar.appendLog("Extraction OK! Extracted "+numFacts2+" facts for FB2\n");
+				fb2endtime = System.currentTimeMillis();
+
+				//Derived facts
+				progbar.setMessage("Adding derived facts for FB2... \n");
+				fb2derivestarttime = System.currentTimeMillis();
+				fb2.deriveTypeMembers();
+				fb2deriveendtime = System.currentTimeMillis();
+				progbar.appendLog("Derivation OK! Added "+(fb2.size()-numFacts2)+" facts to FB2\n");
+				progbar.appendLog("All done! FB2 contains "+fb2.size()+" facts\n");
+
+				//compute diff
+				progbar.setStep(3);
+				progbar.setMessage("Computing factbase differences... ");
+				cs = fb2.diff(fb1);
+				progbar.appendLog("All done! "+cs.size()+" changes found\n");
+			} else {
+				progbar.setStep(2);
+				progbar.setMessage("Retrieving facts for FB2... ");
+				FactBase changedProj2FB = finishFactBase(fb2Extraction, extractors);
+				fb2 = changedProj2FB;
+				numFacts2 = changedProj2FB.size();
+				fb2.deriveDefaultConstructors();
+				progbar.appendLog("Extraction OK! Extracted "+numFacts2+" facts for FB2\n");
+				fb2endtime = System.currentTimeMillis();
+
+				//add added files become ADDED_*, deleted files become delete_* and modified files must do set diff
+				progbar.setStep(3);
+				progbar.setMessage("Computing factbase differences... ");
+				cs = changedProj2FB.diff(changedProj1FB);
+				progbar.appendLog("All done! "+cs.size()+" changes found\n");
+
+				//now handle inheritance facts using Tyruba
+				progbar.setMessage("Adding derived facts for FB2... \n");
+				fb2derivestarttime = System.currentTimeMillis();
+				cs.deriveInheritedMembers(fb1, fb2);
+				fb2deriveendtime = System.currentTimeMillis();
+				progbar.appendLog("Derivation OK! Added "+(fb2.size()-numFacts2)+" facts to FB2\n");
+				progbar.appendLog("All done! FB2 contains "+fb2.size()+" facts\n");
+			}
+		} finally {
+			//stop the extraction of FB2 and the pool if extracting FB1 failed
+			if (fb2Extraction!=null)
+				fb2Extraction.cancel(true);
+			extractors.shutdownNow();
 		}
+		saveCaches();
 
 		long diffendtime = System.currentTimeMillis();
 		
@@ -396,6 +438,7 @@ public class LSDiffRunner {
 			enumerator = new LSDRuleEnumerator(twoKBFile, deltaKBFile, winnowingRulesFile, resultsFile,
 					minConcFact, accuracy, k, beamSize, MetaInfo.maxException,
 					typeLevelWinnowingRulesFile, output);
+			enumerator.setNumThreads(MetaInfo.numThreads);
 			//MK 1. this is the call that Alex used 
 		//	rules = enumerator.levelIncrementLearning(System.out, level, nHop, perfResults);
 			//MK 2. this is the original call in the paper 
@@ -617,21 +660,274 @@ public class LSDiffRunner {
 	}
 
 	private static FactBase makeFactBase(String project, Set<String> files) {
+		ExecutorService workers = Executors.newFixedThreadPool(Math.max(1, MetaInfo.numThreads));
+		try {
+			return makeFactBase(project, files, workers, new SourceContexts());
+		} finally {
+			workers.shutdown();
+			saveCaches();
+		}
+	}
+	//Parses the files in batches and visits each AST as the parser hands it over, into its own FactBase.
+	//Caching the facts and parsing files outside the java model is left to the workers
+	private static FactBase makeFactBase(String project, Set<String> files, final ExecutorService workers, 
+			SourceContexts contexts) {
 
-		IProject proj = ResourcesPlugin.getWorkspace().getRoot().getProject(project);
+		final IProject proj = ResourcesPlugin.getWorkspace().getRoot().getProject(project);
+		IJavaProject javaproj = JavaCore.create(proj);
 
 		FactBase fb1 = new FactBase();
-		FactBase fb;
+		Extraction pending = new Extraction(workers, fb1);
+		SourceContext sources = contexts.get(project, proj, javaproj);
+		Map<String, byte[]> digests = sources.digests;
+		byte[] context = sources.context;
+		int reused = 0;
+		List<String> batch = new ArrayList<String>();
 		for (String filename : files) {
-			progbar.appendLog("  Now working on "+filename+" ... ");
-			//collect facts for old revision
-			fb = getFactsFromFile(filename, proj);
-			fb1.addAll(fb);
-			progbar.appendLog("OK\n");
+			//reuse the facts of files whose contents did not change since they were extracted,
+			//as long as nothing their bindings could be resolved to changed either
+			byte[] digest = context==null ? null : digests.get(filename);
+			if (digest!=null) {
+				FactBase cached = factCache.get(project, filename, digest, context);
+				if (cached!=null) {
+					fb1.addAll(cached);
+					++reused;
+					continue;
+				}
+			}
+			batch.add(filename);
+			if (batch.size()==EXTRACTION_BATCH_SIZE) {
+				parseBatch(project, batch, digests, context, proj, javaproj, pending);
+				batch = new ArrayList<String>();
+			}
 		}
+		if (!batch.isEmpty())
+			parseBatch(project, batch, digests, context, proj, javaproj, pending);
+		progbar.appendLog("  Reused cached facts of "+reused+" files\n");
+
+		//merge the facts of the files still being worked on
+		pending.finish();
 
 		return fb1;
 	}
+	//Tasks that each extract the facts of one file. Their facts are merged as they complete, and
+	//only a bounded number of them is in flight, so finished work does not pile up until the end
+	private static class Extraction {
+		private final CompletionService<FactBase> completion;
+		private final FactBase facts;
+		private int inFlight = 0;
+
+		Extraction(ExecutorService workers, FactBase facts) {
+			this.completion = new ExecutorCompletionService<FactBase>(workers);
+			this.facts = facts;
+		}
+		void submit(Callable<FactBase> task) {
+			while (inFlight>=MAX_EXTRACTIONS_IN_FLIGHT) {
+				merge(take());
+			}
+			completion.submit(task);
+			++inFlight;
+			for (Future<FactBase> done = completion.poll(); done!=null; done = completion.poll()) {
+				merge(done);
+			}
+		}
+		void finish() {
+			while (inFlight>0) {
+				merge(take());
+			}
+		}
+		private Future<FactBase> take() {
+			try {
+				return completion.take();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new Error("Interrupted while extracting facts", e);
+			}
+		}
+		private void merge(Future<FactBase> done) {
+			--inFlight;
+			try {
+				facts.addAll(done.get());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new Error("Interrupted while extracting facts", e);
+			} catch (ExecutionException e) {
+				throw new Error("Fact extraction failed: "+e.getCause(), e.getCause());
+			}
+		}
+	}
+	private static void parseBatch(final String project, List<String> pathnames, final Map<String, byte[]> digests, 
+			final byte[] context, final IProject proj, IJavaProject javaproj, final Extraction pending) {
+		final Map<ICompilationUnit, String> units = new HashMap<ICompilationUnit, String>();
+		for (final String pathname : pathnames) {
+			ICompilationUnit unit = JavaCore.createCompilationUnitFrom(proj.getFile(pathname));
+			if (unit==null) {
+				//not part of the java model, so parse it on its own as before
+				final byte[] digest = digests.get(pathname);
+				pending.submit(new Callable<FactBase>() {
+					public FactBase call() {
+						FactBase fb = getFactsFromFile(pathname, proj);
+						progbar.appendLog("  Extracted facts from "+pathname+"\n");
+						if (!fb.isEmpty())	//empty on parse errors, which should not be cached
+							cacheFacts(project, pathname, digest, context, fb);
+						return fb;
+					}
+				});
+			} else {
+				units.put(unit, pathname);
+			}
+		}
+		if (units.isEmpty()) return;
+
+		ASTParser parser = ASTParser.newParser(AST.JLS3);
+		parser.setKind(ASTParser.K_COMPILATION_UNIT);
+		parser.setProject(javaproj);
+		parser.setResolveBindings(true);
+		parser.createASTs(units.keySet().toArray(new ICompilationUnit[units.size()]), new String[0], 
+				new ASTRequestor() {
+			public void acceptAST(ICompilationUnit source, CompilationUnit ast) {
+				final String pathname = units.get(source);
+				final byte[] digest = digests.get(pathname);
+				//the ASTs of a batch share one binding environment, which is not thread safe,
+				//so the visitor resolves its bindings here on the parser's thread
+				final FactBase facts;
+				try {
+					ASTVisitorAtomicChange acvisitor = new ASTVisitorAtomicChange(pathname);
+					ast.accept(acvisitor);
+					facts = acvisitor.facts;
+				} catch (Exception e) {
+					System.err.println("Error parsing "+pathname+" in project "+proj.getName());
+					return;
+				}
+				pending.submit(new Callable<FactBase>() {
+					public FactBase call() {
+						progbar.appendLog("  Extracted facts from "+pathname+"\n");
+						cacheFacts(project, pathname, digest, context, facts);
+						return facts;
+					}
+				});
+			}
+		}, new NullProgressMonitor());
+	}
+	//The context digests of the projects extracted in one run. The sources do not change during a run,
+	//so each project is digested once, even though FB1 is made of two fact bases and FB2 is extracted
+	//at the same time on another thread
+	private static class SourceContexts {
+		private final Map<String, SourceContext> projects = new HashMap<String, SourceContext>();
+
+		SourceContext get(String project, IProject proj, IJavaProject javaproj) {
+			SourceContext res;
+			synchronized (projects) {
+				res = projects.get(project);
+				if (res==null) {
+					res = new SourceContext();
+					projects.put(project, res);
+				}
+			}
+			synchronized (res) {
+				if (res.digests==null) {
+					res.digests = new HashMap<String, byte[]>();
+					res.context = getContextDigest(project, proj, javaproj, res.digests);
+				}
+			}
+			return res;
+		}
+	}
+	private static class SourceContext {
+		Map<String, byte[]> digests;	//of the project's sources
+		byte[] context;	//null if the facts can not be cached
+	}
+	//Keeps the file digests for the next run and drops what the fact cache holds beyond its bound
+	private static void saveCaches() {
+		WS.saveDigests();
+		factCache.trim();
+	}
+	//Reuses the digest WS remembers for the file if it did not change since it was read
+	private static byte[] getDigest(String pathname, IProject proj) {
+		try {
+			return WS.getDigest(proj.getFile(pathname));
+		} catch (Exception e) {
+			return null;	//not cacheable, parsing will report the problem
+		}
+	}
+	//Digest of everything the bindings of a file can be resolved against: the sources of the project,
+	//the sources of the projects on its classpath and the libraries on its classpath. Puts the digests
+	//of the project's sources into digests. Returns null if any of them cannot be read
+	private static byte[] getContextDigest(String project, IProject proj, IJavaProject javaproj, 
+			Map<String, byte[]> digests) {
+		MessageDigest md;
+		try {
+			md = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new Error(e);
+		}
+		if (!digestSources(project, proj, md, digests)) return null;
+		try {
+			for (IClasspathEntry entry : javaproj.getResolvedClasspath(true)) {
+				IPath path = entry.getPath();
+				updateDigest(md, path.toPortableString());
+				if (entry.getEntryKind()==IClasspathEntry.CPE_PROJECT) {
+					String other = path.lastSegment();
+					IProject otherproj = ResourcesPlugin.getWorkspace().getRoot().getProject(other);
+					if (!digestSources(other, otherproj, md, new HashMap<String, byte[]>())) return null;
+				} else if (entry.getEntryKind()==IClasspathEntry.CPE_LIBRARY) {
+					IResource res = ResourcesPlugin.getWorkspace().getRoot().findMember(path);
+					File lib = (res!=null && res.getLocation()!=null) ? res.getLocation().toFile() : path.toFile();
+					updateDigest(md, lib.length()+":"+lib.lastModified());
+				}
+			}
+		} catch (JavaModelException e) {
+			return null;
+		}
+		return md.digest();
+	}
+	private static boolean digestSources(String project, IProject proj, MessageDigest md, Map<String, byte[]> digests) {
+		List<String> paths = new ArrayList<String>(WS.getFiles(project));
+		Collections.sort(paths);
+		for (String path : paths) {
+			byte[] digest = getDigest(path, proj);
+			if (digest==null) return false;
+			digests.put(path, digest);
+			updateDigest(md, path);
+			md.update(digest);
+		}
+		return true;
+	}
+	private static void updateDigest(MessageDigest md, String s) {
+		try {
+			md.update(s.getBytes("UTF-8"));
+		} catch (IOException e) {
+			throw new Error(e);
+		}
+		md.update((byte)0);
+	}
+	private static void cacheFacts(String project, String pathname, byte[] digest, byte[] context, FactBase facts) {
+		if (digest!=null && context!=null)
+			factCache.put(project, pathname, digest, context, facts);
+	}
+	//Extracts the facts on a thread of its own, which parses and visits the files while the caller does the same for FB1
+	private static Future<FactBase> startFactBase(final String project, final Set<String> files, 
+			final ExecutorService workers, final SourceContexts contexts) {
+		FutureTask<FactBase> extraction = new FutureTask<FactBase>(new Callable<FactBase>() {
+			public FactBase call() {
+				return makeFactBase(project, files, workers, contexts);
+			}
+		});
+		new Thread(extraction, "Fact extraction for "+project).start();
+		return extraction;
+	}
+	private static FactBase finishFactBase(Future<FactBase> extraction, ExecutorService workers) {
+		try {
+			return extraction.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new Error("Interrupted while extracting facts", e);
+		} catch (ExecutionException e) {
+			throw new Error("Fact extraction failed: "+e.getCause(), e.getCause());
+		} finally {
+			workers.shutdown();
+		}
+	}
 	private static FactBase getReferencedFacts(LSDFact f, FactBase oldFB, FactBase newFB) {
 
 		//get type and modifier from predicate
@@ -26,11 +26,15 @@ public class MetaInfo {
 	public static int beamSize=100;
 	public static double accuracy =0.75;
 	public static int maxException=10;
+	public static int numThreads=Runtime.getRuntime().availableProcessors();
 
 	public static String baseDir = lsclipse.LSclipse.getDefault().getStateLocation().toOSString();
 	public static String srcDir = baseDir+"/input";
 	public static String resDir = baseDir+"/output";
 	public static String fdbDir = baseDir+"/fdb";
+	public static String factCacheDir = baseDir+"/factcache";
+	public static long factCacheMaxBytes = 256L*1024*1024;
+	public static String digestsFile = baseDir+"/digests.ser";
 
 	public static File included1kb = new File (srcDir, "1KB_lsdPred.rub");
 	public static File included2kb = new File (srcDir, "2KB_lsdPred.rub");
@@ -26,6 +26,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 
 public class IO {
 
@@ -38,6 +40,24 @@ public class IO {
 		return out.toString();
 	}
 
+	public static byte[] digest(InputStream in) throws IOException {
+		MessageDigest md;
+		try {
+			md = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new Error(e);
+		}
+		byte[] b = new byte[8192];
+		try {
+			for (int n; (n = in.read(b)) != -1;) {
+				md.update(b, 0, n);
+			}
+		} finally {
+			in.close();
+		}
+		return md.digest();
+	}
+
 	public static void writeStreamToFile(InputStream is, File file) {
 		try {
 			OutputStream out = new FileOutputStream(file);
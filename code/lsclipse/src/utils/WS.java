@@ -1,25 +1,45 @@
-/* 
-*    Logical Structural Diff (LSDiff)  
-*    Copyright (C) <2015>  <Dr. Miryung Kim miryung@cs.ucla.edu>
-*
-*    This program is free software: you can redistribute it and/or modify
-*    it under the terms of the GNU General Public License as published by
-*    the Free Software Foundation, either version 3 of the License, or
-*    (at your option) any later version.
-*
-*    This program is distributed in the hope that it will be useful,
-*    but WITHOUT ANY WARRANTY; without even the implied warranty of
-*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
-*    GNU General Public License for more details.
-*
-*    You should have received a copy of the GNU General Public License
-*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
-*/
+/* 
+*    Logical Structural Diff (LSDiff)  
+*    Copyright (C) <2015>  <Dr. Miryung Kim miryung@cs.ucla.edu>
+*
+*    This program is free software: you can redistribute it and/or modify
+*    it under the terms of the GNU General Public License as published by
+*    the Free Software Foundation, either version 3 of the License, or
+*    (at your option) any later version.
+*
+*    This program is distributed in the hope that it will be useful,
+*    but WITHOUT ANY WARRANTY; without even the implied warranty of
+*    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*    GNU General Public License for more details.
+*
+*    You should have received a copy of the GNU General Public License
+*    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
 package utils;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import metapackage.MetaInfo;
 
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IProject;
@@ -49,52 +69,152 @@ public class WS {
 		proj2files = getIFiles(project2);
 		proj2root = ws.getProject(project2).getFullPath().toString();
 
+		//index project 2 by relative path
+		Map<IPath, IFile> proj2bypath = new HashMap<IPath, IFile>();
+		for (IFile file2 : proj2files) {
+			proj2bypath.put(file2.getProjectRelativePath(), file2);
+		}
+
 		//find files which occur in both projects and are different
-		@SuppressWarnings("unused")
-		Set<IFile> files = new HashSet<IFile>();
+		List<IFile[]> samesize = new ArrayList<IFile[]>();
+		Set<IPath> proj1paths = new HashSet<IPath>();
 		for (IFile file1 : proj1files) {
-			//convert file path in project 1 to path for project 2
-			IPath relativepath = file1.getProjectRelativePath();
-			IFile file2 = null;
-			//search for file in project 2
-			for (IFile currfile : proj2files) {
-				if (currfile.getProjectRelativePath().equals(relativepath)) {
-					file2 = currfile;
-					break;
-				}
-			}
-			//do not add if this file appears in project 2 and is identical
-			if (file2!=null) {	//this file does appears in project 2
-				//do diff on the two files
-				String source1 = IO.readStreamToString(file1.getContents());
-				String source2 = IO.readStreamToString(file2.getContents());
-				if (source1.equals(source2))
-					continue; //these files have identical contents
-			}
-			//add relative path to result
-			res.add(relativepath.toPortableString());
-		}
-		for (IFile file1 : proj2files) {
-			//convert file path in project 1 to path for project 2
 			IPath relativepath = file1.getProjectRelativePath();
-			IFile file2 = null;
-			//search for file in project 2
-			for (IFile currfile : proj1files) {
-				if (currfile.getProjectRelativePath().equals(relativepath)) {
-					file2 = currfile;
-					break;
-				}
-			}
-			//do not add if this file appeared in project 1
-			if (file2!=null) {	//this file does appears in project 1
+			proj1paths.add(relativepath);
+			IFile file2 = proj2bypath.get(relativepath);
+			//files of different size differ, otherwise compare their digests below
+			if (file2!=null && getLength(file1)==getLength(file2)) {
+				samesize.add(new IFile[] { file1, file2 });
 				continue;
 			}
 			//add relative path to result
 			res.add(relativepath.toPortableString());
 		}
+		for (IFile[] pair : findDifferentPairs(samesize)) {
+			res.add(pair[0].getProjectRelativePath().toPortableString());
+		}
+		//files only in project 2
+		for (IFile file2 : proj2files) {
+			if (!proj1paths.contains(file2.getProjectRelativePath()))
+				res.add(file2.getProjectRelativePath().toPortableString());
+		}
+		saveDigests();
 
     	return res;
     }
+	//Digests of file contents from earlier comparisons, by file location.
+	//An entry is valid as long as the file has the same size and time stamp,
+	//and that time stamp is older than the entry by more than the time stamp
+	//resolution. Otherwise the file may have been changed again within the
+	//same tick after it was read, so it is read again.
+	private static class FileDigest implements Serializable {
+		private static final long serialVersionUID = 1L;
+		long length;
+		long modified;
+		long recorded;	//when the contents were read
+		byte[] digest;
+	}
+	//Coarsest time stamp resolution of common file systems (FAT)
+	private static final long MODIFIED_RESOLUTION = 2000;
+	private static Map<String, FileDigest> digests = null;
+	private static boolean digestsChanged = false;
+
+	//Compares the digests of the pairs of files in parallel
+	private static List<IFile[]> findDifferentPairs(List<IFile[]> pairs) throws IOException, CoreException {
+		loadDigests();
+		ExecutorService workers = Executors.newFixedThreadPool(Math.max(1, MetaInfo.numThreads));
+		try {
+			List<Future<Boolean>> same = new ArrayList<Future<Boolean>>();
+			for (final IFile[] pair : pairs) {
+				same.add(workers.submit(new Callable<Boolean>() {
+					public Boolean call() throws IOException, CoreException {
+						return MessageDigest.isEqual(getDigest(pair[0]), getDigest(pair[1]));
+					}
+				}));
+			}
+			List<IFile[]> res = new ArrayList<IFile[]>();
+			for (int i=0; i<pairs.size(); ++i) {
+				if (!same.get(i).get())
+					res.add(pairs.get(i));
+			}
+			return res;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while comparing files");
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof CoreException) throw (CoreException)e.getCause();
+			if (e.getCause() instanceof IOException) throw (IOException)e.getCause();
+			throw new Error(e.getCause());
+		} finally {
+			workers.shutdownNow();
+		}
+	}
+	private static long getLength(IFile file) {
+		IPath location = file.getLocation();
+		return location==null ? -1 : location.toFile().length();
+	}
+	//Digest of the contents of a file, remembered between runs (see saveDigests)
+	public static byte[] getDigest(IFile file) throws IOException, CoreException {
+		loadDigests();
+		IPath location = file.getLocation();
+		if (location==null)	//not on the local file system, nothing to remember
+			return IO.digest(file.getContents());
+		File local = location.toFile();
+		String key = local.getAbsolutePath();
+		long length = local.length();
+		long modified = local.lastModified();
+		synchronized (digests) {
+			FileDigest known = digests.get(key);
+			if (known!=null && known.length==length && known.modified==modified
+					&& modified+MODIFIED_RESOLUTION<known.recorded)
+				return known.digest;
+		}
+		FileDigest computed = new FileDigest();
+		computed.length = length;
+		computed.modified = modified;
+		computed.recorded = System.currentTimeMillis();
+		computed.digest = IO.digest(file.getContents());
+		synchronized (digests) {
+			digests.put(key, computed);
+			digestsChanged = true;
+		}
+		return computed.digest;
+	}
+	@SuppressWarnings("unchecked")
+	private static synchronized void loadDigests() {
+		if (digests!=null) return;
+		digests = new HashMap<String, FileDigest>();
+		File file = new File(MetaInfo.digestsFile);
+		if (!file.exists()) return;
+		try {
+			ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)));
+			try {
+				digests.putAll((Map<String, FileDigest>) in.readObject());
+			} finally {
+				in.close();
+			}
+		} catch (Exception e) {
+			System.err.println("Ignoring unreadable file digests in "+file);
+		}
+	}
+	public static synchronized void saveDigests() {
+		if (digests==null || !digestsChanged) return;
+		File file = new File(MetaInfo.digestsFile);
+		file.getParentFile().mkdirs();
+		try {
+			ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+			try {
+				synchronized (digests) {
+					out.writeObject(digests);
+					digestsChanged = false;
+				}
+			} finally {
+				out.close();
+			}
+		} catch (IOException e) {
+			System.err.println("Unable to save file digests to "+file);
+		}
+	}
 	public static Set<String> getFiles(String projname) {
     	IWorkspaceRoot ws = ResourcesPlugin.getWorkspace().getRoot();
 		IProject proj = ws.getProject(projname);